@@ -0,0 +1,161 @@
+package smodelkit.util.kernels;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Kernels which use the SIMD instructions of the processor through the Java Vector API. Each loop
+ * works on SPECIES.length() values at a time (FLOAT_SPECIES.length() for float arrays), using the
+ * widest vectors the processor supports, and finishes the values which are left over with a
+ * scalar loop.
+ *
+ * The Vector API is an incubator module of Java 16 and later, and SMODeLKit is built for Java 8,
+ * so this class is not part of the normal build. To use it, compile it with the rest of the
+ * source:
+ *
+ * javac --add-modules jdk.incubator.vector -d bin src/smodelkit/...
+ * src/excludedFromBuild/smodelkit/util/kernels/VectorKernels.java
+ *
+ * and run with:
+ *
+ * java --add-modules jdk.incubator.vector -Dsmodelkit.kernels=vector ...
+ *
+ * Sums are accumulated in SPECIES.length() separate lanes which are added together at the end, so
+ * results can differ from those of ScalarKernels in the last few bits.
+ * @author joseph
+ *
+ */
+public class VectorKernels extends Kernels
+{
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+
+	@Override
+	public String getName()
+	{
+		return "vector";
+	}
+
+	@Override
+	public double dot(double[] a, int aOffset, double[] b, int bOffset, int length)
+	{
+		DoubleVector sums = DoubleVector.zero(SPECIES);
+		int upperBound = SPECIES.loopBound(length);
+		int i = 0;
+		for (; i < upperBound; i += SPECIES.length())
+		{
+			DoubleVector x = DoubleVector.fromArray(SPECIES, a, aOffset + i);
+			DoubleVector y = DoubleVector.fromArray(SPECIES, b, bOffset + i);
+			sums = x.fma(y, sums);
+		}
+		double sum = sums.reduceLanes(VectorOperators.ADD);
+		for (; i < length; i++)
+			sum += a[aOffset + i] * b[bOffset + i];
+		return sum;
+	}
+
+	@Override
+	public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length)
+	{
+		DoubleVector alphas = DoubleVector.broadcast(SPECIES, alpha);
+		int upperBound = SPECIES.loopBound(length);
+		int i = 0;
+		for (; i < upperBound; i += SPECIES.length())
+		{
+			DoubleVector xs = DoubleVector.fromArray(SPECIES, x, xOffset + i);
+			DoubleVector ys = DoubleVector.fromArray(SPECIES, y, yOffset + i);
+			alphas.fma(xs, ys).intoArray(y, yOffset + i);
+		}
+		for (; i < length; i++)
+			y[yOffset + i] += alpha * x[xOffset + i];
+	}
+
+	@Override
+	public float dot(float[] a, int aOffset, float[] b, int bOffset, int length)
+	{
+		FloatVector sums = FloatVector.zero(FLOAT_SPECIES);
+		int upperBound = FLOAT_SPECIES.loopBound(length);
+		int i = 0;
+		for (; i < upperBound; i += FLOAT_SPECIES.length())
+		{
+			FloatVector x = FloatVector.fromArray(FLOAT_SPECIES, a, aOffset + i);
+			FloatVector y = FloatVector.fromArray(FLOAT_SPECIES, b, bOffset + i);
+			sums = x.fma(y, sums);
+		}
+		float sum = sums.reduceLanes(VectorOperators.ADD);
+		for (; i < length; i++)
+			sum += a[aOffset + i] * b[bOffset + i];
+		return sum;
+	}
+
+	@Override
+	public void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length)
+	{
+		FloatVector alphas = FloatVector.broadcast(FLOAT_SPECIES, alpha);
+		int upperBound = FLOAT_SPECIES.loopBound(length);
+		int i = 0;
+		for (; i < upperBound; i += FLOAT_SPECIES.length())
+		{
+			FloatVector xs = FloatVector.fromArray(FLOAT_SPECIES, x, xOffset + i);
+			FloatVector ys = FloatVector.fromArray(FLOAT_SPECIES, y, yOffset + i);
+			alphas.fma(xs, ys).intoArray(y, yOffset + i);
+		}
+		for (; i < length; i++)
+			y[yOffset + i] += alpha * x[xOffset + i];
+	}
+
+	@Override
+	public double squaredDistance(double[] a, int aOffset, double[] b, int bOffset, int length,
+			double scale)
+	{
+		DoubleVector sums = DoubleVector.zero(SPECIES);
+		int upperBound = SPECIES.loopBound(length);
+		int i = 0;
+		for (; i < upperBound; i += SPECIES.length())
+		{
+			DoubleVector d = DoubleVector.fromArray(SPECIES, a, aOffset + i)
+					.sub(DoubleVector.fromArray(SPECIES, b, bOffset + i));
+			sums = d.fma(d, sums);
+		}
+		double sum = scale * sums.reduceLanes(VectorOperators.ADD);
+		for (; i < length; i++)
+		{
+			double d = a[aOffset + i] - b[bOffset + i];
+			sum += scale * (d * d);
+		}
+		return sum;
+	}
+
+	@Override
+	public double maskedSquaredDistance(double[] a, int aOffset, double[] b, int bOffset, int length,
+			double unknownDistance)
+	{
+		DoubleVector sums = DoubleVector.zero(SPECIES);
+		DoubleVector unknowns = DoubleVector.broadcast(SPECIES, unknownDistance);
+		int upperBound = SPECIES.loopBound(length);
+		int i = 0;
+		for (; i < upperBound; i += SPECIES.length())
+		{
+			DoubleVector x = DoubleVector.fromArray(SPECIES, a, aOffset + i);
+			DoubleVector y = DoubleVector.fromArray(SPECIES, b, bOffset + i);
+			// NaN is the only value which is not equal to itself.
+			VectorMask<Double> unknown = x.compare(VectorOperators.NE, x).or(y.compare(VectorOperators.NE, y));
+			DoubleVector d = x.sub(y);
+			sums = sums.add(d.mul(d).blend(unknowns, unknown));
+		}
+		double sum = sums.reduceLanes(VectorOperators.ADD);
+		for (; i < length; i++)
+		{
+			double x = a[aOffset + i];
+			double y = b[bOffset + i];
+			if (Double.isNaN(x) || Double.isNaN(y))
+				sum += unknownDistance;
+			else
+				sum += (x - y) * (x - y);
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,1046 @@
+package smodelkit;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.GZIPInputStream;
+
+import smodelkit.util.Helper;
+import smodelkit.util.ThreadCounter;
+
+/**
+ * Reads a dataset in the arff format into a Matrix in a single pass over a char buffer.
+ *
+ * Data rows are parsed directly from the buffer, so no Strings are created for rows or values
+ * unless a row is invalid. Header lines are few, so they are still converted to Strings.
+ *
+ * Tokens are found the same way a Scanner using "," as its delimiter would find them, so rows
+ * are read exactly as they were when Matrix used a Scanner for every row.
+ *
+ * Large files can have their data sections parsed by multiple threads (see read(String)).
+ *
+ * @author joseph
+ *
+ */
+class ArffReader
+{
+	private static final int INITIAL_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * The smallest number of bytes of the data section that will be given to a thread.
+	 */
+	private static final int MIN_CHUNK_SIZE = 1 << 18;
+
+	/**
+	 * Powers of 10 which can be represented exactly by a double.
+	 */
+	private static final double[] POWERS_OF_10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+			1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+	private final Matrix m;
+	private final boolean loadComments;
+
+	private Reader in;
+	private char[] buf;
+	private int pos;
+	private int limit;
+	private boolean endOfInput;
+
+	// The current line is buf[lineStart, lineEnd), with surrounding white space removed.
+	private int lineStart;
+	private int lineEnd;
+
+	private StringBuilder commentsBuilder;
+	// The attributes read so far. The matrix is given a schema of them when the data section starts.
+	private List<AttributeSchema.Attribute> attributes;
+	// Parses the rows read by readRows. This is null until readHeader finds the data section.
+	private RowParser rowParser;
+
+	ArffReader(Matrix m, boolean loadComments)
+	{
+		this.m = m;
+		this.loadComments = loadComments;
+	}
+
+	/**
+	 * Reads an arff dataset from the given reader into the matrix given to the constructor, replacing
+	 * anything already in it.
+	 */
+	void read(Reader in) throws IOException
+	{
+		setInput(in);
+		start();
+		RowParser parser = null;
+		while (nextLine())
+		{
+			if (lineStart == lineEnd)
+				continue;
+
+			if (buf[lineStart] == '%')
+			{
+				if (loadComments)
+				{
+					commentsBuilder.append(buf, lineStart, lineEnd - lineStart);
+					commentsBuilder.append("\n");
+				}
+			}
+			else if (parser == null)
+			{
+				if (readHeaderLine(new String(buf, lineStart, lineEnd - lineStart)))
+					parser = new RowParser(m, createNominalLookups());
+			}
+			else
+			{
+				m.addRow(parser.parseRow(buf, lineStart, lineEnd));
+			}
+		}
+		finish();
+	}
+
+	/**
+	 * Reads the header of an arff dataset from the given reader into the matrix given to the
+	 * constructor, replacing anything already in it. The matrix is left with no rows. The data
+	 * rows can then be read a few at a time with readRows, so that datasets which do not fit in
+	 * memory can be processed.
+	 */
+	void readHeader(Reader in) throws IOException
+	{
+		setInput(in);
+		start();
+		rowParser = null;
+		while (rowParser == null && nextLine())
+		{
+			if (lineStart == lineEnd)
+				continue;
+
+			if (buf[lineStart] == '%')
+			{
+				if (loadComments)
+				{
+					commentsBuilder.append(buf, lineStart, lineEnd - lineStart);
+					commentsBuilder.append("\n");
+				}
+			}
+			else if (readHeaderLine(new String(buf, lineStart, lineEnd - lineStart)))
+			{
+				rowParser = new RowParser(m, createNominalLookups());
+			}
+		}
+		finish();
+	}
+
+	/**
+	 * Reads up to maxRows data rows after those already read, and adds them to dest, which must
+	 * have the same columns as the matrix given to the constructor. readHeader must be called first.
+	 * @return The number of rows added. This is less than maxRows only if the end of the input
+	 * was reached.
+	 */
+	int readRows(Matrix dest, int maxRows) throws IOException
+	{
+		if (rowParser == null)
+			return 0;
+		int count = 0;
+		while (count < maxRows && nextLine())
+		{
+			if (lineStart == lineEnd || buf[lineStart] == '%')
+				continue;
+			dest.addRow(rowParser.parseRow(buf, lineStart, lineEnd));
+			count++;
+		}
+		return count;
+	}
+
+	private void setInput(Reader in)
+	{
+		this.in = in;
+		buf = new char[INITIAL_BUFFER_SIZE];
+		pos = 0;
+		limit = 0;
+		endOfInput = false;
+	}
+
+	/**
+	 * Reads an arff file into the matrix given to the constructor, replacing anything already in it.
+	 * 
+	 * If more than one thread may be used (see ThreadCounter) and the file is large enough, the data
+	 * section is split into chunks at line boundaries, which are parsed in parallel and then added to
+	 * the matrix in file order. The result is the same as reading the file with one thread.
+	 * 
+	 * Files whose names end with ".gz" are decompressed with gzip as they are read, with one thread.
+	 */
+	void read(String filename) throws IOException
+	{
+		Charset charset = Charset.defaultCharset();
+		if (filename.endsWith(".gz"))
+		{
+			try (Reader in = new InputStreamReader(new GZIPInputStream(Files.newInputStream(Paths.get(filename))),
+					charset))
+			{
+				read(in);
+			}
+			return;
+		}
+		try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ))
+		{
+			long size = channel.size();
+			if (ThreadCounter.getMaxThreads() < 2 || size < 2 * MIN_CHUNK_SIZE || size > Integer.MAX_VALUE
+					|| !isAsciiCompatible(charset))
+			{
+				read(new InputStreamReader(Channels.newInputStream(channel), charset));
+			}
+			else
+			{
+				readInChunks(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), charset);
+			}
+		}
+	}
+
+	/**
+	 * Determines if the charset encodes every ASCII character as the same single byte, and never
+	 * uses those bytes in the encoding of other characters. Only then can the bytes of a file be
+	 * split into lines before they are decoded.
+	 */
+	private static boolean isAsciiCompatible(Charset charset)
+	{
+		return charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII)
+				|| charset.equals(StandardCharsets.ISO_8859_1);
+	}
+
+	private static boolean isLineEnd(int b)
+	{
+		return b == '\n' || b == '\r';
+	}
+
+	private static ByteBuffer slice(ByteBuffer bytes, int start, int end)
+	{
+		ByteBuffer result = bytes.duplicate();
+		result.position(start);
+		result.limit(end);
+		return result;
+	}
+
+	private void readInChunks(ByteBuffer bytes, Charset charset)
+	{
+		start();
+
+		// Read the header one line at a time.
+		int position = 0;
+		int dataStart = -1;
+		while (position < bytes.limit() && dataStart < 0)
+		{
+			int end = position;
+			while (end < bytes.limit() && !isLineEnd(bytes.get(end)))
+				end++;
+			String line = charset.decode(slice(bytes, position, end)).toString().trim();
+			position = end + 1;
+			if (line.isEmpty())
+				continue;
+
+			if (line.charAt(0) == '%')
+			{
+				if (loadComments)
+				{
+					commentsBuilder.append(line);
+					commentsBuilder.append("\n");
+				}
+			}
+			else if (readHeaderLine(line))
+			{
+				dataStart = position;
+			}
+		}
+
+		if (dataStart >= 0 && dataStart < bytes.limit())
+		{
+			NominalLookup[] lookups = createNominalLookups();
+			int dataSize = bytes.limit() - dataStart;
+			int numChunks = (int)Math.max(1, Math.min(ThreadCounter.getMaxThreads() * 2L, dataSize / MIN_CHUNK_SIZE));
+
+			// Move the boundaries between chunks to the beginnings of lines.
+			int[] boundaries = new int[numChunks + 1];
+			boundaries[0] = dataStart;
+			for (int i = 1; i < numChunks; i++)
+			{
+				int boundary = Math.max(boundaries[i - 1], dataStart + (int)((long)dataSize * i / numChunks));
+				while (boundary < bytes.limit() && !isLineEnd(bytes.get(boundary - 1)))
+					boundary++;
+				boundaries[i] = boundary;
+			}
+			boundaries[numChunks] = bytes.limit();
+
+			List<Callable<Chunk>> jobs = new ArrayList<>();
+			for (int i = 0; i < numChunks; i++)
+			{
+				ByteBuffer chunkBytes = slice(bytes, boundaries[i], boundaries[i + 1]);
+				jobs.add(() -> readChunk(charset.decode(chunkBytes), lookups));
+			}
+
+			List<Chunk> chunks;
+			try
+			{
+				chunks = Helper.processInParallelAndGetResult(jobs);
+			}
+			catch (RuntimeException e)
+			{
+				// Throw the same exception that reading the file with one thread would have.
+				if (e.getCause() instanceof ExecutionException && e.getCause().getCause() instanceof RuntimeException)
+					throw (RuntimeException)e.getCause().getCause();
+				throw e;
+			}
+
+			for (Chunk chunk : chunks)
+			{
+				commentsBuilder.append(chunk.comments);
+				for (Vector row : chunk.rows)
+					m.addRow(row);
+			}
+		}
+
+		finish();
+	}
+
+	/**
+	 * Parses the lines of part of the data section of an arff file.
+	 */
+	private Chunk readChunk(CharBuffer chars, NominalLookup[] lookups)
+	{
+		char[] chunkBuf = chars.array();
+		int chunkEnd = chars.arrayOffset() + chars.limit();
+		RowParser parser = new RowParser(m, lookups);
+		Chunk result = new Chunk();
+		int position = chars.arrayOffset() + chars.position();
+		while (position < chunkEnd)
+		{
+			int start = position;
+			int end = start;
+			while (end < chunkEnd && !isLineEnd(chunkBuf[end]))
+				end++;
+			position = end + 1;
+
+			// Trim the same characters as String.trim.
+			while (start < end && chunkBuf[start] <= ' ')
+				start++;
+			while (end > start && chunkBuf[end - 1] <= ' ')
+				end--;
+			if (start == end)
+				continue;
+
+			if (chunkBuf[start] == '%')
+			{
+				if (loadComments)
+				{
+					result.comments.append(chunkBuf, start, end - start);
+					result.comments.append("\n");
+				}
+			}
+			else
+			{
+				result.rows.add(parser.parseRow(chunkBuf, start, end));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The rows and comments read from part of a file.
+	 */
+	private static class Chunk
+	{
+		final List<Vector> rows = new ArrayList<>();
+		final StringBuilder comments = new StringBuilder();
+	}
+
+	private void start()
+	{
+		m.data = m.data.emptyCopy();
+		m.clearStatistics();
+		m.schema = AttributeSchema.EMPTY;
+		attributes = new ArrayList<>();
+		commentsBuilder = new StringBuilder();
+	}
+
+	private void finish()
+	{
+		m.schema = new AttributeSchema(attributes);
+		m.comments = commentsBuilder.toString();
+		m.validate();
+	}
+
+	/**
+	 * Finds the next line in the input and trims it.
+	 * @return false if there are no more lines.
+	 */
+	private boolean nextLine() throws IOException
+	{
+		int scan = pos;
+		while (true)
+		{
+			for (; scan < limit; scan++)
+			{
+				char c = buf[scan];
+				if (c == '\n' || c == '\r')
+				{
+					setLine(pos, scan);
+					pos = scan + 1;
+					return true;
+				}
+			}
+			if (endOfInput)
+			{
+				if (pos == limit)
+					return false;
+				setLine(pos, limit);
+				pos = limit;
+				return true;
+			}
+			scan -= pos;
+			fill();
+		}
+	}
+
+	/**
+	 * Moves the unread part of the buffer to its beginning and reads more input after it.
+	 */
+	private void fill() throws IOException
+	{
+		int unread = limit - pos;
+		if (unread == buf.length)
+		{
+			char[] newBuf = new char[buf.length * 2];
+			System.arraycopy(buf, pos, newBuf, 0, unread);
+			buf = newBuf;
+		}
+		else
+		{
+			System.arraycopy(buf, pos, buf, 0, unread);
+		}
+		pos = 0;
+		limit = unread;
+		int read = in.read(buf, limit, buf.length - limit);
+		if (read < 0)
+			endOfInput = true;
+		else
+			limit += read;
+	}
+
+	private void setLine(int start, int end)
+	{
+		// Trim the same characters as String.trim.
+		while (start < end && buf[start] <= ' ')
+			start++;
+		while (end > start && buf[end - 1] <= ' ')
+			end--;
+		lineStart = start;
+		lineEnd = end;
+	}
+
+	/**
+	 * Reads a line from the header of an arff file.
+	 * @return true if the line starts the data section.
+	 */
+	private boolean readHeaderLine(String line)
+	{
+		int firstTokenEnd = 0;
+		while (firstTokenEnd < line.length() && !Character.isWhitespace(line.charAt(firstTokenEnd)))
+			firstTokenEnd++;
+		String firstToken = line.substring(0, firstTokenEnd).toUpperCase();
+
+		if (firstToken.equals("@RELATION"))
+		{
+			QuoteParser u = new QuoteParser(line);
+			u.next();
+			String relationName = u.next().replace("'", "").replace("\"", "");
+
+			if (relationName.toUpperCase().contains("-C"))
+			{
+				QuoteParser p = new QuoteParser(relationName);
+				while (!p.next().toUpperCase().equals("-C"))
+				{
+
+				}
+				String labelColsStr = p.next();
+
+				// Get the number of label columns.
+				int numLabelColumns = Integer.parseInt(labelColsStr);
+				if (numLabelColumns > 0)
+					throw new IllegalArgumentException("Label columns at the beginning of "
+							+ "a dataset are not supported, so arguments given to -c in"
+							+ " arff files must be negative. This is necessary to make dataset compatible"
+							+ " with Meka.");
+				// I need to be able to add a negative sign, and ignore it, to make my datasets compatible with Meka.
+				m.setNumLabelColumns(Math.abs(numLabelColumns));
+			}
+
+			if (relationName.contains(":"))
+			{
+				relationName = relationName.split(":")[0];
+			}
+			m.relationName = relationName;
+		}
+		else if (firstToken.equals("@ATTRIBUTE"))
+		{
+			QuoteParser parser = new QuoteParser(line);
+			parser.next();
+			String attributeName = parser.next();
+			if (attributeName.equals("?"))
+				throw new IllegalArgumentException("\"?\" is a reserved token. Found in line: " + line);
+
+			List<String> valueNames = new ArrayList<>();
+			String type = parser.next().toUpperCase();
+			if (type.equals("REAL")
+					|| type.equals("CONTINUOUS")
+					|| type.equals("INTEGER")
+					|| type.equals("NUMERIC"))
+			{
+			}
+			else
+			{
+				if (!line.contains("{"))
+					throw new RuntimeException("Missing \"{\" from line: " + line );
+				if (!line.contains("}"))
+					throw new RuntimeException("Missing \"}\"");
+				String values = line.substring(
+						line.indexOf("{") + 1,
+						line.indexOf("}"));
+				for (String value : values.split(","))
+				{
+					value = value.trim();
+					if (value.length() > 0)
+					{
+						if (value.equals("?"))
+							throw new IllegalArgumentException("\"?\" is a reserved token. Found in line: " + line);
+						valueNames.add(value);
+					}
+				}
+			}
+			attributes.add(new AttributeSchema.Attribute(attributeName, valueNames));
+		}
+		else if (firstToken.equals("@DATA"))
+		{
+			m.schema = new AttributeSchema(attributes);
+			return true;
+		}
+		return false;
+	}
+
+	private NominalLookup[] createNominalLookups()
+	{
+		NominalLookup[] result = new NominalLookup[m.cols()];
+		for (int c = 0; c < m.cols(); c++)
+		{
+			if (!m.isContinuous(c))
+				result[c] = new NominalLookup(m.schema.get(c));
+		}
+		return result;
+	}
+
+	/**
+	 * Parses data rows. Each thread reading part of a file uses its own RowParser.
+	 */
+	private static class RowParser
+	{
+		private final Matrix m;
+		private final NominalLookup[] nominalLookups;
+
+		// The current line is buf[lineStart, lineEnd).
+		private char[] buf;
+		private int lineStart;
+		private int lineEnd;
+
+		// The end of the most recent token found by nextToken.
+		private int tokenEnd;
+
+		// Values of the sparse row being parsed, and the attribute indexes which have been set in it.
+		// These are reused for every sparse row, so only the touched entries need to be cleared.
+		private double[] sparseValues;
+		private int[] touched;
+		private int touchedCount;
+
+		RowParser(Matrix m, NominalLookup[] nominalLookups)
+		{
+			this.m = m;
+			this.nominalLookups = nominalLookups;
+		}
+
+		/**
+		 * Finds the next token in the current line, starting at start. This skips one delimiter and
+		 * then reads up to the next delimiter or the end of the line, which is what a Scanner using
+		 * "," as its delimiter does. The end of the token is stored in tokenEnd.
+		 * @return The start of the token, or -1 if there are no more tokens.
+		 */
+		private int nextToken(int start)
+		{
+			if (start < lineEnd && buf[start] == ',')
+				start++;
+			if (start >= lineEnd)
+				return -1;
+			int end = start;
+			while (end < lineEnd && buf[end] != ',')
+				end++;
+			tokenEnd = end;
+			return start;
+		}
+
+		/**
+		 * Determines if there is another token after the one ending at end.
+		 */
+		private boolean hasNextToken(int end)
+		{
+			if (end < lineEnd && buf[end] == ',')
+				end++;
+			return end < lineEnd;
+		}
+
+		private int trimStart(int start, int end)
+		{
+			while (start < end && buf[start] <= ' ')
+				start++;
+			return start;
+		}
+
+		private int trimEnd(int start, int end)
+		{
+			while (end > start && buf[end - 1] <= ' ')
+				end--;
+			return end;
+		}
+
+		/**
+		 * Parses the data row in buf[start, end), which must already be trimmed and not empty.
+		 */
+		Vector parseRow(char[] buf, int start, int end)
+		{
+			this.buf = buf;
+			lineStart = start;
+			lineEnd = end;
+
+			// There are 2 ways to store a data row: sparse or not sparse. The non-sparse way stores
+			// all values separated by commas.
+			// The sparse way stores key value pairs separate by commas, where they key is the index
+			// of the attribute, and the value is the value it has. Indexes start at 0. If an attribute
+			// does not have a value specified, it will be zero, or the first nominal value.
+			if (buf[lineStart] == '{' && buf[lineEnd - 1] == '}')
+				return parseSparseRow();
+			else
+				return parseDenseRow();
+		}
+
+		private Vector parseDenseRow()
+		{
+			double[] newRow = new double[m.cols()];
+			double instanceWeight = 1.0;
+			int curPos = 0;
+			int tokenStart = nextToken(lineStart);
+			while (tokenStart >= 0)
+			{
+				int end = tokenEnd;
+				int start = trimStart(tokenStart, end);
+				end = trimEnd(start, end);
+				boolean last = !hasNextToken(tokenEnd);
+				int nextStart = tokenEnd;
+
+				if (start == end)
+					throw new RuntimeException("Line contains empty string in column " + curPos + ": " + lineToString());
+
+				if (last && buf[start] == '{' && buf[end - 1] == '}')
+				{
+					instanceWeight = parseInstanceWeight(start, end);
+				}
+				else
+				{
+					if (curPos >= newRow.length)
+						throw new IllegalArgumentException("The given line has more entries than their are attributes. Line: "
+								+ lineToString());
+
+					// Missing instances appear in the dataset
+					// as a double defined in Vector.getUnknownValue().
+					if (end - start == 1 && buf[start] == '?')
+					{
+						newRow[curPos] = Vector.getUnknownValue();
+					}
+					// Continuous values appear in the instance
+					// vector as they are
+					else if (nominalLookups[curPos] == null)
+					{
+						newRow[curPos] = parseDouble(start, end);
+					}
+					// Discrete values appear as an index to the "name"
+					// of that value in the "attributeValue" structure
+					else
+					{
+						int value = nominalLookups[curPos].find(buf, start, end);
+						if (value < 0)
+						{
+							throw new RuntimeException(String.format(
+									"Unknown attribute value \"%s\" for attribute \"%s\" in line:\n%s",
+									new String(buf, start, end - start), m.getAttrName(curPos), lineToString()));
+						}
+						newRow[curPos] = value;
+					}
+					curPos++;
+				}
+				tokenStart = nextToken(nextStart);
+			}
+			return new Vector(newRow, instanceWeight);
+		}
+
+		private Vector parseSparseRow()
+		{
+			if (sparseValues == null || sparseValues.length != m.cols())
+			{
+				sparseValues = new double[m.cols()];
+				touched = new int[16];
+			}
+			else
+			{
+				// A previous row may have stopped part way through because of an exception.
+				for (int k = 0; k < touchedCount; k++)
+					sparseValues[touched[k]] = 0;
+			}
+			touchedCount = 0;
+			double[] newRow = sparseValues;
+			double instanceWeight = 1.0;
+			boolean atLeastOnePieceOfDataRead = false;
+			int tokenStart = nextToken(lineStart);
+			while (tokenStart >= 0)
+			{
+				int end = tokenEnd;
+				int start = trimStart(tokenStart, end);
+				end = trimEnd(start, end);
+				boolean last = !hasNextToken(tokenEnd);
+				int nextStart = tokenEnd;
+				tokenStart = nextToken(nextStart);
+
+				if (last && start < end && buf[start] == '{' && buf[end - 1] == '}' && atLeastOnePieceOfDataRead)
+				{
+					instanceWeight = parseInstanceWeight(start, end);
+					continue;
+				}
+
+				// Remove the curly brackets if present.
+				if (start < end && buf[start] == '{')
+					start++;
+				if (start < end && buf[end - 1] == '}')
+					end--;
+
+				// Check for the case where a row is just {}, verses has empty key-value pairs such as {,}.
+				if (trimStart(start, end) == end)
+				{
+					if (lineContainsComma())
+						throw notAKeyValuePair(start, end);
+					else
+						break;
+				}
+
+				// The key and value must be separated by exactly one space. Spaces after the value are
+				// ignored.
+				int keyEnd = start;
+				while (keyEnd < end && buf[keyEnd] != ' ')
+					keyEnd++;
+				int valueStart = keyEnd + 1;
+				int valueEnd = valueStart;
+				while (valueEnd < end && buf[valueEnd] != ' ')
+					valueEnd++;
+				if (keyEnd >= end || valueStart == valueEnd || trimStart(valueEnd, end) != end)
+					throw notAKeyValuePair(start, end);
+
+				int attrIndex;
+				try
+				{
+					attrIndex = parseInt(start, keyEnd);
+				}
+				catch(NumberFormatException e)
+				{
+					throw new IllegalArgumentException("Cannot parse attribute index \"" + new String(buf, start, keyEnd - start)
+							+ "\" from line: " + lineToString());
+				}
+
+				if (attrIndex < 0 || attrIndex >= newRow.length)
+				{
+					throw new IllegalArgumentException("Index \"" + attrIndex + "\" is out of range in line: " + lineToString());
+				}
+
+				if (nominalLookups[attrIndex] == null)
+				{
+					try
+					{
+						newRow[attrIndex] = parseDouble(valueStart, valueEnd);
+					}
+					catch(NumberFormatException e)
+					{
+						throw new IllegalArgumentException("Expected a continuous value, but got \""
+								+ new String(buf, valueStart, valueEnd - valueStart) + "\" in line: " + lineToString());
+					}
+				}
+				else
+				{
+					int value = nominalLookups[attrIndex].find(buf, valueStart, valueEnd);
+					if (value < 0)
+					{
+						throw new IllegalArgumentException("Unrecognized attribute value \""
+								+ new String(buf, valueStart, valueEnd - valueStart) + "\" for attribute \""
+								+ m.getAttrName(attrIndex) + "\" in line: " + lineToString());
+					}
+					if (newRow[attrIndex] != 0)
+					{
+						throw new IllegalArgumentException("Attribute " + attrIndex + " is specified multiple times in line: "
+								+ lineToString());
+					}
+					newRow[attrIndex] = value;
+				}
+				if (touchedCount == touched.length)
+					touched = Arrays.copyOf(touched, touchedCount * 2);
+				touched[touchedCount++] = attrIndex;
+
+				atLeastOnePieceOfDataRead = true;
+			}
+			return createSparseVector(instanceWeight);
+		}
+
+		/**
+		 * Creates a SparseVector from the non-zero values in sparseValues, and clears them.
+		 */
+		private SparseVector createSparseVector(double instanceWeight)
+		{
+			Arrays.sort(touched, 0, touchedCount);
+			int count = 0;
+			for (int k = 0; k < touchedCount; k++)
+			{
+				if ((k == 0 || touched[k] != touched[k - 1]) && sparseValues[touched[k]] != 0)
+					count++;
+			}
+			int[] indexes = new int[count];
+			double[] values = new double[count];
+			int j = 0;
+			for (int k = 0; k < touchedCount; k++)
+			{
+				int index = touched[k];
+				if ((k == 0 || index != touched[k - 1]) && sparseValues[index] != 0)
+				{
+					indexes[j] = index;
+					values[j] = sparseValues[index];
+					j++;
+				}
+			}
+			for (int k = 0; k < touchedCount; k++)
+				sparseValues[touched[k]] = 0;
+			touchedCount = 0;
+			return new SparseVector(m.cols(), indexes, values, instanceWeight);
+		}
+
+		private boolean lineContainsComma()
+		{
+			for (int i = lineStart; i < lineEnd; i++)
+			{
+				if (buf[i] == ',')
+					return true;
+			}
+			return false;
+		}
+
+		private IllegalArgumentException notAKeyValuePair(int start, int end)
+		{
+			return new IllegalArgumentException("Value \"" + new String(buf, start, end - start)
+					+ "\" does not specify a key-value pair. Line: " + lineToString());
+		}
+
+		/**
+		 * Parses an instance weight surrounded by curly brackets.
+		 */
+		private double parseInstanceWeight(int start, int end)
+		{
+			try
+			{
+				return parseDouble(start + 1, end - 1);
+			}
+			catch(NumberFormatException e)
+			{
+				throw new NumberFormatException("Unable to parse instance weight in line: " + lineToString());
+			}
+		}
+
+		/**
+		 * Parses an int the same way as Integer.parseInt.
+		 */
+		private int parseInt(int start, int end)
+		{
+			int i = start;
+			boolean negative = false;
+			if (i < end && (buf[i] == '-' || buf[i] == '+'))
+			{
+				negative = buf[i] == '-';
+				i++;
+			}
+			// Longer numbers might overflow, so let Integer handle them.
+			if (i == end || end - i > 9)
+				return Integer.parseInt(new String(buf, start, end - start));
+			int result = 0;
+			for (; i < end; i++)
+			{
+				int digit = buf[i] - '0';
+				if (digit < 0 || digit > 9)
+					throw new NumberFormatException("For input string: \"" + new String(buf, start, end - start) + "\"");
+				result = result * 10 + digit;
+			}
+			return negative ? -result : result;
+		}
+
+		/**
+		 * Parses a double with exactly the same result as Double.parseDouble. Plain decimal numbers with
+		 * few enough digits are converted without creating a String. In that case the digits form an
+		 * integer which a double represents exactly, and it is multiplied or divided by an exactly
+		 * represented power of 10, so the result is correctly rounded. Anything else is given to
+		 * Double.parseDouble.
+		 */
+		private double parseDouble(int start, int end)
+		{
+			int i = start;
+			boolean negative = false;
+			if (i < end && (buf[i] == '-' || buf[i] == '+'))
+			{
+				negative = buf[i] == '-';
+				i++;
+			}
+
+			long mantissa = 0;
+			int significantDigits = 0;
+			int digits = 0;
+			int exponent = 0;
+			boolean fast = true;
+			for (; i < end && buf[i] >= '0' && buf[i] <= '9'; i++, digits++)
+			{
+				if (mantissa != 0 || buf[i] != '0')
+					significantDigits++;
+				mantissa = mantissa * 10 + (buf[i] - '0');
+			}
+			if (i < end && buf[i] == '.')
+			{
+				for (i++; i < end && buf[i] >= '0' && buf[i] <= '9'; i++, digits++)
+				{
+					if (mantissa != 0 || buf[i] != '0')
+						significantDigits++;
+					mantissa = mantissa * 10 + (buf[i] - '0');
+					exponent--;
+				}
+			}
+			if (digits == 0 || significantDigits > 15)
+				fast = false;
+			if (fast && i < end && (buf[i] == 'e' || buf[i] == 'E'))
+			{
+				i++;
+				boolean negativeExponent = false;
+				if (i < end && (buf[i] == '-' || buf[i] == '+'))
+				{
+					negativeExponent = buf[i] == '-';
+					i++;
+				}
+				int exponentDigits = 0;
+				int e = 0;
+				for (; i < end && buf[i] >= '0' && buf[i] <= '9' && exponentDigits < 4; i++, exponentDigits++)
+					e = e * 10 + (buf[i] - '0');
+				if (exponentDigits == 0)
+					fast = false;
+				exponent += negativeExponent ? -e : e;
+			}
+
+			if (fast && i == end)
+			{
+				double result;
+				if (mantissa == 0)
+					result = 0.0;
+				else if (exponent == 0)
+					result = mantissa;
+				else if (exponent > 0 && exponent < POWERS_OF_10.length)
+					result = mantissa * POWERS_OF_10[exponent];
+				else if (exponent < 0 && -exponent < POWERS_OF_10.length)
+					result = mantissa / POWERS_OF_10[-exponent];
+				else
+					return Double.parseDouble(new String(buf, start, end - start));
+				return negative ? -result : result;
+			}
+			return Double.parseDouble(new String(buf, start, end - start));
+		}
+
+		private String lineToString()
+		{
+			return new String(buf, lineStart, lineEnd - lineStart);
+		}
+	}
+
+	/**
+	 * Finds the index of a nominal value from the chars of its name without creating a String.
+	 */
+	private static class NominalLookup
+	{
+		private final char[][] names;
+		private final int[] values;
+		private final int mask;
+
+		NominalLookup(AttributeSchema.Attribute attribute)
+		{
+			int size = Integer.highestOneBit(Math.max(1, attribute.getValueCount()) * 2) * 2;
+			names = new char[size][];
+			values = new int[size];
+			mask = size - 1;
+			for (String valueName : attribute.getValueNames())
+			{
+				char[] name = valueName.toCharArray();
+				int slot = hash(name, 0, name.length) & mask;
+				while (names[slot] != null)
+					slot = (slot + 1) & mask;
+				names[slot] = name;
+				// If a name is repeated, it refers to the last value with that name.
+				values[slot] = attribute.getValueIndex(valueName);
+			}
+		}
+
+		private static int hash(char[] chars, int start, int end)
+		{
+			int h = 0;
+			for (int i = start; i < end; i++)
+				h = 31 * h + chars[i];
+			return h ^ (h >>> 16);
+		}
+
+		/**
+		 * @return The index of the nominal value in buf[start, end), or -1 if there is none.
+		 */
+		int find(char[] buf, int start, int end)
+		{
+			int slot = hash(buf, start, end) & mask;
+			while (names[slot] != null)
+			{
+				if (matches(names[slot], buf, start, end))
+					return values[slot];
+				slot = (slot + 1) & mask;
+			}
+			return -1;
+		}
+
+		private static boolean matches(char[] name, char[] buf, int start, int end)
+		{
+			if (name.length != end - start)
+				return false;
+			for (int i = 0; i < name.length; i++)
+			{
+				if (name[i] != buf[start + i])
+					return false;
+			}
+			return true;
+		}
+	}
+}
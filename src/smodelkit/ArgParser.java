@@ -9,7 +9,7 @@ import com.beust.jcommander.ParameterException;
 
 class ArgParser
 {
-	@Parameter(names = {"-A", "--dataset"}, description = "arff file or .names and .data files.", required = true, variableArity=true)
+	@Parameter(names = {"-A", "--dataset"}, description = "arff file, binary dataset (.smkd) file, or .names and .data files.", required = true, variableArity=true)
 	List<String> dataset;
 	
 	@Parameter(names = {"-L", "--learner"}, description = "learning algorithm and settings file. The learning algorithm"
@@ -95,6 +95,28 @@ class ArgParser
     		+ " test data specified with -E.")
     boolean includeTrainingDataEvaluations;
     
+    @Parameter(names = {"--columnar"}, description = "Store datasets as one array per column instead of one Vector per"
+    		+ " row. This uses less memory for datasets with many rows.")
+    boolean columnar;
+    
+    @Parameter(names = {"--compact"}, description = "Store datasets by column, with columns which only contain integers"
+    		+ " (such as nominal columns) stored as byte, short, or int codes. This uses the least memory.")
+    boolean compact;
+    
+    @Parameter(names = {"--dataset_cache"}, description = "Directory in which to cache parsed datasets. Later runs on"
+    		+ " the same dataset files memory-map the cached copy instead of parsing them again. Entries are keyed by"
+    		+ " the path, size, modification time, and contents of the dataset files.")
+    String datasetCacheDir;
+    
+    @Parameter(names = {"--cache_preprocessed"}, description = "With --dataset_cache, also cache the dataset after"
+    		+ " columns are ignored, rows are limited, label columns are chosen, and unknowns are filled, so later runs"
+    		+ " with the same arguments can skip those steps too.")
+    boolean cachePreprocessed;
+    
+    @Parameter(names = {"--chunk_rows"}, description = "With -E static, read and evaluate the test set this many"
+    		+ " rows at a time instead of loading all of it, so that test sets larger than memory can be used.")
+    Integer chunkRows = null;
+    
 
     
 	public static ArgParser parse(String[] args)
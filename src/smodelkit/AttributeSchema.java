@@ -0,0 +1,231 @@
+package smodelkit;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The names and nominal values of the attributes (columns) of a Matrix. Schemas and the
+ * attributes in them are immutable, so matrices copied from each other share the same schema.
+ * Methods which change a schema return a new one, which shares the attributes which did not
+ * change.
+ *
+ * @author joseph
+ *
+ */
+public final class AttributeSchema implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	public static final AttributeSchema EMPTY = new AttributeSchema(new Attribute[0]);
+
+	private final Attribute[] attributes;
+	/**
+	 * Maps attribute names to the index of the first column with that name. This is created the
+	 * first time it is needed.
+	 */
+	private transient volatile Map<String, Integer> columnIndexes;
+
+	public AttributeSchema(List<Attribute> attributes)
+	{
+		this(attributes.toArray(new Attribute[attributes.size()]));
+	}
+
+	private AttributeSchema(Attribute[] attributes)
+	{
+		this.attributes = attributes;
+	}
+
+	/**
+	 * Creates a schema of continuous attributes with empty names.
+	 */
+	public static AttributeSchema continuous(int cols)
+	{
+		Attribute[] attributes = new Attribute[cols];
+		Arrays.fill(attributes, new Attribute(""));
+		return new AttributeSchema(attributes);
+	}
+
+	public int size()
+	{
+		return attributes.length;
+	}
+
+	public Attribute get(int col)
+	{
+		return attributes[col];
+	}
+
+	/**
+	 * Returns the index of the first column with the given name, or -1 if there is none.
+	 */
+	public int indexOf(String name)
+	{
+		Map<String, Integer> indexes = columnIndexes;
+		if (indexes == null)
+		{
+			indexes = new HashMap<>();
+			for (int c = 0; c < attributes.length; c++)
+				indexes.putIfAbsent(attributes[c].getName(), c);
+			columnIndexes = indexes;
+		}
+		Integer result = indexes.get(name);
+		return result == null ? -1 : result;
+	}
+
+	/**
+	 * Returns a copy of this schema with the given attribute added as the last column.
+	 */
+	public AttributeSchema withAttribute(Attribute attribute)
+	{
+		Attribute[] result = Arrays.copyOf(attributes, attributes.length + 1);
+		result[attributes.length] = attribute;
+		return new AttributeSchema(result);
+	}
+
+	/**
+	 * Returns a copy of this schema with the attribute of the given column replaced.
+	 */
+	public AttributeSchema withAttribute(int col, Attribute attribute)
+	{
+		Attribute[] result = attributes.clone();
+		result[col] = attribute;
+		return new AttributeSchema(result);
+	}
+
+	/**
+	 * Returns a copy of this schema with num columns of other, starting at start, added to the end.
+	 */
+	public AttributeSchema withAttributes(AttributeSchema other, int start, int num)
+	{
+		if (attributes.length == 0 && start == 0 && num == other.size())
+			return other;
+		Attribute[] result = Arrays.copyOf(attributes, attributes.length + num);
+		System.arraycopy(other.attributes, start, result, attributes.length, num);
+		return new AttributeSchema(result);
+	}
+
+	public AttributeSchema withoutColumn(int col)
+	{
+		Attribute[] result = new Attribute[attributes.length - 1];
+		System.arraycopy(attributes, 0, result, 0, col);
+		System.arraycopy(attributes, col + 1, result, col, attributes.length - col - 1);
+		return new AttributeSchema(result);
+	}
+
+	/**
+	 * Returns a schema containing num columns of this schema starting at start.
+	 */
+	public AttributeSchema subSchema(int start, int num)
+	{
+		return EMPTY.withAttributes(this, start, num);
+	}
+
+	/**
+	 * An attribute name, and the names of its values if it is nominal. Continuous attributes
+	 * have no value names.
+	 */
+	public static final class Attribute implements Serializable
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final String name;
+		private final String[] values;
+		private final Map<String, Integer> valueIndexes;
+
+		/**
+		 * Creates a continuous attribute.
+		 */
+		public Attribute(String name)
+		{
+			this(name, new String[0]);
+		}
+
+		/**
+		 * Creates a nominal attribute with the given value names, or a continuous attribute if
+		 * there are none. If a value name is repeated, it refers to the last value with that name.
+		 */
+		public Attribute(String name, List<String> values)
+		{
+			this(name, values.toArray(new String[values.size()]));
+		}
+
+		private Attribute(String name, String[] values)
+		{
+			this.name = name;
+			this.values = values;
+			if (values.length == 0)
+			{
+				valueIndexes = Collections.emptyMap();
+			}
+			else
+			{
+				valueIndexes = new HashMap<>(values.length * 2);
+				for (int v = 0; v < values.length; v++)
+					valueIndexes.put(values[v], v);
+			}
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+
+		/**
+		 * Returns the number of values of this attribute, which is 0 if it is continuous.
+		 */
+		public int getValueCount()
+		{
+			return values.length;
+		}
+
+		public boolean isContinuous()
+		{
+			return values.length == 0;
+		}
+
+		/**
+		 * Returns the name of the given value, or null if this attribute does not have it.
+		 */
+		public String getValueName(int value)
+		{
+			if (value < 0 || value >= values.length)
+				return null;
+			return values[value];
+		}
+
+		/**
+		 * Returns the index of the value with the given name, or null if there is none.
+		 */
+		public Integer getValueIndex(String valueName)
+		{
+			return valueIndexes.get(valueName);
+		}
+
+		public boolean containsValue(String valueName)
+		{
+			return valueIndexes.containsKey(valueName);
+		}
+
+		/**
+		 * Returns a copy of this attribute with the given value name added after the others.
+		 */
+		public Attribute withValue(String valueName)
+		{
+			String[] result = Arrays.copyOf(values, values.length + 1);
+			result[values.length] = valueName;
+			return new Attribute(name, result);
+		}
+
+		/**
+		 * Returns the value names in order, or an empty list if this attribute is continuous.
+		 */
+		public List<String> getValueNames()
+		{
+			return Collections.unmodifiableList(Arrays.asList(values));
+		}
+	}
+}
@@ -0,0 +1,247 @@
+package smodelkit;
+
+import static java.lang.System.out;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FilenameUtils;
+
+/**
+ * Reads and writes datasets in a binary format which can be memory-mapped, so that large
+ * datasets do not need to be parsed every time they are used.
+ *
+ * The file starts with a magic number, a format version, and the length of the header. The
+ * header contains the relation name, comments, number of label columns, attribute names, and
+ * the names of nominal values. After the header (padded to a multiple of 8 bytes), the values
+ * are stored one column at a time as little-endian doubles, followed by a column of instance
+ * weights.
+ *
+ * @author joseph
+ *
+ */
+public class BinaryDataset
+{
+	/**
+	 * The file name extension used for binary datasets.
+	 */
+	public static final String EXTENSION = ".smkd";
+
+	private static final int MAGIC = 0x534d4b44;
+	private static final int VERSION = 1;
+	private static final int PREFIX_SIZE = 12;
+
+	/**
+	 * Writes the given matrix to a binary dataset file.
+	 */
+	public static void write(Matrix m, String filename) throws IOException
+	{
+		byte[] header = createHeader(m);
+		long dataStart = align(PREFIX_SIZE + header.length);
+
+		try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+		{
+			ByteBuffer buffer = ByteBuffer.allocate((int)dataStart);
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putInt(header.length);
+			buffer.put(header);
+			buffer.rewind();
+			writeFully(channel, buffer);
+
+			buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+			for (int c = 0; c <= m.cols(); c++)
+			{
+				for (int r = 0; r < m.rows(); r++)
+				{
+					if (!buffer.hasRemaining())
+					{
+						buffer.flip();
+						writeFully(channel, buffer);
+						buffer.clear();
+					}
+					// The last column is the instance weights.
+					buffer.putDouble(c < m.cols() ? m.get(r, c) : m.row(r).getWeight());
+				}
+			}
+			buffer.flip();
+			writeFully(channel, buffer);
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException
+	{
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+
+	private static long align(long position)
+	{
+		return (position + 7) / 8 * 8;
+	}
+
+	private static byte[] createHeader(Matrix m) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream header = new DataOutputStream(bytes))
+		{
+			writeString(header, m.relationName);
+			writeString(header, m.comments);
+			header.writeInt(m.getNumLabelColumns());
+			header.writeInt(m.rows());
+			header.writeInt(m.cols());
+			for (int c = 0; c < m.cols(); c++)
+			{
+				writeString(header, m.getAttrName(c));
+				header.writeInt(m.getValueCount(c));
+				for (int v = 0; v < m.getValueCount(c); v++)
+				{
+					writeString(header, m.getAttrValueName(c, v));
+				}
+			}
+			header.writeInt(m.numCatagoricalCols.size());
+			for (int n : m.numCatagoricalCols)
+				header.writeInt(n);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void writeString(DataOutputStream out, String str) throws IOException
+	{
+		if (str == null)
+		{
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException
+	{
+		int length = in.readInt();
+		if (length < 0)
+			return null;
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Loads a binary dataset into the given matrix. The values are memory-mapped, not copied, so
+	 * the matrix is read-only except that rows can be removed or reordered.
+	 */
+	static void load(Matrix m, String filename) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ))
+		{
+			ByteBuffer prefix = ByteBuffer.allocate(PREFIX_SIZE);
+			readFully(channel, prefix, 0);
+			prefix.flip();
+			if (prefix.getInt() != MAGIC)
+				throw new IllegalArgumentException(filename + " is not a binary dataset.");
+			int version = prefix.getInt();
+			if (version != VERSION)
+				throw new IllegalArgumentException("Unsupported binary dataset version: " + version);
+			ByteBuffer headerBytes = ByteBuffer.allocate(prefix.getInt());
+			readFully(channel, headerBytes, PREFIX_SIZE);
+
+			int rows;
+			int cols;
+			try (DataInputStream header = new DataInputStream(new ByteArrayInputStream(headerBytes.array())))
+			{
+				m.relationName = readString(header);
+				m.comments = readString(header);
+				m.setNumLabelColumns(header.readInt());
+				rows = header.readInt();
+				cols = header.readInt();
+				List<AttributeSchema.Attribute> attributes = new ArrayList<>();
+				for (int c = 0; c < cols; c++)
+				{
+					String attrName = readString(header);
+					List<String> valueNames = new ArrayList<>();
+					int valueCount = header.readInt();
+					for (int v = 0; v < valueCount; v++)
+						valueNames.add(readString(header));
+					attributes.add(new AttributeSchema.Attribute(attrName, valueNames));
+				}
+				m.schema = new AttributeSchema(attributes);
+				m.numCatagoricalCols = new ArrayList<Integer>();
+				int numCatagoricalCols = header.readInt();
+				for (int i = 0; i < numCatagoricalCols; i++)
+					m.numCatagoricalCols.add(header.readInt());
+			}
+
+			long columnSize = 8L * rows;
+			long position = align(PREFIX_SIZE + headerBytes.capacity());
+			DoubleBuffer[] columns = new DoubleBuffer[cols];
+			for (int c = 0; c < cols; c++)
+			{
+				columns[c] = map(channel, position, columnSize);
+				position += columnSize;
+			}
+			DoubleBuffer weights = map(channel, position, columnSize);
+			m.data = new MappedStorage(columns, weights);
+			m.clearStatistics();
+		}
+	}
+
+	private static DoubleBuffer map(FileChannel channel, long position, long size) throws IOException
+	{
+		return channel.map(FileChannel.MapMode.READ_ONLY, position, size).order(ByteOrder.LITTLE_ENDIAN)
+				.asDoubleBuffer();
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+	{
+		while (buffer.hasRemaining())
+		{
+			int read = channel.read(buffer, position + buffer.position());
+			if (read < 0)
+				throw new IllegalArgumentException("Unexpected end of binary dataset file.");
+		}
+	}
+
+	/**
+	 * Converts an arff file, or a .names file and a .data file, to a binary dataset. The result
+	 * is written next to the last given file with the extension changed to EXTENSION.
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		Matrix m = new Matrix();
+		String inputFilename;
+		if (args.length == 1 && args[0].endsWith(".arff"))
+		{
+			inputFilename = args[0];
+			m.loadFromArffFile(inputFilename, true);
+		}
+		else if (args.length == 2 && args[0].endsWith(".names"))
+		{
+			inputFilename = args[1];
+			m.loadFromNamesFormat(args[0], inputFilename);
+		}
+		else
+		{
+			throw new IllegalArgumentException("Expected an arff file, or a .names file followed by a .data file.");
+		}
+
+		String outputFilename = FilenameUtils.removeExtension(inputFilename) + EXTENSION;
+		write(m, outputFilename);
+		out.println("Result written to " + outputFilename);
+	}
+
+}
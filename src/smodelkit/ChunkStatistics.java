@@ -0,0 +1,159 @@
+package smodelkit;
+
+import java.util.TreeMap;
+
+import smodelkit.util.Pair;
+
+/**
+ * Statistics of the columns of a dataset which is read a chunk of rows at a time, such as the
+ * rows of a RowSource. The statistics are the same as Matrix.findMin, findMax, findMean, and
+ * findMode would give for a matrix containing every row, but only the current chunk needs to be
+ * in memory.
+ *
+ * Modes are only kept for nominal columns, because counting every value of a continuous column
+ * would need as much memory as the column itself.
+ *
+ * @author joseph
+ *
+ */
+public class ChunkStatistics
+{
+	private final Matrix metadata;
+	private final ColumnStatistics.Column[] columns;
+	// The number of times each value occurs in each nominal column, or null for continuous columns.
+	private final TreeMap<Double, Integer>[] valueCounts;
+	private int rows;
+
+	/**
+	 * @param metadata Has the columns of the chunks which will be added.
+	 */
+	@SuppressWarnings("unchecked")
+	public ChunkStatistics(Matrix metadata)
+	{
+		this.metadata = new Matrix();
+		this.metadata.copyMetadata(metadata);
+		columns = new ColumnStatistics.Column[metadata.cols()];
+		valueCounts = new TreeMap[metadata.cols()];
+		for (int c = 0; c < columns.length; c++)
+		{
+			columns[c] = new ColumnStatistics.Column();
+			if (!metadata.isContinuous(c))
+				valueCounts[c] = new TreeMap<>();
+		}
+	}
+
+	/**
+	 * Reads every row of source, which is reset first.
+	 * @return The statistics of the inputs and of the labels.
+	 */
+	public static Pair<ChunkStatistics> read(RowSource source)
+	{
+		source.reset();
+		Pair<ChunkStatistics> result = null;
+		for (Pair<Matrix> chunk = source.nextChunk(); chunk != null; chunk = source.nextChunk())
+		{
+			if (result == null)
+				result = new Pair<>(new ChunkStatistics(chunk.getFirst()), new ChunkStatistics(chunk.getSecond()));
+			result.getFirst().add(chunk.getFirst());
+			result.getSecond().add(chunk.getSecond());
+		}
+		if (result == null)
+			throw new IllegalArgumentException("The row source has no rows.");
+		return result;
+	}
+
+	/**
+	 * Adds the rows of chunk, which must have the same columns as the metadata this was created
+	 * with.
+	 */
+	public void add(Matrix chunk)
+	{
+		if (chunk.cols() != columns.length)
+			throw new IllegalArgumentException("Expected " + columns.length + " columns, but the chunk has "
+					+ chunk.cols() + ".");
+		for (int r = 0; r < chunk.rows(); r++)
+		{
+			for (int c = 0; c < columns.length; c++)
+			{
+				double v = chunk.get(r, c);
+				columns[c].add(v);
+				if (valueCounts[c] != null)
+					ColumnStatistics.count(valueCounts[c], v);
+			}
+		}
+		rows += chunk.rows();
+	}
+
+	/**
+	 * Returns the number of rows which have been added.
+	 */
+	public int rows()
+	{
+		return rows;
+	}
+
+	public int cols()
+	{
+		return columns.length;
+	}
+
+	/**
+	 * Returns a matrix with the columns of the chunks and no rows.
+	 */
+	public Matrix getMetadata()
+	{
+		return metadata;
+	}
+
+	public boolean isContinuous(int col)
+	{
+		return metadata.isContinuous(col);
+	}
+
+	// Returns the min value in the specified column
+	public double findMin(int col)
+	{
+		return columns[col].min;
+	}
+
+	// Returns the max value in the specified column
+	public double findMax(int col)
+	{
+		return columns[col].max;
+	}
+
+	// Returns the mean of the specified column
+	public double findMean(int col)
+	{
+		return columns[col].sum / columns[col].count;
+	}
+
+	/**
+	 * Returns the most common value in the specified column, which must be nominal.
+	 */
+	public double findMode(int col)
+	{
+		if (valueCounts[col] == null)
+			throw new UnsupportedOperationException("Modes are only kept for nominal columns.");
+		return ColumnStatistics.mode(valueCounts[col]);
+	}
+
+	/**
+	 * Returns the number of unknown values in the specified column.
+	 */
+	public int countUnknowns(int col)
+	{
+		return columns[col].unknownCount;
+	}
+
+	/**
+	 * Returns the mean of each continuous column and the mode of each nominal column.
+	 */
+	public double[] findMeanModes()
+	{
+		double[] result = new double[columns.length];
+		for (int c = 0; c < columns.length; c++)
+			result[c] = isContinuous(c) ? findMean(c) : findMode(c);
+		return result;
+	}
+}
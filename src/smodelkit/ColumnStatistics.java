@@ -0,0 +1,213 @@
+package smodelkit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * Caches statistics of the columns of a Matrix. The statistics of a column are computed the
+ * first time one of them is needed, and are then updated as rows are added. Other changes to
+ * the matrix cause the affected columns to be computed again.
+ *
+ * Means are computed by summing values in row order, so they are exactly the same as if they
+ * were computed directly. For that reason, removing or reordering rows requires the sums to be
+ * computed again.
+ *
+ * Statistics are computed lazily by readers, so the methods are synchronized to let several
+ * threads read the same matrix. Changing the matrix while it is being read is not supported.
+ *
+ * @author joseph
+ *
+ */
+class ColumnStatistics
+{
+	static class Column
+	{
+		double min = Vector.getUnknownValue();
+		double max = Vector.getUnknownValue();
+		// The sum and number of known values.
+		double sum;
+		int count;
+		int unknownCount;
+		// The most common value, or null if it has not been computed.
+		Double mode;
+
+		void add(double v)
+		{
+			if (Vector.isUnknown(v))
+			{
+				unknownCount++;
+				return;
+			}
+			if (Vector.isUnknown(min) || v < min)
+				min = v;
+			if (Vector.isUnknown(max) || v > max)
+				max = v;
+			sum += v;
+			count++;
+			// The mode is not kept up to date because that would require counting every value.
+			mode = null;
+		}
+	}
+
+	// The statistics of each column. An element is null if its column has not been computed.
+	private final ArrayList<Column> columns;
+	// The number of rows with an instance weight other than 1, or -1 if it has not been computed.
+	private int weightsNot1 = -1;
+
+	ColumnStatistics(int cols)
+	{
+		columns = new ArrayList<>(Collections.nCopies(cols, (Column)null));
+	}
+
+	private Column column(MatrixStorage data, int col)
+	{
+		Column result = columns.get(col);
+		if (result == null)
+		{
+			result = new Column();
+			for (int r = 0; r < data.rows(); r++)
+				result.add(data.get(r, col));
+			columns.set(col, result);
+		}
+		return result;
+	}
+
+	synchronized double min(MatrixStorage data, int col)
+	{
+		return column(data, col).min;
+	}
+
+	synchronized double max(MatrixStorage data, int col)
+	{
+		return column(data, col).max;
+	}
+
+	synchronized double mean(MatrixStorage data, int col)
+	{
+		Column column = column(data, col);
+		return column.sum / column.count;
+	}
+
+	synchronized int unknownCount(MatrixStorage data, int col)
+	{
+		return column(data, col).unknownCount;
+	}
+
+	synchronized double mode(MatrixStorage data, int col)
+	{
+		Column column = column(data, col);
+		if (column.mode == null)
+			column.mode = computeMode(data, col);
+		return column.mode;
+	}
+
+	private static double computeMode(MatrixStorage data, int col)
+	{
+		TreeMap<Double, Integer> tm = new TreeMap<Double, Integer>();
+		for (int i = 0; i < data.rows(); i++)
+			count(tm, data.get(i, col));
+		return mode(tm);
+	}
+
+	/**
+	 * Adds one to the count of v in counts, unless v is unknown.
+	 */
+	static void count(TreeMap<Double, Integer> counts, double v)
+	{
+		if (!Vector.isUnknown(v))
+		{
+			Integer count = counts.get(v);
+			if (count == null)
+				counts.put(v, Integer.valueOf(1));
+			else
+				counts.put(v, Integer.valueOf(count.intValue() + 1));
+		}
+	}
+
+	/**
+	 * Returns the value with the highest count, or the lowest such value if there is a tie.
+	 */
+	static double mode(TreeMap<Double, Integer> counts)
+	{
+		int maxCount = 0;
+		double val = Vector.getUnknownValue();
+		Iterator<Entry<Double, Integer>> it = counts.entrySet().iterator();
+		while (it.hasNext())
+		{
+			Entry<Double, Integer> e = it.next();
+			if (e.getValue() > maxCount)
+			{
+				maxCount = e.getValue();
+				val = e.getKey();
+			}
+		}
+		return val;
+	}
+
+	synchronized boolean containsUnknowns(MatrixStorage data)
+	{
+		for (int c = 0; c < columns.size(); c++)
+		{
+			if (unknownCount(data, c) > 0)
+				return true;
+		}
+		return false;
+	}
+
+	synchronized boolean hasWeightsNot1(MatrixStorage data)
+	{
+		if (weightsNot1 < 0)
+		{
+			weightsNot1 = 0;
+			for (int r = 0; r < data.rows(); r++)
+			{
+				if (data.getWeight(r) != 1.0)
+					weightsNot1++;
+			}
+		}
+		return weightsNot1 > 0;
+	}
+
+	/**
+	 * Updates the statistics for a row added to the end of the matrix.
+	 */
+	synchronized void rowAdded(Vector row)
+	{
+		for (int c = 0; c < columns.size(); c++)
+		{
+			Column column = columns.get(c);
+			if (column != null)
+				column.add(row.get(c));
+		}
+		if (weightsNot1 >= 0 && row.getWeight() != 1.0)
+			weightsNot1++;
+	}
+
+	/**
+	 * Updates the statistics for a row which is about to be removed from the matrix.
+	 */
+	synchronized void rowRemoved(double weight)
+	{
+		Collections.fill(columns, null);
+		if (weightsNot1 >= 0 && weight != 1.0)
+			weightsNot1--;
+	}
+
+	synchronized void valueChanged(int col)
+	{
+		columns.set(col, null);
+	}
+
+	synchronized void columnRemoved(int col)
+	{
+		columns.remove(col);
+	}
+
+	synchronized void columnsAdded(int num)
+	{
+		columns.addAll(Collections.nCopies(num, (Column)null));
+	}
+}
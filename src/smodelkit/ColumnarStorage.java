@@ -0,0 +1,219 @@
+package smodelkit;
+
+import java.util.Arrays;
+
+/**
+ * Stores a Matrix as one primitive array per column, plus an array of instance weights. This
+ * avoids one object per row and makes scans over a single column sequential in memory.
+ *
+ * Rows returned by row(int) are views into this storage. Changes made to them through set and
+ * setWeight are written through to the storage.
+ *
+ * @author joseph
+ *
+ */
+class ColumnarStorage extends MatrixStorage
+{
+	private static final long serialVersionUID = 1L;
+	private static final int INITIAL_CAPACITY = 16;
+
+	private double[][] columns;
+	private double[] weights;
+	private int rows;
+
+	ColumnarStorage()
+	{
+		columns = new double[0][];
+		weights = new double[0];
+		rows = 0;
+	}
+
+	@Override
+	Matrix.StorageType getType()
+	{
+		return Matrix.StorageType.COLUMNS;
+	}
+
+	@Override
+	MatrixStorage emptyCopy()
+	{
+		return new ColumnarStorage();
+	}
+
+	@Override
+	int rows()
+	{
+		return rows;
+	}
+
+	@Override
+	Vector row(int r)
+	{
+		if (r < 0 || r >= rows)
+			throw new IndexOutOfBoundsException("Row: " + r + ", rows: " + rows);
+		return new RowView(r);
+	}
+
+	@Override
+	double get(int r, int c)
+	{
+		return columns[c][r];
+	}
+
+	@Override
+	double getWeight(int r)
+	{
+		return weights[r];
+	}
+
+	@Override
+	void add(Vector row)
+	{
+		if (rows == 0 && columns.length != row.size())
+		{
+			columns = new double[row.size()][weights.length];
+		}
+		if (row.size() != columns.length)
+			throw new IllegalArgumentException("The given row is not the expected size.");
+		ensureCapacity(rows + 1);
+		for (int c = 0; c < columns.length; c++)
+			columns[c][rows] = row.get(c);
+		weights[rows] = row.getWeight();
+		rows++;
+	}
+
+	private void ensureCapacity(int capacity)
+	{
+		if (capacity <= weights.length)
+			return;
+		int newCapacity = Math.max(capacity, Math.max(INITIAL_CAPACITY, weights.length * 2));
+		for (int c = 0; c < columns.length; c++)
+			columns[c] = Arrays.copyOf(columns[c], newCapacity);
+		weights = Arrays.copyOf(weights, newCapacity);
+	}
+
+	@Override
+	void remove(int r)
+	{
+		if (r < 0 || r >= rows)
+			throw new IndexOutOfBoundsException("Row: " + r + ", rows: " + rows);
+		int numToMove = rows - r - 1;
+		for (double[] column : columns)
+			System.arraycopy(column, r + 1, column, r, numToMove);
+		System.arraycopy(weights, r + 1, weights, r, numToMove);
+		rows--;
+	}
+
+	@Override
+	void swap(int r1, int r2)
+	{
+		for (double[] column : columns)
+		{
+			double tmp = column[r1];
+			column[r1] = column[r2];
+			column[r2] = tmp;
+		}
+		double tmp = weights[r1];
+		weights[r1] = weights[r2];
+		weights[r2] = tmp;
+	}
+
+	@Override
+	void removeColumn(int c)
+	{
+		// Like RowListStorage, there is nothing to remove without rows. The columns are created
+		// again when the next row is added.
+		if (rows == 0)
+			return;
+		double[][] newColumns = new double[columns.length - 1][];
+		System.arraycopy(columns, 0, newColumns, 0, c);
+		System.arraycopy(columns, c + 1, newColumns, c, columns.length - c - 1);
+		columns = newColumns;
+	}
+
+	@Override
+	void appendColumns(MatrixStorage source, int start, int num)
+	{
+		if (rows == 0 && source.rows() > 0)
+		{
+			if (columns.length > 0)
+				throw new IllegalArgumentException("The given row is not the expected size.");
+			weights = new double[source.rows()];
+			for (int r = 0; r < weights.length; r++)
+				weights[r] = source.getWeight(r);
+			rows = source.rows();
+		}
+
+		double[][] newColumns = Arrays.copyOf(columns, columns.length + num);
+		for (int c = 0; c < num; c++)
+		{
+			double[] column = new double[weights.length];
+			for (int r = 0; r < rows; r++)
+				column[r] = source.get(r, start + c);
+			newColumns[columns.length + c] = column;
+		}
+		columns = newColumns;
+	}
+
+	@Override
+	void clear()
+	{
+		rows = 0;
+	}
+
+	/**
+	 * A row of a ColumnarStorage. This does not copy any values, so it is only valid
+	 * until rows are added to, removed from, or reordered in the storage.
+	 */
+	private class RowView extends Vector
+	{
+		private static final long serialVersionUID = 1L;
+		private final int r;
+
+		RowView(int r)
+		{
+			this.r = r;
+		}
+
+		@Override
+		public double get(int index)
+		{
+			return columns[index][r];
+		}
+
+		@Override
+		public int size()
+		{
+			return columns.length;
+		}
+
+		@Override
+		public void set(int index, double value)
+		{
+			columns[index][r] = value;
+		}
+
+		@Override
+		public double getWeight()
+		{
+			return weights[r];
+		}
+
+		@Override
+		public void setWeight(double weight)
+		{
+			if (weight < 0)
+				throw new IllegalArgumentException("Instance weights cannot be negative. value: " + weight);
+			weights[r] = weight;
+		}
+
+		/**
+		 * Views are serialized as plain Vectors so that the storage does not come with them.
+		 */
+		private Object writeReplace()
+		{
+			return new Vector(this);
+		}
+	}
+
+}
@@ -0,0 +1,576 @@
+package smodelkit;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Stores a Matrix by column like ColumnarStorage, but columns which only contain integers are
+ * stored as byte, short, or int codes instead of doubles. Nominal values are indexes less than
+ * getValueCount(col), so nominal columns are usually stored as bytes. Unknown values in coded
+ * columns are kept in a separate bitmap.
+ *
+ * Each column starts out as bytes, and is converted to a wider type the first time it is given
+ * a value which does not fit. A value only fits if it can be decoded to exactly the same double,
+ * so continuous columns with fractional values are converted to doubles.
+ *
+ * Rows returned by row(int) are views into this storage. Changes made to them through set and
+ * setWeight are written through to the storage.
+ *
+ * @author joseph
+ *
+ */
+class CompactStorage extends MatrixStorage
+{
+	private static final long serialVersionUID = 1L;
+	private static final int INITIAL_CAPACITY = 16;
+	private static final long NEGATIVE_ZERO_BITS = Double.doubleToRawLongBits(-0.0);
+
+	private Column[] columns;
+	private double[] weights;
+	private int rows;
+
+	CompactStorage()
+	{
+		columns = new Column[0];
+		weights = new double[0];
+		rows = 0;
+	}
+
+	@Override
+	Matrix.StorageType getType()
+	{
+		return Matrix.StorageType.COMPACT;
+	}
+
+	@Override
+	MatrixStorage emptyCopy()
+	{
+		return new CompactStorage();
+	}
+
+	@Override
+	int rows()
+	{
+		return rows;
+	}
+
+	@Override
+	Vector row(int r)
+	{
+		if (r < 0 || r >= rows)
+			throw new IndexOutOfBoundsException("Row: " + r + ", rows: " + rows);
+		return new RowView(r);
+	}
+
+	@Override
+	double get(int r, int c)
+	{
+		return columns[c].get(r);
+	}
+
+	@Override
+	double getWeight(int r)
+	{
+		return weights[r];
+	}
+
+	/**
+	 * Stores a value, converting the column to a wider type if needed.
+	 */
+	private void set(int r, int c, double value)
+	{
+		if (!columns[c].set(r, value))
+		{
+			columns[c] = columns[c].widen(value);
+			boolean stored = columns[c].set(r, value);
+			assert stored;
+		}
+	}
+
+	@Override
+	void add(Vector row)
+	{
+		if (rows == 0 && columns.length != row.size())
+		{
+			columns = new Column[row.size()];
+			for (int c = 0; c < columns.length; c++)
+				columns[c] = new ByteColumn(weights.length);
+		}
+		if (row.size() != columns.length)
+			throw new IllegalArgumentException("The given row is not the expected size.");
+		ensureCapacity(rows + 1);
+		for (int c = 0; c < columns.length; c++)
+			set(rows, c, row.get(c));
+		weights[rows] = row.getWeight();
+		rows++;
+	}
+
+	private void ensureCapacity(int capacity)
+	{
+		if (capacity <= weights.length)
+			return;
+		int newCapacity = Math.max(capacity, Math.max(INITIAL_CAPACITY, weights.length * 2));
+		for (Column column : columns)
+			column.resize(newCapacity);
+		weights = Arrays.copyOf(weights, newCapacity);
+	}
+
+	@Override
+	void remove(int r)
+	{
+		if (r < 0 || r >= rows)
+			throw new IndexOutOfBoundsException("Row: " + r + ", rows: " + rows);
+		for (Column column : columns)
+			column.remove(r, rows);
+		System.arraycopy(weights, r + 1, weights, r, rows - r - 1);
+		rows--;
+	}
+
+	@Override
+	void swap(int r1, int r2)
+	{
+		for (Column column : columns)
+			column.swap(r1, r2);
+		double tmp = weights[r1];
+		weights[r1] = weights[r2];
+		weights[r2] = tmp;
+	}
+
+	@Override
+	void removeColumn(int c)
+	{
+		// Like RowListStorage, there is nothing to remove without rows. The columns are created
+		// again when the next row is added.
+		if (rows == 0)
+			return;
+		Column[] newColumns = new Column[columns.length - 1];
+		System.arraycopy(columns, 0, newColumns, 0, c);
+		System.arraycopy(columns, c + 1, newColumns, c, columns.length - c - 1);
+		columns = newColumns;
+	}
+
+	@Override
+	void appendColumns(MatrixStorage source, int start, int num)
+	{
+		if (rows == 0 && source.rows() > 0)
+		{
+			if (columns.length > 0)
+				throw new IllegalArgumentException("The given row is not the expected size.");
+			weights = new double[source.rows()];
+			for (int r = 0; r < weights.length; r++)
+				weights[r] = source.getWeight(r);
+			rows = source.rows();
+		}
+
+		int oldCols = columns.length;
+		columns = Arrays.copyOf(columns, oldCols + num);
+		for (int c = 0; c < num; c++)
+		{
+			columns[oldCols + c] = new ByteColumn(weights.length);
+			for (int r = 0; r < rows; r++)
+				set(r, oldCols + c, source.get(r, start + c));
+		}
+	}
+
+	@Override
+	void clear()
+	{
+		rows = 0;
+	}
+
+	/**
+	 * A column of values. Implementations store one value per row, with room for at least as
+	 * many rows as there are weights.
+	 */
+	private static abstract class Column implements Serializable
+	{
+		private static final long serialVersionUID = 1L;
+
+		abstract double get(int r);
+
+		/**
+		 * Stores the given value.
+		 * @return False if this column cannot store the value exactly. Nothing is changed if so.
+		 */
+		abstract boolean set(int r, double value);
+
+		abstract int capacity();
+
+		abstract void resize(int capacity);
+
+		/**
+		 * Moves the values after r up one row, for rows up to size.
+		 */
+		abstract void remove(int r, int size);
+
+		abstract void swap(int r1, int r2);
+
+		/**
+		 * Returns a copy of this column with a type wide enough to store the given value.
+		 */
+		Column widen(double value)
+		{
+			int code = codeOf(value);
+			Column result;
+			if (code == Integer.MIN_VALUE)
+				result = new DoubleColumn(capacity());
+			else if (code >= Short.MIN_VALUE && code <= Short.MAX_VALUE)
+				result = new ShortColumn(capacity());
+			else
+				result = new IntColumn(capacity());
+			for (int r = 0; r < capacity(); r++)
+			{
+				boolean stored = result.set(r, get(r));
+				assert stored;
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Returns the integer code which decodes to exactly the given value, or Integer.MIN_VALUE if
+	 * there is none. Unknown values are given code 0 because they are stored in a bitmap.
+	 */
+	private static int codeOf(double value)
+	{
+		if (Vector.isUnknown(value))
+			return 0;
+		int code = (int)value;
+		if (code != value || code == Integer.MIN_VALUE || Double.doubleToRawLongBits(value) == NEGATIVE_ZERO_BITS)
+			return Integer.MIN_VALUE;
+		return code;
+	}
+
+	/**
+	 * A column of integer codes. Unknown values are kept in a bitmap, which is null until
+	 * an unknown value is stored.
+	 */
+	private static abstract class CodedColumn extends Column
+	{
+		private static final long serialVersionUID = 1L;
+		private BitSet unknowns;
+
+		abstract int getCode(int r);
+
+		abstract boolean setCode(int r, int code);
+
+		@Override
+		double get(int r)
+		{
+			if (unknowns != null && unknowns.get(r))
+				return Vector.getUnknownValue();
+			return getCode(r);
+		}
+
+		@Override
+		boolean set(int r, double value)
+		{
+			int code = codeOf(value);
+			if (code == Integer.MIN_VALUE || !setCode(r, code))
+				return false;
+			if (Vector.isUnknown(value))
+			{
+				if (unknowns == null)
+					unknowns = new BitSet();
+				unknowns.set(r);
+			}
+			else if (unknowns != null)
+			{
+				unknowns.clear(r);
+			}
+			return true;
+		}
+
+		@Override
+		void remove(int r, int size)
+		{
+			if (unknowns == null)
+				return;
+			for (int i = r; i < size - 1; i++)
+				unknowns.set(i, unknowns.get(i + 1));
+			unknowns.clear(size - 1);
+		}
+
+		@Override
+		void swap(int r1, int r2)
+		{
+			if (unknowns == null)
+				return;
+			boolean tmp = unknowns.get(r1);
+			unknowns.set(r1, unknowns.get(r2));
+			unknowns.set(r2, tmp);
+		}
+
+	}
+
+	private static class ByteColumn extends CodedColumn
+	{
+		private static final long serialVersionUID = 1L;
+		private byte[] codes;
+
+		ByteColumn(int capacity)
+		{
+			codes = new byte[capacity];
+		}
+
+		@Override
+		int getCode(int r)
+		{
+			return codes[r];
+		}
+
+		@Override
+		boolean setCode(int r, int code)
+		{
+			if (code < Byte.MIN_VALUE || code > Byte.MAX_VALUE)
+				return false;
+			codes[r] = (byte)code;
+			return true;
+		}
+
+		@Override
+		int capacity()
+		{
+			return codes.length;
+		}
+
+		@Override
+		void resize(int capacity)
+		{
+			codes = Arrays.copyOf(codes, capacity);
+		}
+
+		@Override
+		void remove(int r, int size)
+		{
+			System.arraycopy(codes, r + 1, codes, r, size - r - 1);
+			super.remove(r, size);
+		}
+
+		@Override
+		void swap(int r1, int r2)
+		{
+			byte tmp = codes[r1];
+			codes[r1] = codes[r2];
+			codes[r2] = tmp;
+			super.swap(r1, r2);
+		}
+
+	}
+
+	private static class ShortColumn extends CodedColumn
+	{
+		private static final long serialVersionUID = 1L;
+		private short[] codes;
+
+		ShortColumn(int capacity)
+		{
+			codes = new short[capacity];
+		}
+
+		@Override
+		int getCode(int r)
+		{
+			return codes[r];
+		}
+
+		@Override
+		boolean setCode(int r, int code)
+		{
+			if (code < Short.MIN_VALUE || code > Short.MAX_VALUE)
+				return false;
+			codes[r] = (short)code;
+			return true;
+		}
+
+		@Override
+		int capacity()
+		{
+			return codes.length;
+		}
+
+		@Override
+		void resize(int capacity)
+		{
+			codes = Arrays.copyOf(codes, capacity);
+		}
+
+		@Override
+		void remove(int r, int size)
+		{
+			System.arraycopy(codes, r + 1, codes, r, size - r - 1);
+			super.remove(r, size);
+		}
+
+		@Override
+		void swap(int r1, int r2)
+		{
+			short tmp = codes[r1];
+			codes[r1] = codes[r2];
+			codes[r2] = tmp;
+			super.swap(r1, r2);
+		}
+
+	}
+
+	private static class IntColumn extends CodedColumn
+	{
+		private static final long serialVersionUID = 1L;
+		private int[] codes;
+
+		IntColumn(int capacity)
+		{
+			codes = new int[capacity];
+		}
+
+		@Override
+		int getCode(int r)
+		{
+			return codes[r];
+		}
+
+		@Override
+		boolean setCode(int r, int code)
+		{
+			codes[r] = code;
+			return true;
+		}
+
+		@Override
+		int capacity()
+		{
+			return codes.length;
+		}
+
+		@Override
+		void resize(int capacity)
+		{
+			codes = Arrays.copyOf(codes, capacity);
+		}
+
+		@Override
+		void remove(int r, int size)
+		{
+			System.arraycopy(codes, r + 1, codes, r, size - r - 1);
+			super.remove(r, size);
+		}
+
+		@Override
+		void swap(int r1, int r2)
+		{
+			int tmp = codes[r1];
+			codes[r1] = codes[r2];
+			codes[r2] = tmp;
+			super.swap(r1, r2);
+		}
+
+	}
+
+	private static class DoubleColumn extends Column
+	{
+		private static final long serialVersionUID = 1L;
+		private double[] values;
+
+		DoubleColumn(int capacity)
+		{
+			values = new double[capacity];
+		}
+
+		@Override
+		double get(int r)
+		{
+			return values[r];
+		}
+
+		@Override
+		boolean set(int r, double value)
+		{
+			values[r] = value;
+			return true;
+		}
+
+		@Override
+		int capacity()
+		{
+			return values.length;
+		}
+
+		@Override
+		void resize(int capacity)
+		{
+			values = Arrays.copyOf(values, capacity);
+		}
+
+		@Override
+		void remove(int r, int size)
+		{
+			System.arraycopy(values, r + 1, values, r, size - r - 1);
+		}
+
+		@Override
+		void swap(int r1, int r2)
+		{
+			double tmp = values[r1];
+			values[r1] = values[r2];
+			values[r2] = tmp;
+		}
+
+	}
+
+	/**
+	 * A row of a CompactStorage. This does not copy any values, so it is only valid
+	 * until rows are added to, removed from, or reordered in the storage.
+	 */
+	private class RowView extends Vector
+	{
+		private static final long serialVersionUID = 1L;
+		private final int r;
+
+		RowView(int r)
+		{
+			this.r = r;
+		}
+
+		@Override
+		public double get(int index)
+		{
+			return columns[index].get(r);
+		}
+
+		@Override
+		public int size()
+		{
+			return columns.length;
+		}
+
+		@Override
+		public void set(int index, double value)
+		{
+			CompactStorage.this.set(r, index, value);
+		}
+
+		@Override
+		public double getWeight()
+		{
+			return weights[r];
+		}
+
+		@Override
+		public void setWeight(double weight)
+		{
+			if (weight < 0)
+				throw new IllegalArgumentException("Instance weights cannot be negative. value: " + weight);
+			weights[r] = weight;
+		}
+
+		/**
+		 * Views are serialized as plain Vectors so that the storage does not come with them.
+		 */
+		private Object writeReplace()
+		{
+			return new Vector(this);
+		}
+	}
+
+}
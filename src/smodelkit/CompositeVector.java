@@ -0,0 +1,177 @@
+package smodelkit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A vector made of the values of other vectors, one after another, without copying them. This
+ * is what Vector.concatView returns. The values of each segment are read through get, which
+ * finds the segment containing an index by binary search over the segment offsets, so reading
+ * a value takes constant time for a given number of segments.
+ *
+ * The values are only copied if they are changed (by set, addAll, or remove). Until then,
+ * changes to the segments are seen by this vector, so they must not be changed while this
+ * vector is in use.
+ *
+ * @author joseph
+ *
+ */
+public class CompositeVector extends Vector
+{
+	private static final long serialVersionUID = 1L;
+
+	private final Vector[] segments;
+	/**
+	 * offsets[s] is the index in this vector of the first value of segments[s]. The last element
+	 * is the size of this vector.
+	 */
+	private final int[] offsets;
+	private double weight;
+	/**
+	 * The values of this vector once they have been copied. This is null until then.
+	 */
+	private double[] copy;
+
+	/**
+	 * @param segments The vectors whose values make up this vector, in order. Their weights are
+	 * ignored.
+	 * @param weight The weight of this vector.
+	 */
+	public CompositeVector(List<Vector> segments, double weight)
+	{
+		if (weight < 0.0)
+			throw new IllegalArgumentException("Instance weights cannot be negative.");
+		// Nested composites are flattened, and empty segments are dropped.
+		List<Vector> flattened = new ArrayList<>(segments.size());
+		for (Vector segment : segments)
+		{
+			if (segment instanceof CompositeVector && ((CompositeVector)segment).copy == null)
+				flattened.addAll(Arrays.asList(((CompositeVector)segment).segments));
+			else if (segment.size() > 0)
+				flattened.add(segment);
+		}
+		this.segments = flattened.toArray(new Vector[flattened.size()]);
+		offsets = new int[this.segments.length + 1];
+		for (int s = 0; s < this.segments.length; s++)
+			offsets[s + 1] = offsets[s] + this.segments[s].size();
+		this.weight = weight;
+	}
+
+	/**
+	 * Returns the number of vectors this vector is made of.
+	 */
+	public int getSegmentCount()
+	{
+		return segments.length;
+	}
+
+	@Override
+	public double get(int index)
+	{
+		if (copy != null)
+			return copy[index];
+		if (index < 0 || index >= size())
+			throw new ArrayIndexOutOfBoundsException(index);
+		int s = segmentOf(index);
+		return segments[s].get(index - offsets[s]);
+	}
+
+	/**
+	 * Returns the index of the segment containing the given index.
+	 */
+	private int segmentOf(int index)
+	{
+		int low = 0;
+		int high = segments.length - 1;
+		while (low < high)
+		{
+			int mid = (low + high + 1) >>> 1;
+			if (offsets[mid] <= index)
+				low = mid;
+			else
+				high = mid - 1;
+		}
+		return low;
+	}
+
+	@Override
+	public int size()
+	{
+		return copy != null ? copy.length : offsets[segments.length];
+	}
+
+	@Override
+	public double getWeight()
+	{
+		return weight;
+	}
+
+	@Override
+	public void setWeight(double value)
+	{
+		if (value < 0.0)
+			throw new IllegalArgumentException("Instance weights cannot be negative. value: " + value);
+		weight = value;
+	}
+
+	@Override
+	public double[] toArray()
+	{
+		if (copy != null)
+			return Arrays.copyOf(copy, copy.length);
+		double[] result = new double[size()];
+		for (int s = 0; s < segments.length; s++)
+		{
+			Vector segment = segments[s];
+			for (int i = 0; i < segment.size(); i++)
+				result[offsets[s] + i] = segment.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * Copies the values of the segments so that they can be changed.
+	 */
+	private void copyValues()
+	{
+		if (copy == null)
+			copy = toArray();
+	}
+
+	@Override
+	public void set(int index, double value)
+	{
+		copyValues();
+		copy[index] = value;
+	}
+
+	@Override
+	public void addAll(Vector v)
+	{
+		copyValues();
+		int oldSize = copy.length;
+		copy = Arrays.copyOf(copy, oldSize + v.size());
+		for (int i = 0; i < v.size(); i++)
+			copy[oldSize + i] = v.get(i);
+	}
+
+	@Override
+	public void remove(int index)
+	{
+		copyValues();
+		double[] temp = new double[copy.length - 1];
+		System.arraycopy(copy, 0, temp, 0, index);
+		System.arraycopy(copy, index + 1, temp, index, copy.length - index - 1);
+		copy = temp;
+	}
+
+	/**
+	 * Composites are serialized as plain Vectors so that their segments do not come with them.
+	 */
+	private Object writeReplace()
+	{
+		return new Vector(this);
+	}
+
+}
@@ -0,0 +1,39 @@
+package smodelkit;
+
+import static java.lang.System.out;
+
+import java.io.IOException;
+
+import smodelkit.learner.NeuralNet;
+import smodelkit.util.SerializationUtilities;
+
+/**
+ * Converts a serialized NeuralNet, such as one saved by MLSystemsManager in the models directory,
+ * to a different precision (see NeuralNet.Precision). This is used to deploy models trained in
+ * double precision as float32 models, which use half as much memory.
+ *
+ * Usage: ConvertNeuralNetPrecision input_file output_file [float32|float64]
+ *
+ * The precision is float32 if it is not given.
+ * @author joseph
+ *
+ */
+public class ConvertNeuralNetPrecision
+{
+	public static void main(String[] args) throws IOException, ClassNotFoundException
+	{
+		if (args.length != 2 && args.length != 3)
+			throw new IllegalArgumentException("Usage: ConvertNeuralNetPrecision input_file output_file [float32|float64]");
+		NeuralNet.Precision precision = args.length == 3 ? NeuralNet.Precision.valueOf(args[2].toUpperCase())
+				: NeuralNet.Precision.FLOAT32;
+
+		Object model = SerializationUtilities.deserialize(args[0]);
+		if (!(model instanceof NeuralNet))
+			throw new IllegalArgumentException(args[0] + " does not contain a NeuralNet.");
+		NeuralNet net = (NeuralNet)model;
+		NeuralNet.Precision old = net.getPrecision();
+		net.setPrecision(precision);
+		SerializationUtilities.serialize(net, args[1]);
+		out.println("Converted " + args[0] + " from " + old + " to " + precision + ". Result written to " + args[1]);
+	}
+}
@@ -0,0 +1,332 @@
+package smodelkit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import smodelkit.util.Logger;
+
+/**
+ * A directory of datasets which have already been parsed, stored as binary datasets (see
+ * BinaryDataset) so that later runs on the same files can memory-map them instead of parsing
+ * them again.
+ *
+ * Each entry is named by a key made from the absolute path, size, modification time, and a
+ * SHA-256 hash of the contents of each source file, along with a list of arguments describing
+ * any preprocessing which was applied to the stored matrix. An entry is therefore never used
+ * after its source files change, or with different preprocessing. The content hashes are also
+ * stored in the cache directory, under the path, size, and modification time of their files, so
+ * a source file is only read to hash it again after its size or modification time changes.
+ * Entries are written to a temporary file first and then moved into place, so runs sharing a
+ * cache directory never see partly written entries.
+ *
+ * Entries are memory-mapped when they are read, and then copied into the default storage type
+ * (see Matrix.setDefaultStorageType), so matrices from the cache can be changed like the
+ * matrices their source files are parsed into. Copying a mapped entry is still much faster
+ * than parsing.
+ *
+ * @author joseph
+ *
+ */
+public class DatasetCache
+{
+	/**
+	 * Changing this invalidates all existing entries. It should be changed whenever the meaning
+	 * of the arguments given to key changes.
+	 */
+	private static final int KEY_VERSION = 1;
+	/**
+	 * The extension of the files in which content hashes are stored.
+	 */
+	private static final String HASH_EXTENSION = ".sha256";
+
+	private static int hits;
+	private static int misses;
+	/**
+	 * Content hashes of source files, keyed by their path, size, and modification time, so that
+	 * each hash is only read from the cache directory once per run.
+	 */
+	private static final Map<String, String> contentHashes = new HashMap<>();
+
+	private final Path directory;
+
+	/**
+	 * Loads a dataset into the given matrix.
+	 */
+	public interface Loader
+	{
+		void load(Matrix m) throws IOException;
+	}
+
+	/**
+	 * @param directory The cache directory. It is created if it does not exist.
+	 */
+	public DatasetCache(String directory)
+	{
+		this.directory = Paths.get(directory);
+		try
+		{
+			Files.createDirectories(this.directory);
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Creates the key of the entry for the given source files and preprocessing arguments.
+	 */
+	public String key(List<String> sourceFiles, List<String> arguments)
+	{
+		MessageDigest digest = sha256();
+		update(digest, "version=" + KEY_VERSION);
+		for (String filename : sourceFiles)
+		{
+			File file = new File(filename).getAbsoluteFile();
+			if (!file.isFile())
+				throw new IllegalArgumentException("Dataset file not found: " + filename);
+			String fingerprint = file.getPath() + "\n" + file.length() + "\n" + file.lastModified();
+			update(digest, "file=" + fingerprint + "\n" + contentHash(file, fingerprint));
+		}
+		for (String argument : arguments)
+			update(digest, "arg=" + argument);
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Returns the matrix stored with the given key, in the default storage type, or null if there
+	 * is none.
+	 */
+	public Matrix get(String key)
+	{
+		Path entry = entryPath(key);
+		if (!Files.isRegularFile(entry))
+		{
+			recordMiss();
+			return null;
+		}
+		long startTime = System.currentTimeMillis();
+		Matrix m = new Matrix();
+		m.loadFromBinaryFile(entry.toString());
+		m.setStorageType(Matrix.getDefaultStorageType());
+		recordHit(System.currentTimeMillis() - startTime);
+		return m;
+	}
+
+	/**
+	 * Stores the given matrix with the given key, replacing any existing entry. Failing to write
+	 * the entry is logged but is not an error, since the matrix is still usable.
+	 */
+	public void put(String key, Matrix m)
+	{
+		long startTime = System.currentTimeMillis();
+		Path temp = null;
+		try
+		{
+			temp = Files.createTempFile(directory, key, ".tmp");
+			BinaryDataset.write(m, temp.toString());
+			Files.move(temp, entryPath(key), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			Logger.println("Dataset cache entry written in (in seconds): "
+					+ (System.currentTimeMillis() - startTime) / 1000.0);
+		}
+		catch (IOException e)
+		{
+			Logger.println("Unable to write dataset cache entry: " + e);
+			try
+			{
+				if (temp != null)
+					Files.deleteIfExists(temp);
+			}
+			catch (IOException e2)
+			{
+				// The temporary file will be overwritten or ignored by later runs.
+			}
+		}
+	}
+
+	/**
+	 * Returns the dataset stored with the key for the given source files and arguments, or loads
+	 * it with the given loader and stores it if there is none.
+	 */
+	public Matrix load(List<String> sourceFiles, List<String> arguments, Loader loader)
+	{
+		String key = key(sourceFiles, arguments);
+		Matrix m = get(key);
+		if (m != null)
+			return m;
+
+		long startTime = System.currentTimeMillis();
+		m = new Matrix();
+		try
+		{
+			loader.load(m);
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+		Logger.println("Time to parse dataset (in seconds): " + (System.currentTimeMillis() - startTime) / 1000.0);
+		put(key, m);
+		return m;
+	}
+
+	private Path entryPath(String key)
+	{
+		return directory.resolve(key + BinaryDataset.EXTENSION);
+	}
+
+	private static synchronized void recordHit(long elapsedMillis)
+	{
+		hits++;
+		Logger.println("Dataset cache hit. Time to load (in seconds): " + elapsedMillis / 1000.0
+				+ ". Hits: " + hits + ", misses: " + misses);
+	}
+
+	private static synchronized void recordMiss()
+	{
+		misses++;
+		Logger.println("Dataset cache miss. Hits: " + hits + ", misses: " + misses);
+	}
+
+	public static synchronized int getHits()
+	{
+		return hits;
+	}
+
+	public static synchronized int getMisses()
+	{
+		return misses;
+	}
+
+	/**
+	 * Returns the SHA-256 hash of the contents of the given file. The file is only read if no hash
+	 * has been stored for its fingerprint.
+	 * @param fingerprint The path, size, and modification time of the file.
+	 */
+	private String contentHash(File file, String fingerprint)
+	{
+		synchronized (contentHashes)
+		{
+			String result = contentHashes.get(fingerprint);
+			if (result != null)
+				return result;
+		}
+
+		MessageDigest fingerprintDigest = sha256();
+		update(fingerprintDigest, fingerprint);
+		Path hashFile = directory.resolve(toHex(fingerprintDigest.digest()) + HASH_EXTENSION);
+		String result = readHash(hashFile);
+		if (result == null)
+		{
+			MessageDigest digest = sha256();
+			byte[] buffer = new byte[1 << 16];
+			try (InputStream in = Files.newInputStream(file.toPath()))
+			{
+				int read;
+				while ((read = in.read(buffer)) > 0)
+					digest.update(buffer, 0, read);
+			}
+			catch (IOException e)
+			{
+				throw new RuntimeException(e);
+			}
+			result = toHex(digest.digest());
+			writeHash(hashFile, result);
+		}
+		synchronized (contentHashes)
+		{
+			contentHashes.put(fingerprint, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the hash stored in the given file, or null if there is none.
+	 */
+	private static String readHash(Path hashFile)
+	{
+		if (!Files.isRegularFile(hashFile))
+			return null;
+		try
+		{
+			String result = new String(Files.readAllBytes(hashFile), StandardCharsets.UTF_8).trim();
+			// A SHA-256 hash has 64 hex digits. Anything else is ignored and replaced.
+			return result.length() == 64 ? result : null;
+		}
+		catch (IOException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Stores a hash in the given file. Like put, failing to do so is logged but is not an error.
+	 */
+	private void writeHash(Path hashFile, String hash)
+	{
+		Path temp = null;
+		try
+		{
+			temp = Files.createTempFile(directory, hashFile.getFileName().toString(), ".tmp");
+			Files.write(temp, hash.getBytes(StandardCharsets.UTF_8));
+			Files.move(temp, hashFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e)
+		{
+			Logger.println("Unable to write dataset cache hash: " + e);
+			try
+			{
+				if (temp != null)
+					Files.deleteIfExists(temp);
+			}
+			catch (IOException e2)
+			{
+				// The temporary file will be overwritten or ignored by later runs.
+			}
+		}
+	}
+
+	private static MessageDigest sha256()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			// Every Java platform is required to support SHA-256.
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Adds the given string, followed by a separator which cannot appear in file names or
+	 * arguments, to the given digest.
+	 */
+	private static void update(MessageDigest digest, String str)
+	{
+		digest.update(str.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte)0);
+	}
+
+	private static String toHex(byte[] bytes)
+	{
+		StringBuilder result = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes)
+			result.append(String.format("%02x", b));
+		return result.toString();
+	}
+
+}
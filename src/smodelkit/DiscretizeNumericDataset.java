@@ -2,8 +2,8 @@ package smodelkit;
 
 import static java.lang.System.out;
 
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
+import java.io.IOException;
+import java.nio.file.Paths;
 
 import org.apache.commons.io.FilenameUtils;
 
@@ -15,9 +15,9 @@ public class DiscretizeNumericDataset
 	 * Given a multi-variate regression dataset, this converts it to a multi-dimensional
 	 * classification dataset. It does so without binning, meaning it just makes a unique
 	 * nominal value for every unique numeric value.
-	 * @throws FileNotFoundException 
+	 * @throws IOException 
 	 */
-	public static void convertUniqueNumericToUniqueNominal(String arffName) throws FileNotFoundException
+	public static void convertUniqueNumericToUniqueNominal(String arffName) throws IOException
 	{
 		Matrix old = new Matrix();
 		old.loadFromArffFile(arffName);
@@ -27,10 +27,7 @@ public class DiscretizeNumericDataset
 		String arffBaseName = FilenameUtils.getBaseName(arffName);
 		String outputFilename = FilenameUtils.getPath(arffName) + arffBaseName + "_nominal.arff";
 		
-		try (PrintWriter w = new PrintWriter(outputFilename))
-		{
-			w.println(result.toString());
-		}
+		result.writeArff(Paths.get(outputFilename), false);
 
 		// Make sure I can read the data back.
 		Matrix tmp = new Matrix();
@@ -92,7 +89,7 @@ public class DiscretizeNumericDataset
 		}
 	}
 	
-	public static void main(String[] args) throws FileNotFoundException
+	public static void main(String[] args) throws IOException
 	{
 		convertUniqueNumericToUniqueNominal("Datasets/mtr/water-quality.arff");
 		out.println("Done.");
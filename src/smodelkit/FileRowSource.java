@@ -0,0 +1,166 @@
+package smodelkit;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.function.UnaryOperator;
+import java.util.zip.GZIPInputStream;
+
+import smodelkit.util.Pair;
+
+/**
+ * A RowSource which reads an arff file or a binary dataset file (see BinaryDataset) a chunk of
+ * rows at a time. Arff files are parsed as chunks are requested, and binary datasets are
+ * memory-mapped, so neither is loaded onto the heap.
+ *
+ * The label columns are the last getNumLabelColumns() columns of the file, as given by the file
+ * itself unless setNumLabelColumns is called.
+ *
+ * @author joseph
+ *
+ */
+public class FileRowSource extends RowSource
+{
+	private final String filename;
+	private final int chunkSize;
+	private Integer numLabelColumns;
+	private UnaryOperator<Matrix> preprocessor;
+
+	// Used for arff files. metadata has the columns of the file and no rows.
+	private Reader in;
+	private ArffReader arffReader;
+	private Matrix metadata;
+
+	// Used for binary datasets. next is the first row of the next chunk.
+	private Matrix mapped;
+	private int next;
+
+	/**
+	 * @param filename An arff file, which may be compressed with gzip if its name ends with ".gz",
+	 * or a binary dataset file.
+	 * @param chunkSize The maximum number of rows in each chunk.
+	 */
+	public FileRowSource(String filename, int chunkSize)
+	{
+		if (chunkSize < 1)
+			throw new IllegalArgumentException("chunkSize must be at least 1.");
+		if (!filename.endsWith(".arff") && !filename.endsWith(".arff.gz") && !filename.endsWith(BinaryDataset.EXTENSION))
+			throw new IllegalArgumentException("Only arff files and " + BinaryDataset.EXTENSION
+					+ " files can be read a chunk at a time: " + filename);
+		this.filename = filename;
+		this.chunkSize = chunkSize;
+		reset();
+	}
+
+	/**
+	 * Overrides the number of label columns given by the file.
+	 */
+	public void setNumLabelColumns(int numLabelColumns)
+	{
+		this.numLabelColumns = numLabelColumns;
+	}
+
+	/**
+	 * Sets a function which is applied to each chunk, with all of its columns, before it is split
+	 * into inputs and labels. The function may change the chunk or return a different matrix. This
+	 * can be used to remove columns or rows from the dataset.
+	 */
+	public void setPreprocessor(UnaryOperator<Matrix> preprocessor)
+	{
+		this.preprocessor = preprocessor;
+	}
+
+	@Override
+	public Pair<Matrix> nextChunk()
+	{
+		Matrix chunk = readChunk();
+		if (chunk == null)
+			return null;
+		if (numLabelColumns != null)
+			chunk.setNumLabelColumns(numLabelColumns);
+		if (preprocessor != null)
+			chunk = preprocessor.apply(chunk);
+		return chunk.viewInputsAndLabels();
+	}
+
+	/**
+	 * Reads the next chunk with all of its columns, or returns null if there are no more rows.
+	 */
+	private Matrix readChunk()
+	{
+		if (mapped != null)
+		{
+			if (next >= mapped.rows())
+				return null;
+			int end = Math.min(next + chunkSize, mapped.rows());
+			Matrix chunk = mapped.viewRows(next, end);
+			next = end;
+			return chunk;
+		}
+
+		Matrix chunk = new Matrix();
+		chunk.copyMetadata(metadata);
+		try
+		{
+			if (arffReader.readRows(chunk, chunkSize) == 0)
+				return null;
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+		return chunk;
+	}
+
+	@Override
+	public void reset()
+	{
+		if (filename.endsWith(BinaryDataset.EXTENSION))
+		{
+			if (mapped == null)
+			{
+				mapped = new Matrix();
+				mapped.loadFromBinaryFile(filename);
+			}
+			next = 0;
+			return;
+		}
+
+		close();
+		try
+		{
+			InputStream stream = Files.newInputStream(Paths.get(filename));
+			if (filename.endsWith(".gz"))
+				stream = new GZIPInputStream(stream);
+			in = new InputStreamReader(stream, Charset.defaultCharset());
+			metadata = new Matrix();
+			arffReader = new ArffReader(metadata, false);
+			arffReader.readHeader(in);
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public void close()
+	{
+		if (in == null)
+			return;
+		try
+		{
+			in.close();
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+		in = null;
+	}
+
+}
@@ -1,7 +1,7 @@
 package smodelkit;
 
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Random;
 
 import smodelkit.util.Range;
@@ -15,7 +15,7 @@ public class KeepPercentOfInstances
 {
 
 	public static void keepPercentAndStore(String inputFilename, String outputFilename, 
-			double percentToKeep, boolean shuffle, Random rand) throws FileNotFoundException
+			double percentToKeep, boolean shuffle, Random rand) throws IOException
 	{
 		Matrix data = new Matrix();
 		data.loadFromArffFile(inputFilename);
@@ -30,13 +30,10 @@ public class KeepPercentOfInstances
 			result.addRow(data.row(i));
 		data = null;
 		
-		try (PrintWriter w = new PrintWriter(outputFilename))
-		{
-			w.println(result.toString());
-		}
+		result.writeArff(Paths.get(outputFilename), false);
 	}
 	
-	public static void main(String[] args) throws FileNotFoundException
+	public static void main(String[] args) throws IOException
 	{
 		if (args.length != 4)
 			throw new IllegalArgumentException("Usage: KeepPercentOfInstances inputFilename outputFilename percentToKeep shuffle?");
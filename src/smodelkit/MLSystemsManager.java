@@ -54,6 +54,8 @@ import smodelkit.learner.WOVEnsemble;
 import smodelkit.learner.ZeroR;
 import smodelkit.util.Counter;
 import smodelkit.util.Helper;
+import smodelkit.util.LabelIndex;
+import smodelkit.util.LabelKey;
 import smodelkit.util.Logger;
 import smodelkit.util.Pair;
 import smodelkit.util.Plotter;
@@ -107,6 +109,10 @@ public class MLSystemsManager
 		
 		if (parser.maxThreads != null)
 			ThreadCounter.setMaxThreads(parser.maxThreads);
+		if (parser.columnar)
+			Matrix.setDefaultStorageType(Matrix.StorageType.COLUMNS);
+		if (parser.compact)
+			Matrix.setDefaultStorageType(Matrix.StorageType.COMPACT);
 		
 		outputFileName = parser.outputFileName;
 		if (outputFileName == null)
@@ -127,67 +133,68 @@ public class MLSystemsManager
 			rand = new Random(randSeed);
 		}
 		
-		if (data == null)
-		{
-			data = new Matrix();
-			if (parser.dataset.size() == 1)
-			{
-				// Load the ARFF file
-				String fileName = parser.dataset.get(0);
-
-				if (!fileName.endsWith(".arff"))
-					throw new IllegalArgumentException("When only 1 parameter is given with -A, it must be an" +
-							" arff file name. -A arguments were: " + parser.dataset);
-				data.loadFromArffFile(fileName);		
-			}
-			else
-			{
-				if (parser.dataset.size() != 2)
-					throw new IllegalArgumentException("Unsupported number of parameters given to -A.");
-				String namesFilename = parser.dataset.get(0);
-				String dataFilename = parser.dataset.get(1);
-				if (!namesFilename.endsWith(".names"))
-					throw new IllegalArgumentException("When 2 parameters are given with -A, the first parameter" +
-							" must be a .names file.");
-				if (!dataFilename.endsWith(".data") && dataFilename.endsWith(".test"))
-					throw new IllegalArgumentException("When 2 parameters are given with -A, the second parameter" +
-							" must be a .data or .test file.");
-				data.loadFromNamesFormat(namesFilename, dataFilename);
-			}
-		}
-		
-		deleteColumns(parser.ignoredColumns, data);
-										
+		// This is checked before the dataset is loaded, so that it is also checked when the
+		// preprocessed dataset comes from the cache.
 		if (parser.numLabelColumns != null && parser.labelColumnNames != null 
 				&& parser.numLabelColumns != parser.labelColumnNames.size())
 			throw new IllegalArgumentException("Number of label indexes must match the number of label" +
 					" columns specified (if specified).");
-		
-		if (parser.numRows != null)
+
+		DatasetCache cache = parser.datasetCacheDir == null ? null : new DatasetCache(parser.datasetCacheDir);
+		// The key of the cached dataset after preprocessing, if it should be cached.
+		String preprocessedKey = null;
+		boolean preprocessed = false;
+		if (data == null)
 		{
-			if (parser.numRows > data.rows())
-				throw new IllegalArgumentException("Number of rows to use =" + parser.numRows + ", but the" +
-						" data set only has " + data.rows() + " rows.");
-			
-			// Only use the first numRows rows of the data.
-			Matrix dataTemp = new Matrix();
-			dataTemp.copyMetadata(data);
-			for (int i : new Range(parser.numRows))
-				dataTemp.addRow(data.row(i));
-			data = dataTemp;
-			
-			Logger.println("Number of inputs reduced to: " + data.rows());
+			if (cache != null && parser.cachePreprocessed && !parser.printMetadataOnly)
+			{
+				preprocessedKey = cache.key(parser.dataset, getPreprocessingArguments(parser));
+				data = cache.get(preprocessedKey);
+				preprocessed = data != null;
+			}
+			if (data == null)
+				data = loadDataset(parser.dataset, cache);
 		}
 		
-		if (parser.numLabelColumns != null)
+		if (preprocessed)
 		{
-			// Override any existing value for numLabelColumns in data.
-			data.setNumLabelColumns(parser.numLabelColumns);
+			Logger.println("Using the cached dataset after preprocessing.");
 		}
-		else if (parser.labelColumnNames != null)
+		else
 		{
-			data.setNumLabelColumns(parser.labelColumnNames.size());
-			data = parseAndMoveLabelColumns(data, parser.labelColumnNames);
+			if (parser.ignoredColumns != null && data.getStorageType() == Matrix.StorageType.MAPPED)
+			{
+				// Columns cannot be removed from a memory-mapped dataset.
+				data.setStorageType(Matrix.getDefaultStorageType());
+			}
+			deleteColumns(parser.ignoredColumns, data);
+										
+			if (parser.numRows != null)
+			{
+				if (parser.numRows > data.rows())
+					throw new IllegalArgumentException("Number of rows to use =" + parser.numRows + ", but the" +
+							" data set only has " + data.rows() + " rows.");
+			
+				// Only use the first numRows rows of the data.
+				Matrix dataTemp = new Matrix();
+				dataTemp.copyMetadata(data);
+				for (int i : new Range(parser.numRows))
+					dataTemp.addRow(data.row(i));
+				data = dataTemp;
+			
+				Logger.println("Number of inputs reduced to: " + data.rows());
+			}
+		
+			if (parser.numLabelColumns != null)
+			{
+				// Override any existing value for numLabelColumns in data.
+				data.setNumLabelColumns(parser.numLabelColumns);
+			}
+			else if (parser.labelColumnNames != null)
+			{
+				data.setNumLabelColumns(parser.labelColumnNames.size());
+				data = parseAndMoveLabelColumns(data, parser.labelColumnNames);
+			}
 		}
 
 		MetadataPrinter.printMetadata(data);
@@ -202,7 +209,12 @@ public class MLSystemsManager
 			Logger.println("Learning algorithm: " + learnerName);
 		}
 
-		data = fillOrRemoveUnknownData(parser.unknownFiller, data);
+		if (!preprocessed)
+		{
+			data = fillOrRemoveUnknownData(parser.unknownFiller, data);
+			if (preprocessedKey != null)
+				cache.put(preprocessedKey, data);
+		}
 		
 		if (parser.oversample)
 		{
@@ -283,33 +295,51 @@ public class MLSystemsManager
 			}
 
 			SupervisedLearner learner = getLearner(rand, parser);
-			Matrix testData = new Matrix();
 			String filename = evalParameters.get(0);
-			if (filename.endsWith(".arff"))
-			{
-				testData.loadFromArffFile(evalParameters.get(0));				
-			}
-			else if (filename.endsWith(".data") || filename.endsWith(".test"))
+			Matrix testInputs = null;
+			Matrix testLabels = null;
+			FileRowSource testSource = null;
+			if (parser.chunkRows != null)
 			{
-				String namesFilename = parser.dataset.get(0);
-				if (!namesFilename.endsWith(".names"))
-					throw new IllegalArgumentException("Cannot mix .name format and .arff format for training and" +
-							" test datasets.");
-				testData.loadFromNamesFormat(namesFilename, filename);
+				testSource = openTestRowSource(filename, parser);
 			}
 			else
 			{
-				throw new IllegalArgumentException("Unknown dataset file type: " + filename);
+				Matrix testData;
+				if (filename.endsWith(".arff") || filename.endsWith(".arff.gz"))
+				{
+					testData = loadDataset(Arrays.asList(filename), cache, m -> m.loadFromArffFile(filename));
+				}
+				else if (filename.endsWith(BinaryDataset.EXTENSION))
+				{
+					testData = new Matrix();
+					testData.loadFromBinaryFile(filename);
+				}
+				else if (filename.endsWith(".data") || filename.endsWith(".test"))
+				{
+					String namesFilename = parser.dataset.get(0);
+					if (!namesFilename.endsWith(".names"))
+						throw new IllegalArgumentException("Cannot mix .name format and .arff format for training and" +
+								" test datasets.");
+					testData = loadDataset(Arrays.asList(namesFilename, filename), cache, 
+							m -> m.loadFromNamesFormat(namesFilename, filename));
+				}
+				else
+				{
+					throw new IllegalArgumentException("Unknown dataset file type: " + filename);
+				}
+				if (parser.ignoredColumns != null && testData.getStorageType() == Matrix.StorageType.MAPPED)
+					testData.setStorageType(Matrix.getDefaultStorageType());
+				deleteColumns(parser.ignoredColumns, testData);
+				testData = fillOrRemoveUnknownData(parser.unknownFiller, testData);
+				Pair<Matrix> pairTest = testData.viewInputsAndLabels();
+				testInputs = pairTest.getFirst();
+				testLabels = pairTest.getSecond();
+				testData = null;
+				testLabels = reorderLabelColumns(testLabels, parser.labelColumnOrder);
 			}
-			deleteColumns(parser.ignoredColumns, testData);
-			testData = fillOrRemoveUnknownData(parser.unknownFiller, testData);
-			Pair<Matrix> pairTest = testData.splitInputsAndLabels();
-			Matrix testInputs = pairTest.getFirst();
-			Matrix testLabels = pairTest.getSecond();
-			testData = null;
-			testLabels = reorderLabelColumns(testLabels, parser.labelColumnOrder);
 			
-			Pair<Matrix> pair = data.splitInputsAndLabels();
+			Pair<Matrix> pair = data.viewInputsAndLabels();
 			Matrix inputs = pair.getFirst();
 			Matrix labels = pair.getSecond();
 			data = null;
@@ -326,7 +356,10 @@ public class MLSystemsManager
 			
 			Logger.println("Evaluations will be on a separate test set...");
 			Logger.println("Test set name: " + evalParameters.get(0));
-			Logger.println("Number of test inputs: " + testInputs.rows());
+			if (testInputs != null)
+				Logger.println("Number of test inputs: " + testInputs.rows());
+			else
+				Logger.println("Test set rows per chunk: " + parser.chunkRows);
 			if (parser.deserializeFileName == null)
 			{
 				double startTime = System.currentTimeMillis();
@@ -339,7 +372,18 @@ public class MLSystemsManager
 			double startTime = System.currentTimeMillis();
 			Evaluation trainEvaluation = parser.includeTrainingDataEvaluations ? 
 					Evaluator.runEvaluators(inputs, labels, learner, true, testEvaluators) : null;
-			Evaluation testEvaluation = Evaluator.runEvaluators(testInputs, testLabels, learner, true, testEvaluators);
+			Evaluation testEvaluation;
+			if (testSource != null)
+			{
+				try (RowSource source = testSource)
+				{
+					testEvaluation = Evaluator.runEvaluators(source, learner, true, testEvaluators);
+				}
+			}
+			else
+			{
+				testEvaluation = Evaluator.runEvaluators(testInputs, testLabels, learner, true, testEvaluators);
+			}
 			Logger.println("Time to test (in seconds): " + (System.currentTimeMillis() - startTime)
 					/ 1000.0);
 			for (Evaluator evaluator : testEvaluators)
@@ -374,22 +418,14 @@ public class MLSystemsManager
 					+ Double.parseDouble(evalParameters.get(0)));
 			data.shuffle(rand);
 			int trainSize = (int) (trainPercent * data.rows());
-			Matrix trainInstances = new Matrix(data, 0, 0, trainSize, data.cols());
-			if (parser.oversample)
-			{
-				Logger.println("Oversampling training set.");
-				Logger.println("Rows before: " + trainInstances.rows());
-				trainInstances = trainInstances.oversample(rand);
-				Logger.println("Rows after: " + trainInstances.rows());
-			}			
-			Matrix trainInputs = new Matrix(trainInstances, 0, 0, trainInstances.rows(), data.cols() - data.getNumLabelColumns());
-			Matrix trainLabels = new Matrix(trainInstances, 0, data.cols() - data.getNumLabelColumns(), trainInstances.rows(), data.getNumLabelColumns());
-			trainLabels = reorderLabelColumns(trainLabels, parser.labelColumnOrder);
-			trainInstances = null;
-			Matrix testInputs = new Matrix(data, trainSize, 0, data.rows() - trainSize, 
-					data.cols() - data.getNumLabelColumns());
-			Matrix testLabels = new Matrix(data, trainSize, data.cols() - data.getNumLabelColumns(),
-					data.rows() - trainSize, data.getNumLabelColumns());
+			// The training and test sets are views of data, which is not changed after this.
+			Pair<Matrix> train = createTrainingSet(data, rowRange(0, trainSize), parser.oversample, rand);
+			Matrix trainInputs = train.getFirst();
+			Matrix trainLabels = reorderLabelColumns(train.getSecond(), parser.labelColumnOrder);
+			int[] testRows = rowRange(trainSize, data.rows());
+			int inputCols = data.cols() - data.getNumLabelColumns();
+			Matrix testInputs = new Matrix(data, testRows, 0, inputCols);
+			Matrix testLabels = new Matrix(data, testRows, inputCols, data.getNumLabelColumns());
 			data = null;
 			testLabels = reorderLabelColumns(testLabels, parser.labelColumnOrder);
 			
@@ -471,6 +507,11 @@ public class MLSystemsManager
 			Logger.println("Number of folds: " + folds);
 			Logger.println("Number of reps: " + reps);
 			
+			// The folds are views of data, which is not changed. Each rep shuffles row indexes into
+			// data instead of the rows themselves.
+			final Matrix source = data;
+			int[] order = rowRange(0, data.rows());
+
 			// For holding test set evaluations from each fold.
 			List<Evaluation> evaluationsPerFold = new ArrayList<>();
 			List<Double> timesPerFold = new ArrayList<>();
@@ -485,49 +526,27 @@ public class MLSystemsManager
 				List<Future<Tuple3<Evaluation, Evaluation, Double>>> futures = new ArrayList<>();
 				for (int j = 0; j < reps; j++)
 				{
-					data.shuffle(rand);
+					shuffle(order, rand);
+					// Folds of this rep are created after later reps shuffle order.
+					final int[] repOrder = order.clone();
 					for (int i = 0; i < folds; i++)
 					{						
-						int foldSize = data.rows() / folds;
-						int begin = i * foldSize;
-						int end = (i + 1) * foldSize; // data.rows() / folds = foldSize
-						Matrix trainInstances = new Matrix(data, 0, 0, begin, data.cols());
-						trainInstances.add(data, end, 0, data.rows() - end);
-						if (parser.oversample)
-						{
-							Logger.println("Oversampling training set.");
-							Logger.println("Rows before: " + trainInstances.rows());
-							trainInstances = trainInstances.oversample(rand);
-							Logger.println("Rows after: " + trainInstances.rows());
-						}			
-						final Matrix trainInputs = new Matrix(trainInstances, 0, 0, trainInstances.rows(),
-								trainInstances.cols() - data.getNumLabelColumns());
-						Matrix trainLabelsTemp = new Matrix(trainInstances, 0, trainInstances.cols() - 
-								data.getNumLabelColumns(), trainInstances.rows(), data.getNumLabelColumns());
-						final Matrix trainLabels = reorderLabelColumns(trainLabelsTemp, parser.labelColumnOrder);
-						trainLabelsTemp = null;
-						trainInstances = null;
-
-						final Matrix testInputs = new Matrix(data, begin, 0, end - begin, data.cols() - data.getNumLabelColumns());
-						final Matrix testLabels = reorderLabelColumns(new Matrix(data, begin,
-								data.cols() - data.getNumLabelColumns(), end - begin, data.getNumLabelColumns()), parser.labelColumnOrder);
+						int foldSize = source.rows() / folds;
+						final int begin = i * foldSize;
+						final int end = (i + 1) * foldSize; // data.rows() / folds = foldSize
 						
-						if (testLabels.rows() == 0)
+						if (end == begin)
 							throw new IllegalArgumentException("The dataset is not large enough for the number of" +
 									" folds specified.");
 						
-						if (parser.printPercentUniqueTestLabels)
-						{
-							// This should always be zero.
-							Logger.println("Percent unique labels in test set for rep " + j + " fold " + i + ": "
-									+ findPercentUniqueTestLabels(trainLabels, testLabels));
-						}			
+						// Oversampling uses rand, so it must be done here to use it in the same order every time.
+						final Pair<Matrix> oversampled = parser.oversample ? createTrainingSet(source, 
+								concatRows(repOrder, 0, begin, end, repOrder.length), true, rand) : null;
 						
 						// Create a new Random so that I don't access it across multiple threads at once.
 						final SupervisedLearner learner = getLearner(new Random(rand.nextLong()), parser);
-						
-						final List<Evaluator> testEvaluators = getTestEvaluators(parser.evaluators,
-							trainInputs, trainLabels, testInputs, testLabels);
+						final int rep = j;
+						final int fold = i;
 
 						Callable<Tuple3<Evaluation, Evaluation, Double>> callable = 
 								new Callable<Tuple3<Evaluation, Evaluation, Double>>()
@@ -535,6 +554,28 @@ public class MLSystemsManager
 							@Override
 							public Tuple3<Evaluation, Evaluation, Double> call() throws Exception
 							{
+								// The fold is only created when it is used, so that folds waiting for a thread
+								// do not use memory.
+								Pair<Matrix> train = oversampled != null ? oversampled : createTrainingSet(source, 
+										concatRows(repOrder, 0, begin, end, repOrder.length), false, null);
+								Matrix trainInputs = train.getFirst();
+								Matrix trainLabels = reorderLabelColumns(train.getSecond(), parser.labelColumnOrder);
+								int[] testRows = Arrays.copyOfRange(repOrder, begin, end);
+								int inputCols = source.cols() - source.getNumLabelColumns();
+								Matrix testInputs = new Matrix(source, testRows, 0, inputCols);
+								Matrix testLabels = reorderLabelColumns(new Matrix(source, testRows, inputCols, 
+										source.getNumLabelColumns()), parser.labelColumnOrder);
+								
+								if (parser.printPercentUniqueTestLabels)
+								{
+									// This should always be zero.
+									Logger.println("Percent unique labels in test set for rep " + rep + " fold " + fold + ": "
+											+ findPercentUniqueTestLabels(trainLabels, testLabels));
+								}			
+								
+								List<Evaluator> testEvaluators = getTestEvaluators(parser.evaluators,
+									trainInputs, trainLabels, testInputs, testLabels);
+
 								long startTime = System.currentTimeMillis();
 								learner.train(trainInputs, trainLabels);
 								Evaluation trainEval;
@@ -650,12 +691,80 @@ public class MLSystemsManager
 		throw new IllegalStateException(String.format("Unknown evalutaion method \"%s\"", parser.evaluation.get(0)));
 	}
 
+	/**
+	 * Creates the inputs and labels of a training set from the given rows of data. They are views
+	 * of data unless oversampling is used, which requires copying the rows.
+	 */
+	private static Pair<Matrix> createTrainingSet(Matrix data, int[] rowIndexes, boolean oversample, Random rand)
+	{
+		Matrix trainInstances = data;
+		if (oversample)
+		{
+			trainInstances = new Matrix(data, rowIndexes, 0, data.cols());
+			Logger.println("Oversampling training set.");
+			Logger.println("Rows before: " + trainInstances.rows());
+			trainInstances = trainInstances.oversample(rand);
+			Logger.println("Rows after: " + trainInstances.rows());
+			rowIndexes = rowRange(0, trainInstances.rows());
+		}
+		int inputCols = data.cols() - data.getNumLabelColumns();
+		Matrix trainInputs = new Matrix(trainInstances, rowIndexes, 0, inputCols);
+		Matrix trainLabels = new Matrix(trainInstances, rowIndexes, inputCols, data.getNumLabelColumns());
+		return new Pair<>(trainInputs, trainLabels);
+	}
+
+	/**
+	 * Returns the row indexes from start (inclusive) to end (exclusive).
+	 */
+	private static int[] rowRange(int start, int end)
+	{
+		int[] result = new int[end - start];
+		for (int i = 0; i < result.length; i++)
+			result[i] = start + i;
+		return result;
+	}
+
+	/**
+	 * Returns the elements of order from start1 to end1, followed by those from start2 to end2.
+	 */
+	private static int[] concatRows(int[] order, int start1, int end1, int start2, int end2)
+	{
+		int[] result = new int[end1 - start1 + end2 - start2];
+		System.arraycopy(order, start1, result, 0, end1 - start1);
+		System.arraycopy(order, start2, result, end1 - start1, end2 - start2);
+		return result;
+	}
+
+	/**
+	 * Shuffles the given row indexes in the same way that Matrix.shuffle shuffles rows.
+	 */
+	private static void shuffle(int[] order, Random rand)
+	{
+		for (int n = order.length; n > 0; n--)
+		{
+			int i = rand.nextInt(n);
+			int tmp = order[n - 1];
+			order[n - 1] = order[i];
+			order[i] = tmp;
+		}
+	}
+
 	public static double findPercentUniqueTestLabels(Matrix trainLabels, Matrix testLabels)
 	{
-		// Note that Vectors with different weights will be considered unique.
-		Set<Vector> trainSet = new TreeSet<>();
-		trainLabels.stream().forEach(l -> trainSet.add(l));
-		long numUnique = testLabels.stream().filter(l -> !trainSet.contains(l)).count();
+		// Note that instance weights are ignored.
+		long numUnique;
+		if (LabelKey.canEncode(trainLabels))
+		{
+			LabelIndex trainSet = new LabelIndex(new LabelKey(trainLabels));
+			trainLabels.stream().forEach(l -> trainSet.add(l));
+			numUnique = testLabels.stream().filter(l -> !trainSet.contains(l)).count();
+		}
+		else
+		{
+			Set<Vector> trainSet = new TreeSet<>();
+			trainLabels.stream().forEach(l -> trainSet.add(l));
+			numUnique = testLabels.stream().filter(l -> !trainSet.contains(l)).count();
+		}
 		return (double)numUnique/testLabels.rows();
 	}
 
@@ -1133,6 +1242,94 @@ public class MLSystemsManager
 	}
 
 	
+	/**
+	 * Opens a test set for static evaluation which is read --chunk_rows rows at a time. Ignored
+	 * columns are removed from, and unknowns filled in, each chunk as it is read.
+	 */
+	private FileRowSource openTestRowSource(String filename, ArgParser parser)
+	{
+		if (!filename.endsWith(".arff") && !filename.endsWith(".arff.gz") && !filename.endsWith(BinaryDataset.EXTENSION))
+			throw new IllegalArgumentException("With --chunk_rows, the test set must be an arff file, which may be"
+					+ " compressed with gzip, or a " + BinaryDataset.EXTENSION + " file: " + filename);
+		if (parser.labelColumnOrder != null || parser.unknownFiller.contains("mean_mode") 
+				|| parser.printPercentUniqueTestLabels)
+			throw new IllegalArgumentException("--chunk_rows cannot be used with -S, -F mean_mode, or"
+					+ " --print_percent_unique_test_labels because they need the whole test set.");
+		FileRowSource result = new FileRowSource(filename, parser.chunkRows);
+		result.setPreprocessor(chunk ->
+			{
+				deleteColumns(parser.ignoredColumns, chunk);
+				return fillOrRemoveUnknownData(parser.unknownFiller, chunk);
+			});
+		return result;
+	}
+
+	/**
+	 * Loads the dataset given with -A: an arff file, a binary dataset file, or a .names file and
+	 * a .data file. If cache is not null, parsed datasets are loaded from and stored in it.
+	 */
+	private static Matrix loadDataset(List<String> dataset, DatasetCache cache) throws IOException
+	{
+		if (dataset.size() == 1)
+		{
+			String fileName = dataset.get(0);
+			if (fileName.endsWith(BinaryDataset.EXTENSION))
+			{
+				// Binary datasets do not need to be parsed, so they are never cached.
+				Matrix data = new Matrix();
+				data.loadFromBinaryFile(fileName);
+				return data;
+			}
+			if (!fileName.endsWith(".arff") && !fileName.endsWith(".arff.gz"))
+				throw new IllegalArgumentException("When only 1 parameter is given with -A, it must be an" +
+						" arff file name, which may end with .gz, or a " + BinaryDataset.EXTENSION + " file name. -A arguments were: " 
+						+ dataset);
+			return loadDataset(dataset, cache, m -> m.loadFromArffFile(fileName));
+		}
+		else
+		{
+			if (dataset.size() != 2)
+				throw new IllegalArgumentException("Unsupported number of parameters given to -A.");
+			String namesFilename = dataset.get(0);
+			String dataFilename = dataset.get(1);
+			if (!namesFilename.endsWith(".names"))
+				throw new IllegalArgumentException("When 2 parameters are given with -A, the first parameter" +
+						" must be a .names file.");
+			if (!dataFilename.endsWith(".data") && dataFilename.endsWith(".test"))
+				throw new IllegalArgumentException("When 2 parameters are given with -A, the second parameter" +
+						" must be a .data or .test file.");
+			return loadDataset(dataset, cache, m -> m.loadFromNamesFormat(namesFilename, dataFilename));
+		}
+	}
+
+	/**
+	 * Loads a dataset from the given files with the given loader, or from cache if it is not null
+	 * and contains them.
+	 */
+	private static Matrix loadDataset(List<String> files, DatasetCache cache, DatasetCache.Loader loader)
+			throws IOException
+	{
+		if (cache != null)
+			return cache.load(files, Collections.<String>emptyList(), loader);
+		Matrix data = new Matrix();
+		loader.load(data);
+		return data;
+	}
+
+	/**
+	 * Returns the arguments which affect the dataset after it is preprocessed by run, before
+	 * training. These are part of the key of preprocessed datasets in the dataset cache.
+	 */
+	private static List<String> getPreprocessingArguments(ArgParser parser)
+	{
+		return Arrays.asList("preprocessed",
+				"ignore=" + parser.ignoredColumns,
+				"rows=" + parser.numRows,
+				"labels_count=" + parser.numLabelColumns,
+				"label_columns=" + parser.labelColumnNames,
+				"fill_unknowns=" + parser.unknownFiller);
+	}
+	
 	public static Matrix fillOrRemoveUnknownData(List<String> unknownFillerNames, Matrix dataset)
 	{
 		for (String name : unknownFillerNames)
@@ -0,0 +1,195 @@
+package smodelkit;
+
+import java.io.ObjectStreamException;
+import java.nio.DoubleBuffer;
+
+/**
+ * Reads the values of a Matrix from memory-mapped columns of a binary dataset file (see
+ * BinaryDataset). Values are never copied onto the heap, so they cannot be changed and columns
+ * cannot be added or removed. Rows can still be removed and reordered, which is done with an
+ * array of row indexes into the file.
+ *
+ * @author joseph
+ *
+ */
+class MappedStorage extends MatrixStorage
+{
+	private static final long serialVersionUID = 1L;
+
+	private final transient DoubleBuffer[] columns;
+	private final transient DoubleBuffer weights;
+	/**
+	 * Maps row indexes in this storage to row indexes in the file. This is null until rows are
+	 * removed or reordered.
+	 */
+	private int[] order;
+	private int rows;
+
+	MappedStorage(DoubleBuffer[] columns, DoubleBuffer weights)
+	{
+		this.columns = columns;
+		this.weights = weights;
+		this.rows = weights.limit();
+	}
+
+	@Override
+	Matrix.StorageType getType()
+	{
+		return Matrix.StorageType.MAPPED;
+	}
+
+	/**
+	 * Copies of a mapped matrix are stored in memory by column, which is the same layout
+	 * as the file.
+	 */
+	@Override
+	MatrixStorage emptyCopy()
+	{
+		return new ColumnarStorage();
+	}
+
+	@Override
+	int rows()
+	{
+		return rows;
+	}
+
+	private int fileRow(int r)
+	{
+		return order == null ? r : order[r];
+	}
+
+	@Override
+	Vector row(int r)
+	{
+		if (r < 0 || r >= rows)
+			throw new IndexOutOfBoundsException("Row: " + r + ", rows: " + rows);
+		return new RowView(fileRow(r));
+	}
+
+	@Override
+	double get(int r, int c)
+	{
+		return columns[c].get(fileRow(r));
+	}
+
+	@Override
+	double getWeight(int r)
+	{
+		return weights.get(fileRow(r));
+	}
+
+	private void createOrder()
+	{
+		if (order != null)
+			return;
+		order = new int[rows];
+		for (int i = 0; i < rows; i++)
+			order[i] = i;
+	}
+
+	@Override
+	void remove(int r)
+	{
+		if (r < 0 || r >= rows)
+			throw new IndexOutOfBoundsException("Row: " + r + ", rows: " + rows);
+		createOrder();
+		System.arraycopy(order, r + 1, order, r, rows - r - 1);
+		rows--;
+	}
+
+	@Override
+	void swap(int r1, int r2)
+	{
+		createOrder();
+		int tmp = order[r1];
+		order[r1] = order[r2];
+		order[r2] = tmp;
+	}
+
+	@Override
+	void clear()
+	{
+		rows = 0;
+	}
+
+	@Override
+	void add(Vector row)
+	{
+		throw readOnly();
+	}
+
+	@Override
+	void removeColumn(int c)
+	{
+		throw readOnly();
+	}
+
+	@Override
+	void appendColumns(MatrixStorage source, int start, int num)
+	{
+		throw readOnly();
+	}
+
+	private static UnsupportedOperationException readOnly()
+	{
+		return new UnsupportedOperationException("A matrix loaded from a binary dataset is read-only. Use "
+				+ "setStorageType to copy it into memory first.");
+	}
+
+	/**
+	 * Mapped buffers cannot be serialized, so the values are copied into a ColumnarStorage.
+	 */
+	private Object writeReplace() throws ObjectStreamException
+	{
+		MatrixStorage result = emptyCopy();
+		for (int r = 0; r < rows; r++)
+			result.add(row(r));
+		return result;
+	}
+
+	/**
+	 * A row of a MappedStorage. The file row it reads from does not change when rows are
+	 * removed or reordered, but the view must not be used to find a row's position in the matrix.
+	 */
+	private class RowView extends Vector
+	{
+		private static final long serialVersionUID = 1L;
+		private final int fileRow;
+
+		RowView(int fileRow)
+		{
+			this.fileRow = fileRow;
+		}
+
+		@Override
+		public double get(int index)
+		{
+			return columns[index].get(fileRow);
+		}
+
+		@Override
+		public int size()
+		{
+			return columns.length;
+		}
+
+		@Override
+		public double getWeight()
+		{
+			return weights.get(fileRow);
+		}
+
+		@Override
+		public void setWeight(double weight)
+		{
+			throw readOnly();
+		}
+
+		private Object writeReplace()
+		{
+			return new Vector(this);
+		}
+	}
+
+}
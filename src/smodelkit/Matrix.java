@@ -1,20 +1,34 @@
 package smodelkit;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
 import java.io.Serializable;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.Map;
 import java.util.Random;
 import java.util.Scanner;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
+import java.util.zip.GZIPOutputStream;
 
 import smodelkit.util.Counter;
 import smodelkit.util.Helper;
@@ -34,13 +48,47 @@ public class Matrix implements Serializable, Iterable<Vector>
 	
 	String comments;
 	
+	/**
+	 * The ways a matrix can store its rows.
+	 */
+	public enum StorageType
+	{
+		/**
+		 * Each row is stored as its own Vector.
+		 */
+		ROWS,
+		/**
+		 * Each column is stored as a primitive array. Rows returned by row(int) are views into
+		 * those arrays, so they are only valid until rows are added, removed, or reordered.
+		 */
+		COLUMNS,
+		/**
+		 * Like COLUMNS, but columns which only contain integers, such as nominal columns, are
+		 * stored as byte, short, or int codes. Unknown values in those columns are kept in a
+		 * bitmap. This usually uses a fraction of the memory of COLUMNS for nominal datasets.
+		 */
+		COMPACT,
+		/**
+		 * Values are read from a memory-mapped binary dataset file (see BinaryDataset). Values
+		 * cannot be changed, but rows can be removed and reordered. Matrices with this storage
+		 * can only be created with loadFromBinaryFile.
+		 */
+		MAPPED
+	}
+
+	private static volatile StorageType defaultStorageType = StorageType.ROWS;
+
+	// The size of the buffers used by writeArff(Path, boolean).
+	private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
 	// Stores instance rows and their weights.
-	ArrayList<Vector> data;
+	MatrixStorage data;
+	// Cached column statistics. This is null until statistics are requested, and whenever
+	// values may have been changed without this matrix knowing.
+	private transient volatile ColumnStatistics stats;
 
-	// Meta-data
-	ArrayList<String> attrNames;
-	ArrayList<TreeMap<String, Integer>> strToEnum;
-	ArrayList<TreeMap<Integer, String>> enumToStr;
+	// Meta-data. The schema is immutable, so it is shared by copies of this matrix.
+	AttributeSchema schema;
 	// This stores the number of columns that are used in each categorical distribution
 	// when NominalToCategorical is used. This assumes all columns are either converted
 	// from nominal values or are all real valued, but not mixed.
@@ -57,10 +105,8 @@ public class Matrix implements Serializable, Iterable<Vector>
 	public Matrix()
 	{
 		relationName = null;
-		data = new ArrayList<>();
-		attrNames = new ArrayList<String>();
-		strToEnum = new ArrayList<TreeMap<String, Integer>>();
-		enumToStr = new ArrayList<TreeMap<Integer, String>>();
+		data = createStorage(defaultStorageType);
+		schema = AttributeSchema.EMPTY;
 		numCatagoricalCols = new ArrayList<Integer>();
 		numLabelColumns = 1;
 	}
@@ -73,22 +119,14 @@ public class Matrix implements Serializable, Iterable<Vector>
 	public Matrix(Matrix other)
 	{
 		relationName = other.relationName;
-		attrNames = new ArrayList<String>();
-		strToEnum = new ArrayList<TreeMap<String, Integer>>();
-		enumToStr = new ArrayList<TreeMap<Integer, String>>();
-		for (int i = 0; i < other.cols(); i++)
-		{
-			attrNames.add(other.getAttrName(i));
-			strToEnum.add(other.strToEnum.get(i));
-			enumToStr.add(other.enumToStr.get(i));
-		}
+		schema = other.schema;
 		numCatagoricalCols = new ArrayList<Integer>();
 		for (int i : other.numCatagoricalCols)
 		{
 			numCatagoricalCols.add(i);
 		}
 
-		data = new ArrayList<>();
+		data = other.data.emptyCopy();
 		for (int j = 0; j < other.rows(); j++)
 		{
 			addRow(other.row(j));
@@ -102,24 +140,21 @@ public class Matrix implements Serializable, Iterable<Vector>
 	public Matrix(Matrix other, int rowStart, int colStart, int rowCount,
 			int colCount)
 	{
-		attrNames = new ArrayList<String>();
-		strToEnum = new ArrayList<TreeMap<String, Integer>>();
-		enumToStr = new ArrayList<TreeMap<Integer, String>>();
-		for (int i = 0; i < colCount; i++)
-		{
-			attrNames.add(other.getAttrName(colStart + i));
-			strToEnum.add(other.strToEnum.get(colStart + i));
-			enumToStr.add(other.enumToStr.get(colStart + i));
-		}
+		schema = other.schema.subSchema(colStart, colCount);
 		if (other.numCatagoricalCols.size() != 0)
 			throw new UnsupportedOperationException("Categorical distributions are not supported when copying " +
 					" a part of a matrix.");
 		numCatagoricalCols = new ArrayList<Integer>();
 
-		data = new ArrayList<>();
+		data = other.data.emptyCopy();
 		for (int j = 0; j < rowCount; j++)
 		{
 			Vector rowSrc = other.row(rowStart + j);
+			if (rowSrc instanceof SparseVector)
+			{
+				addRow(rowSrc.subVector(colStart, colStart + colCount));
+				continue;
+			}
 			double[] rowDest = new double[colCount];
 			for (int i = 0; i < colCount; i++)
 				rowDest[i] = rowSrc.get(colStart + i);
@@ -128,12 +163,117 @@ public class Matrix implements Serializable, Iterable<Vector>
 		numLabelColumns = 0;
 	}
 
+	/**
+	 * Creates a view of the given rows and the columns from colStart to colStart + colCount of
+	 * other. Values are not copied, so this is much cheaper than copying a part of other. Rows
+	 * returned by this matrix share values with rows of other, but changes to them are not seen
+	 * by other. Other must not be changed while this matrix is in use.
+	 * 
+	 * Rows can be removed from or reordered in the view. If rows or columns are added or
+	 * removed, the rows are copied into this matrix first.
+	 * @param rowIndexes The rows of other to include, in order. The view does not keep this array.
+	 */
+	public Matrix(Matrix other, int[] rowIndexes, int colStart, int colCount)
+	{
+		this(other, rowIndexes, null, colStart, colCount);
+	}
+
+	/**
+	 * Like Matrix(Matrix, int[], int, int), except the rows of the view are given the specified
+	 * instance weights instead of the weights they have in other. A row may be included more
+	 * than once.
+	 * @param weights The instance weight of each row in rowIndexes, or null to use the weights
+	 * from other. The view does not keep this array.
+	 */
+	public Matrix(Matrix other, int[] rowIndexes, double[] weights, int colStart, int colCount)
+	{
+		if (colStart < 0 || colCount < 0 || colStart + colCount > other.cols())
+			throw new IllegalArgumentException("Column range out of bounds.");
+		for (int r : rowIndexes)
+		{
+			if (r < 0 || r >= other.rows())
+				throw new IllegalArgumentException("Row index out of bounds: " + r);
+		}
+		schema = other.schema.subSchema(colStart, colCount);
+		if (other.numCatagoricalCols.size() != 0)
+			throw new UnsupportedOperationException("Categorical distributions are not supported when copying " +
+					" a part of a matrix.");
+		numCatagoricalCols = new ArrayList<Integer>();
+
+		data = new ViewStorage(other.data, rowIndexes, weights, colStart, colCount);
+		numLabelColumns = 0;
+	}
+
+	/**
+	 * Returns the rows of this matrix from start to end (exclusive) with all of its columns and
+	 * metadata. This is a view (see Matrix(Matrix, int[], int, int)) unless this matrix has
+	 * categorical distributions, which views do not support, in which case the rows are copied.
+	 */
+	public Matrix viewRows(int start, int end)
+	{
+		if (start < 0 || end > rows() || start > end)
+			throw new IllegalArgumentException("Row range out of bounds: " + start + " to " + end);
+		int[] rowIndexes = new int[end - start];
+		for (int r = 0; r < rowIndexes.length; r++)
+			rowIndexes[r] = start + r;
+		return viewRows(rowIndexes, null);
+	}
+
+	/**
+	 * Returns the given rows of this matrix with all of its columns and metadata. This is a view
+	 * (see Matrix(Matrix, int[], int, int)) unless this matrix has categorical distributions, which
+	 * views do not support, in which case the rows are copied. A row may be given more than once.
+	 * @param rowIndexes The rows to include, in order. The view does not keep this array.
+	 * @param weights The instance weight to give each row in the result, or null to keep the
+	 * weights of the rows in this matrix. The view does not keep this array.
+	 */
+	public Matrix viewRows(int[] rowIndexes, double[] weights)
+	{
+		if (weights != null && weights.length != rowIndexes.length)
+			throw new IllegalArgumentException("There must be one weight for each row.");
+		Matrix result;
+		if (numCatagoricalCols.isEmpty())
+		{
+			result = new Matrix(this, rowIndexes, weights, 0, cols());
+			result.relationName = relationName;
+			result.numLabelColumns = numLabelColumns;
+		}
+		else
+		{
+			result = new Matrix();
+			result.copyMetadata(this);
+			for (int i = 0; i < rowIndexes.length; i++)
+			{
+				if (weights == null)
+					result.addRow(row(rowIndexes[i]));
+				else
+					result.addRow(new Vector(row(rowIndexes[i]), weights[i]));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Determines if this matrix is a view of another matrix. See Matrix(Matrix, int[], int, int).
+	 */
+	public boolean isView()
+	{
+		return data instanceof ViewStorage;
+	}
+
+	/**
+	 * If this is a view, its rows are copied so that rows and columns can be added or removed.
+	 */
+	private void detachView()
+	{
+		if (data instanceof ViewStorage)
+			data = ((ViewStorage)data).copy();
+	}
+
 	public void copyMetadata(Matrix other)
 	{
 		relationName = other.relationName;
-		attrNames = new ArrayList<String>(other.attrNames);
-		strToEnum = new ArrayList<TreeMap<String, Integer>>(other.strToEnum);
-		enumToStr = new ArrayList<TreeMap<Integer, String>>(other.enumToStr);
+		schema = other.schema;
 		numCatagoricalCols = new ArrayList<Integer>(other.numCatagoricalCols);
 		numLabelColumns = other.numLabelColumns;
 	}
@@ -145,12 +285,13 @@ public class Matrix implements Serializable, Iterable<Vector>
 	 */
 	public void addEmptyColumn(String attributeName)
 	{		
-		if (attrNames.contains(attributeName))
+		if (schema.indexOf(attributeName) != -1)
 			throw new IllegalArgumentException("This matrix alread contains attribute name: " + attributeName);
 		
-		attrNames.add(attributeName);
-		strToEnum.add(new TreeMap<>());
-		enumToStr.add(new TreeMap<>());
+		schema = schema.withAttribute(new AttributeSchema.Attribute(attributeName));
+		ColumnStatistics cached = stats;
+		if (cached != null)
+			cached.columnsAdded(1);
 	}
 	
 	/**
@@ -160,24 +301,27 @@ public class Matrix implements Serializable, Iterable<Vector>
 	 */
 	public void addAttributeValue(int column, String attributeValueName)
 	{		
-		if (strToEnum.get(column).keySet().contains(attributeValueName))
+		if (schema.get(column).containsValue(attributeValueName))
 			throw new IllegalArgumentException("Column " + column + " alread contains attribute value: " + attributeValueName);
 		
-		int largestAttrIndex = enumToStr.get(column).isEmpty() ? 0 : 
-			Collections.max(enumToStr.get(column).keySet()) + 1;
-		strToEnum.get(column).put(attributeValueName, largestAttrIndex);
-		enumToStr.get(column).put(largestAttrIndex, attributeValueName);
+		schema = schema.withAttribute(column, schema.get(column).withValue(attributeValueName));
 	}
 	
 	public void addAttributeValueIfItDoesNotExist(int column, String attributeValueName)
 	{
-		if (strToEnum.get(column).keySet().contains(attributeValueName))
+		if (schema.get(column).containsValue(attributeValueName))
 			return;
 		
-		int largestAttrIndex = enumToStr.get(column).isEmpty() ? 0 : 
-			Collections.max(enumToStr.get(column).keySet()) + 1;
-		strToEnum.get(column).put(attributeValueName, largestAttrIndex);
-		enumToStr.get(column).put(largestAttrIndex, attributeValueName);		
+		schema = schema.withAttribute(column, schema.get(column).withValue(attributeValueName));
+	}
+
+	/**
+	 * Returns the attribute names and nominal values of this matrix. The schema is immutable, and
+	 * is shared with matrices copied from this one until one of them changes its attributes.
+	 */
+	public AttributeSchema getSchema()
+	{
+		return schema;
 	}
 
 	public int getNumLabelColumns()
@@ -241,24 +385,68 @@ public class Matrix implements Serializable, Iterable<Vector>
 	
 	public void removeRow(int row)
 	{
+		ColumnStatistics cached = stats;
+		if (cached != null)
+			cached.rowRemoved(data.getWeight(row));
 		data.remove(row);
 	}
-	
+
+	/**
+	 * Removes the given row by moving the last row into its place. This takes constant time,
+	 * unlike removeRow, which shifts every row after the removed one, but it changes the order
+	 * of the rows.
+	 */
+	public void swapRemoveRow(int row)
+	{
+		if (row < 0 || row >= rows())
+			throw new IndexOutOfBoundsException("Row: " + row + ", rows: " + rows());
+		int last = rows() - 1;
+		if (row != last)
+			data.swap(row, last);
+		removeRow(last);
+	}
+
+	/**
+	 * Removes every row whose index is set in the given bitset, keeping the remaining rows in
+	 * order. This takes time linear in the number of rows no matter how many are removed, so
+	 * rows can be marked as removed (tombstoned) while iterating over a matrix and then removed
+	 * all at once.
+	 */
+	public void removeRows(BitSet rows)
+	{
+		if (rows.length() > rows())
+			throw new IndexOutOfBoundsException("Row: " + (rows.length() - 1) + ", rows: " + rows());
+		if (rows.isEmpty())
+			return;
+		// Move the kept rows to the front. Every row between dest and r has been removed, so
+		// swapping does not change the order of the kept rows.
+		int dest = 0;
+		for (int r = 0; r < rows(); r++)
+		{
+			if (rows.get(r))
+				continue;
+			if (dest != r)
+				data.swap(dest, r);
+			dest++;
+		}
+		while (rows() > dest)
+			removeRow(rows() - 1);
+	}
+
 	public void removeColumn(int colNumber)
 	{
 		if (numCatagoricalCols.size() != 0)
 			throw new UnsupportedOperationException("Cannot remove columns from a matrix that has been filtered "
 					+ "by NominalToCategorical.java");
-		attrNames.remove(colNumber);
-		strToEnum.remove(colNumber);
-		enumToStr.remove(colNumber);
+		schema = schema.withoutColumn(colNumber);
 
-		for(int i = 0; i < rows(); i++)
-		{
-			data.get(i).remove(colNumber);
-		}
+		detachView();
+		data.removeColumn(colNumber);
+		ColumnStatistics cached = stats;
+		if (cached != null)
+			cached.columnRemoved(colNumber);
 
-		assert attrNames.size() == row(0).size();
+		assert rows() == 0 || schema.size() == data.row(0).size();
 	}
 	
 	/**
@@ -280,9 +468,7 @@ public class Matrix implements Serializable, Iterable<Vector>
 			throw new IllegalArgumentException("Did you mean to copy 0 columns?");
 		}
 		
-		addListRange(other.attrNames, attrNames, start, num);
-		addListRange(other.strToEnum, strToEnum, start, num);
-		addListRange(other.enumToStr, enumToStr, start, num);
+		schema = schema.withAttributes(other.schema, start, num);
 
 		if (other.numCatagoricalCols.size() > 0)
 		{
@@ -306,24 +492,17 @@ public class Matrix implements Serializable, Iterable<Vector>
 			numCatagoricalCols.add(other.numCatagoricalCols.get(i));
 		}
 
-		if (data.size() > 0)
-		{
-			for(int r = 0; r < other.rows(); r++)
-			{				
-				double[] toAdd = new double[num];
-				for (int c = 0; c < toAdd.length; c++)
-					toAdd[c] = other.row(r).get(start + c);
-				row(r).addAll(new Vector(toAdd));
-			}	
-		}
-		else
+		detachView();
+		ColumnStatistics cached = stats;
+		if (cached != null)
 		{
-			// I don't have any rows.
-			for(int r = 0; r < other.rows(); r++)
-			{
-				addRow(other.row(r).subVector(start, start + num));
-			}				
+			// If this is empty, instance weights are copied from other.
+			if (rows() == 0)
+				stats = null;
+			else
+				cached.columnsAdded(num);
 		}
+		data.appendColumns(other.data, start, num);
 	}
 	
 	/**
@@ -356,7 +535,7 @@ public class Matrix implements Serializable, Iterable<Vector>
 	 */
 	public int getAttributeColumnIndex(String attrName)
 	{
-		return attrNames.indexOf(attrName);
+		return schema.indexOf(attrName);
 	}
 	
 	/**
@@ -364,7 +543,7 @@ public class Matrix implements Serializable, Iterable<Vector>
 	 */
 	public double get(int rowNumber, String attrName)
 	{
-		int index = attrNames.indexOf(attrName);
+		int index = schema.indexOf(attrName);
 		if (index == -1)
 			throw new IllegalArgumentException("Attribute name \"" + attrName + "\" not found.");
 		return row(rowNumber).get(index);
@@ -378,41 +557,59 @@ public class Matrix implements Serializable, Iterable<Vector>
 		return result;
 	}
 
-	
-	/**
-	 * Adds num elements to the end of dest, starting with source.get(start). 
-	 */
-	private <T> void addListRange(List<T> source, List<T> dest, int start, int num)
-	{
-		for (int i = start; i < num + start; i++)
-		{
-			dest.add(source.get(i));
-		}
-	}
 
 	/*
 	 * Adds a copy of the given vector to this datset.
 	 */
 	public void addRow(Vector v)
 	{
-		v = new Vector(v);
 		// Verify the given row.
 		if (v.size() != cols())
 			throw new IllegalArgumentException("The given row is not the expected size for this dataset.");
-		for (int i : new Range(v.size()))
+		if (v instanceof SparseVector)
 		{
-			if (!isContinuous(i))
-			{
-				if (v.get(i) < 0)
-					throw new IllegalArgumentException("Nominal values cannot be negative.");
-				if (v.get(i) >= getValueCount(i) && !Vector.isUnknown(v.get(i)))
-				{
-					throw new IllegalArgumentException("Nominal value is out of range.");
-				}
-			}
+			// Zero is always a valid value, so only the stored values need to be checked.
+			SparseVector sparse = (SparseVector)v;
+			for (int k = 0; k < sparse.getNonZeroCount(); k++)
+				validateValue(sparse.getNonZeroIndex(k), sparse.getNonZeroValue(k));
+		}
+		else
+		{
+			for (int i : new Range(v.size()))
+				validateValue(i, v.get(i));
 		}
 		
+		detachView();
 		data.add(v);
+		ColumnStatistics cached = stats;
+		if (cached != null)
+			cached.rowAdded(v);
+	}
+
+	/**
+	 * Sets the value in the specified row and column. Unlike changing a row returned by row(int),
+	 * this does not cause the statistics of other columns to be computed again.
+	 */
+	public void set(int r, int c, double value)
+	{
+		validateValue(c, value);
+		data.row(r).set(c, value);
+		ColumnStatistics cached = stats;
+		if (cached != null)
+			cached.valueChanged(c);
+	}
+
+	private void validateValue(int col, double value)
+	{
+		if (!isContinuous(col))
+		{
+			if (value < 0)
+				throw new IllegalArgumentException("Nominal values cannot be negative.");
+			if (value >= getValueCount(col) && !Vector.isUnknown(value))
+			{
+				throw new IllegalArgumentException("Nominal value is out of range.");
+			}
+		}
 	}
 		
 	public void checkCompatibility(Matrix other)
@@ -429,10 +626,9 @@ public class Matrix implements Serializable, Iterable<Vector>
 
 	public void clear()
 	{
-		attrNames.clear();
-		strToEnum.clear();
-		enumToStr.clear();
+		schema = AttributeSchema.EMPTY;
 		data.clear();
+		stats = null;
 	}
 	
 	/**
@@ -440,21 +636,14 @@ public class Matrix implements Serializable, Iterable<Vector>
 	 */
 	public void setSize(int rows, int cols)
 	{
-		data = new ArrayList<>();
+		data = data.emptyCopy();
+		stats = null;
 		for (int j = 0; j < rows; j++)
 		{
 			double[] row = new double[cols];
 			addRow(new Vector(row, 1.0));
 		}
-		attrNames = new ArrayList<String>();
-		strToEnum = new ArrayList<TreeMap<String, Integer>>();
-		enumToStr = new ArrayList<TreeMap<Integer, String>>();
-		for (int i = 0; i < cols; i++)
-		{
-			attrNames.add("");
-			strToEnum.add(new TreeMap<String, Integer>());
-			enumToStr.add(new TreeMap<Integer, String>());
-		}
+		schema = AttributeSchema.continuous(cols);
 	}
 
 	/**
@@ -464,11 +653,11 @@ public class Matrix implements Serializable, Iterable<Vector>
 	 */
 	public void loadFromArffFile(String filename, boolean loadComments)
 	{
-		try (Scanner s = new Scanner(new File(filename)))
+		try
 		{
-			loadArff(s, loadComments);
+			new ArffReader(this, loadComments).read(filename);
 		} 
-		catch (FileNotFoundException e)
+		catch (IOException e)
 		{
 			throw new RuntimeException(e);
 		}
@@ -490,159 +679,24 @@ public class Matrix implements Serializable, Iterable<Vector>
 	 */
 	public void loadFromArffString(String content)
 	{
-		try (Scanner s = new Scanner(content))
+		try (Reader r = new StringReader(content))
 		{
-			loadArff(s, false);
+			new ArffReader(this, false).read(r);
 		}
-	}
-	
-	/**
-	 *  Loads from an ARFF file
-	 * @param filename
-	 * @throws FileNotFoundException
-	 */
-	private void loadArff(Scanner s, boolean loadComments)
-	{
-		data = new ArrayList<>();
-		attrNames = new ArrayList<String>();
-		strToEnum = new ArrayList<TreeMap<String, Integer>>();
-		enumToStr = new ArrayList<TreeMap<Integer, String>>();
-		boolean READDATA = false;
-		StringBuilder commentsBuilder = new StringBuilder();
-		while (s.hasNext())
+		catch (IOException e)
 		{
-			String line = s.nextLine().trim();
-			if (line.length() > 0)
-			{
-				if (line.charAt(0) == '%')
-				{
-					if (loadComments)
-					{
-						commentsBuilder.append(line);
-						commentsBuilder.append("\n");
-					}
-				}
-				else
-				{
-					if (!READDATA)
-					{
-	
-						try (Scanner t = new Scanner(line))
-						{
-							String firstToken = t.next().toUpperCase();
-		
-							if (firstToken.equals("@RELATION"))
-							{
-								QuoteParser u = new QuoteParser(line);
-								u.next();
-								relationName = u.next().replace("'", "").replace("\"", "");
-																
-								if (relationName.toUpperCase().contains("-C"))
-								{
-									QuoteParser p = new QuoteParser(relationName);
-									while (!p.next().toUpperCase().equals("-C"))
-									{
-										
-									}
-									String labelColsStr = p.next();
-									
-									// Get the number of label columns.
-									numLabelColumns = Integer.parseInt(labelColsStr);
-									if (numLabelColumns > 0)
-										throw new IllegalArgumentException("Label columns at the beginning of "
-												+ "a dataset are not supported, so arguments given to -c in"
-												+ " arff files must be negative. This is necessary to make dataset compatible"
-												+ " with Meka.");
-									// I need to be able to add a negative sign, and ignore it, to make my datasets compatible with Meka.
-									numLabelColumns = Math.abs(numLabelColumns);
-								}
-								
-								if (relationName.contains(":"))
-								{
-									relationName = relationName.split(":")[0];
-								}
-								
-								t.nextLine();
-							}
-		
-							if (firstToken.equals("@ATTRIBUTE"))
-							{
-								TreeMap<String, Integer> ste = new TreeMap<String, Integer>();
-								strToEnum.add(ste);
-								TreeMap<Integer, String> ets = new TreeMap<Integer, String>();
-								enumToStr.add(ets);
-		
-								QuoteParser parser = new QuoteParser(line);
-								parser.next();
-								String attributeName = parser.next();
-								if (attributeName.equals("?"))
-									throw new IllegalArgumentException("\"?\" is a reserved token. Found in line: " + line);
-								attrNames.add(attributeName);
-	
-								int vals = 0;
-								String type = parser.next().toUpperCase();
-								if (type.equals("REAL")
-										|| type.equals("CONTINUOUS")
-										|| type.equals("INTEGER")
-										|| type.equals("NUMERIC"))
-								{
-								} 
-								else
-								{
-									if (!line.contains("{"))
-										throw new RuntimeException("Missing \"{\" from line: " + line );
-									if (!line.contains("}"))
-										throw new RuntimeException("Missing \"}\"");
-									String values = line.substring(
-											line.indexOf("{") + 1,
-											line.indexOf("}"));
-									try (Scanner v = new Scanner(values))
-									{
-										v.useDelimiter(",");
-										while (v.hasNext())
-										{
-											String value = v.next().trim();
-											if (value.length() > 0)
-											{
-												if (value.equals("?"))
-													throw new IllegalArgumentException("\"?\" is a reserved token. Found in line: " + line);
-												ste.put(value, new Integer(
-														vals));
-												ets.put(new Integer(vals),
-														value);
-												vals++;
-											}
-										}
-									}
-								}
-							}
-							if (firstToken.equals("@DATA"))
-							{
-								READDATA = true;
-							}
-						}
-					} 
-					else
-					{
-						loadDataRow(line, Collections.emptyList());
-					}
-				}
-			}
+			throw new RuntimeException(e);
 		}
-		comments = commentsBuilder.toString();
-		validate();
 	}
-		
-	/**
-	 * Throws an exception if this matrix is not valid.
-	 */
-	private void validate()
+	
+	void validate()
 	{
 		// Check for duplicate attribute names.
 		Set<String> prev = new TreeSet<>();
 		int i = 0;
-		for (String name : attrNames)
+		for (int c = 0; c < cols(); c++)
 		{
+			String name = getAttrName(c);
 			if (prev.contains(name))
 				throw new IllegalArgumentException("Dupilcate attribute names are not allowed in arff"
 						+ " format. Duplicate name: " + name + ", index: " + i);
@@ -710,7 +764,7 @@ public class Matrix implements Serializable, Iterable<Vector>
 						throw new IllegalArgumentException("Cannot parse attribute index \"" + parts[0] + "\" from line: " + line);
 					}
 					
-					if (attrIndex >= strToEnum.size())
+					if (attrIndex >= cols())
 					{
 						throw new IllegalArgumentException("Index \"" + attrIndex + "\" is out of range in line: " + line);
 					}
@@ -728,7 +782,7 @@ public class Matrix implements Serializable, Iterable<Vector>
 					}
 					else
 					{
-						Integer attrValueAsInteger = strToEnum.get(attrIndex).get(parts[1]);
+						Integer attrValueAsInteger = schema.get(attrIndex).getValueIndex(parts[1]);
 						if (attrValueAsInteger == null)
 						{
 							throw new IllegalArgumentException("Unrecognized attribute value \"" + parts[1] 
@@ -783,7 +837,7 @@ public class Matrix implements Serializable, Iterable<Vector>
 					int vals;
 					try
 					{
-						vals = enumToStr.get(curPosInAttributeNames).size();
+						vals = getValueCount(curPosInAttributeNames);
 					}
 					catch(IndexOutOfBoundsException e)
 					{
@@ -807,14 +861,14 @@ public class Matrix implements Serializable, Iterable<Vector>
 					// of that value in the "attributeValue" structure
 					else
 					{
-						if (!strToEnum.get(curPosInAttributeNames).containsKey(textValue))
+						if (!schema.get(curPosInAttributeNames).containsValue(textValue))
 						{
 							throw new RuntimeException(String.format(
 									"Unknown attribute value \"%s\" for attribute \"%s\" in line:\n%s",
 									textValue, getAttrName(curPosInAttributeNames), line));
 						}
-						doubleValue = strToEnum.get(curPosInAttributeNames)
-								.get(textValue);
+						doubleValue = schema.get(curPosInAttributeNames)
+								.getValueIndex(textValue);
 						if (doubleValue == -1)
 						{
 							throw new RuntimeException(
@@ -863,6 +917,22 @@ public class Matrix implements Serializable, Iterable<Vector>
 
 		validate();
 	}
+
+	/**
+	 * Loads a dataset written by BinaryDataset.write. The values are memory-mapped instead of
+	 * being copied onto the heap, so this matrix will be read-only (see StorageType.MAPPED).
+	 */
+	public void loadFromBinaryFile(String filename)
+	{
+		try
+		{
+			BinaryDataset.load(this, filename);
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
 	
 	/**
 	 * @return Columns that should be ignored when reading the data file.
@@ -870,14 +940,11 @@ public class Matrix implements Serializable, Iterable<Vector>
 	 */
 	private List<Integer> loadNamesFile(String namesFilename) throws FileNotFoundException
 	{
-		data = new ArrayList<>();
-		attrNames = new ArrayList<String>();
-		strToEnum = new ArrayList<TreeMap<String, Integer>>();
-		enumToStr = new ArrayList<TreeMap<Integer, String>>();
+		data = data.emptyCopy();
+		stats = null;
+		List<AttributeSchema.Attribute> attributes = new ArrayList<>();
 		
-		ArrayList<String> output_attr_name = new ArrayList<String>();
-		ArrayList<TreeMap<String, Integer>> output_str_to_enum = new ArrayList<TreeMap<String, Integer>>();
-		ArrayList<TreeMap<Integer, String>> output_enum_to_str = new ArrayList<TreeMap<Integer, String>>();
+		List<AttributeSchema.Attribute> outputAttributes = new ArrayList<>();
 		int outputCols = 1;
 		int lineNumber = 0;
 		List<Integer> ignoredColumns = new ArrayList<Integer>();
@@ -904,22 +971,11 @@ public class Matrix implements Serializable, Iterable<Vector>
 						outputCols = Integer.parseInt(line);
 					}
 				}
-				else if (output_attr_name.size() < outputCols)
+				else if (outputAttributes.size() < outputCols)
 				{
 					// Load the output column meta-data.
-					String colName = "class" + (output_attr_name.size() + 1);
-					output_attr_name.add(colName);
-					TreeMap<String, Integer> ste = new TreeMap<String, Integer>();
-					TreeMap<Integer, String> ets = new TreeMap<Integer, String>();
-					String[] attrValues = line.split(",");
-					for (int i = 0; i < attrValues.length; i++)
-					{
-						ste.put(attrValues[i], i);
-						ets.put(i, attrValues[i]);
-					}
-					
-					output_str_to_enum.add(ste);
-					output_enum_to_str.add(ets);
+					String colName = "class" + (outputAttributes.size() + 1);
+					outputAttributes.add(new AttributeSchema.Attribute(colName, Arrays.asList(line.split(","))));
 				}
 				else
 				{
@@ -930,38 +986,23 @@ public class Matrix implements Serializable, Iterable<Vector>
 					
 					if (parts[1].equals("ignore"))
 					{
-						ignoredColumns.add(attrNames.size() + ignoredColumns.size());
+						ignoredColumns.add(attributes.size() + ignoredColumns.size());
 					}
 					else if (parts[1].equals("continuous"))
 					{
-						attrNames.add(parts[0]);	
-						strToEnum.add(new TreeMap<String, Integer>());
-						enumToStr.add(new TreeMap<Integer, String>());
+						attributes.add(new AttributeSchema.Attribute(parts[0]));
 					}
 					else
 					{				
-						attrNames.add(parts[0]);
-						
 						// Get the attribute names.
-						TreeMap<String, Integer> ste = new TreeMap<String, Integer>();
-						TreeMap<Integer, String> ets = new TreeMap<Integer, String>();
-						String[] attrValues = parts[1].split(",");
-						for (int i = 0; i < attrValues.length; i++)
-						{
-							ste.put(attrValues[i], i);
-							ets.put(i, attrValues[i]);
-						}
-						
-						strToEnum.add(ste);
-						enumToStr.add(ets);
+						attributes.add(new AttributeSchema.Attribute(parts[0], Arrays.asList(parts[1].split(","))));
 					}
 				}
 			}
 		}
 		
-		attrNames.addAll(output_attr_name);
-		strToEnum.addAll(output_str_to_enum);
-		enumToStr.addAll(output_enum_to_str);
+		attributes.addAll(outputAttributes);
+		schema = new AttributeSchema(attributes);
 		
 		return ignoredColumns;
 	}
@@ -994,38 +1035,93 @@ public class Matrix implements Serializable, Iterable<Vector>
 		}
 	}
 
+	/**
+	 * Reads matrices serialized by this version, and by versions before rows were kept in a
+	 * MatrixStorage and attributes in an AttributeSchema, so that older models can be loaded.
+	 */
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+	{
+		ObjectInputStream.GetField fields = in.readFields();
+		relationName = (String)fields.get("relationName", null);
+		comments = (String)fields.get("comments", null);
+		numCatagoricalCols = (List<Integer>)fields.get("numCatagoricalCols", null);
+		numLabelColumns = fields.get("numLabelColumns", 1);
+
+		Object rows = fields.get("data", null);
+		if (rows instanceof MatrixStorage)
+		{
+			data = (MatrixStorage)rows;
+		}
+		else
+		{
+			// Older versions stored a list of rows.
+			data = new RowListStorage();
+			for (Vector row : (List<Vector>)rows)
+				data.add(row);
+		}
+
+		schema = (AttributeSchema)fields.get("schema", null);
+		if (schema == null)
+		{
+			// Older versions stored attribute names and maps between nominal values and their names.
+			List<String> attrNames = (List<String>)fields.get("attrNames", null);
+			List<Map<Integer, String>> enumToStr = (List<Map<Integer, String>>)fields.get("enumToStr", null);
+			List<AttributeSchema.Attribute> attributes = new ArrayList<>();
+			for (int c = 0; c < attrNames.size(); c++)
+				attributes.add(new AttributeSchema.Attribute(attrNames.get(c), 
+						new ArrayList<>(enumToStr.get(c).values())));
+			schema = new AttributeSchema(attributes);
+		}
+	}
+
 	// Returns the number of rows in the matrix
 	public int rows()
 	{
-		return data.size();
+		return data.rows();
 	}
 
 	// Returns the number of columns (or attributes) in the matrix
 	public int cols()
 	{
-		return attrNames.size();
+		return schema.size();
 	}
 
 	/**
 	 * Returns the specified row. The values in the result must not be changed because
 	 * an array of values for an instance might be shared by other parts of the code.
+	 * If this matrix stores its values by column, the result is a view which is only valid until
+	 * rows are added, removed, or reordered. Use new Vector(row(r)) to keep a row longer than that.
+	 * 
+	 * Because the instance weight of the result may be changed, cached column statistics are
+	 * discarded. Use get(r, c) to read values without doing that.
 	 * @param r The index of the row to return.
 	 */
 	public Vector row(int r)
 	{
-		return data.get(r);
+		stats = null;
+		return data.row(r);
+	}
+
+	/**
+	 * Returns the value in the specified row and column. This avoids creating a row view
+	 * when this matrix stores its values by column.
+	 */
+	public double get(int r, int c)
+	{
+		return data.get(r, c);
 	}
 
 	// Returns the name of the specified attribute
 	public String getAttrName(int col)
 	{
-		return attrNames.get(col);
+		return schema.get(col).getName();
 	}
 
 	// Returns the name of the specified value
 	public String getAttrValueName(int attr, int val)
 	{
-		String result = enumToStr.get(attr).get(val);
+		String result = schema.get(attr).getValueName(val);
 		if (result == null)
 			throw new IndexOutOfBoundsException(
 					String.format("Attribute \"%s\" does not have the value %s.", getAttrName(attr), val));
@@ -1037,7 +1133,7 @@ public class Matrix implements Serializable, Iterable<Vector>
 	 */
 	public int getAttrValueIndex(int attr, String attrValueName)
 	{
-		return strToEnum.get(attr).get(attrValueName);
+		return schema.get(attr).getValueIndex(attrValueName);
 	}
 
 	/**
@@ -1046,7 +1142,7 @@ public class Matrix implements Serializable, Iterable<Vector>
 	 */
 	public int getValueCount(int col)
 	{
-		return enumToStr.get(col).size();
+		return schema.get(col).getValueCount();
 	}
 	
 	public boolean isContinuous(int column) 
@@ -1059,7 +1155,7 @@ public class Matrix implements Serializable, Iterable<Vector>
 		int count = 0;
 		for (int r = 0; r < rows(); r++)
 		{
-			if (row(r).get(column) == value)
+			if (data.get(r, column) == value)
 				count++;
 		}
 		return count;
@@ -1073,10 +1169,10 @@ public class Matrix implements Serializable, Iterable<Vector>
 		for (int n = rows(); n > 0; n--)
 		{
 			int i = rand.nextInt(n);
-			Vector tmp = data.get(n - 1);
-			data.set(n - 1, data.get(i));
-			data.set(i, tmp);
+			data.swap(n - 1, i);
 		}
+		// Means are summed in row order, so they must be computed again.
+		stats = null;
 	}
 
 	public void shuffle(Random rand, Matrix buddy)
@@ -1084,64 +1180,52 @@ public class Matrix implements Serializable, Iterable<Vector>
 		for (int n = rows(); n > 0; n--)
 		{
 			int i = rand.nextInt(n);
+			data.swap(n - 1, i);
+			buddy.data.swap(n - 1, i);
+		}
+		stats = null;
+		buddy.stats = null;
+	}
 
-			Vector tmp = data.get(n - 1);
-			data.set(n - 1, data.get(i));
-			data.set(i, tmp);
-
-			tmp = buddy.data.get(n - 1);
-			buddy.data.set(n - 1, buddy.data.get(i));
-			buddy.data.set(i, tmp);
+	/**
+	 * Returns the column statistics, which are computed as they are needed. The field is read once,
+	 * so a concurrent call to clearStatistics cannot make this return null.
+	 */
+	private ColumnStatistics statistics()
+	{
+		ColumnStatistics result = stats;
+		if (result == null)
+		{
+			result = new ColumnStatistics(cols());
+			stats = result;
 		}
+		return result;
+	}
+
+	/**
+	 * Discards cached column statistics. This must be called when data is replaced.
+	 */
+	void clearStatistics()
+	{
+		stats = null;
 	}
 
 	// Returns the mean of the specified column
 	public double findMean(int col)
 	{
-		double sum = 0;
-		int count = 0;
-		for (int i = 0; i < rows(); i++)
-		{
-			double v = row(i).get(col);
-			if (!Vector.isUnknown(v))
-			{
-				sum += v;
-				count++;
-			}
-		}
-		return sum / count;
+		return statistics().mean(data, col);
 	}
 
 	// Returns the min value in the specified column
 	public double findMin(int col)
 	{
-		double m = Vector.getUnknownValue();
-		for (int i = 0; i < rows(); i++)
-		{
-			double v = row(i).get(col);
-			if (!Vector.isUnknown(v))
-			{
-				if (Vector.isUnknown(m) || v < m)
-					m = v;
-			}
-		}
-		return m;
+		return statistics().min(data, col);
 	}
 
 	// Returns the max value in the specified column
 	public double findMax(int col)
 	{
-		double m = Vector.getUnknownValue();
-		for (int i = 0; i < rows(); i++)
-		{
-			double v = row(i).get(col);
-			if (!Vector.isUnknown(v))
-			{
-				if (Vector.isUnknown(m) || v > m)
-					m = v;
-			}
-		}
-		return m;
+		return statistics().max(data, col);
 	}
 
 	/**
@@ -1149,32 +1233,15 @@ public class Matrix implements Serializable, Iterable<Vector>
 	 */
 	public double findMode(int col)
 	{
-		TreeMap<Double, Integer> tm = new TreeMap<Double, Integer>();
-		for (int i = 0; i < rows(); i++)
-		{
-			double v = row(i).get(col);
-			if (!Vector.isUnknown(v))
-			{
-				Integer count = tm.get(v);
-				if (count == null)
-					tm.put(v, new Integer(1));
-				else
-					tm.put(v, new Integer(count.intValue() + 1));
-			}
-		}
-		int maxCount = 0;
-		double val = Vector.getUnknownValue();
-		Iterator<Entry<Double, Integer>> it = tm.entrySet().iterator();
-		while (it.hasNext())
-		{
-			Entry<Double, Integer> e = it.next();
-			if (e.getValue() > maxCount)
-			{
-				maxCount = e.getValue();
-				val = e.getKey();
-			}
-		}
-		return val;
+		return statistics().mode(data, col);
+	}
+
+	/**
+	 * Returns the number of unknown values in the specified column.
+	 */
+	public int countUnknowns(int col)
+	{
+		return statistics().unknownCount(data, col);
 	}
 	
 	/**
@@ -1271,15 +1338,7 @@ public class Matrix implements Serializable, Iterable<Vector>
             
     public boolean containsUnknowns()
     {
-    	for (Vector vec : this)
-    	{
-    		for (int d = 0; d < vec.size(); d++)
-    		{
-    			if (Vector.isUnknown(vec.get(d)))
-    				return true;
-    		}
-    	}
-    	return false;
+    	return statistics().containsUnknowns(data);
     }
     
     public String getRelationName()
@@ -1335,7 +1394,7 @@ public class Matrix implements Serializable, Iterable<Vector>
 			{
 				if (row(r).get(this.cols() - 1) == output)
 				{
-					rowsWithOutput.add(data.get(r));
+					rowsWithOutput.add(row(r));
 				}
 			}
 			
@@ -1363,17 +1422,37 @@ public class Matrix implements Serializable, Iterable<Vector>
 		return new Pair<>(inputs, labels);
 	}
 
+	/**
+	 * Like splitInputsAndLabels, but the results are views of this matrix (see
+	 * Matrix(Matrix, int[], int, int)), so nothing is copied. This matrix must not be changed
+	 * while the results are in use.
+	 * @return The first element is the inputs. The second is the labels.
+	 */
+	public Pair<Matrix> viewInputsAndLabels()
+	{
+		int[] rowIndexes = new int[rows()];
+		for (int r = 0; r < rowIndexes.length; r++)
+			rowIndexes[r] = r;
+		int inputCols = this.cols() - this.getNumLabelColumns();
+		Matrix inputs = new Matrix(this, rowIndexes, 0, inputCols);
+		Matrix labels = new Matrix(this, rowIndexes, inputCols, this.getNumLabelColumns());
+		return new Pair<>(inputs, labels);
+	}
+
 
     @Override
     public String toString()
 	{ 		
-    	StringBuilder result = metaDataToString();
-		result.append("@DATA\n");
-		for (int i = 0; i < rows(); i++)
-		{
-			result.append(rowToString(i));
-			result.append("\n");
-		}
+    	StringWriter result = new StringWriter();
+    	try
+    	{
+    		writeArff(result, false);
+    	}
+    	catch (IOException e)
+    	{
+    		// StringWriter does not throw IOException.
+    		throw new RuntimeException(e);
+    	}
 		return result.toString();
 	}
 
@@ -1383,15 +1462,57 @@ public class Matrix implements Serializable, Iterable<Vector>
      */
     public String toStringSparse()
 	{
-    	StringBuilder result = metaDataToString();
- 		result.append("@DATA\n");
+    	StringWriter result = new StringWriter();
+    	try
+    	{
+    		writeArff(result, true);
+    	}
+    	catch (IOException e)
+    	{
+    		throw new RuntimeException(e);
+    	}
+		return result.toString();
+	}
+
+    /**
+     * Writes this matrix to the given writer in the arff format. Rows are written one at a time,
+     * so unlike toString, the whole file is never held in memory. The writer is not closed.
+     */
+    public void writeArff(Writer out) throws IOException
+    {
+    	writeArff(out, false);
+    }
+
+    /**
+     * Writes this matrix to the given writer in the arff format. The writer is not closed.
+     * @param sparse If true, rows are written in the sparse format (see toStringSparse).
+     */
+    public void writeArff(Writer out, boolean sparse) throws IOException
+    {
+    	out.append(metaDataToString());
+    	out.write("@DATA\n");
 		for (int i = 0; i < rows(); i++)
 		{
-			result.append(rowToStringSparse(row(i)));
-			result.append("\n");
+			out.write(sparse ? rowToStringSparse(row(i)) : rowToString(i));
+			out.write("\n");
 		}
-		return result.toString();
-	}
+    }
+
+    /**
+     * Writes this matrix to an arff file, replacing the file if it exists.
+     * @param compress If true, the file is compressed with gzip. Such files can be loaded with
+     * loadFromArffFile if their names end with ".gz".
+     */
+    public void writeArff(Path path, boolean compress) throws IOException
+    {
+    	try (OutputStream stream = Files.newOutputStream(path);
+    			Writer out = new BufferedWriter(new OutputStreamWriter(
+    					compress ? new GZIPOutputStream(stream, WRITE_BUFFER_SIZE) : stream, Charset.defaultCharset()),
+    					WRITE_BUFFER_SIZE))
+    	{
+    		writeArff(out, false);
+    	}
+    }
     
     private StringBuilder metaDataToString()
     {
@@ -1410,16 +1531,16 @@ public class Matrix implements Serializable, Iterable<Vector>
     		result.append(String.format("@RELATION %s\n", relationName));
     	}
     	result.append("\n");
-		for (int i = 0; i < attrNames.size(); i++)
+		for (int i = 0; i < cols(); i++)
 		{
-			if (Helper.iteratorToList(new QuoteParser(attrNames.get(i))).size() > 1)
+			if (Helper.iteratorToList(new QuoteParser(getAttrName(i))).size() > 1)
 			{
 				// This attribute name will be parsed into multiple tokens, meaning it has unqoated white space.
-				result.append("@ATTRIBUTE \"" + attrNames.get(i) + "\"\t");
+				result.append("@ATTRIBUTE \"" + getAttrName(i) + "\"\t");
 			}
 			else
 			{
-				result.append("@ATTRIBUTE " + attrNames.get(i) + "\t");
+				result.append("@ATTRIBUTE " + getAttrName(i) + "\t");
 			}
 			
 			int vals = getValueCount(i);
@@ -1432,7 +1553,7 @@ public class Matrix implements Serializable, Iterable<Vector>
 				{
 					if (j > 0)
 						result.append(", ");
-					result.append(enumToStr.get(i).get(j));
+					result.append(schema.get(i).getValueName(j));
 				}
 				result.append("}\n");
 			}
@@ -1469,7 +1590,7 @@ public class Matrix implements Serializable, Iterable<Vector>
 			}
 			else
 			{
-				String valueName = enumToStr.get(j).get((int) rowToPrint.get(j));
+				String valueName = schema.get(j).getValueName((int) rowToPrint.get(j));
 				if (valueName == null)
 				{
 					if (Vector.isUnknown(rowToPrint.get(j)))
@@ -1522,7 +1643,7 @@ public class Matrix implements Serializable, Iterable<Vector>
 				}
 				else
 				{
-					String valueName = enumToStr.get(j).get((int) rowToPrint.get(j));
+					String valueName = schema.get(j).getValueName((int) rowToPrint.get(j));
 					valueName = valueName == null ? "?" : valueName;
 					result.append(valueName);
 				}
@@ -1550,13 +1671,14 @@ public class Matrix implements Serializable, Iterable<Vector>
 				@Override
 				public boolean hasNext()
 				{
-					return nextIndex < data.size();
+					return nextIndex < data.rows();
 				}
 
 				@Override
 				public Vector next()
 				{
-					Vector result = data.get(nextIndex);
+					stats = null;
+					Vector result = data.row(nextIndex);
 					nextIndex++;
 					return result;
 				}
@@ -1574,13 +1696,62 @@ public class Matrix implements Serializable, Iterable<Vector>
 	 */
 	public boolean hasInstanceWeightsNot1()
 	{
-		for (Vector v: data)
+		return statistics().hasWeightsNot1(data);
+	}
+
+	/**
+	 * Sets the storage type used by new matrices which are not copied from another matrix.
+	 */
+	public static void setDefaultStorageType(StorageType type)
+	{
+		if (type == null)
+			throw new IllegalArgumentException("type cannot be null.");
+		if (type == StorageType.MAPPED)
+			throw new IllegalArgumentException("Mapped storage can only be created by loading a binary dataset.");
+		defaultStorageType = type;
+	}
+
+	public static StorageType getDefaultStorageType()
+	{
+		return defaultStorageType;
+	}
+
+	public StorageType getStorageType()
+	{
+		return data.getType();
+	}
+
+	/**
+	 * Converts this matrix to store its rows using the given storage type. Rows previously
+	 * returned by row(int) should not be used after this. This can be used to make a writable
+	 * copy of a matrix loaded from a binary dataset.
+	 */
+	public void setStorageType(StorageType type)
+	{
+		if (type == getStorageType())
+			return;
+		MatrixStorage newData = createStorage(type);
+		for (int r = 0; r < data.rows(); r++)
 		{
-			if (v.getWeight() != 1.0)
-			{
-				return true;
-			}
+			newData.add(data.row(r));
+		}
+		data = newData;
+	}
+
+	private static MatrixStorage createStorage(StorageType type)
+	{
+		switch (type)
+		{
+		case ROWS:
+			return new RowListStorage();
+		case COLUMNS:
+			return new ColumnarStorage();
+		case COMPACT:
+			return new CompactStorage();
+		case MAPPED:
+			throw new IllegalArgumentException("Mapped storage can only be created by loading a binary dataset.");
+		default:
+			throw new IllegalArgumentException("Unrecognized storage type: " + type);
 		}
-		return false;
 	}
 }
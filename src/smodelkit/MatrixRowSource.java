@@ -0,0 +1,51 @@
+package smodelkit;
+
+import smodelkit.util.Pair;
+
+/**
+ * A RowSource which reads chunks of inputs and labels which are already in memory. Chunks are
+ * views of the given matrices where possible (see Matrix.viewRows), so they are not copied.
+ *
+ * @author joseph
+ *
+ */
+public class MatrixRowSource extends RowSource
+{
+	private final Matrix inputs;
+	private final Matrix labels;
+	private final int chunkSize;
+	// The first row of the next chunk.
+	private int next;
+
+	/**
+	 * @param chunkSize The maximum number of rows in each chunk.
+	 */
+	public MatrixRowSource(Matrix inputs, Matrix labels, int chunkSize)
+	{
+		if (inputs.rows() != labels.rows())
+			throw new IllegalArgumentException("The inputs and labels must have the same number of rows.");
+		if (chunkSize < 1)
+			throw new IllegalArgumentException("chunkSize must be at least 1.");
+		this.inputs = inputs;
+		this.labels = labels;
+		this.chunkSize = chunkSize;
+	}
+
+	@Override
+	public Pair<Matrix> nextChunk()
+	{
+		if (next >= inputs.rows())
+			return null;
+		int end = Math.min(next + chunkSize, inputs.rows());
+		Pair<Matrix> result = new Pair<>(inputs.viewRows(next, end), labels.viewRows(next, end));
+		next = end;
+		return result;
+	}
+
+	@Override
+	public void reset()
+	{
+		next = 0;
+	}
+
+}
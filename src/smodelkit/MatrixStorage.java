@@ -0,0 +1,53 @@
+package smodelkit;
+
+import java.io.Serializable;
+
+/**
+ * Stores the instance rows of a Matrix and their weights. Matrix validates rows before
+ * giving them to a storage, so implementations only need to store and retrieve values.
+ *
+ * @author joseph
+ *
+ */
+abstract class MatrixStorage implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	abstract Matrix.StorageType getType();
+
+	/**
+	 * Creates a new empty storage of the same type as this one.
+	 */
+	abstract MatrixStorage emptyCopy();
+
+	abstract int rows();
+
+	/**
+	 * Returns the specified row. Depending on the implementation, this may be a view into
+	 * this storage, which is only valid until rows are added, removed, or reordered.
+	 */
+	abstract Vector row(int r);
+
+	abstract double get(int r, int c);
+
+	abstract double getWeight(int r);
+
+	/**
+	 * Adds a copy of the given row to the end of this storage.
+	 */
+	abstract void add(Vector row);
+
+	abstract void remove(int r);
+
+	abstract void swap(int r1, int r2);
+
+	abstract void removeColumn(int c);
+
+	/**
+	 * Appends num columns from source, starting at column start, to the end of every row. If
+	 * this storage has no rows, then rows are created with the instance weights from source.
+	 */
+	abstract void appendColumns(MatrixStorage source, int start, int num);
+
+	abstract void clear();
+}
@@ -2,9 +2,7 @@ package smodelkit;
 
 import static java.lang.System.out;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -32,11 +30,11 @@ public class MoveClassesToBeginningOfAttributes
 				
 		out.println("#columns after: " + data.cols());
 
-		try (PrintWriter w = new PrintWriter(outputFilename))
+		try
 		{
-			w.write(result.toString());
+			result.writeArff(Paths.get(outputFilename), false);
 		}
-		catch (FileNotFoundException e)
+		catch (IOException e)
 		{
 			throw new RuntimeException(e);
 		}
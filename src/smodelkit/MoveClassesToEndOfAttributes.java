@@ -1,8 +1,7 @@
 package smodelkit;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.nio.file.Paths;
 
 /**
  * Moves class attributes from the front to the back of of the list of attributes in an arff file.
@@ -24,11 +23,11 @@ public class MoveClassesToEndOfAttributes
 		result.copyColumns(data, data.getNumLabelColumns(), data.cols() - data.getNumLabelColumns());
 		result.copyColumns(data, 0, data.getNumLabelColumns());
 				
-		try (PrintWriter w = new PrintWriter(outputFilename))
+		try
 		{
-			w.write(result.toString());
+			result.writeArff(Paths.get(outputFilename), false);
 		}
-		catch (FileNotFoundException e)
+		catch (IOException e)
 		{
 			throw new RuntimeException(e);
 		}
@@ -0,0 +1,119 @@
+package smodelkit;
+
+import java.util.ArrayList;
+
+/**
+ * Stores each row of a Matrix as its own Vector. This is the default storage.
+ *
+ * @author joseph
+ *
+ */
+class RowListStorage extends MatrixStorage
+{
+	private static final long serialVersionUID = 1L;
+
+	private ArrayList<Vector> data;
+
+	RowListStorage()
+	{
+		data = new ArrayList<>();
+	}
+
+	@Override
+	Matrix.StorageType getType()
+	{
+		return Matrix.StorageType.ROWS;
+	}
+
+	@Override
+	MatrixStorage emptyCopy()
+	{
+		return new RowListStorage();
+	}
+
+	@Override
+	int rows()
+	{
+		return data.size();
+	}
+
+	@Override
+	Vector row(int r)
+	{
+		return data.get(r);
+	}
+
+	@Override
+	double get(int r, int c)
+	{
+		return data.get(r).get(c);
+	}
+
+	@Override
+	double getWeight(int r)
+	{
+		return data.get(r).getWeight();
+	}
+
+	@Override
+	void add(Vector row)
+	{
+		// The internal arrays of Vectors are immutable, so they can be shared. Sparse rows stay sparse.
+		if (row instanceof SparseVector)
+			data.add(new SparseVector((SparseVector)row));
+		else
+			data.add(new Vector(row));
+	}
+
+	@Override
+	void remove(int r)
+	{
+		data.remove(r);
+	}
+
+	@Override
+	void swap(int r1, int r2)
+	{
+		Vector tmp = data.get(r1);
+		data.set(r1, data.get(r2));
+		data.set(r2, tmp);
+	}
+
+	@Override
+	void removeColumn(int c)
+	{
+		for (Vector row : data)
+		{
+			row.remove(c);
+		}
+	}
+
+	@Override
+	void appendColumns(MatrixStorage source, int start, int num)
+	{
+		if (data.size() > 0)
+		{
+			for(int r = 0; r < source.rows(); r++)
+			{
+				double[] toAdd = new double[num];
+				for (int c = 0; c < toAdd.length; c++)
+					toAdd[c] = source.get(r, start + c);
+				data.get(r).addAll(new Vector(toAdd));
+			}
+		}
+		else
+		{
+			for(int r = 0; r < source.rows(); r++)
+			{
+				add(source.row(r).subVector(start, start + num));
+			}
+		}
+	}
+
+	@Override
+	void clear()
+	{
+		data.clear();
+	}
+
+}
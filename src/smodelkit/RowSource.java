@@ -0,0 +1,83 @@
+package smodelkit;
+
+import java.io.Closeable;
+
+import smodelkit.util.Pair;
+
+/**
+ * A source of inputs and labels which are read a chunk of rows at a time, so that datasets which
+ * do not fit in memory can still be evaluated (see Evaluator.runEvaluators(RowSource, ...)) and
+ * used to train learners which can train incrementally (see SupervisedLearner.train(RowSource)).
+ * Only the current chunk needs to be kept in memory.
+ *
+ * A source can be read more than once by calling reset, which lets learners make several passes
+ * (epochs) over it.
+ *
+ * @author joseph
+ *
+ */
+public abstract class RowSource implements Closeable
+{
+	/**
+	 * Returns the inputs and labels of the next chunk of rows, or null if there are no more rows.
+	 * The chunk is only valid until the next call to nextChunk or reset.
+	 */
+	public abstract Pair<Matrix> nextChunk();
+
+	/**
+	 * Starts reading again from the first row.
+	 */
+	public abstract void reset();
+
+	/**
+	 * Releases any files held by this source. The default does nothing.
+	 */
+	@Override
+	public void close()
+	{
+	}
+
+	/**
+	 * Finds the columns of the inputs and labels by reading the first chunk. The source is reset
+	 * first.
+	 * @return The inputs and labels, with no rows.
+	 */
+	public Pair<Matrix> readColumns()
+	{
+		reset();
+		Pair<Matrix> first = nextChunk();
+		if (first == null)
+			throw new IllegalArgumentException("The row source has no rows.");
+		Matrix inputs = new Matrix();
+		inputs.copyMetadata(first.getFirst());
+		Matrix labels = new Matrix();
+		labels.copyMetadata(first.getSecond());
+		return new Pair<>(inputs, labels);
+	}
+
+	/**
+	 * Reads all of the remaining rows into memory. This is for learners which can only train on a
+	 * whole dataset.
+	 * @return The inputs and labels.
+	 */
+	public Pair<Matrix> readAll()
+	{
+		Matrix inputs = null;
+		Matrix labels = null;
+		for (Pair<Matrix> chunk = nextChunk(); chunk != null; chunk = nextChunk())
+		{
+			if (inputs == null)
+			{
+				inputs = new Matrix();
+				inputs.copyMetadata(chunk.getFirst());
+				labels = new Matrix();
+				labels.copyMetadata(chunk.getSecond());
+			}
+			inputs.addRows(chunk.getFirst(), chunk.getFirst().rows());
+			labels.addRows(chunk.getSecond(), chunk.getSecond().rows());
+		}
+		if (inputs == null)
+			throw new IllegalArgumentException("The row source has no rows.");
+		return new Pair<>(inputs, labels);
+	}
+}
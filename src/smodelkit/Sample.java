@@ -13,7 +13,8 @@ public class Sample
 {
 	/**
 	 * Samples a given dataset with replacement. The size of the result is specified by a
-	 * percent of the size of the original dataset.
+	 * percent of the size of the original dataset. The results are views of the given matrices
+	 * (see Matrix.viewRows), so rows are not copied.
 	 * @param inputs
 	 * @param labels
 	 * @param percent
@@ -26,27 +27,20 @@ public class Sample
 			throw new IllegalArgumentException();
 		}
 		
-		Matrix[] result = new Matrix[2];
-		result[0] = new Matrix();
-		result[0].copyMetadata(inputs);
-		result[1] = new Matrix();
-		result[1].copyMetadata(labels);
-		
-		int resultRows = (int)Math.round(inputs.rows() * percent);
-		for (@SuppressWarnings("unused") int i : new Range(resultRows))
+		int[] rows = new int[(int)Math.round(inputs.rows() * percent)];
+		for (int i : new Range(rows.length))
 		{
-			int r = rand.nextInt(inputs.rows());
-			result[0].addRow(inputs.row(r));
-			result[1].addRow(labels.row(r));
+			rows[i] = rand.nextInt(inputs.rows());
 		}
 		
-		return result;
+		return new Matrix[] {inputs.viewRows(rows, null), labels.viewRows(rows, null)};
 	}
 	
 	/**
 	 * Like sampleWithReplacement except instead of duplicating instances in the results,
 	 * instance weights are used instead of creating duplicates in the results. The percent
-	 * is fixed at 100%.
+	 * is fixed at 100%. The results are views of the given matrices which only store the
+	 * selected row indexes and their weights (see Matrix.viewRows), so rows are not copied.
 	 * @param rand
 	 * @param inputs
 	 * @param labels
@@ -65,24 +59,26 @@ public class Sample
 			weights[rand.nextInt(weights.length)]++;
 		}
 		
-		Matrix baggedInputs = new Matrix();
-		Matrix baggedLabels = new Matrix();
-		baggedInputs.copyMetadata(inputs);
-		baggedLabels.copyMetadata(labels);
+		int numSelected = 0;
+		for (int w : weights)
+		{
+			if (w > 0)
+				numSelected++;
+		}
+		int[] rows = new int[numSelected];
+		double[] rowWeights = new double[numSelected];
+		int next = 0;
 		for (int i : new Range(weights.length))
 		{
 			if (weights[i] > 0)
 			{
-				Vector x = new Vector(inputs.row(i));
-				x.setWeight(weights[i]);
-				baggedInputs.addRow(x);
-				Vector y = new Vector(labels.row(i));
-				y.setWeight(weights[i]);
-				baggedLabels.addRow(y);
+				rows[next] = i;
+				rowWeights[next] = weights[i];
+				next++;
 			}
 		}
 		
-		return new Matrix[] {baggedInputs, baggedLabels};
+		return new Matrix[] {inputs.viewRows(rows, rowWeights), labels.viewRows(rows, rowWeights)};
 	}
 
 }
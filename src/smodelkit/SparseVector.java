@@ -0,0 +1,269 @@
+package smodelkit;
+
+import java.util.Arrays;
+
+/**
+ * A vector which only stores its non-zero values. Rows loaded from sparse arff data are stored
+ * this way. Code which can skip zeros, such as distance measures and weighted sums, can iterate
+ * over the stored values with getNonZeroCount, getNonZeroIndex, and getNonZeroValue.
+ *
+ * Unknown values are not zero, so they are always stored.
+ *
+ * Like the values array of Vector, the internal arrays are never modified after they are
+ * created, so they can be shared by copies.
+ *
+ * @author joseph
+ *
+ */
+public class SparseVector extends Vector
+{
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The indexes of stored values, in increasing order.
+	 */
+	private int[] indexes;
+	private double[] values;
+	private int size;
+	private double weight;
+
+	/**
+	 * @param size The number of values in this vector, including zeros.
+	 * @param indexes The indexes of non-zero values, in increasing order. This array is not copied.
+	 * @param values The values at the given indexes. This array is not copied.
+	 */
+	public SparseVector(int size, int[] indexes, double[] values, double weight)
+	{
+		if (indexes.length != values.length)
+			throw new IllegalArgumentException("indexes and values must have the same length.");
+		for (int k = 0; k < indexes.length; k++)
+		{
+			if (indexes[k] < 0 || indexes[k] >= size || (k > 0 && indexes[k] <= indexes[k - 1]))
+				throw new IllegalArgumentException("Indexes must be increasing and between 0 and size.");
+		}
+		if (weight < 0.0)
+			throw new IllegalArgumentException("Instance weights cannot be negative.");
+		this.indexes = indexes;
+		this.values = values;
+		this.size = size;
+		this.weight = weight;
+	}
+
+	public SparseVector(SparseVector other)
+	{
+		this.indexes = other.indexes;
+		this.values = other.values;
+		this.size = other.size;
+		this.weight = other.weight;
+	}
+
+	/**
+	 * Creates a sparse vector containing the values of the given vector.
+	 */
+	public static SparseVector fromVector(Vector v)
+	{
+		if (v instanceof SparseVector)
+			return new SparseVector((SparseVector)v);
+		int count = 0;
+		for (int i = 0; i < v.size(); i++)
+		{
+			if (v.get(i) != 0)
+				count++;
+		}
+		int[] indexes = new int[count];
+		double[] values = new double[count];
+		int k = 0;
+		for (int i = 0; i < v.size(); i++)
+		{
+			if (v.get(i) != 0)
+			{
+				indexes[k] = i;
+				values[k] = v.get(i);
+				k++;
+			}
+		}
+		return new SparseVector(v.size(), indexes, values, v.getWeight());
+	}
+
+	/**
+	 * Returns the number of stored values.
+	 */
+	public int getNonZeroCount()
+	{
+		return indexes.length;
+	}
+
+	/**
+	 * Returns the index of the k'th stored value.
+	 */
+	public int getNonZeroIndex(int k)
+	{
+		return indexes[k];
+	}
+
+	/**
+	 * Returns the k'th stored value.
+	 */
+	public double getNonZeroValue(int k)
+	{
+		return values[k];
+	}
+
+	@Override
+	public double get(int index)
+	{
+		if (index < 0 || index >= size)
+			throw new ArrayIndexOutOfBoundsException(index);
+		int k = Arrays.binarySearch(indexes, index);
+		return k >= 0 ? values[k] : 0.0;
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	@Override
+	public double getWeight()
+	{
+		return weight;
+	}
+
+	@Override
+	public void setWeight(double value)
+	{
+		if (value < 0.0)
+			throw new IllegalArgumentException("Instance weights cannot be negative. value: " + value);
+		weight = value;
+	}
+
+	/**
+	 * Sets the value at the specified index. The internal arrays are copied to avoid changing them.
+	 */
+	@Override
+	public void set(int index, double value)
+	{
+		if (index < 0 || index >= size)
+			throw new ArrayIndexOutOfBoundsException(index);
+		int k = Arrays.binarySearch(indexes, index);
+		if (k >= 0)
+		{
+			if (value == 0)
+			{
+				removeStored(k);
+			}
+			else
+			{
+				values = Arrays.copyOf(values, values.length);
+				values[k] = value;
+			}
+		}
+		else if (value != 0)
+		{
+			int insertAt = -(k + 1);
+			int[] newIndexes = new int[indexes.length + 1];
+			double[] newValues = new double[values.length + 1];
+			System.arraycopy(indexes, 0, newIndexes, 0, insertAt);
+			System.arraycopy(values, 0, newValues, 0, insertAt);
+			newIndexes[insertAt] = index;
+			newValues[insertAt] = value;
+			System.arraycopy(indexes, insertAt, newIndexes, insertAt + 1, indexes.length - insertAt);
+			System.arraycopy(values, insertAt, newValues, insertAt + 1, values.length - insertAt);
+			indexes = newIndexes;
+			values = newValues;
+		}
+	}
+
+	private void removeStored(int k)
+	{
+		int[] newIndexes = new int[indexes.length - 1];
+		double[] newValues = new double[values.length - 1];
+		System.arraycopy(indexes, 0, newIndexes, 0, k);
+		System.arraycopy(values, 0, newValues, 0, k);
+		System.arraycopy(indexes, k + 1, newIndexes, k, indexes.length - k - 1);
+		System.arraycopy(values, k + 1, newValues, k, values.length - k - 1);
+		indexes = newIndexes;
+		values = newValues;
+	}
+
+	/**
+	 * Returns a sparse vector containing the values from index "from" (inclusive) to index
+	 * "to" (exclusive).
+	 */
+	@Override
+	public SparseVector subVector(int from, int to)
+	{
+		if (from < 0 || to > size || from > to)
+			throw new IllegalArgumentException("Invalid range. from: " + from + ", to: " + to + ", size: " + size);
+		int start = lowerBound(from);
+		int end = lowerBound(to);
+		int[] newIndexes = new int[end - start];
+		for (int k = start; k < end; k++)
+			newIndexes[k - start] = indexes[k] - from;
+		return new SparseVector(to - from, newIndexes, Arrays.copyOfRange(values, start, end), weight);
+	}
+
+	/**
+	 * Returns the position in indexes of the first stored value with an index of at least i.
+	 */
+	private int lowerBound(int i)
+	{
+		int k = Arrays.binarySearch(indexes, i);
+		return k >= 0 ? k : -(k + 1);
+	}
+
+	@Override
+	public double[] toArray()
+	{
+		double[] result = new double[size];
+		for (int k = 0; k < indexes.length; k++)
+			result[indexes[k]] = values[k];
+		return result;
+	}
+
+	@Override
+	public void addAll(Vector v)
+	{
+		SparseVector other = fromVector(v);
+		int[] newIndexes = Arrays.copyOf(indexes, indexes.length + other.indexes.length);
+		double[] newValues = Arrays.copyOf(values, values.length + other.values.length);
+		for (int k = 0; k < other.indexes.length; k++)
+		{
+			newIndexes[indexes.length + k] = other.indexes[k] + size;
+			newValues[values.length + k] = other.values[k];
+		}
+		indexes = newIndexes;
+		values = newValues;
+		size += other.size;
+	}
+
+	@Override
+	public Vector concat(Vector v)
+	{
+		SparseVector result = new SparseVector(this);
+		result.addAll(v);
+		return result;
+	}
+
+	@Override
+	public void remove(int index)
+	{
+		if (index < 0 || index >= size)
+			throw new ArrayIndexOutOfBoundsException(index);
+		int k = Arrays.binarySearch(indexes, index);
+		if (k >= 0)
+			removeStored(k);
+		int start = lowerBound(index);
+		if (start < indexes.length)
+		{
+			// The arrays may be shared, so they must be copied before being changed.
+			int[] newIndexes = Arrays.copyOf(indexes, indexes.length);
+			for (int j = start; j < newIndexes.length; j++)
+				newIndexes[j]--;
+			indexes = newIndexes;
+		}
+		size--;
+	}
+
+}
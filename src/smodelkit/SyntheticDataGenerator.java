@@ -2,7 +2,7 @@ package smodelkit;
 
 import static java.lang.System.out;
 
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -20,7 +20,7 @@ import smodelkit.util.Range;
 
 public class SyntheticDataGenerator
 {	
-	public static void generateData() throws FileNotFoundException
+	public static void generateData() throws IOException
 	{
 		out.println("Generating synthetic data with only nominal values.");
 		Random rand = new Random();
@@ -174,7 +174,7 @@ public class SyntheticDataGenerator
 					|| generatorType.equals(TwoPartitionLimitedOutputsGenerator.class))
 				w.println("% numOutputVectors = " + numOutputVectors);
 			w.println("% numInputVectors: " + numInputVectors);
-			w.println(metaData.toString());
+			metaData.writeArff(w);
 		}
 	}
 		
@@ -484,7 +484,7 @@ public class SyntheticDataGenerator
 		return result;
 	}
 	
-	public static void main(String[] args) throws FileNotFoundException
+	public static void main(String[] args) throws IOException
 	{
 		generateData();
 		out.println("Done.");
@@ -5,6 +5,7 @@ import static org.junit.Assert.*;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
 
 import smodelkit.util.Range;
 
@@ -13,14 +14,23 @@ import smodelkit.util.Range;
 /**
  * A vector of double values. This can be used as an instance, or part of an instance.
  * 
+ * Sub-classes may provide their values through get and size instead of an internal array
+ * (for example, a row view into a column-oriented Matrix). Such views must override get, size,
+ * getWeight, and setWeight. Everything else in this class works through those methods for them.
+ * 
  * @author joseph
  *
  */
 @SuppressWarnings("serial")
 public class Vector implements Serializable, Comparable<Vector>
 {
+	// The serialVersionUID Java computed for this class before views were added, so that vectors
+	// serialized by older versions can still be read.
+	private static final long serialVersionUID = 1406279994707826249L;
+
 	/**
 	 * Elements of this array should never be modified because they may be shared by other Vectors.
+	 * This is null for views which provide their values through get and size.
 	 */
 	private double[] values;
 	
@@ -80,13 +90,13 @@ public class Vector implements Serializable, Comparable<Vector>
 		this.to = to;
 	}
 
+	/**
+	 * Creates a vector with the values and weight of other. If other is a view, its values are
+	 * copied. Otherwise they are shared.
+	 */
 	public Vector(Vector other)
 	{
-		this.values = other.values;
-		this.weight = other.weight;
-		this.from = other.from;
-		this.to = other.to;
-		varify();
+		this(other, other.getWeight());
 	}
 	
 	/**
@@ -94,12 +104,38 @@ public class Vector implements Serializable, Comparable<Vector>
 	 */
 	public Vector(Vector other, double weight)
 	{
-		this.values = other.values;
+		if (other.isView())
+		{
+			this.values = other.toArray();
+			this.from = 0;
+			this.to = values.length;
+		}
+		else
+		{
+			this.values = other.values;
+			this.from = other.from;
+			this.to = other.to;
+		}
 		this.weight = weight;
-		to = values.length;
 		varify();
 	}
 	
+	/**
+	 * For sub-classes which provide their values through get and size. 
+	 */
+	protected Vector()
+	{
+		this.weight = 1.0;
+	}
+	
+	/**
+	 * Determines if this vector gets its values from somewhere other than an internal array.
+	 */
+	protected final boolean isView()
+	{
+		return values == null;
+	}
+	
 	private void varify()
 	{
 		if (weight < 0.0)
@@ -117,11 +153,30 @@ public class Vector implements Serializable, Comparable<Vector>
 	 */
 	public double[] getValuesForWekaInstance()
 	{
-		if (!isCompact())
+		if (isView() || !isCompact())
 			throw new IllegalStateException();
 		return values;
 	}
-	
+
+	/**
+	 * Returns the internal array of this vector, or null if this vector is a view. The values of
+	 * this vector are stored in the array starting at getArrayOffset(). This is for loops which
+	 * read many values at a time, such as those in smodelkit.util.kernels. The caller must not
+	 * modify these values.
+	 */
+	public double[] getArray()
+	{
+		return values;
+	}
+
+	/**
+	 * Returns the index in getArray() of the first value of this vector.
+	 */
+	public int getArrayOffset()
+	{
+		return from;
+	}
+
 	/**
 	 * Sets the value at the specified index to the specified value.
 	 * 
@@ -129,6 +184,8 @@ public class Vector implements Serializable, Comparable<Vector>
 	 */
 	public void set(int index, double value)
 	{
+		if (isView())
+			throw new UnsupportedOperationException("This view does not support changing values.");
 		if (!compact())
 		{
 			values = Arrays.copyOf(values, values.length);
@@ -162,10 +219,27 @@ public class Vector implements Serializable, Comparable<Vector>
 	 */
 	public Vector subVector(int from, int to)
 	{
+		if (isView())
+			return new Vector(toArray(), getWeight(), from, to);
 		return new Vector(values, weight, this.from + from, this.from + to);
 		
 	}
 	
+	/**
+	 * Returns a new array containing the values of this vector.
+	 */
+	public double[] toArray()
+	{
+		if (!isView())
+			return Arrays.copyOfRange(values, from, to);
+		double[] result = new double[size()];
+		for (int i = 0; i < result.length; i++)
+		{
+			result[i] = get(i);
+		}
+		return result;
+	}
+	
 	public int size()
 	{
 		return to - from;
@@ -177,6 +251,8 @@ public class Vector implements Serializable, Comparable<Vector>
 	 */
 	public void addAll(Vector v)
 	{
+		if (isView())
+			throw new UnsupportedOperationException("Views cannot be resized. Copy this vector first.");
 		double[] newValues = new double[size() + v.size()];
 		for (int i = 0; i < size(); i++)
 		{
@@ -217,7 +293,24 @@ public class Vector implements Serializable, Comparable<Vector>
 		{
 			result[i + size()] = v[i];
 		}
-		return new Vector(result, weight);
+		return new Vector(result, getWeight());
+	}
+
+	/**
+	 * Like concat(Vector), but the values are not copied. The result is a view of the values of this
+	 * vector and v, so neither should be changed while the result is in use. See CompositeVector.
+	 */
+	public Vector concatView(Vector v)
+	{
+		return new CompositeVector(Arrays.asList(this, v), getWeight());
+	}
+
+	/**
+	 * Like concat(double[]), but the values are not copied. See concatView(Vector).
+	 */
+	public Vector concatView(double[] v)
+	{
+		return concatView(new Vector(v));
 	}
 
 	/**
@@ -225,6 +318,8 @@ public class Vector implements Serializable, Comparable<Vector>
 	 */
 	public void remove(int index)
 	{
+		if (isView())
+			throw new UnsupportedOperationException("Views cannot be resized. Copy this vector first.");
 		double[] temp = new double[size() - 1];
 		for (int i = 0; i < temp.length; i++)
 		{
@@ -296,19 +391,21 @@ public class Vector implements Serializable, Comparable<Vector>
 	
 	public DoubleStream stream()
 	{
+		if (isView())
+			return IntStream.range(0, size()).mapToDouble(i -> get(i));
 		return Arrays.stream(values, from, to);
 	}
 	
 	@Override
 	public String toString()
 	{
-		if (weight == 1.0)
+		if (getWeight() == 1.0)
 		{
 			return valuesToString();
 		}
 		else
 		{
-			return "values: " + valuesToString() + ", weight: " + weight;
+			return "values: " + valuesToString() + ", weight: " + getWeight();
 		}
 	}
 	
@@ -340,7 +437,7 @@ public class Vector implements Serializable, Comparable<Vector>
 			}
 			assertEquals(v1.get(i), v2.get(i), threshold);
 		}
-		assertEquals(v1.weight, v2.weight, threshold);
+		assertEquals(v1.getWeight(), v2.getWeight(), threshold);
 	}
 	
 }
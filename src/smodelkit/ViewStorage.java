@@ -0,0 +1,167 @@
+package smodelkit;
+
+import java.io.ObjectStreamException;
+import java.util.Arrays;
+
+/**
+ * A view of some rows and a range of columns of another storage. Values are not copied. The
+ * rows of the view are created with it, sharing values with the parent where possible, and kept
+ * so that changes to them (such as instance weights) are seen by later calls. Since nothing is
+ * created lazily, threads can read a view at the same time as they can any other storage.
+ * Changes made through a view are never seen by the parent. A view may also give its rows
+ * instance weights of its own, which is how bootstrap samples are represented without copying
+ * rows (see Sample).
+ *
+ * Rows can be removed and reordered, which only changes the view's list of rows. Rows and
+ * columns cannot be added or removed. Matrix copies the rows into storage of its own first.
+ *
+ * @author joseph
+ *
+ */
+class ViewStorage extends MatrixStorage
+{
+	private static final long serialVersionUID = 1L;
+
+	private final MatrixStorage parent;
+	private int rows;
+	// The rows of this view, in order, followed by nulls where rows have been removed.
+	private final Vector[] rowVectors;
+
+	/**
+	 * @param rowIndexes The rows of parent in this view, in order. This array is not kept.
+	 */
+	ViewStorage(MatrixStorage parent, int[] rowIndexes, int colStart, int colCount)
+	{
+		this(parent, rowIndexes, null, colStart, colCount);
+	}
+
+	/**
+	 * @param rowIndexes The rows of parent in this view, in order. This array is not kept.
+	 * @param weights The instance weight of each row in rowIndexes, which replaces the weight of
+	 * the row in parent, or null to use the parent's weights. This array is not kept.
+	 */
+	ViewStorage(MatrixStorage parent, int[] rowIndexes, double[] weights, int colStart, int colCount)
+	{
+		if (weights != null && weights.length != rowIndexes.length)
+			throw new IllegalArgumentException("There must be one weight for each row.");
+		this.parent = parent;
+		this.rows = rowIndexes.length;
+		rowVectors = new Vector[rowIndexes.length];
+		for (int r = 0; r < rowVectors.length; r++)
+		{
+			Vector source = parent.row(rowIndexes[r]);
+			if (colCount == 0)
+				rowVectors[r] = new Vector(new double[0], source.getWeight());
+			else
+				rowVectors[r] = source.subVector(colStart, colStart + colCount);
+			if (weights != null)
+				rowVectors[r].setWeight(weights[r]);
+		}
+	}
+
+	@Override
+	Matrix.StorageType getType()
+	{
+		return parent.getType();
+	}
+
+	@Override
+	MatrixStorage emptyCopy()
+	{
+		return parent.emptyCopy();
+	}
+
+	/**
+	 * Copies the rows of this view into a storage of its own.
+	 */
+	MatrixStorage copy()
+	{
+		MatrixStorage result = emptyCopy();
+		for (int r = 0; r < rows; r++)
+			result.add(row(r));
+		return result;
+	}
+
+	@Override
+	int rows()
+	{
+		return rows;
+	}
+
+	@Override
+	Vector row(int r)
+	{
+		if (r < 0 || r >= rows)
+			throw new IndexOutOfBoundsException("Row: " + r + ", rows: " + rows);
+		return rowVectors[r];
+	}
+
+	@Override
+	double get(int r, int c)
+	{
+		return rowVectors[r].get(c);
+	}
+
+	@Override
+	double getWeight(int r)
+	{
+		return rowVectors[r].getWeight();
+	}
+
+	@Override
+	void remove(int r)
+	{
+		if (r < 0 || r >= rows)
+			throw new IndexOutOfBoundsException("Row: " + r + ", rows: " + rows);
+		System.arraycopy(rowVectors, r + 1, rowVectors, r, rows - r - 1);
+		rowVectors[rows - 1] = null;
+		rows--;
+	}
+
+	@Override
+	void swap(int r1, int r2)
+	{
+		Vector tmpRow = rowVectors[r1];
+		rowVectors[r1] = rowVectors[r2];
+		rowVectors[r2] = tmpRow;
+	}
+
+	@Override
+	void clear()
+	{
+		rows = 0;
+		Arrays.fill(rowVectors, null);
+	}
+
+	@Override
+	void add(Vector row)
+	{
+		throw notResizable();
+	}
+
+	@Override
+	void removeColumn(int c)
+	{
+		throw notResizable();
+	}
+
+	@Override
+	void appendColumns(MatrixStorage source, int start, int num)
+	{
+		throw notResizable();
+	}
+
+	private static UnsupportedOperationException notResizable()
+	{
+		return new UnsupportedOperationException("Rows and columns cannot be added to or removed from a view.");
+	}
+
+	/**
+	 * The parent would be serialized with a view, so the rows are copied instead.
+	 */
+	private Object writeReplace() throws ObjectStreamException
+	{
+		return copy();
+	}
+
+}
@@ -0,0 +1,83 @@
+package smodelkit.benchmark;
+
+import static java.lang.System.out;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import smodelkit.Matrix;
+import smodelkit.util.ThreadCounter;
+
+/**
+ * Measures how fast arff files are loaded into a Matrix.
+ *
+ * Usage: ArffLoadingBenchmark [directory] [iterations] [threads]
+ *
+ * Every arff file under the directory (Datasets by default) is loaded once to warm up, and then
+ * loaded the given number of times (5 by default). The throughput for each file and for all files
+ * is printed. If threads is given, it is used as the maximum number of threads for loading large
+ * files (see ThreadCounter).
+ *
+ * @author joseph
+ *
+ */
+public class ArffLoadingBenchmark
+{
+	public static void main(String[] args) throws IOException
+	{
+		String directory = args.length > 0 ? args[0] : "Datasets";
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		if (args.length > 2)
+			ThreadCounter.setMaxThreads(Integer.parseInt(args[2]));
+
+		List<Path> files;
+		try (Stream<Path> paths = Files.walk(Paths.get(directory)))
+		{
+			files = paths.filter(p -> p.toString().endsWith(".arff")).sorted().collect(Collectors.toList());
+		}
+
+		int totalFiles = 0;
+		long totalBytes = 0;
+		long totalRows = 0;
+		long totalNanos = 0;
+		for (Path file : files)
+		{
+			String filename = file.toString();
+			long bytes = new File(filename).length();
+			Matrix m = new Matrix();
+			try
+			{
+				m.loadFromArffFile(filename);
+			}
+			catch (RuntimeException e)
+			{
+				out.println(String.format("%-60s skipped: %s", filename, e.getMessage()));
+				continue;
+			}
+
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++)
+			{
+				m = new Matrix();
+				m.loadFromArffFile(filename);
+			}
+			long nanos = (System.nanoTime() - start) / iterations;
+
+			totalFiles++;
+			totalBytes += bytes;
+			totalRows += m.rows();
+			totalNanos += nanos;
+			out.println(String.format("%-60s %8d rows %10.2f ms %8.2f MB/s", filename, m.rows(), nanos / 1e6,
+					bytes / (nanos / 1e9) / (1 << 20)));
+		}
+		out.println(String.format("Total: %d files, %d rows, %.2f MB in %.2f ms (%.2f MB/s, %.0f rows/s)",
+				totalFiles, totalRows, totalBytes / (double)(1 << 20), totalNanos / 1e6,
+				totalBytes / (totalNanos / 1e9) / (1 << 20), totalRows / (totalNanos / 1e9)));
+	}
+}
@@ -0,0 +1,95 @@
+package smodelkit.benchmark;
+
+import static java.lang.System.out;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import smodelkit.util.kernels.Kernels;
+
+/**
+ * Compares the implementations of Kernels (see Kernels.load).
+ *
+ * Usage: KernelBenchmark [length] [iterations] [implementations]
+ *
+ * Each kernel is run on arrays of the given length (256 by default) the given number of times
+ * (1000000 by default), after running it that many times to warm up. The time per call of each
+ * kernel is printed for each implementation. implementations is a comma separated list of names
+ * to compare ("scalar,vector" by default). The vector implementation is only available if it was
+ * compiled and the program is run with --add-modules jdk.incubator.vector (see VectorKernels).
+ *
+ * @author joseph
+ *
+ */
+public class KernelBenchmark
+{
+	private interface Kernel
+	{
+		double run(Kernels kernels, double[] a, double[] b);
+	}
+
+	public static void main(String[] args)
+	{
+		int length = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+		String implementations = args.length > 2 ? args[2] : "scalar,vector";
+
+		List<Kernels> kernelsList = new ArrayList<>();
+		for (String name : implementations.split(","))
+		{
+			Kernels kernels = Kernels.load(name);
+			if (!kernels.getName().equals(name))
+				out.println("Skipping " + name + " because it could not be loaded.");
+			else
+				kernelsList.add(kernels);
+		}
+
+		Random rand = new Random(0);
+		double[] a = new double[length];
+		double[] b = new double[length];
+		for (int i = 0; i < length; i++)
+		{
+			a[i] = rand.nextGaussian();
+			b[i] = rand.nextGaussian();
+		}
+		// Some unknown values for maskedSquaredDistance.
+		double[] withUnknowns = b.clone();
+		for (int i = 0; i < length; i += 7)
+			withUnknowns[i] = Double.NaN;
+
+		for (Kernels kernels : kernelsList)
+		{
+			out.println(kernels.getName() + ":");
+			time("dot", kernels, a, b, iterations, length,
+					(k, x, y) -> k.dot(x, 0, y, 0, x.length));
+			// alpha is small and alternates in sign so that y does not grow.
+			time("axpy", kernels, a, b.clone(), iterations, length, (k, x, y) ->
+				{
+					k.axpy(y[0] > 0 ? -1e-9 : 1e-9, x, 0, y, 0, x.length);
+					return y[0];
+				});
+			time("squaredDistance", kernels, a, b, iterations, length,
+					(k, x, y) -> k.squaredDistance(x, 0, y, 0, x.length, 1.0));
+			time("maskedSquaredDistance", kernels, a, withUnknowns, iterations, length,
+					(k, x, y) -> k.maskedSquaredDistance(x, 0, y, 0, x.length, 1.0));
+		}
+	}
+
+	private static void time(String name, Kernels kernels, double[] a, double[] b, int iterations, int length,
+			Kernel kernel)
+	{
+		// The results are summed and printed so that the calls cannot be optimized away.
+		double sum = 0;
+		for (int i = 0; i < iterations; i++)
+			sum += kernel.run(kernels, a, b);
+
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++)
+			sum += kernel.run(kernels, a, b);
+		long nanos = System.nanoTime() - start;
+
+		out.println(String.format("  %-22s %10.2f ns/call %8.2f values/ns (checksum %.6g)", name,
+				nanos / (double)iterations, (double)length * iterations / nanos, sum));
+	}
+}
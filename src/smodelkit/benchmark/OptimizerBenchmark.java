@@ -0,0 +1,126 @@
+package smodelkit.benchmark;
+
+import static java.lang.System.out;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.json.simple.JSONObject;
+
+import smodelkit.MLSystemsManager;
+import smodelkit.Matrix;
+import smodelkit.evaluator.Evaluator;
+import smodelkit.evaluator.TopN;
+import smodelkit.learner.NeuralNet;
+import smodelkit.util.Pair;
+
+/**
+ * Compares how quickly NeuralNet reaches a target accuracy with each Optimizer and
+ * LearningRateSchedule.
+ *
+ * Usage: OptimizerBenchmark [settings] [target_accuracy] [dataset...]
+ *
+ * A NeuralNet is trained with each configuration on each dataset (some of the multi-dimensional
+ * datasets in Datasets/mdc by default), using the given NeuralNet settings file
+ * (model_settings/neuralnet.json by default) with the optimizer, schedule, learning rate, and
+ * momentum replaced. A third of each dataset is held out, and the top-1 accuracy on the held out
+ * rows is measured after every epoch. The number of epochs and the training time (not counting
+ * the time spent measuring accuracy) until the accuracy first reaches the target are printed,
+ * along with the best accuracy reached. If no target is given, it is 95% of the best accuracy any
+ * configuration reached on the dataset. Every configuration uses the same random seed, so they
+ * all start with the same weights.
+ *
+ * @author joseph
+ *
+ */
+public class OptimizerBenchmark
+{
+	// The fraction of the best accuracy on a dataset which is the target when none is given.
+	private static final double DEFAULT_TARGET = 0.95;
+	// Each configuration is an optimizer, a learning rate schedule, a learning rate, and a momentum.
+	private static final Object[][] CONFIGURATIONS = {
+			{"sgd", "constant", 0.1, 0.0},
+			{"sgd", "step", 0.1, 0.0},
+			{"sgd", "cosine", 0.1, 0.0},
+			{"sgd", "plateau", 0.1, 0.0},
+			{"momentum", "constant", 0.01, 0.9},
+			{"nesterov", "constant", 0.01, 0.9},
+			{"adam", "constant", 0.001, 0.0},
+			{"adam", "cosine", 0.001, 0.0},
+			{"rmsprop", "constant", 0.001, 0.0},
+	};
+
+	@SuppressWarnings("unchecked")
+	public static void main(String[] args)
+	{
+		String settingsFile = args.length > 0 ? args[0] : "model_settings/neuralnet.json";
+		Double target = args.length > 1 ? Double.parseDouble(args[1]) : null;
+		List<String> datasets = args.length > 2 ? Arrays.asList(args).subList(2, args.length)
+				: Arrays.asList("Datasets/mdc/edm.arff", "Datasets/mdc/flare1.arff",
+						"Datasets/mdc/synthetic/continuous_2out_4class.arff");
+
+		for (String dataset : datasets)
+		{
+			Matrix data = new Matrix();
+			data.loadFromArffFile(dataset);
+			data.shuffle(new Random(0));
+			int trainRows = data.rows() * 2 / 3;
+			Pair<Matrix> train = data.viewRows(0, trainRows).splitInputsAndLabels();
+			Pair<Matrix> test = data.viewRows(trainRows, data.rows()).splitInputsAndLabels();
+
+			// The accuracy after each epoch, and the training time until then, of each configuration.
+			List<List<double[]>> curves = new ArrayList<>();
+			double best = 0;
+			for (Object[] configuration : CONFIGURATIONS)
+			{
+				JSONObject settings = MLSystemsManager.parseModelSettingsFile(settingsFile);
+				settings.put("optimizer", configuration[0]);
+				settings.put("learningRateSchedule", configuration[1]);
+				settings.put("learningRate", configuration[2]);
+				settings.put("momentum", configuration[3]);
+				NeuralNet learner = (NeuralNet)MLSystemsManager.createLearner(new Random(0), "neuralnet", settings);
+
+				List<double[]> curve = new ArrayList<>();
+				// The time spent measuring accuracy, which is not counted as training time.
+				long[] measuring = new long[1];
+				long start = System.nanoTime();
+				learner.setEpochListener(epochs ->
+					{
+						long before = System.nanoTime();
+						double accuracy = Evaluator.runEvaluators(test.getFirst(), test.getSecond(), learner, true,
+								Arrays.asList(new TopN(Arrays.asList(1)))).getScores(TopN.class).get(0);
+						curve.add(new double[] {accuracy, (before - start - measuring[0]) / 1e6});
+						measuring[0] += System.nanoTime() - before;
+					});
+				learner.train(train.getFirst(), train.getSecond());
+				curves.add(curve);
+				for (double[] point : curve)
+					best = Math.max(best, point[0]);
+			}
+
+			double datasetTarget = target != null ? target : DEFAULT_TARGET * best;
+			out.println(String.format("%s: target accuracy %.4f", dataset, datasetTarget));
+			for (int c = 0; c < CONFIGURATIONS.length; c++)
+			{
+				String name = CONFIGURATIONS[c][0] + "/" + CONFIGURATIONS[c][1];
+				List<double[]> curve = curves.get(c);
+				double configurationBest = 0;
+				int epochsToTarget = -1;
+				for (int e = 0; e < curve.size(); e++)
+				{
+					configurationBest = Math.max(configurationBest, curve.get(e)[0]);
+					if (epochsToTarget < 0 && curve.get(e)[0] >= datasetTarget)
+						epochsToTarget = e;
+				}
+				if (epochsToTarget < 0)
+					out.println(String.format("  %-17s target not reached in %d epochs, best accuracy %.4f", name, 
+							curve.size(), configurationBest));
+				else
+					out.println(String.format("  %-17s %4d epochs, %9.1f ms to target, best accuracy %.4f", name, 
+							epochsToTarget + 1, curve.get(epochsToTarget)[1], configurationBest));
+			}
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package smodelkit.benchmark;
+
+import static java.lang.System.out;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.json.simple.JSONObject;
+
+import smodelkit.MLSystemsManager;
+import smodelkit.Matrix;
+import smodelkit.evaluator.Evaluator;
+import smodelkit.evaluator.TopN;
+import smodelkit.learner.Sigmoid;
+import smodelkit.learner.SigmoidNode;
+import smodelkit.learner.SupervisedLearner;
+import smodelkit.util.Pair;
+
+/**
+ * Compares the speed and accuracy of the modes of Sigmoid.
+ *
+ * Usage: SigmoidBenchmark [settings] [dataset...]
+ *
+ * First, each mode is called on many random nets, and the time per call and the largest
+ * difference from Sigmoid.EXACT are printed. Then a NeuralNet is trained with each mode on each
+ * dataset (some of the multi-dimensional datasets in Datasets/mdc by default), using the given
+ * NeuralNet settings file (model_settings/neuralnet.json by default). A third of each dataset is
+ * held out, and the training time and the top-1 accuracy on the held out rows are printed. Every
+ * mode uses the same random seed, so differences in accuracy come from the sigmoid.
+ *
+ * @author joseph
+ *
+ */
+public class SigmoidBenchmark
+{
+	private static final int CALLS = 10000000;
+
+	@SuppressWarnings("unchecked")
+	public static void main(String[] args)
+	{
+		String settingsFile = args.length > 0 ? args[0] : "model_settings/neuralnet.json";
+		List<String> datasets = args.length > 1 ? Arrays.asList(args).subList(1, args.length)
+				: Arrays.asList("Datasets/mdc/edm.arff", "Datasets/mdc/flare1.arff",
+						"Datasets/mdc/synthetic/continuous_2out_4class.arff");
+
+		Random rand = new Random(0);
+		double[] nets = new double[1 << 16];
+		for (int i = 0; i < nets.length; i++)
+			nets[i] = rand.nextGaussian() * 4;
+		for (Sigmoid sigmoid : Sigmoid.values())
+		{
+			// The results are summed and printed so that the calls cannot be optimized away.
+			double sum = 0;
+			for (int i = 0; i < CALLS; i++)
+				sum += sigmoid.apply(nets[i & (nets.length - 1)]);
+			long start = System.nanoTime();
+			for (int i = 0; i < CALLS; i++)
+				sum += sigmoid.apply(nets[i & (nets.length - 1)]);
+			long nanos = System.nanoTime() - start;
+
+			double maxError = 0;
+			for (double net = -40; net <= 40; net += 1e-4)
+				maxError = Math.max(maxError, Math.abs(sigmoid.apply(net) - SigmoidNode.sig(net)));
+			out.println(String.format("%-8s %6.2f ns/call, max error %.3g (documented %.3g) (checksum %.6g)",
+					sigmoid, nanos / (double)CALLS, maxError, sigmoid.getMaxError(), sum));
+		}
+
+		for (String dataset : datasets)
+		{
+			Matrix data = new Matrix();
+			data.loadFromArffFile(dataset);
+			data.shuffle(new Random(0));
+			int trainRows = data.rows() * 2 / 3;
+			Pair<Matrix> train = data.viewRows(0, trainRows).splitInputsAndLabels();
+			Pair<Matrix> test = data.viewRows(trainRows, data.rows()).splitInputsAndLabels();
+			for (Sigmoid sigmoid : Sigmoid.values())
+			{
+				JSONObject settings = MLSystemsManager.parseModelSettingsFile(settingsFile);
+				settings.put("sigmoid", sigmoid.name().toLowerCase());
+				SupervisedLearner learner = MLSystemsManager.createLearner(new Random(0), "neuralnet", settings);
+				long start = System.nanoTime();
+				learner.train(train.getFirst(), train.getSecond());
+				long nanos = System.nanoTime() - start;
+				double accuracy = Evaluator.runEvaluators(test.getFirst(), test.getSecond(), learner, true,
+						Arrays.asList(new TopN(Arrays.asList(1)))).getScores(TopN.class).get(0);
+				out.println(String.format("%-55s %-8s %9.1f ms, accuracy %.4f", dataset, sigmoid, nanos / 1e6,
+						accuracy));
+			}
+		}
+	}
+}
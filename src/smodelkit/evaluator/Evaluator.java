@@ -6,8 +6,10 @@ import java.util.List;
 import smodelkit.ConfusionMatrix;
 import smodelkit.Evaluation;
 import smodelkit.Matrix;
+import smodelkit.RowSource;
 import smodelkit.Vector;
 import smodelkit.learner.SupervisedLearner;
+import smodelkit.util.Pair;
 import smodelkit.util.Range;
 
 /**
@@ -22,6 +24,8 @@ import smodelkit.util.Range;
 public abstract class Evaluator implements Serializable
 {
 	private static final long serialVersionUID = 1L;
+	// The largest number of rows the learner is asked to predict at a time by runEvaluators.
+	private static final int PREDICTION_BATCH_ROWS = 1024;
 
 	public Evaluator()
 	{
@@ -92,20 +96,74 @@ public abstract class Evaluator implements Serializable
 		if (inputs.rows() != labels.rows())
 			throw new IllegalArgumentException();
 		
-		evaluators.stream().forEach(evaluator -> evaluator.startBatch(labels));
-		int maxDesiredSize = evaluators.stream().mapToInt(
-				evaluator -> evaluator.getMaxDesiredSize()).max().getAsInt();
+		int maxDesiredSize = startBatch(labels, evaluators);
+		evaluateRows(inputs, labels, learner, learnerUseFilter, evaluators, maxDesiredSize);
+		return createEvaluation(evaluators);
+	}
+
+	/**
+	 * Like runEvaluators(Matrix, Matrix, SupervisedLearner, boolean, List), but reads the inputs
+	 * and labels from the given source one chunk at a time, so the dataset does not need to fit
+	 * in memory. The source is reset first, so every row is evaluated.
+	 */
+	public static Evaluation runEvaluators(RowSource source, SupervisedLearner learner, 
+			boolean learnerUseFilter, List<Evaluator> evaluators)
+	{
+		source.reset();
+		Pair<Matrix> chunk = source.nextChunk();
+		if (chunk == null)
+			throw new IllegalArgumentException("The row source has no rows.");
 		
-		for (int r : new Range(inputs.rows()))
+		// Chunks are only valid until the next one is read, so the evaluators are given a copy of
+		// the metadata.
+		Matrix labelsMetadata = new Matrix();
+		labelsMetadata.copyMetadata(chunk.getSecond());
+		int maxDesiredSize = startBatch(labelsMetadata, evaluators);
+		for (; chunk != null; chunk = source.nextChunk())
 		{
-			List<Vector> predictions = learner.predictScoredList(inputs.row(r), 
+			if (chunk.getFirst().rows() != chunk.getSecond().rows())
+				throw new IllegalArgumentException();
+			evaluateRows(chunk.getFirst(), chunk.getSecond(), learner, learnerUseFilter, evaluators, maxDesiredSize);
+		}
+		return createEvaluation(evaluators);
+	}
+
+	/**
+	 * Starts a batch in each evaluator.
+	 * @return The largest maximum desired size of the evaluators.
+	 */
+	private static int startBatch(Matrix labelsMetadata, List<Evaluator> evaluators)
+	{
+		evaluators.stream().forEach(evaluator -> evaluator.startBatch(labelsMetadata));
+		return evaluators.stream().mapToInt(
+				evaluator -> evaluator.getMaxDesiredSize()).max().getAsInt();
+	}
+
+	/**
+	 * Evaluates the learner on every row of inputs. The learner predicts up to PREDICTION_BATCH_ROWS
+	 * rows at a time (see SupervisedLearner.predictScoredListBatch).
+	 */
+	private static void evaluateRows(Matrix inputs, Matrix labels, SupervisedLearner learner, 
+			boolean learnerUseFilter, List<Evaluator> evaluators, int maxDesiredSize)
+	{
+		for (int start = 0; start < inputs.rows(); start += PREDICTION_BATCH_ROWS)
+		{
+			int end = Math.min(inputs.rows(), start + PREDICTION_BATCH_ROWS);
+			Matrix batch = start == 0 && end == inputs.rows() ? inputs : inputs.viewRows(start, end);
+			List<List<Vector>> predictions = learner.predictScoredListBatch(batch, 
 					maxDesiredSize, learnerUseFilter);
-			for (Evaluator evaluator : evaluators)
+			for (int r : new Range(start, end))
 			{
-				evaluator.evaluate(labels.row(r), predictions);
+				for (Evaluator evaluator : evaluators)
+				{
+					evaluator.evaluate(labels.row(r), predictions.get(r - start));
+				}
 			}
 		}
-		
+	}
+
+	private static Evaluation createEvaluation(List<Evaluator> evaluators)
+	{
 		Evaluation evaluation = new Evaluation();
 		for (Evaluator evaluator : evaluators)
 		{
@@ -114,7 +172,6 @@ public abstract class Evaluator implements Serializable
 		}
 		
 		return evaluation;
-		
 	}
 
 }
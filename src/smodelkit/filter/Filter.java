@@ -4,7 +4,9 @@ import java.io.Serializable;
 import java.util.Random;
 
 import smodelkit.Matrix;
+import smodelkit.RowSource;
 import smodelkit.Vector;
+import smodelkit.util.Pair;
 
 // Abstract class for transforming the dataset.
 public abstract class Filter implements Serializable
@@ -74,6 +76,58 @@ public abstract class Filter implements Serializable
 		}
 	}
 
+	/**
+	 * Like initialize(Matrix, Matrix), but trains the filter with every row of source, which
+	 * is read a chunk at a time.
+	 */
+	public final void initialize(RowSource source)
+	{
+		initializeInternal(source);
+		if (innerFilter != null)
+			innerFilter.initialize(new FilteredRowSource(source));
+	}
+
+	/**
+	 * Trains the filter with the rows of source. The default reads every row into memory and
+	 * calls initializeInternal(Matrix, Matrix). Filters which can be trained without having all
+	 * of the rows in memory should override this.
+	 */
+	protected void initializeInternal(RowSource source)
+	{
+		source.reset();
+		Pair<Matrix> all = source.readAll();
+		initializeInternal(all.getFirst(), all.getSecond());
+	}
+
+	/**
+	 * Applies only this filter, not the inner filter, to the chunks of another source. This is
+	 * used to initialize the inner filter.
+	 */
+	private class FilteredRowSource extends RowSource
+	{
+		private final RowSource source;
+
+		FilteredRowSource(RowSource source)
+		{
+			this.source = source;
+		}
+
+		@Override
+		public Pair<Matrix> nextChunk()
+		{
+			Pair<Matrix> chunk = source.nextChunk();
+			if (chunk == null)
+				return null;
+			return new Pair<>(filterInputsInternal(chunk.getFirst()), filterLabelsInternal(chunk.getSecond()));
+		}
+
+		@Override
+		public void reset()
+		{
+			source.reset();
+		}
+	}
+
 	public final Vector filterInput(Vector before)
 	{
 		if (innerFilter != null)
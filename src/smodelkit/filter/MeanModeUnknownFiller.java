@@ -1,6 +1,8 @@
 package smodelkit.filter;
 
+import smodelkit.ChunkStatistics;
 import smodelkit.Matrix;
+import smodelkit.RowSource;
 import smodelkit.Vector;
 import smodelkit.util.Range;
 
@@ -40,6 +42,16 @@ public class MeanModeUnknownFiller extends Filter
 		}
 	}
 	
+	/**
+	 * Finds the same means and modes as initializeInternal(Matrix, Matrix) would for all of the
+	 * rows of source, without keeping them in memory.
+	 */
+	@Override
+	protected void initializeInternal(RowSource source)
+	{
+		meanModes = ChunkStatistics.read(source).getFirst().findMeanModes();
+	}
+
 	@Override
 	protected Vector filterInputInternal(Vector before)
 	{
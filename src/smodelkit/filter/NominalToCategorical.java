@@ -4,7 +4,9 @@ import java.util.ArrayList;
 import java.util.List;
 
 import smodelkit.Matrix;
+import smodelkit.RowSource;
 import smodelkit.Vector;
+import smodelkit.util.Pair;
 import smodelkit.util.Helper;
 
 /**
@@ -95,6 +97,16 @@ public class NominalToCategorical extends Filter
 		}	
 	}
 
+	/**
+	 * Only the columns are needed, so no rows are kept in memory.
+	 */
+	@Override
+	protected void initializeInternal(RowSource source)
+	{
+		Pair<Matrix> columns = source.readColumns();
+		initializeInternal(columns.getFirst(), columns.getSecond());
+	}
+
 	// Convert categorical distributions back to nominal values (by finding the mode)
 	protected Vector unfilterLabelInternal(Vector before)
 	{
@@ -3,8 +3,12 @@ package smodelkit.filter;
 import java.util.Set;
 import java.util.TreeSet;
 
+import smodelkit.ChunkStatistics;
 import smodelkit.Matrix;
+import smodelkit.RowSource;
+import smodelkit.SparseVector;
 import smodelkit.Vector;
+import smodelkit.util.Pair;
 
 public class Normalize extends Filter
 {
@@ -14,6 +18,9 @@ public class Normalize extends Filter
 	private double[] labelMins;
 	private double[] labelMaxes;
 	private Set<Integer> ignoredInputAttributes;
+	// True if every input or label column normalizes 0 to 0, so sparse vectors stay sparse.
+	private boolean inputsKeepZeros;
+	private boolean labelsKeepZeros;
 	// base is the lowest value after filtering.
 	private static final double base = -1.0;
 	// range is the largest minus the smallest value after filtering.
@@ -34,12 +41,32 @@ public class Normalize extends Filter
 	// Computes the min and max of each column
 	@Override
 	public void initializeInternal(Matrix inputs, Matrix labels)
+	{
+		ChunkStatistics inputStats = new ChunkStatistics(inputs);
+		inputStats.add(inputs);
+		ChunkStatistics labelStats = new ChunkStatistics(labels);
+		labelStats.add(labels);
+		initialize(inputStats, labelStats);
+	}
+
+	/**
+	 * Finds the same ranges as initializeInternal(Matrix, Matrix) would for all of the rows of
+	 * source, without keeping them in memory.
+	 */
+	@Override
+	protected void initializeInternal(RowSource source)
+	{
+		Pair<ChunkStatistics> stats = ChunkStatistics.read(source);
+		initialize(stats.getFirst(), stats.getSecond());
+	}
+
+	private void initialize(ChunkStatistics inputs, ChunkStatistics labels)
 	{		
 		featureMins = new double[inputs.cols()];
 		featureMaxes = new double[inputs.cols()];
 		for(int i = 0; i < inputs.cols(); i++)
 		{
-			if(inputs.getValueCount(i) == 0 && !ignoredInputAttributes.contains(i))
+			if(inputs.isContinuous(i) && !ignoredInputAttributes.contains(i))
 			{
 				// Compute the min and max
 				featureMins[i] = inputs.findMin(i);
@@ -57,7 +84,7 @@ public class Normalize extends Filter
 		labelMaxes = new double[labels.cols()];
 		for(int i = 0; i < labels.cols(); i++)
 		{
-			if(labels.getValueCount(i) == 0)
+			if(labels.isContinuous(i))
 			{
 				// Compute the min and max
 				labelMins[i] = labels.findMin(i);
@@ -70,7 +97,23 @@ public class Normalize extends Filter
 				labelMaxes[i] = Vector.getUnknownValue();
 			}
 		}
+		
+		inputsKeepZeros = keepsZeros(featureMins, featureMaxes);
+		labelsKeepZeros = keepsZeros(labelMins, labelMaxes);
+	}
 
+	/**
+	 * Returns true if every column with the given mins and maxes normalizes 0 to 0.
+	 */
+	private static boolean keepsZeros(double[] mins, double[] maxes)
+	{
+		for (int c = 0; c < mins.length; c++)
+		{
+			// Nominal and ignored columns are not changed.
+			if (!Vector.isUnknown(mins[c]) && normalize(0, mins[c], maxes[c]) != 0)
+				return false;
+		}
+		return true;
 	}
 
 	/**
@@ -78,19 +121,21 @@ public class Normalize extends Filter
 	 */
 	protected Vector filterInputInternal(Vector before)
 	{
-		return filterInternal(before, featureMins, featureMaxes);
+		return filterInternal(before, featureMins, featureMaxes, inputsKeepZeros);
 	}
 	
 	public Vector filterLabelInternal(Vector before)
 	{
-		return filterInternal(before, labelMins, labelMaxes);
+		return filterInternal(before, labelMins, labelMaxes, labelsKeepZeros);
 	}
 
 	/**
 	 * For filtering either inputs or labels. The range of the filtered values will be between
 	 * base and (base + range) inclusive.
+	 * @param keepZeros True if every column normalizes 0 to 0. Sparse vectors are only filtered to
+	 * sparse vectors if this is true, since otherwise every value of the result would be stored.
 	 */
-	private static Vector filterInternal(Vector before, double[] mins, double[] maxes)
+	private static Vector filterInternal(Vector before, double[] mins, double[] maxes, boolean keepZeros)
 	{
 		if (before == null)
 			throw new IllegalArgumentException();
@@ -99,37 +144,44 @@ public class Normalize extends Filter
 		if(before.size() != mins.length)
 			throw new IllegalArgumentException(String.format("Unexpected input vector size. " +
 					"Expected size %d but was size %d", mins.length, before.size()));
+		// Sparse vectors are copied to an array first so that each value is not found with a search.
+		double[] values = before instanceof SparseVector ? before.toArray() : null;
 		double[] after = new double[before.size()];
 		for(int c = 0; c < mins.length; c++)
 		{
+			double value = values != null ? values[c] : before.get(c);
 			if(Vector.isUnknown(mins[c])) // if the attribute is nominal or ignored...
-				after[c] = before.get(c);
+				after[c] = value;
 			else
 			{
-				if(Vector.isUnknown(before.get(c)))
+				if(Vector.isUnknown(value))
 				{
 					after[c] = Vector.getUnknownValue();
 				}
 				else
 				{
-					if (mins[c] != maxes[c])
-					{
-						after[c] = ((before.get(c) - mins[c]) / (maxes[c] - mins[c]) * range) + base;					
-					}
-					else
-					{
-						// There is only 1 value in this column.
-						if (before.get(c) > 0)
-							after[c] = base + range;
-						else
-							after[c] = base;
-					}
+					after[c] = normalize(value, mins[c], maxes[c]);
 				}
 			}
 		}
+		if (values != null && keepZeros)
+			return SparseVector.fromVector(new Vector(after, before.getWeight()));
 		return new Vector(after, before.getWeight());
 	}
 
+	/**
+	 * Normalizes a known value of a continuous column with the given min and max.
+	 */
+	private static double normalize(double value, double min, double max)
+	{
+		if (min != max)
+			return ((value - min) / (max - min) * range) + base;
+		// There is only 1 value in this column.
+		if (value > 0)
+			return base + range;
+		return base;
+	}
+
 
 	/**
 	 * De-normalize continuous values back to their original range
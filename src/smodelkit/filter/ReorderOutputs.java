@@ -9,6 +9,7 @@ import java.util.stream.Collectors;
 
 import smodelkit.MLSystemsManager;
 import smodelkit.Matrix;
+import smodelkit.RowSource;
 import smodelkit.Vector;
 import smodelkit.util.Pair;
 import smodelkit.util.Range;
@@ -61,6 +62,16 @@ public class ReorderOutputs extends Filter
 		}
 	}
 
+	/**
+	 * Only the label columns are needed, so no rows are kept in memory.
+	 */
+	@Override
+	protected void initializeInternal(RowSource source)
+	{
+		Pair<Matrix> columns = source.readColumns();
+		initializeInternal(columns.getFirst(), columns.getSecond());
+	}
+
 	@Override
 	protected Vector filterInputInternal(Vector before)
 	{
@@ -0,0 +1,211 @@
+package smodelkit.learner;
+
+import smodelkit.SparseVector;
+import smodelkit.Vector;
+import smodelkit.util.kernels.Kernels;
+
+/**
+ * Calculates the outputs of a NeuralNet whose weights are stored in single precision (see
+ * NeuralNet.Precision), and does online weight updates on them. The inputs, outputs, and errors
+ * of every layer are kept in float buffers, which are reused for every instance, so a network
+ * uses half as much memory bandwidth as one in double precision. Values are only converted to
+ * and from doubles at the boundary, where instances and predictions are Vectors.
+ *
+ * An instance is created for one network (the floatLayerWeights of a NeuralNet) and one thread.
+ * The calculations are the same as those NeuralNet does in double precision for an instance.
+ * @author joseph
+ *
+ */
+class FloatNetwork
+{
+	private final NeuralNet net;
+	// The network this was created for.
+	final float[][] network;
+	private final float[] input;
+	private final float[][] outputs;
+	private final float[][] errors;
+
+	FloatNetwork(NeuralNet net)
+	{
+		this.net = net;
+		this.network = net.floatLayerWeights;
+		int[] sizes = net.layerSizes;
+		input = new float[network[0].length / sizes[0] - 1];
+		outputs = new float[sizes.length][];
+		errors = new float[sizes.length][];
+		for (int i = 0; i < sizes.length; i++)
+		{
+			outputs[i] = new float[sizes[i]];
+			errors[i] = new float[sizes[i]];
+		}
+	}
+
+	/**
+	 * Calculates the output of every node. The result is reused by later calls.
+	 */
+	float[][] calcOutputs(Vector instance)
+	{
+		assert instance.size() == input.length;
+		SparseVector sparse = instance instanceof SparseVector ? (SparseVector)instance : null;
+		for (int i = 0; i < input.length; i++)
+			input[i] = (float)instance.get(i);
+
+		int[] sizes = net.layerSizes;
+		Sigmoid sigmoid = net.sigmoid;
+		Kernels kernels = Kernels.get();
+		for (int i = 0; i < sizes.length; i++)
+		{
+			float[] weights = network[i];
+			float[] out = outputs[i];
+			if (i == 0 && sparse != null)
+			{
+				// Zero inputs add nothing to a node's net, so only the stored values are used.
+				int stride = input.length + 1;
+				for (int j = 0; j < sizes[i]; j++)
+				{
+					int base = j * stride;
+					float total = 0;
+					for (int k = 0; k < sparse.getNonZeroCount(); k++)
+						total += (float)sparse.getNonZeroValue(k) * weights[base + sparse.getNonZeroIndex(k)];
+					// bias weight
+					total += weights[base + stride - 1];
+					out[j] = (float)sigmoid.apply(total);
+				}
+			}
+			else
+			{
+				float[] in = i == 0 ? input : outputs[i - 1];
+				int stride = in.length + 1;
+				for (int j = 0; j < sizes[i]; j++)
+				{
+					int base = j * stride;
+					float total = kernels.dot(in, 0, weights, base, in.length);
+					// bias weight
+					total += weights[base + in.length];
+					out[j] = (float)sigmoid.apply(total);
+				}
+			}
+
+			if (net.increasContrastOfHiddenLayerInputs)
+			{
+				if (i + 1 < sizes[i])
+					increaseContrast(out);
+			}
+		}
+		return outputs;
+	}
+
+	/**
+	 * Returns a copy of the outputs of the output layer, as calculated by calcOutputs.
+	 */
+	double[] calcOutputLayer(Vector instance)
+	{
+		float[][] result = calcOutputs(instance);
+		float[] last = result[result.length - 1];
+		double[] converted = new double[last.length];
+		for (int j = 0; j < last.length; j++)
+			converted[j] = last[j];
+		return converted;
+	}
+
+	/**
+	 * Does one online weight update with the given instance, as NeuralNet does in double
+	 * precision.
+	 */
+	void train(Vector instance, Vector label)
+	{
+		float[][] outputs = calcOutputs(instance);
+
+		int[] sizes = net.layerSizes;
+		int outputLayer = sizes.length - 1;
+		for (int i = outputLayer; i >= 0; i--)
+		{
+			float[] out = outputs[i];
+			float[] err = errors[i];
+			if (i == outputLayer)
+			{
+				// output nodes
+				for (int j = 0; j < sizes[i]; j++)
+					err[j] = out[j] * (1 - out[j]) * ((float)label.get(j) - out[j]);
+			}
+			else
+			{
+				// hidden nodes
+				float[] higherWeights = network[i + 1];
+				float[] higherErrors = errors[i + 1];
+				int higherStride = sizes[i] + 1;
+				for (int j = 0; j < sizes[i]; j++)
+				{
+					float errorFromHigherLayer = 0;
+					for (int h = 0; h < higherErrors.length; h++)
+						errorFromHigherLayer += higherWeights[h * higherStride + j] * higherErrors[h];
+					err[j] = out[j] * (1 - out[j]) * errorFromHigherLayer;
+				}
+			}
+		}
+
+		float rate = (float)(net.currentLearningRate * instance.getWeight());
+		for (int i = 0; i < sizes.length; i++)
+		{
+			float[] in = i == 0 ? input : outputs[i - 1];
+			float decay = i == outputLayer ? (float)net.weightDecayRate : 0.0f;
+			updateWeights(network[i], sizes[i], in, errors[i], rate, decay);
+		}
+	}
+
+	private void updateWeights(float[] weights, int nodes, float[] in, float[] errors, float learningRate,
+			float weightDecayRate)
+	{
+		float momentum = (float)net.momentum;
+		int numInputs = in.length;
+		int stride = numInputs + 1;
+		Kernels kernels = Kernels.get();
+		for (int j = 0; j < nodes; j++)
+		{
+			float error = errors[j];
+			int base = j * stride;
+			if (momentum == 0 && weightDecayRate == 0)
+			{
+				// Only the gradient changes the weights.
+				kernels.axpy(learningRate * error, in, 0, weights, base, numInputs);
+			}
+			else
+			{
+				for (int i = 0; i < numInputs; i++)
+				{
+					float weightChange = learningRate * error * in[i] + momentum * weights[base + i]
+							- learningRate * weightDecayRate * weights[base + i];
+					weights[base + i] += weightChange;
+				}
+			}
+
+			// bias weight
+			int bias = base + numInputs;
+			float weightChange = learningRate * error + momentum * weights[bias]
+					- learningRate * weightDecayRate * weights[bias];
+			weights[bias] += weightChange;
+		}
+	}
+
+	/**
+	 * Does what NeuralNet.increaseContrast does to the outputs of a layer.
+	 */
+	private static void increaseContrast(float[] outputs)
+	{
+		float minVal = Float.POSITIVE_INFINITY;
+		float maxVal = Float.NEGATIVE_INFINITY;
+		for (float output : outputs)
+		{
+			if (output < minVal)
+				minVal = output;
+			if (output > maxVal)
+				maxVal = output;
+		}
+		float range = maxVal - minVal;
+		float maxChange = Math.min(minVal, 1.0f - maxVal);
+		float scale = (2.0f * maxChange + range) / range;
+		float median = (maxVal + minVal) / 2.0f;
+		for (int j = 0; j < outputs.length; j++)
+			outputs[j] = (outputs[j] - median) * scale + median;
+	}
+}
@@ -4,9 +4,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
 import java.util.PriorityQueue;
-import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 import org.json.simple.JSONObject;
@@ -15,9 +13,11 @@ import smodelkit.MLSystemsManager;
 import smodelkit.Matrix;
 import smodelkit.Vector;
 import smodelkit.util.Counter;
-import smodelkit.util.Helper;
+import smodelkit.util.LabelIndex;
+import smodelkit.util.LabelKey;
 import smodelkit.util.Logger;
 import smodelkit.util.Tuple2Comp;
+import smodelkit.util.kernels.Kernels;
 
 /**
  * This is my implementation of Richard Morris's Hierarchical Multi-Output Nearest Neighbor Model.
@@ -36,6 +36,9 @@ public class HMONN extends SupervisedLearner
 
 	// Training examples
 	private Matrix tInputs, tLabels;
+	// True if every input column is continuous, so the input part of distances can be measured
+	// with Kernels.squaredDistance.
+	private boolean allInputsContinuous;
 	
 	/**
 	 * @param randGenerator
@@ -77,6 +80,12 @@ public class HMONN extends SupervisedLearner
 		Logger.println("k: " + k);
 		tInputs = inputs;
 		tLabels = labels;
+		allInputsContinuous = true;
+		for (int c = 0; c < inputs.cols(); c++)
+		{
+			if (!inputs.isContinuous(c))
+				allInputsContinuous = false;
+		}
 		
 		inn.train(inputs, labels);
 		Logger.unindent();
@@ -90,13 +99,10 @@ public class HMONN extends SupervisedLearner
 		
 		// First, predict using inn.
 		Vector innerPred = inn.predict(input);
-		// Combine inn's prediction with the input to make a query.
-		Vector query = new Vector(input);
-		query.addAll(innerPred);
 
-		
-		// Find the k rows in the dataset which are closest to the query.
-		Matrix kLabels = getKNearest(query);
+		// Find the k rows in the dataset which are closest to the query, which is the input
+		// combined with inn's prediction.
+		Matrix kLabels = getKNearest(input, innerPred);
 		assert kLabels.rows() == k;
 		
 		// Find the most common label vector in kLabels.
@@ -113,11 +119,10 @@ public class HMONN extends SupervisedLearner
 		
 		// First, predict using inn.
 		Vector innerPred = inn.predict(input);
-		// Combine inn's prediction with the input to make a query.
-		Vector query = input.concat(innerPred);
 
-		// Find the k rows in the dataset which are closest to the query.
-		Matrix kLabels = getKNearest(query);
+		// Find the k rows in the dataset which are closest to the query, which is the input
+		// combined with inn's prediction.
+		Matrix kLabels = getKNearest(input, innerPred);
 		assert kLabels.rows() == k;
 
 		Counter<Vector> counts = new Counter<>();
@@ -131,26 +136,41 @@ public class HMONN extends SupervisedLearner
 		return result;
 	}
 
+	/**
+	 * Returns the most common label in kLabels. Ties are broken in favor of the label which is
+	 * first in the order of Vector.compareTo.
+	 */
 	private Vector findMostCommonLabel(Matrix kLabels)
 	{
-		Map<Vector, Integer> counts = new TreeMap<>();
-		
+		LabelIndex index = new LabelIndex(new LabelKey(kLabels));
+		int[] counts = new int[kLabels.rows()];
+		// The first row found with each label, indexed by label id.
+		List<Vector> labels = new ArrayList<>();
 		for (int r = 0; r < kLabels.rows(); r++)
 		{
-			Integer prevCount = counts.get(kLabels.row(r));
-			if (prevCount == null)
-				prevCount = 0;
-			counts.put(kLabels.row(r), prevCount + 1);
+			Vector label = kLabels.row(r);
+			int id = index.add(label);
+			if (id == labels.size())
+				labels.add(label);
+			counts[id]++;
 		}
-		return Helper.argmax(counts);
+		
+		int best = -1;
+		for (int id = 0; id < labels.size(); id++)
+		{
+			if (best == -1 || counts[id] > counts[best] 
+					|| (counts[id] == counts[best] && index.compare(id, best) < 0))
+				best = id;
+		}
+		return labels.get(best);
 	}
 
-	private Matrix getKNearest(final Vector query)
+	private Matrix getKNearest(Vector input, Vector innerPred)
 	{
 		Matrix resultLabels = new Matrix();
 		resultLabels.copyMetadata(tLabels);
 		
-		List<Integer> nearestIndexes = getKNearestInstanceIndexes(query);
+		List<Integer> nearestIndexes = getKNearestInstanceIndexes(input, innerPred);
 
 		for(int i = 0; i < k; i++)
 		{
@@ -167,7 +187,7 @@ public class HMONN extends SupervisedLearner
 	 * 
 	 */
 
-	private List<Integer> getKNearestInstanceIndexes(Vector query)
+	private List<Integer> getKNearestInstanceIndexes(Vector input, Vector innerPred)
 	{
 		// Create a list of indexes for sorting the inputs and labels based on their distance from query
 		// without changing the inputs or labels. 
@@ -186,12 +206,12 @@ public class HMONN extends SupervisedLearner
 		// Load the first k rows into the k.
 		for (int i = 0; i < k; i++)
 		{
-			double distance = measureDistance(query, tInputs.row(i).concat(tLabels.row(i)));
+			double distance = measureDistance(input, innerPred, i);
 			queue.add(new Tuple2Comp<>(distance, i));
 		}
 		for (int i = k; i < tLabels.rows(); i++)
 		{
-			double distance = measureDistance(query, tInputs.row(i).concat(tLabels.row(i)));
+			double distance = measureDistance(input, innerPred, i);
 			queue.add(new Tuple2Comp<>(distance, i));
 			queue.remove();
 		}
@@ -206,47 +226,65 @@ public class HMONN extends SupervisedLearner
 		return result;
 	}
 	
-	private double measureDistance(Vector row1, Vector row2)
+	/**
+	 * Measures the distance from a query, which is an input and inn's prediction for it, to the
+	 * specified training row.
+	 */
+	private double measureDistance(Vector input, Vector innerPred, int row)
 	{
-		assert(row1.size() == row2.size());
-		assert(row1.size() == tInputs.cols() + tLabels.cols());
+		assert(input.size() == tInputs.cols());
+		assert(innerPred.size() == tLabels.cols());
+		Vector tInput = tInputs.row(row);
+		Vector tLabel = tLabels.row(row);
 
 		// theta=0 means only use predicted labels.
 		// theta=1 means only use inputs (just do KNN).
-		double difSum = 0;
-		for(int i = 0; i < tInputs.cols(); i++)
+		double difSum = Double.NaN;
+		double[] values1 = input.getArray();
+		double[] values2 = tInput.getArray();
+		if (allInputsContinuous && values1 != null && values2 != null)
+		{
+			difSum = Kernels.get().squaredDistance(values1, input.getArrayOffset(), values2,
+					tInput.getArrayOffset(), input.size(), theta);
+		}
+		if (Double.isNaN(difSum))
 		{
-			difSum += theta * measureSingleDistance(row1, row2, i);
+			// Either the kernel could not be used, or there are unknown inputs, which
+			// measureSingleDistance reports.
+			difSum = 0;
+			for(int i = 0; i < tInputs.cols(); i++)
+			{
+				difSum += theta * measureSingleDistance(input.get(i), tInput.get(i), tInputs.isContinuous(i));
+			}
 		}
 
 		for(int i = 0; i < tLabels.cols(); i++)
 		{
-			difSum += (1.0 - theta) * measureSingleDistance(row1, row2, i + tInputs.cols());
+			difSum += (1.0 - theta) * measureSingleDistance(innerPred.get(i), tLabel.get(i), 
+					tLabels.isContinuous(i));
 		}
 
 		return Math.sqrt(difSum);
 	}
 	
-	private double measureSingleDistance(Vector row1, Vector row2, int index)
+	private double measureSingleDistance(double value1, double value2, boolean isContinuous)
 	{
-		if (Vector.isUnknown(row1.get(index)) || Vector.isUnknown(row2.get(index)))
+		if (Vector.isUnknown(value1) || Vector.isUnknown(value2))
 		{
 			// I'm defining the distance to an unknown value to be a constant.
 			// In my experiments as of 2/25/2014, this never gets called.
 			throw new RuntimeException("To match Richard's setup, unkowns should have been filled.");
 			//return DISTANCE_TO_UNKNOWN; 
 		}
-		boolean isContinuous = index < tInputs.cols() ? tInputs.isContinuous(index) 
-				: tLabels.isContinuous(index - tInputs.cols());
 		if (isContinuous)
 		{
-			double d = row1.get(index) - row2.get(index);
+			double d = value1 - value2;
 			return d * d;
 		}
 		else
 		{
 			// The attribute is nominal.
-			return row1.get(index) == row2.get(index) ? 0 : 1;
+			return value1 == value2 ? 0 : 1;
 		}
 		
 	}
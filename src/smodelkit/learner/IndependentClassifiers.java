@@ -5,18 +5,20 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.PriorityQueue;
-import java.util.Set;
-import java.util.TreeSet;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.function.Function;
 
 import org.json.simple.JSONObject;
 
+import smodelkit.CompositeVector;
 import smodelkit.MLSystemsManager;
 import smodelkit.Matrix;
 import smodelkit.Vector;
+import smodelkit.util.LabelIndex;
+import smodelkit.util.LabelKey;
 import smodelkit.util.Logger;
 import smodelkit.util.Range;
 import smodelkit.util.SequenceIterator;
@@ -114,12 +116,22 @@ public class IndependentClassifiers extends SupervisedLearner
 	@Override
 	public Vector innerPredict(Vector input)
 	{		
-		Vector result = new Vector(new double[0]);
+		List<Vector> predictions = new ArrayList<>(models.length);
 		for (SupervisedLearner learner : models)
 		{
-			result = result.concat(learner.predict(input));
+			predictions.add(learner.predict(input));
 		}
-		return result;
+		return concat(predictions);
+	}
+
+	/**
+	 * Returns the predictions of the models as one vector. The values are copied once, because
+	 * callers may need the array of the result (see Vector.getArray), which CompositeVector does
+	 * not have.
+	 */
+	private static Vector concat(List<Vector> predictions)
+	{
+		return new Vector(new CompositeVector(predictions, 1.0).toArray(), 1.0);
 	}
 	
 	@Override
@@ -134,6 +146,93 @@ public class IndependentClassifiers extends SupervisedLearner
 		}
 		return result;
 	}
+
+	@Override
+	protected List<Vector> innerPredictBatch(Matrix inputs)
+	{
+		List<List<Vector>> modelPredictions = predictWithEachModel(learner -> learner.predictBatch(inputs));
+		List<Vector> result = new ArrayList<>(inputs.rows());
+		for (int r : new Range(inputs.rows()))
+		{
+			List<Vector> predictions = new ArrayList<>(models.length);
+			for (List<Vector> learnerPreds : modelPredictions)
+				predictions.add(learnerPreds.get(r));
+			result.add(concat(predictions));
+		}
+		return result;
+	}
+
+	@Override
+	protected List<List<double[]>> innerPredictOutputWeightsBatch(Matrix inputs)
+	{
+		List<List<List<double[]>>> modelWeights = predictWithEachModel(
+				learner -> learner.predictOutputWeightsBatch(inputs));
+		List<List<double[]>> result = new ArrayList<>(inputs.rows());
+		for (int r : new Range(inputs.rows()))
+		{
+			List<double[]> weights = new ArrayList<>(models.length);
+			for (List<List<double[]>> learnerWeights : modelWeights)
+			{
+				assert learnerWeights.get(r).size() == 1;
+				weights.add(learnerWeights.get(r).get(0));
+			}
+			result.add(weights);
+		}
+		return result;
+	}
+
+	@Override
+	protected List<List<Vector>> innerPredictScoredListBatch(Matrix inputs, int maxDesiredSize)
+	{
+		List<List<double[]>> weights = innerPredictOutputWeightsBatch(inputs);
+		List<Vector> initialPredictions = innerPredictBatch(inputs);
+		List<List<Vector>> result = new ArrayList<>(inputs.rows());
+		for (int r : new Range(inputs.rows()))
+			result.add(doSearchForScoredList(weights.get(r), initialPredictions.get(r), maxDesiredSize));
+		return result;
+	}
+
+	/**
+	 * Calls predict with each sub-model, in parallel if threads are available (see ThreadCounter).
+	 * @return The result for each sub-model, in order.
+	 */
+	private <T> List<T> predictWithEachModel(Function<SupervisedLearner, T> predict)
+	{
+		List<Future<T>> futures = new ArrayList<>();
+		int threadsReserved = ThreadCounter.reserveThreadCount(models.length);
+		ExecutorService exService = Executors.newFixedThreadPool(Math.max(1, threadsReserved));
+		try
+		{
+			for (SupervisedLearner learner : models)
+				futures.add(exService.submit(() -> predict.apply(learner)));
+
+			List<T> results = new ArrayList<>(models.length);
+			for (Future<T> future : futures)
+			{
+				try
+				{
+					results.add(future.get());
+				}
+				catch(ExecutionException e)
+				{
+					// Throw the sub-model's exception, as predicting with it directly would.
+					if (e.getCause() instanceof RuntimeException)
+						throw (RuntimeException)e.getCause();
+					throw new RuntimeException(e);
+				}
+				catch(InterruptedException e)
+				{
+					throw new RuntimeException(e);
+				}
+			}
+			return results;
+		}
+		finally
+		{
+			exService.shutdown();
+			ThreadCounter.freeThreadCount(threadsReserved);
+		}
+	}
 	
 	/**
 	 * Does a best-first search from the highest scoring prediction to the lowest (or until maxDesiredSize
@@ -151,45 +250,56 @@ public class IndependentClassifiers extends SupervisedLearner
 	@Override
 	protected List<Vector> innerPredictScoredList(Vector input, int maxDesiredSize)
 	{
-		return doSearchForScoredList(input, maxDesiredSize);
+		return doSearchForScoredList(innerPredictOutputWeights(input), innerPredict(input), maxDesiredSize);
 		// I use the line below to generate unit test expected values for doSearchForScoredList.
 		//return predictExaustive(input, maxDesiredSize);
 	}
 	
-	private List<Vector> doSearchForScoredList(Vector input, int maxDesiredSize)
+	/**
+	 * @param weights The output weights of the sub-models for the input (see innerPredictOutputWeights).
+	 * @param initialPrediction The prediction of innerPredict for the input.
+	 */
+	private List<Vector> doSearchForScoredList(List<double[]> weights, Vector initialPrediction, 
+			int maxDesiredSize)
 	{
-		Set<Vector> explored = new TreeSet<>();
-
-		List<double[]> weights = innerPredictOutputWeights(input);
-		
-		Vector initialPrediction = innerPredict(input);
+		int[] valueCounts = new int[weights.size()];
+		for (int c : new Range(weights.size()))
+			valueCounts[c] = weights.get(c).length;
+		LabelIndex explored = new LabelIndex(new LabelKey(valueCounts));
+		// The explored predictions, in the order of Vector.compareTo. Ties between predictions
+		// with the same score are broken by this order.
+		List<Vector> exploredInOrder = new ArrayList<>();
 		
 		List<Vector> scoredPredictions = new ArrayList<>();
 		
 		explored.add(initialPrediction);
+		exploredInOrder.add(initialPrediction);
 		scoredPredictions.add(new Vector(initialPrediction, getScoreForPrediction(weights, initialPrediction)));
 		
 		for (@SuppressWarnings("unused") int ignored : new Range(maxDesiredSize))
 		{
 			// Find the next best prediction that is not in explored. The score of a prediction is simply the
-			// sum of the weights the sub-models gave to the prediction.
-			Vector bestPred = null;
+			// sum of the weights the sub-models gave to the prediction. Candidates are looked up without
+			// being created.
+			Vector bestPrev = null;
+			int bestCol = -1;
+			int bestValue = -1;
 			double bestScore = Double.NEGATIVE_INFINITY;
 	
-			for (Vector prevPrediction : explored)
+			for (Vector prevPrediction : exploredInOrder)
 			{
 				for (int c : new Range(weights.size())) // weights.size() is the number of output dimensions.
 				{
 					for (int outptuValue : new Range(weights.get(c).length))
 					{
-						Vector pred = new Vector(prevPrediction);
-						pred.set(c, outptuValue);
-						if (!explored.contains(pred))
+						if (explored.indexOf(prevPrediction, c, outptuValue) < 0)
 						{
-							double score = getScoreForPrediction(weights, pred);
+							double score = getScoreForPrediction(weights, prevPrediction, c, outptuValue);
 							if (score >= bestScore)
 							{
-								bestPred = pred;
+								bestPrev = prevPrediction;
+								bestCol = c;
+								bestValue = outptuValue;
 								bestScore = score;
 							}
 						}
@@ -197,14 +307,18 @@ public class IndependentClassifiers extends SupervisedLearner
 				}
 			}
 			
-			if (bestPred == null)
+			if (bestPrev == null)
 			{
 				// There are no more predictions to make
 				break;
 			}
 			else
 			{
+				Vector bestPred = new Vector(bestPrev);
+				bestPred.set(bestCol, bestValue);
 				explored.add(bestPred);
+				int position = Collections.binarySearch(exploredInOrder, bestPred);
+				exploredInOrder.add(-(position + 1), bestPred);
 				scoredPredictions.add(new Vector(bestPred, bestScore));
 			}
 		}		
@@ -213,19 +327,28 @@ public class IndependentClassifiers extends SupervisedLearner
 	}
 	
 	private double getScoreForPrediction(List<double[]> weights, Vector prediction)
+	{
+		return getScoreForPrediction(weights, prediction, -1, 0);
+	}
+	
+	/**
+	 * Returns the score of the given prediction as if its value in column col were the given value.
+	 */
+	private double getScoreForPrediction(List<double[]> weights, Vector prediction, int col, int value)
 	{
 		double score = 1.0;
 		for (int c : new Range(weights.size()))
 		{
+			double predictedValue = c == col ? value : prediction.get(c);
 			// Make sure predictions are nominal.
-			assert (int)prediction.get(c) == prediction.get(c);
+			assert (int)predictedValue == predictedValue;
 			
-			if (weights.get(c)[(int)prediction.get(c)] < 0)
+			if (weights.get(c)[(int)predictedValue] < 0)
 				throw new IllegalArgumentException("Predicted weights must be between 0 and 1 inclusive.");
-			if (weights.get(c)[(int)prediction.get(c)] > 1.0)
+			if (weights.get(c)[(int)predictedValue] > 1.0)
 				throw new IllegalArgumentException("Predicted weights must be between 0 and 1 inclusive.");
 			
-			score *= weights.get(c)[(int)prediction.get(c)];
+			score *= weights.get(c)[(int)predictedValue];
 		}
 		return score;
 	}
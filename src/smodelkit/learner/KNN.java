@@ -1,16 +1,18 @@
 package smodelkit.learner;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 
 import org.json.simple.JSONObject;
 
 import smodelkit.Matrix;
+import smodelkit.SparseVector;
 import smodelkit.Vector;
 import smodelkit.util.Helper;
 import smodelkit.util.Logger;
+import smodelkit.util.kernels.Kernels;
 
 /**
  * A simple k-nearest neighbor learner.
@@ -20,6 +22,8 @@ import smodelkit.util.Logger;
 public class KNN extends SupervisedLearner
 {
 	private static final long serialVersionUID = 1L;
+	// The number of queries whose distances are measured together by innerPredictBatch.
+	private static final int QUERY_BATCH_SIZE = 64;
 	private int SORTING_THRESHOLD;
 	private boolean USE_DISTANCE_WEIGHTS;
 	private double LEAVE_ONE_OUT_REPS;
@@ -30,6 +34,11 @@ public class KNN extends SupervisedLearner
 
 	// Training examples
 	private Matrix tInputs, tLabels;
+	// True if every input column is continuous, so distances can be measured with
+	// Kernels.maskedSquaredDistance.
+	private boolean allInputsContinuous;
+	// Rows of the training examples which are left out of predictions while leaveOneOut runs.
+	private transient BitSet leftOut;
 	
 	/**
 	 * @param randGenerator
@@ -76,133 +85,169 @@ public class KNN extends SupervisedLearner
 		assert(input1.size() == input2.size());
 		assert(input1.size() == tInputs.cols());
 
+		if (input1 instanceof SparseVector && input2 instanceof SparseVector)
+			return measureSparseDistance((SparseVector)input1, (SparseVector)input2);
+
+		double[] values1 = input1.getArray();
+		double[] values2 = input2.getArray();
+		if (allInputsContinuous && values1 != null && values2 != null)
+		{
+			return Math.sqrt(Kernels.get().maskedSquaredDistance(values1, input1.getArrayOffset(),
+					values2, input2.getArrayOffset(), input1.size(), DISTANCE_TO_UNKNOWN));
+		}
+
 		double difSum = 0;
 		for(int i = 0; i < input1.size(); i++)
 		{
-			if (Vector.isUnknown(input1.get(i)) || Vector.isUnknown(input2.get(i)))
+			difSum += measureColumnDistance(i, input1.get(i), input2.get(i));
+		}
+
+		return Math.sqrt(difSum);
+	}
+
+	/**
+	 * Measures distance by visiting only the columns where at least one of the inputs is
+	 * not zero. Columns where both are zero have a distance of zero, so the result is the same
+	 * as that of measureDistance.
+	 */
+	private double measureSparseDistance(SparseVector input1, SparseVector input2)
+	{
+		double difSum = 0;
+		int k1 = 0;
+		int k2 = 0;
+		while (k1 < input1.getNonZeroCount() || k2 < input2.getNonZeroCount())
+		{
+			int i1 = k1 < input1.getNonZeroCount() ? input1.getNonZeroIndex(k1) : Integer.MAX_VALUE;
+			int i2 = k2 < input2.getNonZeroCount() ? input2.getNonZeroIndex(k2) : Integer.MAX_VALUE;
+			if (i1 == i2)
 			{
-				// I'm defining the distance to an unknown value to be a constant.
-				difSum += DISTANCE_TO_UNKNOWN; 
+				difSum += measureColumnDistance(i1, input1.getNonZeroValue(k1), input2.getNonZeroValue(k2));
+				k1++;
+				k2++;
 			}
-			else if (tInputs.getValueCount(i) == 0)
+			else if (i1 < i2)
 			{
-				// The attribute is continuous.
-				difSum += (input1.get(i) - input2.get(i)) * (input1.get(i) - input2.get(i));
+				difSum += measureColumnDistance(i1, input1.getNonZeroValue(k1), 0);
+				k1++;
 			}
 			else
 			{
-				// The attribute is nominal.
-				difSum += input1.get(i) == input2.get(i) ? 0 : 1;
+				difSum += measureColumnDistance(i2, 0, input2.getNonZeroValue(k2));
+				k2++;
 			}
 		}
 
 		return Math.sqrt(difSum);
 	}
 
+	private double measureColumnDistance(int column, double value1, double value2)
+	{
+		if (Vector.isUnknown(value1) || Vector.isUnknown(value2))
+		{
+			// I'm defining the distance to an unknown value to be a constant.
+			return DISTANCE_TO_UNKNOWN; 
+		}
+		else if (tInputs.getValueCount(column) == 0)
+		{
+			// The attribute is continuous.
+			return (value1 - value2) * (value1 - value2);
+		}
+		else
+		{
+			// The attribute is nominal.
+			return value1 == value2 ? 0 : 1;
+		}
+	}
+
 	/**
-	 * 
-	 * @param outInstances Must be size k.
-	 * @param outLabels Must be size k.
+	 * Measures the distance from query to every training row which is not left out. The distances
+	 * of rows which are left out are not set.
 	 */
-	private void getKNearest(final Vector query, Vector[] outInstances, double[] outLabels)
+	private double[] measureDistances(Vector query)
 	{
-		assert outInstances.length == k;
-		assert outLabels.length == k;
+		double[] distances = new double[tInputs.rows()];
+		for (int i = 0; i < tInputs.rows(); i++)
+		{
+			if (leftOut == null || !leftOut.get(i))
+				distances[i] = measureDistance(query, tInputs.row(i));
+		}
+		return distances;
+	}
 
+	/**
+	 * Finds the k training rows nearest to a query, which are not left out, in order of increasing
+	 * distance. Ties are broken by row index.
+	 * @param distances The distance from the query to each training row (see measureDistances).
+	 */
+	private int[] findNearest(final double[] distances)
+	{
 		// Create a list of indexes for sorting the instances and labels based on their distance from query
 		// without changing the inputs or labels. 
 		List<Integer> indexes = new ArrayList<Integer>(tInputs.rows());
-		List<Integer> nearestIndexes = new ArrayList<Integer>(k);
 		for(int i = 0; i < tInputs.rows(); i++)
-			indexes.add(i);
-		List<Integer> indexPtr = null;
+		{
+			if (leftOut == null || !leftOut.get(i))
+				indexes.add(i);
+		}
 
+		int[] nearest = new int[k];
 		if (k >= SORTING_THRESHOLD)
 		{
-			// Sorting is faster for large k.
-			
-			Comparator<Integer> comparator = new Comparator<Integer>()
-			{
-				@Override
-				public int compare(Integer i1, Integer i2)
-				{
-					double d1 = measureDistance(query, tInputs.row(i1));
-					double d2 = measureDistance(query, tInputs.row(i2));
-					return Double.compare(d1, d2);
-				}
-			};
-			
-			Collections.sort(indexes, comparator);
-			indexPtr = indexes;
+			// Sorting is faster for large k. The sort is stable, so ties stay in order of row index.
+			Collections.sort(indexes, (i1, i2) -> Double.compare(distances[i1], distances[i2]));
+			for(int i = 0; i < k; i++)
+				nearest[i] = indexes.get(i);
 		}
 		else
 		{
 			// Individual selection is faster for small k.
+			boolean[] selected = new boolean[tInputs.rows()];
 			for(int i = 0; i < k; i++)
 			{
-				nearestIndexes.add(getNearestInputIndex(query, indexes));
-				indexes.remove(nearestIndexes.get(i));
+				int best = -1;
+				for (int index : indexes)
+				{
+					if (!selected[index] && (best < 0 || distances[index] < distances[best]))
+						best = index;
+				}
+				selected[best] = true;
+				nearest[i] = best;
 			}
-			indexPtr = nearestIndexes;
 		}
-
-		for(int i = 0; i < k; i++)
-		{
-			outInstances[i] = tInputs.row(indexPtr.get(i));
-			outLabels[i] = tLabels.row(indexPtr.get(i)).get(0);
-		}
-
+		return nearest;
 	}
 
-
-	private double calcWeight(Vector input1, Vector input2)
+	private double calcWeight(double distance)
 	{
 		if (!USE_DISTANCE_WEIGHTS)
 			return 1;
 
-		double distance = measureDistance(input1, input2);
 		if (distance == 0)
 			return -1;
 		return 1/(distance*distance);
 	}
 
-	private int getNearestInputIndex(Vector query, List<Integer> indexes)
-	{
-		int nearest = 0;
-		double bestDistance = measureDistance(query, tInputs.row(indexes.get(0)));
-		for(int i = 1; i < indexes.size(); i++)
-		{
-			double distance = measureDistance(query, tInputs.row(indexes.get(i)));
-			if (distance < bestDistance)
-			{
-				bestDistance = distance;
-				nearest = i;
-			}
-		}
-		int nearestInput = indexes.get(nearest);
-		return nearestInput;
-	}
-
-
 	// Reduces the data set while trying to preserve accuracy using the "leave one out" algorithm. 
 	private void leaveOneOut()
 	{
 		tInputs.shuffle(rand, tLabels);
 		Vector prediction;
 
-		int originalRowCount = tInputs.rows();
+		// Rows which are left out are marked here and then removed all at once, because removing
+		// them one at a time would shift the rows after them each time.
+		leftOut = new BitSet(tInputs.rows());
+		int remaining = tInputs.rows();
 
-		for(int i = 0; i < originalRowCount; i++)
+		for(int i = 0; i < tInputs.rows(); i++)
 		{
-			if (tInputs.rows() <= k)
+			if (remaining <= k)
 				break;
 
-			Vector tempInput = tInputs.row(0);
-			Vector tempLabel = tLabels.row(0);
-			// These deleteRow statements will be very slow because Matrix is currently using an ArrayList.
-			// If I really care about this code enough, I should make it more efficient.
-			tInputs.removeRow(0);
-			tLabels.removeRow(0);
+			// Leave the row out while predicting it, so that it is not its own neighbor.
+			leftOut.set(i);
+			remaining--;
+			Vector tempInput = tInputs.row(i);
+			Vector tempLabel = tLabels.row(i);
 			prediction = predict(tempInput, false);
 
 			if (!tLabels.isContinuous(0) && prediction.get(0) == tempLabel.get(0)
@@ -214,14 +259,17 @@ public class KNN extends SupervisedLearner
 			else
 			{
 				// Put it back in.
-				tInputs.addRow(tempInput);
-				tLabels.addRow(tempLabel);
+				leftOut.clear(i);
+				remaining++;
 			}
-
-			assert(tInputs.rows() == tLabels.rows());
-			assert(tInputs.rows() <= originalRowCount);
 		}
 
+		tInputs.removeRows(leftOut);
+		tLabels.removeRows(leftOut);
+		leftOut = null;
+		assert(tInputs.rows() == tLabels.rows());
+		assert(tInputs.rows() == remaining);
+
 		Logger.println("Number of training instances after reduction: " + tInputs.rows() + "\n");
 	}
 
@@ -257,6 +305,12 @@ public class KNN extends SupervisedLearner
 
 		tInputs = inputs;
 		tLabels = labels;
+		allInputsContinuous = true;
+		for (int c = 0; c < inputs.cols(); c++)
+		{
+			if (inputs.getValueCount(c) != 0)
+				allInputsContinuous = false;
+		}
 
 		for (int i = 0; i < LEAVE_ONE_OUT_REPS; i++)
 			leaveOneOut();
@@ -265,13 +319,52 @@ public class KNN extends SupervisedLearner
 	@Override
 	public Vector innerPredict(Vector input)
 	{
-		Vector prediction;
 		assert input.size() == tInputs.cols();
+		double[] distances = measureDistances(input);
+		return predictFromNearest(findNearest(distances), distances);
+	}
+
+	/**
+	 * Predicts the rows of inputs QUERY_BATCH_SIZE rows at a time. The distances from every query
+	 * in a batch to a training row are measured together, so each training row is read once per
+	 * batch instead of once per query.
+	 */
+	@Override
+	protected List<Vector> innerPredictBatch(Matrix inputs)
+	{
+		assert inputs.cols() == tInputs.cols();
+		List<Vector> result = new ArrayList<>(inputs.rows());
+		for (int start = 0; start < inputs.rows(); start += QUERY_BATCH_SIZE)
+		{
+			int end = Math.min(inputs.rows(), start + QUERY_BATCH_SIZE);
+			Vector[] queries = new Vector[end - start];
+			for (int q = 0; q < queries.length; q++)
+				queries[q] = inputs.row(start + q);
 
-		Vector[] kInputs = new Vector[k];
-		double[] kLabels = new double[k];
-		getKNearest(input, kInputs, kLabels);
+			double[][] distances = new double[queries.length][tInputs.rows()];
+			for (int i = 0; i < tInputs.rows(); i++)
+			{
+				if (leftOut != null && leftOut.get(i))
+					continue;
+				Vector row = tInputs.row(i);
+				for (int q = 0; q < queries.length; q++)
+					distances[q][i] = measureDistance(queries[q], row);
+			}
+
+			for (int q = 0; q < queries.length; q++)
+				result.add(predictFromNearest(findNearest(distances[q]), distances[q]));
+		}
+		return result;
+	}
 
+	/**
+	 * Predicts a label from the k nearest training rows to a query.
+	 * @param nearest The indexes of the k nearest training rows (see findNearest).
+	 * @param distances The distance from the query to each training row.
+	 */
+	private Vector predictFromNearest(int[] nearest, double[] distances)
+	{
+		Vector prediction;
 		if (tLabels.isContinuous(0))
 		{
 			// Compute a weighted average of the k labels. The weights are based on input distance
@@ -280,9 +373,9 @@ public class KNN extends SupervisedLearner
 			double average = 0;
 			for(int i = 0; i < k; i++)
 			{
-				double weight = calcWeight(input, kInputs[i]);
+				double weight = calcWeight(distances[nearest[i]]);
 				weightSum += weight;
-				average += weight * kLabels[i];
+				average += weight * tLabels.get(nearest[i], 0);
 			}
 
 			average /= weightSum;
@@ -297,9 +390,9 @@ public class KNN extends SupervisedLearner
 			{
 				for(int i = 0; i < k; i++)
 				{
-					if (kLabels[i] == atrVal)
+					if (tLabels.get(nearest[i], 0) == atrVal)
 					{
-						double weight = calcWeight(input, kInputs[i]);
+						double weight = calcWeight(distances[nearest[i]]);
 						if (weight == -1 || weight > MAX_WEIGHT)
 						{
 							// Exact match, or very close
@@ -0,0 +1,138 @@
+package smodelkit.learner;
+
+import java.io.Serializable;
+
+import org.json.simple.JSONObject;
+
+/**
+ * How the learning rate of a NeuralNet changes between epochs. The schedule is applied at the end
+ * of each epoch, after the validation set has been evaluated, so PLATEAU reacts to the same
+ * evaluations which decide when training stops.
+ * @author joseph
+ *
+ */
+public class LearningRateSchedule implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	public enum Type
+	{
+		/** The learning rate never changes. */
+		CONSTANT,
+		/** The learning rate is multiplied by the decay every decayEpochs epochs. */
+		STEP,
+		/**
+		 * The learning rate follows half a cosine wave from its initial value down to the minimum
+		 * learning rate, which it reaches after the maximum number of epochs.
+		 */
+		COSINE,
+		/**
+		 * The learning rate is multiplied by the decay every decayEpochs epochs in which the
+		 * validation set has not improved.
+		 */
+		PLATEAU
+	}
+
+	private final Type type;
+	private final double decay;
+	private final int decayEpochs;
+	private final double minLearningRate;
+
+	/**
+	 * @param decay What STEP and PLATEAU multiply the learning rate by.
+	 * @param decayEpochs How often STEP and PLATEAU reduce the learning rate.
+	 * @param minLearningRate No schedule reduces the learning rate below this.
+	 */
+	public LearningRateSchedule(Type type, double decay, int decayEpochs, double minLearningRate)
+	{
+		if (type == null)
+			throw new IllegalArgumentException("type cannot be null.");
+		if (decay <= 0 || decay > 1)
+			throw new IllegalArgumentException("decay must be greater than 0 and at most 1.");
+		if (decayEpochs < 1)
+			throw new IllegalArgumentException("decayEpochs must be at least 1.");
+		if (minLearningRate < 0)
+			throw new IllegalArgumentException("minLearningRate cannot be negative.");
+		this.type = type;
+		this.decay = decay;
+		this.decayEpochs = decayEpochs;
+		this.minLearningRate = minLearningRate;
+	}
+
+	/**
+	 * Creates a schedule from the settings of a NeuralNet. "learningRateSchedule" is one of
+	 * constant, step, cosine, or plateau, and is constant if it is not given.
+	 * "learningRateDecay", "learningRateDecayEpochs", and "minLearningRate" are optional, and
+	 * default to 0.5, 5, and 0.
+	 */
+	public static LearningRateSchedule fromSettings(JSONObject settings)
+	{
+		Type type = Type.CONSTANT;
+		if (settings.get("learningRateSchedule") != null)
+		{
+			String name = (String)settings.get("learningRateSchedule");
+			try
+			{
+				type = Type.valueOf(name.toUpperCase());
+			}
+			catch (IllegalArgumentException e)
+			{
+				throw new IllegalArgumentException("Unknown learningRateSchedule: " + name
+						+ ". It must be one of constant, step, cosine, or plateau.");
+			}
+		}
+		double decay = settings.get("learningRateDecay") != null ? (Double)settings.get("learningRateDecay") : 0.5;
+		int decayEpochs = settings.get("learningRateDecayEpochs") != null
+				? (int)(long)(Long)settings.get("learningRateDecayEpochs") : 5;
+		double minLearningRate = settings.get("minLearningRate") != null ? (Double)settings.get("minLearningRate") : 0.0;
+		return new LearningRateSchedule(type, decay, decayEpochs, minLearningRate);
+	}
+
+	public Type getType()
+	{
+		return type;
+	}
+
+	/**
+	 * Returns the learning rate to use for the next epoch.
+	 * @param initial The learning rate training started with.
+	 * @param current The learning rate used in the last epoch.
+	 * @param epochs The number of epochs which have been run.
+	 * @param epochsWithoutImprovement The number of epochs since the validation set last
+	 * improved.
+	 * @param maxEpochs The maximum number of epochs training will run.
+	 */
+	public double getLearningRate(double initial, double current, int epochs, int epochsWithoutImprovement,
+			int maxEpochs)
+	{
+		switch (type)
+		{
+		case STEP:
+			return Math.max(minLearningRate, initial * Math.pow(decay, epochs / decayEpochs));
+		case COSINE:
+			double progress = Math.min(1.0, (double)epochs / maxEpochs);
+			return minLearningRate + (initial - minLearningRate) * (1 + Math.cos(Math.PI * progress)) / 2;
+		case PLATEAU:
+			if (epochsWithoutImprovement > 0 && epochsWithoutImprovement % decayEpochs == 0)
+				return Math.max(minLearningRate, current * decay);
+			return current;
+		default:
+			return current;
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		switch (type)
+		{
+		case STEP:
+		case PLATEAU:
+			return type + " (decay " + decay + " every " + decayEpochs + " epochs, min " + minLearningRate + ")";
+		case COSINE:
+			return type + " (min " + minLearningRate + ")";
+		default:
+			return type.toString();
+		}
+	}
+}
@@ -0,0 +1,247 @@
+package smodelkit.learner;
+
+import java.util.Arrays;
+
+import smodelkit.Vector;
+import smodelkit.util.Gemm;
+
+/**
+ * A batch of instances for a NeuralNet, with buffers for the values calculated for them. The
+ * inputs, outputs, and errors of each layer are stored as row-major matrices with one row per
+ * instance, so that a layer can be calculated for the whole batch with matrix products (see Gemm)
+ * instead of one dot product at a time.
+ *
+ * A batch is created for one network (the layerWeights of a NeuralNet) and can be reused for any
+ * number of instances up to its capacity. The buffers needed for training are only allocated if
+ * instances are added with labels, so batches used only for predictions are smaller.
+ * @author joseph
+ *
+ */
+class MiniBatch
+{
+	private final NeuralNet net;
+	// The network this batch was created for.
+	final double[][] network;
+	final int capacity;
+	private final int numInputs;
+	private final int numOutputs;
+	private final double[] inputs;
+	private final double[] instanceWeights;
+	private final double[][] outputs;
+	// Only used for training.
+	private double[] targets;
+	private double[][] errors;
+	private double[][] gradients;
+	// The number of instances in the batch.
+	private int rows;
+
+	MiniBatch(NeuralNet net, int capacity)
+	{
+		this.net = net;
+		this.network = net.layerWeights;
+		this.capacity = capacity;
+		int[] sizes = net.layerSizes;
+		numInputs = network[0].length / sizes[0] - 1;
+		numOutputs = sizes[sizes.length - 1];
+		inputs = new double[capacity * numInputs];
+		instanceWeights = new double[capacity];
+		outputs = new double[sizes.length][];
+		for (int i = 0; i < sizes.length; i++)
+			outputs[i] = new double[capacity * sizes[i]];
+	}
+
+	private void allocateTrainingBuffers()
+	{
+		int[] sizes = net.layerSizes;
+		targets = new double[capacity * numOutputs];
+		errors = new double[sizes.length][];
+		gradients = new double[sizes.length][];
+		for (int i = 0; i < sizes.length; i++)
+		{
+			errors[i] = new double[capacity * sizes[i]];
+			gradients[i] = new double[network[i].length];
+		}
+	}
+
+	/**
+	 * Removes all instances from the batch.
+	 */
+	void clear()
+	{
+		rows = 0;
+	}
+
+	int rows()
+	{
+		return rows;
+	}
+
+	/**
+	 * Adds an instance to the batch.
+	 * @param label The target outputs, or null if the batch will only be used for predictions.
+	 */
+	void add(Vector input, Vector label)
+	{
+		if (rows == capacity)
+			throw new IllegalStateException("The batch is full.");
+		int start = rows * numInputs;
+		for (int k = 0; k < numInputs; k++)
+			inputs[start + k] = input.get(k);
+		if (label != null)
+		{
+			if (targets == null)
+				allocateTrainingBuffers();
+			for (int j = 0; j < numOutputs; j++)
+				targets[rows * numOutputs + j] = label.get(j);
+		}
+		instanceWeights[rows] = input.getWeight();
+		rows++;
+	}
+
+	/**
+	 * Returns the outputs of the output layer, with one row for each instance, as calculated by the
+	 * last call to forward.
+	 */
+	double[] getOutputs()
+	{
+		return outputs[outputs.length - 1];
+	}
+
+	/**
+	 * Calculates the output of every node for every instance in the batch.
+	 */
+	void forward()
+	{
+		int[] sizes = net.layerSizes;
+		Sigmoid sigmoid = net.sigmoid;
+		for (int i = 0; i < sizes.length; i++)
+		{
+			double[] in = i == 0 ? inputs : outputs[i - 1];
+			int k = i == 0 ? numInputs : sizes[i - 1];
+			int m = sizes[i];
+			double[] weights = network[i];
+			double[] out = outputs[i];
+			Gemm.multiplyTransposeB(in, k, weights, k + 1, out, m, rows, m, k);
+			for (int r = 0; r < rows; r++)
+			{
+				for (int j = 0; j < m; j++)
+				{
+					// Add the bias weight.
+					out[r * m + j] = sigmoid.apply(out[r * m + j] + weights[j * (k + 1) + k]);
+				}
+				if (net.increasContrastOfHiddenLayerInputs && i + 1 < m)
+					NeuralNet.increaseContrast(out, r * m, (r + 1) * m);
+			}
+		}
+	}
+
+	/**
+	 * Does one weight update using the gradient of every instance in the batch. Each instance's
+	 * gradient is multiplied by its instance weight, and the sum is divided by the number of
+	 * instances, so learning rates are comparable to those of online updates. Momentum and weight
+	 * decay are applied once per batch, as SigmoidNode applies them once per instance.
+	 */
+	void train()
+	{
+		if (rows == 0)
+			return;
+		computeGradients();
+		applyGradients(gradients, rows);
+	}
+
+	/**
+	 * Returns the sums of the weight gradients of the instances in the batch, with one array for
+	 * each layer, as calculated by the last call to computeGradients.
+	 */
+	double[][] getGradients()
+	{
+		return gradients;
+	}
+
+	/**
+	 * Calculates the sum of the weight gradients of every instance in the batch, without changing
+	 * any weights. Each instance's gradient is multiplied by its instance weight. Every instance
+	 * must have been added with a label.
+	 */
+	void computeGradients()
+	{
+		if (targets == null)
+			throw new IllegalStateException("Instances must be added with labels to train on them.");
+		forward();
+
+		int[] sizes = net.layerSizes;
+		int outputLayer = sizes.length - 1;
+		double[] out = outputs[outputLayer];
+		double[] err = errors[outputLayer];
+		for (int r = 0; r < rows; r++)
+		{
+			for (int j = 0; j < numOutputs; j++)
+			{
+				int index = r * numOutputs + j;
+				err[index] = out[index] * (1 - out[index]) * (targets[index] - out[index]) * instanceWeights[r];
+			}
+		}
+		// The instance weights are already in the output errors, so they are also in the hidden
+		// errors calculated from them.
+		for (int i = outputLayer - 1; i >= 0; i--)
+		{
+			int m = sizes[i];
+			int higher = sizes[i + 1];
+			Arrays.fill(errors[i], 0, rows * m, 0.0);
+			Gemm.multiplyAdd(errors[i + 1], higher, network[i + 1], m + 1, errors[i], m, rows, m, higher);
+			for (int index = 0; index < rows * m; index++)
+			{
+				double o = outputs[i][index];
+				errors[i][index] *= o * (1 - o);
+			}
+		}
+
+		for (int i = 0; i < sizes.length; i++)
+		{
+			double[] in = i == 0 ? inputs : outputs[i - 1];
+			int k = i == 0 ? numInputs : sizes[i - 1];
+			int m = sizes[i];
+			double[] gradient = gradients[i];
+			Arrays.fill(gradient, 0.0);
+			Gemm.multiplyAddTransposeA(errors[i], m, in, k, gradient, k + 1, m, k, rows);
+			for (int r = 0; r < rows; r++)
+			{
+				for (int j = 0; j < m; j++)
+					gradient[j * (k + 1) + k] += errors[i][r * m + j];
+			}
+		}
+	}
+
+	/**
+	 * Does one weight update of the network this batch was created for, as train does.
+	 * @param gradients The sums of the weight gradients of some instances, with one array for each
+	 * layer (see getGradients).
+	 * @param count The number of instances the gradients were summed over.
+	 */
+	void applyGradients(double[][] gradients, int count)
+	{
+		int outputLayer = network.length - 1;
+		Optimizer optimizer = net.optimizer;
+		if (optimizer.getType() != Optimizer.Type.SGD)
+		{
+			net.optimizerState.startStep();
+			for (int i = 0; i < network.length; i++)
+			{
+				double decay = i == outputLayer ? net.weightDecayRate : 0.0;
+				optimizer.update(net.optimizerState, i, network[i], gradients[i], 1.0 / count, decay,
+						net.currentLearningRate);
+			}
+			return;
+		}
+		double rate = net.currentLearningRate / count;
+		double momentum = net.momentum;
+		for (int i = 0; i < network.length; i++)
+		{
+			double[] weights = network[i];
+			double[] gradient = gradients[i];
+			double decay = net.currentLearningRate * (i == outputLayer ? net.weightDecayRate : 0.0);
+			for (int w = 0; w < weights.length; w++)
+				weights[w] += rate * gradient[w] + momentum * weights[w] - decay * weights[w];
+		}
+	}
+}
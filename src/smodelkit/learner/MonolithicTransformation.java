@@ -2,8 +2,6 @@ package smodelkit.learner;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
-import java.util.TreeSet;
 import java.util.function.Function;
 
 import org.json.simple.JSONObject;
@@ -12,6 +10,8 @@ import smodelkit.MLSystemsManager;
 import smodelkit.Matrix;
 import smodelkit.Vector;
 import smodelkit.util.Helper;
+import smodelkit.util.LabelIndex;
+import smodelkit.util.LabelKey;
 import smodelkit.util.Range;
 
 /** 
@@ -58,11 +58,26 @@ public class MonolithicTransformation extends SupervisedLearner
 	
 	private Matrix transformLabels(Matrix labels)
 	{
+		// Find the unique labels, in the order of Vector.compareTo.
+		LabelIndex index = new LabelIndex(new LabelKey(labels));
+		List<Vector> firstRows = new ArrayList<>();
+		int[] ids = new int[labels.rows()];
+		for (int r : new Range(labels.rows()))
+		{
+			Vector label = labels.row(r);
+			ids[r] = index.add(label);
+			if (ids[r] == firstRows.size())
+				firstRows.add(label);
+		}
+		int[] sortedIds = index.sortedIds();
+		int[] valueOfId = new int[sortedIds.length];
+		uniqueLabelsList = new ArrayList<>(sortedIds.length);
+		for (int i : new Range(sortedIds.length))
 		{
-			Set<Vector> uniqueLabels = new TreeSet<>();
-			labels.forEach(label -> uniqueLabels.add(label));
-			uniqueLabelsList = new ArrayList<>(uniqueLabels);
+			valueOfId[sortedIds[i]] = i;
+			uniqueLabelsList.add(firstRows.get(sortedIds[i]));
 		}
+
 		Matrix result = new Matrix();
 		result.setRelationName("transormed_labels");
 		result.addEmptyColumn("monolithic_labels");
@@ -77,7 +92,7 @@ public class MonolithicTransformation extends SupervisedLearner
 		
 		for (int r : new Range(labels.rows()))
 		{
-			result.addRow(new Vector(new double[] {result.getAttrValueIndex(0, getLabelName.apply(labels.row(r)))}));
+			result.addRow(new Vector(new double[] {valueOfId[ids[r]]}));
 		}
 		
 		return result;
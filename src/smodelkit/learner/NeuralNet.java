@@ -1,12 +1,25 @@
 package smodelkit.learner;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.DoubleSupplier;
+import java.util.function.IntConsumer;
+import java.util.function.IntSupplier;
 
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
 import smodelkit.Matrix;
+import smodelkit.RowSource;
+import smodelkit.SparseVector;
 import smodelkit.Vector;
 import smodelkit.evaluator.Evaluator;
 import smodelkit.evaluator.MSE;
@@ -14,22 +27,44 @@ import smodelkit.evaluator.TopN;
 import smodelkit.filter.NominalToCategorical;
 import smodelkit.util.Helper;
 import smodelkit.util.Logger;
-import smodelkit.util.Range;
+import smodelkit.util.Pair;
+import smodelkit.util.ThreadCounter;
+import smodelkit.util.kernels.Kernels;
 
 
 /**
- * A multi-layer perceptron that uses error backpropigation. It uses online weight updates.
+ * A multi-layer perceptron that uses error backpropigation. It uses online weight updates unless
+ * batchSize is more than 1.
  * @author joseph
  *
  */
 public class NeuralNet extends SupervisedLearner
 {
 	private static final long serialVersionUID = 1L;
+	// The number of instances whose outputs are calculated together by the batch prediction methods.
+	private static final int PREDICTION_BATCH_SIZE = 64;
+	// The number of parts each batch is split into in SYNCHRONOUS mode if trainingThreads is null. This
+	// does not depend on the machine, so neither do the results.
+	private static final int DEFAULT_SYNCHRONOUS_PARTS = 4;
 	final boolean PRINT_EPOCH_TIMES = false;
 	final int EPOCH_PRINT_FREQUENCY = 1;
 	final boolean SAVE_ERROR_RATES = false; // If I want to use this, I need to re-implement it using Plotter.
-	// This is the layers of the network. The hidden and output layers. The last layer is the output layer.
-	protected SigmoidNode[][] layers;
+	// The weights of the hidden and output layers of the network. The last layer is the output layer.
+	// Each layer stores the weights of its nodes one after another, in one array. A node has one
+	// weight for each of its inputs followed by a bias weight, like SigmoidNode. This is null when
+	// precision is FLOAT32.
+	protected double[][] layerWeights;
+	// The weights when precision is FLOAT32, in the same layout as layerWeights. Otherwise null.
+	float[][] floatLayerWeights;
+	// The number of nodes in each layer.
+	protected int[] layerSizes;
+	// Only set while reading a model which was serialized before weights were stored in
+	// layerWeights. See readObject.
+	private SigmoidNode[][] layers;
+	// Buffers used to calculate outputs and errors, so that they are not allocated for every instance.
+	private transient ThreadLocal<Buffers> buffers;
+	// Used like buffers when precision is FLOAT32.
+	private transient ThreadLocal<FloatNetwork> floatNetworks;
 	protected double momentum;
 	double improvementThreshold;
 	double validationSetPercent;
@@ -49,6 +84,72 @@ public class NeuralNet extends SupervisedLearner
 	Integer minEpochSize;
 	double weightDecayRate;
 	private boolean normalizePredictions;
+	// The number of instances used for each weight update. 1 means online updates.
+	int batchSize;
+	// Used to train with batches when batchSize is more than 1.
+	private transient MiniBatch trainingBatch;
+	ParallelTraining parallelTraining;
+	// The number of parts each epoch or batch is split into when parallelTraining is not NONE. If
+	// null, see countTrainingParts.
+	Integer trainingThreads;
+	// Only set during training when parallelTraining is not NONE.
+	private transient ExecutorService trainingPool;
+	// The batches used by each part of an epoch or batch when parallelTraining is not NONE.
+	private transient MiniBatch[] partBatches;
+	// Used to sum the gradients of the parts of a batch in SYNCHRONOUS mode.
+	private transient double[][] gradientSums;
+	// How the activation function of every node is calculated.
+	Sigmoid sigmoid;
+	private Precision precision;
+	// How gradients are turned into weight updates.
+	Optimizer optimizer;
+	// The values optimizer keeps for each weight of this network. Only set during training when
+	// optimizer is not SGD.
+	transient Optimizer.State optimizerState;
+	private LearningRateSchedule learningRateSchedule;
+	// The learning rate of the current epoch, which learningRateSchedule sets while training.
+	transient double currentLearningRate;
+	// Called after every epoch while training. See setEpochListener.
+	private transient IntConsumer epochListener;
+	
+	/**
+	 * How an epoch is split across threads.
+	 */
+	public enum ParallelTraining
+	{
+		/** Every instance is trained on by the training thread. */
+		NONE,
+		/**
+		 * The instances of an epoch are split into one part for each thread. The threads update the
+		 * shared weights without locking, as in Hogwild! (Niu et al., 2011), so updates from different
+		 * threads can overwrite each other. This is fast, but the results depend on how the threads are
+		 * scheduled.
+		 */
+		HOGWILD,
+		/**
+		 * Each batch is split into trainingThreads parts. The gradients of the parts are calculated in
+		 * parallel and then summed in order for one weight update, so the results are the same no
+		 * matter how many threads are available. This needs a batchSize of at least trainingThreads to
+		 * use all of the threads.
+		 */
+		SYNCHRONOUS
+	}
+
+	/**
+	 * How the weights of the network, and the values calculated from them, are stored.
+	 */
+	public enum Precision
+	{
+		/** Everything is a double. */
+		FLOAT64,
+		/**
+		 * Weights, node outputs, and errors are floats (see FloatNetwork), which halves the memory
+		 * used by the weights and the memory bandwidth used to calculate outputs. Instances and
+		 * predictions are still Vectors of doubles. Training only supports online weight updates
+		 * with Optimizer.Type.SGD, so batchSize must be 1 and parallelTraining cannot be SYNCHRONOUS.
+		 */
+		FLOAT32
+	}
 	
 	
 	public NeuralNet()
@@ -103,12 +204,62 @@ public class NeuralNet extends SupervisedLearner
 		Integer minEpochSize = minEpochSizeLong != null ? minEpochSizeLong.intValue() : null;
 		double weightDecayRate = (double)(Double)settings.get("weightDecayRate");
 		boolean normalizePredictions = (boolean)(Boolean)settings.get("normalizePredictions");
+		// Settings files from before mini-batches were supported do not have batchSize.
+		Long batchSizeLong = (Long)settings.get("batchSize");
+		int batchSize = batchSizeLong != null ? batchSizeLong.intValue() : 1;
+		ParallelTraining parallelTraining = ParallelTraining.NONE;
+		if (settings.get("parallelTraining") != null)
+		{
+			String mode = (String)settings.get("parallelTraining");
+			try
+			{
+				parallelTraining = ParallelTraining.valueOf(mode.toUpperCase());
+			}
+			catch (IllegalArgumentException e)
+			{
+				throw new IllegalArgumentException("Unknown parallelTraining: " + mode 
+						+ ". It must be one of none, hogwild, or synchronous.");
+			}
+		}
+		Long trainingThreadsLong = (Long)settings.get("trainingThreads");
+		Integer trainingThreads = trainingThreadsLong != null ? trainingThreadsLong.intValue() : null;
+		Sigmoid sigmoid = Sigmoid.EXACT;
+		if (settings.get("sigmoid") != null)
+		{
+			String mode = (String)settings.get("sigmoid");
+			try
+			{
+				sigmoid = Sigmoid.valueOf(mode.toUpperCase());
+			}
+			catch (IllegalArgumentException e)
+			{
+				throw new IllegalArgumentException("Unknown sigmoid: " + mode 
+						+ ". It must be one of exact, table, or rational.");
+			}
+		}
+		Precision precision = Precision.FLOAT64;
+		if (settings.get("precision") != null)
+		{
+			String mode = (String)settings.get("precision");
+			try
+			{
+				precision = Precision.valueOf(mode.toUpperCase());
+			}
+			catch (IllegalArgumentException e)
+			{
+				throw new IllegalArgumentException("Unknown precision: " + mode 
+						+ ". It must be one of float64 or float32.");
+			}
+		}
+		Optimizer optimizer = Optimizer.fromSettings(settings);
+		LearningRateSchedule learningRateSchedule = LearningRateSchedule.fromSettings(settings);
 		
 		configure(learningRate, hiddenLayerSizes, hiddenLayerMultiples, maxHiddenLayerSize, 
 				momentum, validationSetPercent,
 				improvementThreshold, maxEpochs, maxEpochsWithoutImprovement, includLabelsInHiddenLayerMultiples,
 				reverseFilterWhilePredicting, increasContrastOfHiddenLayerInputs, epochSize, minEpochSize, 
-				weightDecayRate, normalizePredictions);
+				weightDecayRate, normalizePredictions, batchSize, parallelTraining, trainingThreads, sigmoid,
+				precision, optimizer, learningRateSchedule);
 
 	}
 		
@@ -138,6 +289,22 @@ public class NeuralNet extends SupervisedLearner
 	 * @param epochSize The size of an epoch. If null, this will be the training set size.
 	 * @param normalizePredictions If true, then the weights assigned
 	 * to each output in innerGetOutputWeights will be normalized to sum to 1.
+	 * @param batchSize The number of instances used for each weight update. If 1, weights are
+	 * updated after every instance. Otherwise the outputs and errors of each batch are calculated
+	 * with matrix products (see MiniBatch), which is much faster for wide layers.
+	 * @param parallelTraining How each epoch is split across threads. Threads are reserved from
+	 * ThreadCounter while training, so fewer may be used than requested.
+	 * @param trainingThreads The number of threads to use when parallelTraining is not NONE. If null,
+	 * HOGWILD uses ThreadCounter.getMaxThreads(), and SYNCHRONOUS splits each batch into 4 parts so
+	 * that its results are the same on every machine.
+	 * @param sigmoid How the activation function of each node is calculated. Modes other than EXACT
+	 * are faster but approximate.
+	 * @param precision How the weights are stored. Models trained with FLOAT64 can be converted for
+	 * deployment with setPrecision.
+	 * @param optimizer How gradients are turned into weight updates. With Optimizer.Type.SGD, momentum
+	 * and weightDecayRate are used the way they always have been. Other optimizers keep their own
+	 * momentum, if any, and apply weightDecayRate to the output layer as part of the gradient.
+	 * @param learningRateSchedule How the learning rate changes between epochs.
 	 */
 	public void configure(double learningRate, int[] hiddenLayerSizes, 
 			double[] hiddenLayerMultiples,
@@ -145,7 +312,9 @@ public class NeuralNet extends SupervisedLearner
 			double validationSetPercent, double improvementThreshold, int maxEpochs, 
 			int maxEpochsWithoutImprovement, boolean includLabelsInHiddenLayerMultiples, boolean reverseFilterWhilePredicting,
 			boolean increasContrastOfHiddenLayerInputs, Integer epochSize, Integer minEpochSize,
-			double weightDecayRate, boolean normalizePredictions)
+			double weightDecayRate, boolean normalizePredictions, int batchSize,
+			ParallelTraining parallelTraining, Integer trainingThreads, Sigmoid sigmoid, Precision precision,
+			Optimizer optimizer, LearningRateSchedule learningRateSchedule)
 	{
 		this.learningRate = learningRate;
 		this.momentum = momentum;
@@ -162,6 +331,13 @@ public class NeuralNet extends SupervisedLearner
 		this.weightDecayRate = weightDecayRate;
 		this.minEpochSize = minEpochSize;
 		this.normalizePredictions = normalizePredictions;
+		this.batchSize = batchSize;
+		this.parallelTraining = parallelTraining;
+		this.trainingThreads = trainingThreads;
+		this.sigmoid = sigmoid;
+		this.precision = precision;
+		this.optimizer = optimizer;
+		this.learningRateSchedule = learningRateSchedule;
 		
 		setupTrainingEvaluator(reverseFilterWhilePredicting);
 		varifyArgs();
@@ -196,6 +372,27 @@ public class NeuralNet extends SupervisedLearner
 			throw new IllegalArgumentException("epochSize and minEpochSize cannot both be non-null.");
 		if (minEpochSize != null && minEpochSize < 1)
 			throw new IllegalArgumentException("minEpochSize must be at least 1 if given.");
+		if (batchSize < 1)
+			throw new IllegalArgumentException("batchSize must be at least 1.");
+		if (parallelTraining == null)
+			throw new IllegalArgumentException("parallelTraining cannot be null.");
+		if (trainingThreads != null && trainingThreads < 1)
+			throw new IllegalArgumentException("trainingThreads must be at least 1 if given.");
+		if (sigmoid == null)
+			throw new IllegalArgumentException("sigmoid cannot be null.");
+		if (precision == null)
+			throw new IllegalArgumentException("precision cannot be null.");
+		if (precision == Precision.FLOAT32 && (batchSize != 1 || parallelTraining == ParallelTraining.SYNCHRONOUS))
+			throw new IllegalArgumentException("float32 precision only supports training with a batchSize of 1 "
+					+ "and without synchronous parallel training.");
+		if (optimizer == null)
+			throw new IllegalArgumentException("optimizer cannot be null.");
+		if (learningRateSchedule == null)
+			throw new IllegalArgumentException("learningRateSchedule cannot be null.");
+		if (precision == Precision.FLOAT32 && optimizer.getType() != Optimizer.Type.SGD)
+			throw new IllegalArgumentException("float32 precision only supports the sgd optimizer.");
+		if (learningRateSchedule.getType() == LearningRateSchedule.Type.COSINE && maxEpochs == Integer.MAX_VALUE)
+			throw new IllegalArgumentException("The cosine learningRateSchedule needs maxEpochs to be given.");
 	}
 	
 	public void innerTrain(Matrix inputs, Matrix labels)
@@ -209,16 +406,7 @@ public class NeuralNet extends SupervisedLearner
 			throw new UnsupportedOperationException("To support a numeric target, I need to implement a linear node.");
 		}
 		
-		Logger.indent();
-		Logger.println("NeuralNet verbose output: ");
-		Logger.println("max epochs: " + maxEpochs);
-		Logger.println("max epochs without improvement: " + maxEpochsWithoutImprovement);
-		Logger.println("improvementThreshold: " + improvementThreshold);
-		Logger.println("epochSize: " + epochSize);
-		Logger.println("learning rate: " + learningRate);
-		Logger.println("momentum: " + momentum);
-		Logger.println("validation set %: " + validationSetPercent);
-		Logger.println("increasContrastOfHiddenLayerInputs: " + increasContrastOfHiddenLayerInputs);
+		printSettings();
 		
 		// I'm copying these so that I don't shuffle the original inputs and labels.
 		Matrix inputsTemp = new Matrix(inputs);
@@ -252,39 +440,249 @@ public class NeuralNet extends SupervisedLearner
 				epochSize = Math.max(minEpochSize, tInputs.rows());
 		}
 
+		createAndPrintNetwork(tInputs, tLabels);
+		
+		if (maxEpochs == 0 || maxEpochsWithoutImprovement == 0)
+			return;
+
+		final Matrix validationInputs = vInputs;
+		final Matrix validationLabels = vLabels;
+		int[] nextInstanceIndex = new int[1];
+		runEpochs(() ->
+			{
+				doEpoch(tInputs, tLabels, nextInstanceIndex[0]);
+				nextInstanceIndex[0] = (nextInstanceIndex[0] + epochSize) % tInputs.rows();
+				return epochSize;
+			},
+			() -> Evaluator.runEvaluators(validationInputs, validationLabels, this, false, 
+					Collections.singletonList(trainEvaluator))
+					.getScores(trainEvaluator.getClass()).get(0),
+			tLabels.isContinuous(0), vInputs.rows() > 0);
+	}
+
+	/**
+	 * Trains one pass over source per epoch. A validation set is held out of each chunk, which
+	 * is the first validationSetPercent of its rows, and the other rows are trained on in a random
+	 * order. The whole dataset is never in memory, so epochSize and minEpochSize are not used, and
+	 * rows are only shuffled within each chunk.
+	 */
+	@Override
+	protected void innerTrain(RowSource source)
+	{
+		source.reset();
+		Pair<Matrix> first = source.nextChunk();
+		if (first == null)
+			throw new IllegalArgumentException("The row source has no rows.");
+		Matrix labelsMetadata = first.getSecond();
+		if (labelsMetadata.isContinuous(0) && labelsMetadata.getNumCatagoricalCols().size() == 0)
+		{
+			throw new UnsupportedOperationException("To support a numeric target, I need to implement a linear node.");
+		}
+		
+		printSettings();
+		createAndPrintNetwork(first.getFirst(), labelsMetadata);
+		boolean continuousLabels = labelsMetadata.isContinuous(0);
+		// If the first chunk is too small to hold out any rows, validate on the training rows.
+		boolean holdOut = countValidationRows(first.getFirst().rows()) > 0;
+		first = null;
+		labelsMetadata = null;
+		
+		if (maxEpochs == 0 || maxEpochsWithoutImprovement == 0)
+			return;
+
+		RowSource validationSource = holdOut ? new HeldOutRowSource(source) : source;
+		runEpochs(() -> doEpoch(source, holdOut), 
+			() -> Evaluator.runEvaluators(validationSource, this, false, 
+					Collections.singletonList(trainEvaluator))
+					.getScores(trainEvaluator.getClass()).get(0),
+			continuousLabels, true);
+	}
+
+	@Override
+	public boolean canTrainIncrementally()
+	{
+		return true;
+	}
+
+	/**
+	 * Returns the number of rows at the start of a chunk which are held out for validation by
+	 * innerTrain(RowSource).
+	 */
+	private int countValidationRows(int chunkRows)
+	{
+		if (validationSetPercent == 0 || validationSetPercent == 1)
+		{
+			// Validate using the training rows.
+			return 0;
+		}
+		return (int)(chunkRows * validationSetPercent);
+	}
+
+	/**
+	 * The rows of another source which innerTrain(RowSource) holds out for validation.
+	 */
+	private class HeldOutRowSource extends RowSource
+	{
+		private final RowSource source;
+
+		HeldOutRowSource(RowSource source)
+		{
+			this.source = source;
+		}
+
+		@Override
+		public Pair<Matrix> nextChunk()
+		{
+			for (Pair<Matrix> chunk = source.nextChunk(); chunk != null; chunk = source.nextChunk())
+			{
+				int rows = countValidationRows(chunk.getFirst().rows());
+				if (rows > 0)
+					return new Pair<>(chunk.getFirst().viewRows(0, rows), chunk.getSecond().viewRows(0, rows));
+			}
+			return null;
+		}
+
+		@Override
+		public void reset()
+		{
+			source.reset();
+		}
+	}
+
+	/**
+	 * Trains on every row of source, except those held out for validation if holdOut is true.
+	 * @return The number of rows trained on.
+	 */
+	private int doEpoch(RowSource source, boolean holdOut)
+	{
+		int count = 0;
+		source.reset();
+		for (Pair<Matrix> chunk = source.nextChunk(); chunk != null; chunk = source.nextChunk())
+		{
+			Matrix inputs = chunk.getFirst();
+			Matrix labels = chunk.getSecond();
+			int start = holdOut ? countValidationRows(inputs.rows()) : 0;
+			int[] order = new int[inputs.rows() - start];
+			for (int i = 0; i < order.length; i++)
+				order[i] = start + i;
+			for (int n = order.length; n > 0; n--)
+			{
+				int i = rand.nextInt(n);
+				int tmp = order[n - 1];
+				order[n - 1] = order[i];
+				order[i] = tmp;
+			}
+			trainOnRows(inputs, labels, order);
+			count += order.length;
+		}
+		return count;
+	}
+
+	private void printSettings()
+	{
+		Logger.indent();
+		Logger.println("NeuralNet verbose output: ");
+		Logger.println("max epochs: " + maxEpochs);
+		Logger.println("max epochs without improvement: " + maxEpochsWithoutImprovement);
+		Logger.println("improvementThreshold: " + improvementThreshold);
+		Logger.println("epochSize: " + epochSize);
+		Logger.println("learning rate: " + learningRate);
+		Logger.println("momentum: " + momentum);
+		Logger.println("batch size: " + batchSize);
+		Logger.println("parallel training: " + parallelTraining);
+		Logger.println("sigmoid: " + sigmoid);
+		Logger.println("precision: " + precision);
+		Logger.println("optimizer: " + optimizer);
+		Logger.println("learning rate schedule: " + learningRateSchedule);
+		Logger.println("validation set %: " + validationSetPercent);
+		Logger.println("increasContrastOfHiddenLayerInputs: " + increasContrastOfHiddenLayerInputs);
+	}
+
+	/**
+	 * Creates the network for the given training data and prints its size.
+	 */
+	private void createAndPrintNetwork(Matrix inputs, Matrix labels)
+	{
 		if (hiddenLayerSizes != null)
-			createNetwork(tInputs, tLabels.cols(), hiddenLayerSizes);
+			createNetwork(inputs, labels.cols(), hiddenLayerSizes);
 		else
-			createNetwork(tInputs, tLabels, tLabels.cols());
+			createNetwork(inputs, labels, labels.cols());
+		if (precision == Precision.FLOAT32)
+			setPrecision(Precision.FLOAT32);
 
 
-		if (layers != null)
+		if (layerSizes != null)
 		{
-			Logger.println("Network input count: " + (layers[0][0].getWeights().length - 1)); // -1 for bias weight.
+			Logger.println("Network input count: " + countInputs(0));
 			Logger.print("Layer sizes (the output layer is last): ");
-			for (int i = 0; i < layers.length; i++)
-				Logger.print(layers[i].length + " ");
+			for (int i = 0; i < layerSizes.length; i++)
+				Logger.print(layerSizes[i] + " ");
 			Logger.println();
 		}
-		
-		if (maxEpochs == 0 || maxEpochsWithoutImprovement == 0)
-			return;
+	}
+
+	/**
+	 * Runs epochs until accuracy on the validation set is 100%, it stops improving, or the maximum
+	 * number of epochs is reached.
+	 * @param epoch Trains for one epoch and returns the number of instances trained on.
+	 * @param validate Returns the score of trainEvaluator on the validation set.
+	 * @param continuousLabels True if the score is an error, which decreases with improvement.
+	 * @param restoreBestWeights If true, the weights which did best on the validation set are
+	 * restored when training is done. If no epoch improved the score, the weights are kept.
+	 */
+	private void runEpochs(IntSupplier epoch, DoubleSupplier validate, boolean continuousLabels,
+			boolean restoreBestWeights)
+	{
+		int threadsReserved = 0;
+		if (parallelTraining != ParallelTraining.NONE)
+		{
+			threadsReserved = ThreadCounter.reserveThreadCount(countTrainingParts());
+			trainingPool = Executors.newFixedThreadPool(Math.max(1, threadsReserved));
+		}
+		try
+		{
+			runEpochsWithoutThreads(epoch, validate, continuousLabels, restoreBestWeights);
+		}
+		finally
+		{
+			optimizerState = null;
+			if (trainingPool != null)
+			{
+				trainingPool.shutdown();
+				trainingPool = null;
+				ThreadCounter.freeThreadCount(threadsReserved);
+			}
+		}
+	}
 
+	/**
+	 * Does the work of runEpochs after any threads used for training have been created.
+	 */
+	private void runEpochsWithoutThreads(IntSupplier epoch, DoubleSupplier validate, boolean continuousLabels,
+			boolean restoreBestWeights)
+	{
 //		Logger.println("Weight before training: ");
 //		printWeights();
 
-		// A copy of the network layers from the time they did best on a validation set.
-		SigmoidNode[][] savedLayers = (SigmoidNode[][]) Helper.deepCopy(layers);
+		// A copy of the network weights from the time they did best on a validation set. It is empty
+		// until the first improvement.
+		WeightSnapshot bestWeights = new WeightSnapshot(getWeights());
+		currentLearningRate = learningRate;
+		if (optimizer.getType() != Optimizer.Type.SGD)
+		{
+			if (layerWeights == null)
+				throw new IllegalStateException("float32 precision only supports the sgd optimizer.");
+			optimizerState = optimizer.createState(layerWeights);
+		}
 
 		double evaluation = 0;
 		double lastEvaluation = 0;
-		if (tLabels.isContinuous(0))
+		if (continuousLabels)
 		{
 			lastEvaluation = Double.MAX_VALUE;
 		}
 		int count = 0;
 		int totalCount = 0;
-		int nextInstanceIndex = 0;
 		double timeBefore = System.currentTimeMillis();
 		do
 		{
@@ -294,21 +692,22 @@ public class NeuralNet extends SupervisedLearner
 //			if (totalCount % EPOCH_PRINT_FREQUENCY == 0)
 //				Logger.println("Epoch number: " + totalCount);
 
-			doEpoch(tInputs, tLabels, nextInstanceIndex);
-			nextInstanceIndex = (nextInstanceIndex + epochSize) % tInputs.rows();
+			long epochStart = System.nanoTime();
+			int instances = epoch.getAsInt();
 			
 			if (PRINT_EPOCH_TIMES)
 			{
+				double epochSeconds = (System.nanoTime() - epochStart) / 1e9;
+				Logger.println(String.format("Epoch %d throughput: %.1f instances/second", totalCount, 
+						instances / epochSeconds));
 				double timeAfter = System.currentTimeMillis();
 				Logger.println("Epoch time: " + (timeAfter - timeBefore)/1000.0 + " seconds");
 				timeBefore = timeAfter;
 			}
 
-			evaluation = Evaluator.runEvaluators(vInputs, vLabels, this, false, 
-					Collections.singletonList(trainEvaluator))
-					.getScores(trainEvaluator.getClass()).get(0);
+			evaluation = validate.getAsDouble();
 			
-			if (tLabels.isContinuous(0))
+			if (continuousLabels)
 			{
 				// evaluation is root mean squared error, which decreases with improvement.
 				if( lastEvaluation - evaluation > improvementThreshold)
@@ -317,7 +716,7 @@ public class NeuralNet extends SupervisedLearner
 					lastEvaluation = evaluation;
 					Logger.println(String.format("Error improved to: %.5f on epoch: %s", evaluation, totalCount));
 
-					copyLayers(savedLayers, layers);
+					bestWeights.save(getWeights());
 				}
 			}
 			else
@@ -329,16 +728,26 @@ public class NeuralNet extends SupervisedLearner
 					lastEvaluation = evaluation;
 					Logger.println("Accuracy improved to: " + evaluation + " on epoch: " + totalCount);
 	
-					savedLayers = (SigmoidNode[][]) Helper.deepCopy(layers);
+					bestWeights.save(getWeights());
 				}
 			}
+			
+			if (epochListener != null)
+				epochListener.accept(totalCount);
+			double nextLearningRate = learningRateSchedule.getLearningRate(learningRate, currentLearningRate, 
+					totalCount, count, maxEpochs);
+			if (nextLearningRate != currentLearningRate)
+			{
+				currentLearningRate = nextLearningRate;
+				Logger.println("Learning rate changed to: " + currentLearningRate);
+			}
 		}
-		while((evaluation < 1 || tLabels.isContinuous(0)) && count < maxEpochsWithoutImprovement && totalCount < maxEpochs);
+		while((evaluation < 1 || continuousLabels) && count < maxEpochsWithoutImprovement && totalCount < maxEpochs);
 		
 		Logger.println();
 	
 		// Tell why we stopped training.
-		if (!tLabels.isContinuous(0) && evaluation == 1)
+		if (!continuousLabels && evaluation == 1)
 		{
 			Logger.println("Stopping training because predictive accuracy is 100%");
 		}
@@ -360,143 +769,691 @@ public class NeuralNet extends SupervisedLearner
 //		Logger.println("Weight after training: ");
 //		printWeights();
 		
-		if (vInputs.rows() > 0 && savedLayers != null)
+		if (restoreBestWeights && bestWeights.hasSaved())
 		{
 			Logger.println("Restoring weights.");
-			copyLayers(layers, savedLayers);
+			setWeights(bestWeights.restore(getWeights()));
 		}
 		
 		
 		Logger.unindent();
 	}
 
+	protected void doEpoch(Matrix inputs, Matrix labels, int nextIndex)
+	{		
+		int[] rows = new int[epochSize];
+		for (int i = 0; i < epochSize; i++)
+			rows[i] = (nextIndex + i) % inputs.rows();
+		trainOnRows(inputs, labels, rows);
+	}
+
 	/**
-	 * Copies all weight values from source to dest.
+	 * Trains on the given rows in order, using threads if parallelTraining is not NONE.
 	 */
-	private void copyLayers(SigmoidNode[][] dest, SigmoidNode[][] source)
+	private void trainOnRows(Matrix inputs, Matrix labels, int[] rows)
 	{
-		for (int i = 0; i < source.length; i++)
-			for (int j = 0; j < source[i].length; j++)
+		if (trainingPool == null)
+		{
+			trainOnRows(inputs, labels, rows, 0, rows.length, batchSize == 1 ? null : getTrainingBatch());
+			return;
+		}
+
+		int parts = countTrainingParts();
+		if (parallelTraining == ParallelTraining.HOGWILD)
+		{
+			MiniBatch[] batches = batchSize == 1 ? null : getPartBatches(parts, batchSize);
+			List<Runnable> jobs = new ArrayList<>();
+			for (int p = 0; p < parts; p++)
 			{
-				for (int w = 0; w < source[i][j].getWeights().length; w++)
-				dest[i][j].getWeights()[w] = source[i][j].getWeights()[w];
+				int start = (int)((long)rows.length * p / parts);
+				int end = (int)((long)rows.length * (p + 1) / parts);
+				MiniBatch batch = batches == null ? null : batches[p];
+				jobs.add(() -> trainOnRows(inputs, labels, rows, start, end, batch));
 			}
+			runTrainingJobs(jobs);
+		}
+		else
+		{
+			for (int start = 0; start < rows.length; start += batchSize)
+				trainSynchronously(inputs, labels, rows, start, Math.min(rows.length, start + batchSize), parts);
+		}
 	}
 
-	protected void doEpoch(Matrix inputs, Matrix labels, int nextIndex)
-	{		
-		for (int instanceRow : new Range(nextIndex, nextIndex + epochSize))
+	/**
+	 * Trains on rows[start] through rows[end - 1] in order with the training thread.
+	 * @param batch Used if batchSize is more than 1.
+	 */
+	private void trainOnRows(Matrix inputs, Matrix labels, int[] rows, int start, int end, MiniBatch batch)
+	{
+		if (batchSize == 1)
+		{
+			for (int i = start; i < end; i++)
+				trainOnInstance(inputs.row(rows[i]), labels.row(rows[i]));
+			return;
+		}
+		
+		batch.clear();
+		for (int i = start; i < end; i++)
+		{
+			batch.add(inputs.row(rows[i]), labels.row(rows[i]));
+			if (batch.rows() == batchSize)
+				trainOnBatch(batch);
+		}
+		trainOnBatch(batch);
+	}
+
+	/**
+	 * Does one weight update with the batch of instances in rows[start] through rows[end - 1]. The
+	 * batch is split into the given number of parts, whose gradients are calculated in parallel and
+	 * summed in order.
+	 */
+	private void trainSynchronously(Matrix inputs, Matrix labels, int[] rows, int start, int end, int parts)
+	{
+		MiniBatch[] batches = getPartBatches(parts, (batchSize + parts - 1) / parts);
+		List<Runnable> jobs = new ArrayList<>();
+		for (int p = 0; p < parts; p++)
+		{
+			int partStart = start + (int)((long)(end - start) * p / parts);
+			int partEnd = start + (int)((long)(end - start) * (p + 1) / parts);
+			MiniBatch batch = batches[p];
+			batch.clear();
+			for (int i = partStart; i < partEnd; i++)
+				batch.add(inputs.row(rows[i]), labels.row(rows[i]));
+			if (batch.rows() > 0)
+				jobs.add(batch::computeGradients);
+		}
+		runTrainingJobs(jobs);
+
+		if (gradientSums == null || gradientSums.length != layerWeights.length 
+				|| gradientSums[0].length != layerWeights[0].length)
+			gradientSums = generateWeightSizeArray();
+		for (double[] layer : gradientSums)
+			Arrays.fill(layer, 0.0);
+		for (MiniBatch batch : batches)
+		{
+			if (batch.rows() == 0)
+				continue;
+			double[][] gradients = batch.getGradients();
+			for (int i = 0; i < gradientSums.length; i++)
+				for (int w = 0; w < gradientSums[i].length; w++)
+					gradientSums[i][w] += gradients[i][w];
+		}
+		batches[0].applyGradients(gradientSums, end - start);
+	}
+
+	/**
+	 * Runs the given jobs with trainingPool and waits for them to finish.
+	 */
+	private void runTrainingJobs(List<Runnable> jobs)
+	{
+		List<Future<?>> futures = new ArrayList<>();
+		for (Runnable job : jobs)
+			futures.add(trainingPool.submit(job));
+		for (Future<?> future : futures)
+		{
+			try
+			{
+				future.get();
+			}
+			catch (ExecutionException | InterruptedException e)
+			{
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of parts each epoch or batch is split into when parallelTraining is not NONE.
+	 */
+	private int countTrainingParts()
+	{
+		if (trainingThreads != null)
+			return trainingThreads;
+		return parallelTraining == ParallelTraining.SYNCHRONOUS ? DEFAULT_SYNCHRONOUS_PARTS
+				: ThreadCounter.getMaxThreads();
+	}
+
+	/**
+	 * Returns the batch used for training, creating it if the network has changed.
+	 */
+	private MiniBatch getTrainingBatch()
+	{
+		if (trainingBatch == null || trainingBatch.network != layerWeights || trainingBatch.capacity != batchSize)
+			trainingBatch = new MiniBatch(this, batchSize);
+		trainingBatch.clear();
+		return trainingBatch;
+	}
+
+	/**
+	 * Returns one batch with the given capacity for each part of an epoch or batch, creating them if
+	 * the network has changed.
+	 */
+	private MiniBatch[] getPartBatches(int parts, int capacity)
+	{
+		if (partBatches == null || partBatches.length != parts || partBatches[0].network != layerWeights
+				|| partBatches[0].capacity != capacity)
 		{
-			instanceRow %= inputs.rows();
+			partBatches = new MiniBatch[parts];
+			for (int p = 0; p < parts; p++)
+				partBatches[p] = new MiniBatch(this, capacity);
+		}
+		return partBatches;
+	}
+
+	/**
+	 * Does one weight update with the instances in the given batch, and then empties it.
+	 */
+	private void trainOnBatch(MiniBatch batch)
+	{
+		batch.train();
+		batch.clear();
+	}
 
-			// Calculate the output for every node
-			double[][] outputs = calcOutputs(inputs.row(instanceRow));
-//			printVector("outputs: ", outputs[outputs.length - 1]);
+	/**
+	 * Does one online weight update with the given instance.
+	 */
+	private void trainOnInstance(Vector instance, Vector label)
+	{
+		if (floatLayerWeights != null)
+		{
+			getFloatNetwork().train(instance, label);
+			return;
+		}
 
+		// Calculate the output for every node
+		Buffers b = getBuffers();
+		double[][] outputs = calcOutputs(instance, b);
 
-			// Calculate errors for every node
-			double[][] errors = generateNetworkSizeArray();
-			for(int i = layers.length -1; i >= 0 ; i--)
+		// Calculate errors for every node
+		double[][] errors = b.errors;
+		int outputLayer = layerSizes.length - 1;
+		for(int i = outputLayer; i >= 0 ; i--)
+		{
+			double[] out = outputs[i];
+			double[] err = errors[i];
+			if (i == outputLayer)
+			{
+				// output nodes
+				for(int j = 0; j < layerSizes[i]; j++)
+					err[j] = out[j] * (1 - out[j]) * (label.get(j) - out[j]);
+			}
+			else
 			{
-				for(int j = 0; j < layers[i].length; j++)
+				// hidden nodes
+				double[] higherWeights = layerWeights[i + 1];
+				double[] higherErrors = errors[i + 1];
+				int higherStride = layerSizes[i] + 1;
+				for(int j = 0; j < layerSizes[i]; j++)
 				{
-					if (i == layers.length - 1)
-					{
-						// output node
-						errors[i][j] = outputs[i][j] * (1 - outputs[i][j]) * (labels.row(instanceRow).get(j) - outputs[i][j]);
-					}
-					else
-					{
-						// hidden node
-						double errorFromHigherLayer = sumErrorFromHigherLayer(j, layers[i + 1], errors[i + 1]);
-						errors[i][j] = outputs[i][j] * (1 - outputs[i][j]) *  errorFromHigherLayer;
-					}
+					double errorFromHigherLayer = 0;
+					for (int h = 0; h < higherErrors.length; h++)
+						errorFromHigherLayer += higherWeights[h * higherStride + j] * higherErrors[h];
+					err[j] = out[j] * (1 - out[j]) *  errorFromHigherLayer;
 				}
 			}
+		}
 
-			// Update all weights
-			for(int i = 0; i < layers.length; i++)
+		// Update all weights
+		if (optimizer.getType() != Optimizer.Type.SGD)
+		{
+			double[][] gradients = b.getGradients();
+			optimizerState.startStep();
+			for (int i = 0; i < layerSizes.length; i++)
 			{
-				Vector input = i == 0 ? inputs.row(instanceRow) : new Vector(outputs[i - 1]);
-				double instanceWeight = inputs.row(instanceRow).getWeight();
-				for(int j = 0; j < layers[i].length; j++)
+				double[] input = i == 0 ? b.input : outputs[i - 1];
+				computeGradient(gradients[i], layerSizes[i], input, errors[i]);
+				double decay = i == outputLayer ? weightDecayRate : 0.0;
+				optimizer.update(optimizerState, i, layerWeights[i], gradients[i], instance.getWeight(), decay,
+						currentLearningRate);
+			}
+			return;
+		}
+		double rate = currentLearningRate * instance.getWeight();
+		for(int i = 0; i < layerSizes.length; i++)
+		{
+			double[] input = i == 0 ? b.input : outputs[i - 1];
+			double decay = i == outputLayer ? weightDecayRate : 0.0;
+			updateWeights(layerWeights[i], layerSizes[i], input, errors[i], rate, decay);
+		}
+	}
+
+	/**
+	 * Updates the weights of every node in a layer the way SigmoidNode.updateWeights does.
+	 * @param weights The weights of the layer.
+	 * @param input The inputs to the layer. There must be one for each non-bias weight of a node.
+	 * @param errors The error of each node.
+	 */
+	private void updateWeights(double[] weights, int nodes, double[] input, double[] errors,
+			double learningRate, double weightDecayRate)
+	{
+		int numInputs = input.length;
+		int stride = numInputs + 1;
+		Kernels kernels = Kernels.get();
+		for (int j = 0; j < nodes; j++)
+		{
+			double error = errors[j];
+			int base = j * stride;
+			if (momentum == 0 && weightDecayRate == 0)
+			{
+				// Only the gradient changes the weights.
+				kernels.axpy(learningRate * error, input, 0, weights, base, numInputs);
+			}
+			else
+			{
+				for (int i = 0; i < numInputs; i++)
 				{
-					if (i == outputs.length - 1)
-					{
-						layers[i][j].updateWeights(input, errors[i][j], learningRate * instanceWeight, weightDecayRate);
-					}
-					else
-					{
-						layers[i][j].updateWeights(input, errors[i][j], learningRate * instanceWeight, 0.0);
-					}
+					double weightChange = learningRate * error * input[i] + momentum*weights[base + i] 
+							- learningRate * weightDecayRate * weights[base + i];
+					weights[base + i] += weightChange;
 				}
 			}
+
+			// bias weight
+			int bias = base + numInputs;
+			double weightChange = learningRate * error + momentum*weights[bias] 
+					- learningRate * weightDecayRate * weights[bias];
+			weights[bias] += weightChange;
 		}
 	}
 	
+	/**
+	 * Stores the gradient of each weight of a layer for one instance in gradient, which has the
+	 * same layout as the layer's weights.
+	 * @param input The inputs to the layer.
+	 * @param errors The error of each node.
+	 */
+	private static void computeGradient(double[] gradient, int nodes, double[] input, double[] errors)
+	{
+		int numInputs = input.length;
+		int stride = numInputs + 1;
+		for (int j = 0; j < nodes; j++)
+		{
+			double error = errors[j];
+			int base = j * stride;
+			for (int i = 0; i < numInputs; i++)
+				gradient[base + i] = error * input[i];
+			// bias weight
+			gradient[base + numInputs] = error;
+		}
+	}
+	
+	/**
+	 * Returns an array with the same shape as layerWeights.
+	 */
+	private double[][] generateWeightSizeArray()
+	{
+		double[][] result = new double[layerWeights.length][];
+		for (int i = 0; i < layerWeights.length; i++)
+			result[i] = new double[layerWeights[i].length];
+		return result;
+	}
+
 	protected double[][] generateNetworkSizeArray()
 	{
-		double[][] result = new double[layers.length][];
-		for (int i = 0; i < layers.length; i++)
+		double[][] result = new double[layerSizes.length][];
+		for (int i = 0; i < layerSizes.length; i++)
 		{
-			result[i] = new double[layers[i].length];
+			result[i] = new double[layerSizes[i]];
 		}
 		return result;
 	}
 
+	/**
+	 * Returns the number of inputs to each node in the specified layer, not counting the bias.
+	 */
+	private int countInputs(int layer)
+	{
+		int weights = layerWeights != null ? layerWeights[layer].length : floatLayerWeights[layer].length;
+		return weights / layerSizes[layer] - 1;
+	}
+
+	/**
+	 * Returns the weights of the network, which are layerWeights or floatLayerWeights depending on
+	 * precision.
+	 */
+	private Object[] getWeights()
+	{
+		return layerWeights != null ? layerWeights : floatLayerWeights;
+	}
+
+	/**
+	 * Replaces the weights of the network with weights returned by getWeights.
+	 */
+	private void setWeights(Object[] weights)
+	{
+		if (weights instanceof float[][])
+			floatLayerWeights = (float[][])weights;
+		else
+			layerWeights = (double[][])weights;
+	}
+
+	public Precision getPrecision()
+	{
+		return precision;
+	}
+
+	/**
+	 * Changes the precision of this model. If it has been trained, its weights are converted, so a
+	 * model trained with FLOAT64 can be converted to FLOAT32 for deployment. Converting to FLOAT32
+	 * rounds each weight to the nearest float, so predictions change slightly, and converting back
+	 * does not restore the original weights.
+	 */
+	public void setPrecision(Precision precision)
+	{
+		if (precision == null)
+			throw new IllegalArgumentException("precision cannot be null.");
+		this.precision = precision;
+		if (precision == Precision.FLOAT32 && layerWeights != null)
+		{
+			floatLayerWeights = new float[layerWeights.length][];
+			for (int i = 0; i < layerWeights.length; i++)
+			{
+				floatLayerWeights[i] = new float[layerWeights[i].length];
+				for (int w = 0; w < layerWeights[i].length; w++)
+					floatLayerWeights[i][w] = (float)layerWeights[i][w];
+			}
+			layerWeights = null;
+		}
+		else if (precision == Precision.FLOAT64 && floatLayerWeights != null)
+		{
+			layerWeights = toDoubles(floatLayerWeights);
+			floatLayerWeights = null;
+		}
+	}
+
+	/**
+	 * Sets a function which is called after every epoch of training with the number of epochs run
+	 * so far, once the validation set has been evaluated. This is used to monitor training, such as
+	 * by OptimizerBenchmark. If null, nothing is called.
+	 */
+	public void setEpochListener(IntConsumer listener)
+	{
+		this.epochListener = listener;
+	}
+
+	private static double[][] toDoubles(float[][] weights)
+	{
+		double[][] result = new double[weights.length][];
+		for (int i = 0; i < weights.length; i++)
+		{
+			result[i] = new double[weights[i].length];
+			for (int w = 0; w < weights[i].length; w++)
+				result[i][w] = weights[i][w];
+		}
+		return result;
+	}
+
+	/**
+	 * Buffers for the values calculated while training on or predicting an instance. Each thread
+	 * has its own, which are reused for every instance.
+	 */
+	private static class Buffers
+	{
+		// The network these were created for.
+		final double[][] network;
+		// The inputs of the network.
+		final double[] input;
+		final double[][] outputs;
+		final double[][] errors;
+		// The gradient of each weight, which is only used by optimizers other than SGD.
+		private double[][] gradients;
+
+		Buffers(double[][] network, double[] input, double[][] outputs, double[][] errors)
+		{
+			this.network = network;
+			this.input = input;
+			this.outputs = outputs;
+			this.errors = errors;
+		}
+
+		double[][] getGradients()
+		{
+			if (gradients == null)
+			{
+				gradients = new double[network.length][];
+				for (int i = 0; i < network.length; i++)
+					gradients[i] = new double[network[i].length];
+			}
+			return gradients;
+		}
+	}
+
+	/**
+	 * Returns the buffers of the current thread, creating them if the network has changed since
+	 * they were created.
+	 */
+	private Buffers getBuffers()
+	{
+		if (buffers == null)
+		{
+			synchronized (this)
+			{
+				if (buffers == null)
+					buffers = new ThreadLocal<>();
+			}
+		}
+		Buffers b = buffers.get();
+		if (b == null || b.network != layerWeights)
+		{
+			b = new Buffers(layerWeights, new double[countInputs(0)], generateNetworkSizeArray(), 
+					generateNetworkSizeArray());
+			buffers.set(b);
+		}
+		return b;
+	}
+
+	/**
+	 * Returns the FloatNetwork of the current thread, creating it if the network has changed since
+	 * it was created.
+	 */
+	private FloatNetwork getFloatNetwork()
+	{
+		if (floatNetworks == null)
+		{
+			synchronized (this)
+			{
+				if (floatNetworks == null)
+					floatNetworks = new ThreadLocal<>();
+			}
+		}
+		FloatNetwork network = floatNetworks.get();
+		if (network == null || network.network != floatLayerWeights)
+		{
+			network = new FloatNetwork(this);
+			floatNetworks.set(network);
+		}
+		return network;
+	}
+
+	/**
+	 * Calculates the output of every node. The result is a new array, so callers may keep it.
+	 */
 	protected double[][] calcOutputs(Vector input)
 	{
-		double[][] outputs = generateNetworkSizeArray();
-		for(int i = 0; i < layers.length; i++)
+		double[][] result = generateNetworkSizeArray();
+		if (floatLayerWeights != null)
+		{
+			float[][] outputs = getFloatNetwork().calcOutputs(input);
+			for (int i = 0; i < outputs.length; i++)
+				for (int j = 0; j < outputs[i].length; j++)
+					result[i][j] = outputs[i][j];
+		}
+		else
+		{
+			double[][] outputs = calcOutputs(input, getBuffers());
+			for (int i = 0; i < outputs.length; i++)
+				System.arraycopy(outputs[i], 0, result[i], 0, outputs[i].length);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a new array with the outputs of the output layer for the given input.
+	 */
+	private double[] calcOutputLayer(Vector input)
+	{
+		if (floatLayerWeights != null)
+			return getFloatNetwork().calcOutputLayer(input);
+		double[][] outputs = calcOutputs(input, getBuffers());
+		return outputs[outputs.length - 1].clone();
+	}
+
+	private double[][] calcOutputs(Vector input, Buffers b)
+	{
+		assert input.size() == b.input.length;
+		SparseVector sparse = input instanceof SparseVector ? (SparseVector)input : null;
+		for (int i = 0; i < b.input.length; i++)
+			b.input[i] = input.get(i);
+
+		double[][] outputs = b.outputs;
+		for(int i = 0; i < layerSizes.length; i++)
 		{
-			Vector inputs = i == 0 ? input : new Vector(outputs[i - 1]);
-			for(int j = 0; j < layers[i].length; j++)
+			double[] weights = layerWeights[i];
+			double[] out = outputs[i];
+			if (i == 0 && sparse != null)
 			{
-				outputs[i][j] = layers[i][j].calcOutput(inputs);
+				// Zero inputs add nothing to a node's net, so only the stored values are used.
+				int stride = b.input.length + 1;
+				for(int j = 0; j < layerSizes[i]; j++)
+				{
+					int base = j * stride;
+					double total = 0;
+					for(int k = 0; k < sparse.getNonZeroCount(); k++)
+						total += sparse.getNonZeroValue(k) * weights[base + sparse.getNonZeroIndex(k)];
+					// bias weight
+					total += weights[base + stride - 1];
+					out[j] = sigmoid.apply(total);
+				}
 			}
-			
-			if (increasContrastOfHiddenLayerInputs)
+			else
 			{
-				if (i + 1 < layers[i].length)
+				double[] in = i == 0 ? b.input : outputs[i - 1];
+				int stride = in.length + 1;
+				Kernels kernels = Kernels.get();
+				for(int j = 0; j < layerSizes[i]; j++)
 				{
-					double c = 1.0;
-					double minVal = Helper.min(outputs[i]);
-					double maxVal = Helper.max(outputs[i]);
-					double range = maxVal - minVal;
-					double maxChange = Math.min(minVal, 1.0 - maxVal);
-					double scale = (2.0*maxChange*c + range)/ range;
-					double median = (maxVal + minVal) / 2.0;
-					
-					//System.out.println(Helper.printArray("before", outputs[i]));
-					
-					for(int j = 0; j < layers[i].length; j++)
-					{
-						outputs[i][j] = (outputs[i][j] - median)*scale + median;
-//						if (outputs[i][j] < -0.0001 || outputs[i][j] > 1.0001)
-//							throw new RuntimeException("Output is out of range: " + outputs[i][j]);
-					}
-					//System.out.println(Helper.printArray("after", outputs[i]));
+					int base = j * stride;
+					double total = kernels.dot(in, 0, weights, base, in.length);
+					// bias weight
+					total += weights[base + in.length];
+					out[j] = sigmoid.apply(total);
 				}
 			}
 			
-			
+			if (increasContrastOfHiddenLayerInputs)
+			{
+				if (i + 1 < layerSizes[i])
+					increaseContrast(out, 0, layerSizes[i]);
+			}
 		}
 		return outputs;
 	}
 
+	/**
+	 * Spreads the given outputs of a layer, from start to end (exclusive), away from their median
+	 * while keeping them between 0 and 1. See increasContrastOfHiddenLayerInputs.
+	 */
+	static void increaseContrast(double[] outputs, int start, int end)
+	{
+		double c = 1.0;
+		double minVal = Double.POSITIVE_INFINITY;
+		double maxVal = Double.NEGATIVE_INFINITY;
+		for (int j = start; j < end; j++)
+		{
+			if (outputs[j] < minVal)
+				minVal = outputs[j];
+			if (outputs[j] > maxVal)
+				maxVal = outputs[j];
+		}
+		double range = maxVal - minVal;
+		double maxChange = Math.min(minVal, 1.0 - maxVal);
+		double scale = (2.0*maxChange*c + range)/ range;
+		double median = (maxVal + minVal) / 2.0;
+		
+		for(int j = start; j < end; j++)
+		{
+			outputs[j] = (outputs[j] - median)*scale + median;
+		}
+	}
+
 	public Vector innerPredict(Vector input)
 	{
-		double[][] outputs = calcOutputs(input);
+		return new Vector(calcOutputLayer(input));
+	}
+
+	@Override
+	protected List<Vector> innerPredictBatch(Matrix inputs)
+	{
+		List<Vector> result = new ArrayList<>(inputs.rows());
+		calcOutputsBatch(inputs, outputs -> result.add(new Vector(outputs)));
+		return result;
+	}
+
+	@Override
+	protected List<List<Vector>> innerPredictScoredListBatch(Matrix inputs, int maxDesiredSize)
+	{
+		// Like the default innerPredictScoredList, each list has only the prediction of innerPredict.
+		List<List<Vector>> result = new ArrayList<>(inputs.rows());
+		calcOutputsBatch(inputs, outputs -> 
+			{
+				Vector pred = new Vector(outputs);
+				pred.setWeight(1.0);
+				result.add(Collections.singletonList(pred));
+			});
+		return result;
+	}
+
+	@Override
+	protected List<List<double[]>> innerPredictOutputWeightsBatch(Matrix inputs)
+	{
+		List<List<double[]>> result = new ArrayList<>(inputs.rows());
+		calcOutputsBatch(inputs, outputs -> result.add(toOutputWeights(outputs)));
+		return result;
+	}
 
-		return new Vector(outputs[outputs.length - 1]);
+	/**
+	 * Calculates the outputs of the output layer for every row of inputs, PREDICTION_BATCH_SIZE
+	 * rows at a time (see MiniBatch), and gives a new array with each row's outputs to consumer in
+	 * order. The outputs are exactly the same as those calculated by calcOutputs. When precision is
+	 * FLOAT32, the rows are calculated one at a time.
+	 */
+	private void calcOutputsBatch(Matrix inputs, Consumer<double[]> consumer)
+	{
+		if (inputs.rows() == 0)
+			return;
+		if (floatLayerWeights != null)
+		{
+			for (int r = 0; r < inputs.rows(); r++)
+				consumer.accept(calcOutputLayer(inputs.row(r)));
+			return;
+		}
+		MiniBatch batch = new MiniBatch(this, Math.min(PREDICTION_BATCH_SIZE, inputs.rows()));
+		int numOutputs = layerSizes[layerSizes.length - 1];
+		for (int start = 0; start < inputs.rows(); start += batch.capacity)
+		{
+			int end = Math.min(inputs.rows(), start + batch.capacity);
+			batch.clear();
+			for (int r = start; r < end; r++)
+				batch.add(inputs.row(r), null);
+			batch.forward();
+			double[] outputs = batch.getOutputs();
+			for (int r = 0; r < end - start; r++)
+				consumer.accept(Arrays.copyOfRange(outputs, r * numOutputs, (r + 1) * numOutputs));
+		}
 	}
 	
 	@Override
 	public List<double[]> innerPredictOutputWeights(Vector input)
 	{
-		double[][] outputs = calcOutputs(input);
-		double[] weights = outputs[outputs.length - 1];
+		return toOutputWeights(calcOutputLayer(input));
+	}
 
+	/**
+	 * Converts the outputs of the output layer to the form returned by innerPredictOutputWeights.
+	 * @param weights The outputs. This may be changed and returned.
+	 */
+	private List<double[]> toOutputWeights(double[] weights)
+	{
 
 		if (weights.length == 1)
 		{
@@ -527,13 +1484,15 @@ public class NeuralNet extends SupervisedLearner
 
 	void printWeights()
 	{
-		for(int i = 0; i < layers.length; i++)
+		double[][] weights = layerWeights != null ? layerWeights : toDoubles(floatLayerWeights);
+		for(int i = 0; i < layerSizes.length; i++)
 		{
 
 			Logger.println("Weights for layer " + i + ": ");
-			for(int j = 0; j < layers[i].length; j++)
+			int stride = countInputs(i) + 1;
+			for(int j = 0; j < layerSizes[i]; j++)
 			{
-				double[] nodeWeights = layers[i][j].getWeights();
+				double[] nodeWeights = Arrays.copyOfRange(weights[i], j * stride, (j + 1) * stride);
 				Logger.println(Helper.printArray("node " + j, nodeWeights));
 			}
 		}
@@ -541,53 +1500,86 @@ public class NeuralNet extends SupervisedLearner
 
 	}
 	
-	public double sumErrorFromHigherLayer(int weightIndex, SigmoidNode[] higherLayer,
-			double[] higherLayerErrors)
-	{
-		double sum = 0;
-		for (int i = 0; i < higherLayerErrors.length; i++)
-		{
-			sum += higherLayer[i].getWeight(weightIndex) * higherLayerErrors[i];
-		}
-		return sum;
-	}
-	
 	/**
-	 * Fills "layers" with nodes.  
+	 * Creates the layers of the network, with weights initialized by SigmoidNode.
 	 * @param hiddenLayerSizes  Gives the size of each hidden layer in terms of number of nodes.
 	 */
 	void createNetwork(Matrix inputs, int numOutputs, int[] hiddenLayerSizes)
 	{
-		layers = new SigmoidNode[hiddenLayerSizes.length + 1][];
+		layerSizes = new int[hiddenLayerSizes.length + 1];
+		layerWeights = new double[layerSizes.length][];
 		
-		for(int i = 0; i < layers.length - 1; i++)
+		for(int i = 0; i < layerSizes.length - 1; i++)
 		{
 			if (hiddenLayerSizes[i] == 0)
 				throw new IllegalArgumentException("A hidden layer cannot have 0 nodes.");
-			layers[i] = new SigmoidNode[maxHiddenLayerSize == null ?  hiddenLayerSizes[i] 
-					: Math.min(maxHiddenLayerSize, hiddenLayerSizes[i])];
+			layerSizes[i] = maxHiddenLayerSize == null ?  hiddenLayerSizes[i] 
+					: Math.min(maxHiddenLayerSize, hiddenLayerSizes[i]);
 			
 			// Each node has 1 input from every node in the layer closer
 			// to the inputs, except those receiving the features as inputs.
-			int numInputs = i == 0 ? inputs.cols() : layers[i-1].length;
-
-			for(int j = 0; j < layers[i].length; j++)
-			{
-				layers[i][j] = new SigmoidNode(rand, numInputs, momentum);
-			}
+			int numInputs = i == 0 ? inputs.cols() : layerSizes[i-1];
+			layerWeights[i] = createLayer(layerSizes[i], numInputs);
 		}
 		
 		// Create the output layer. It has 1 node per output.
-		layers[layers.length -1] = new SigmoidNode[numOutputs];
-		for (int n = 0; n < layers[layers.length - 1].length; n++)
+		int outputLayer = layerSizes.length - 1;
+		layerSizes[outputLayer] = numOutputs;
+		int numOutputLayerIntputs = layerSizes.length > 1 ? layerSizes[outputLayer - 1] : inputs.cols();
+		layerWeights[outputLayer] = createLayer(numOutputs, numOutputLayerIntputs);
+	}
+
+	/**
+	 * Returns the weights of a new layer, with each node initialized by SigmoidNode.
+	 */
+	private double[] createLayer(int nodes, int numInputs)
+	{
+		double[] result = new double[nodes * (numInputs + 1)];
+		for (int j = 0; j < nodes; j++)
 		{
-			int numOutputLayerIntputs = layers.length > 1 ? layers[layers.length-2].length : inputs.cols();
-			layers[layers.length - 1][n] = new SigmoidNode(rand, numOutputLayerIntputs, momentum);
+			double[] nodeWeights = new SigmoidNode(rand, numInputs, momentum).getWeights();
+			System.arraycopy(nodeWeights, 0, result, j * nodeWeights.length, nodeWeights.length);
+		}
+		return result;
+	}
+
+	/**
+	 * Converts the nodes of models serialized before weights were stored in layerWeights.
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+	{
+		in.defaultReadObject();
+		// Models serialized before these settings existed.
+		if (batchSize == 0)
+			batchSize = 1;
+		if (parallelTraining == null)
+			parallelTraining = ParallelTraining.NONE;
+		if (sigmoid == null)
+			sigmoid = Sigmoid.EXACT;
+		if (precision == null)
+			precision = Precision.FLOAT64;
+		if (optimizer == null)
+			optimizer = new Optimizer(Optimizer.Type.SGD, 0.0, 0.9, 0.999, 1e-8);
+		if (learningRateSchedule == null)
+			learningRateSchedule = new LearningRateSchedule(LearningRateSchedule.Type.CONSTANT, 0.5, 5, 0.0);
+		if (layers != null)
+		{
+			layerSizes = new int[layers.length];
+			layerWeights = new double[layers.length][];
+			for (int i = 0; i < layers.length; i++)
+			{
+				layerSizes[i] = layers[i].length;
+				int stride = layers[i][0].getWeights().length;
+				layerWeights[i] = new double[layers[i].length * stride];
+				for (int j = 0; j < layers[i].length; j++)
+					System.arraycopy(layers[i][j].getWeights(), 0, layerWeights[i], j * stride, stride);
+			}
+			layers = null;
 		}
 	}
 	
 	/**
-	 * Fills "layers" with nodes.  
+	 * Creates the layers of the network.
 	 * hiddenLayerMultiples gives the size of each hidden layer as a multiple of the number of features or the number
 	 * of features + labels.
 	 * Partial numbers of nodes will be rounded to integers.
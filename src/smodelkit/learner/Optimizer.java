@@ -0,0 +1,235 @@
+package smodelkit.learner;
+
+import java.io.Serializable;
+
+import org.json.simple.JSONObject;
+
+/**
+ * How a NeuralNet turns the gradients calculated by backpropagation into weight updates. The
+ * settings of an optimizer are serialized with the model. The values it keeps for each weight
+ * (such as velocities) are in a State, which each network creates when it starts training, so
+ * networks can share an optimizer without sharing those values.
+ *
+ * In each method, a gradient is the direction which reduces the error, so it is added to the
+ * weights, as NeuralNet does with plain gradient descent. When NeuralNet trains with HOGWILD
+ * threads, they update the values kept for each weight without locking, as they do the weights.
+ * @author joseph
+ *
+ */
+public class Optimizer implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	public enum Type
+	{
+		/**
+		 * Plain gradient descent, with the momentum and weight decay terms NeuralNet has always
+		 * used. NeuralNet does these updates itself, so this optimizer's update is never called.
+		 */
+		SGD,
+		/** Classical momentum: v = momentum * v + rate * g, and then w += v. */
+		MOMENTUM,
+		/**
+		 * Nesterov's accelerated gradient, in the form of Sutskever et al. (2013): the velocity is
+		 * updated as with MOMENTUM, and then w += momentum * v + rate * g.
+		 */
+		NESTEROV,
+		/**
+		 * Adam (Kingma and Ba, 2015): w += rate * m' / (sqrt(s') + epsilon), where m and s are moving
+		 * averages of g and g^2 with decay rates beta1 and beta2, and m' and s' are m and s corrected
+		 * for their bias towards 0.
+		 */
+		ADAM,
+		/**
+		 * RMSProp: w += rate * g / (sqrt(s) + epsilon), where s is a moving average of g^2 with decay
+		 * rate beta2.
+		 */
+		RMSPROP
+	}
+
+	private final Type type;
+	private final double momentum;
+	private final double beta1;
+	private final double beta2;
+	private final double epsilon;
+
+	/**
+	 * The values an optimizer keeps for each weight of one network while it trains.
+	 */
+	public static class State
+	{
+		// The velocity of each weight for MOMENTUM and NESTEROV, or the average gradient for ADAM.
+		private final double[][] first;
+		// The average squared gradient of each weight for ADAM and RMSPROP.
+		private final double[][] second;
+		// The number of updates done, which is used to correct the bias of ADAM's averages.
+		private int steps;
+
+		private State(double[][] first, double[][] second)
+		{
+			this.first = first;
+			this.second = second;
+		}
+
+		/**
+		 * Starts an update of every layer. This must be called once before the layers are updated
+		 * with Optimizer.update.
+		 */
+		public void startStep()
+		{
+			steps++;
+		}
+	}
+
+	/**
+	 * @param momentum Used by MOMENTUM and NESTEROV.
+	 * @param beta1 The decay rate of the average gradient of ADAM.
+	 * @param beta2 The decay rate of the average squared gradient of ADAM and RMSPROP.
+	 * @param epsilon Added to the denominator of ADAM and RMSPROP's updates to avoid dividing by 0.
+	 */
+	public Optimizer(Type type, double momentum, double beta1, double beta2, double epsilon)
+	{
+		if (type == null)
+			throw new IllegalArgumentException("type cannot be null.");
+		if (momentum < 0 || momentum >= 1)
+			throw new IllegalArgumentException("momentum must be at least 0 and less than 1.");
+		if (beta1 < 0 || beta1 >= 1 || beta2 < 0 || beta2 >= 1)
+			throw new IllegalArgumentException("beta1 and beta2 must be at least 0 and less than 1.");
+		if (epsilon <= 0)
+			throw new IllegalArgumentException("epsilon must be greater than 0.");
+		this.type = type;
+		this.momentum = momentum;
+		this.beta1 = beta1;
+		this.beta2 = beta2;
+		this.epsilon = epsilon;
+	}
+
+	/**
+	 * Creates an optimizer from the settings of a NeuralNet. "optimizer" is one of sgd, momentum,
+	 * nesterov, adam, or rmsprop, and is sgd if it is not given. MOMENTUM and NESTEROV use the
+	 * "momentum" setting. "beta1", "beta2", and "epsilon" are optional, and default to 0.9, 0.999,
+	 * and 1e-8.
+	 */
+	public static Optimizer fromSettings(JSONObject settings)
+	{
+		Type type = Type.SGD;
+		if (settings.get("optimizer") != null)
+		{
+			String name = (String)settings.get("optimizer");
+			try
+			{
+				type = Type.valueOf(name.toUpperCase());
+			}
+			catch (IllegalArgumentException e)
+			{
+				throw new IllegalArgumentException("Unknown optimizer: " + name
+						+ ". It must be one of sgd, momentum, nesterov, adam, or rmsprop.");
+			}
+		}
+		double momentum = type == Type.MOMENTUM || type == Type.NESTEROV ? (Double)settings.get("momentum") : 0.0;
+		return new Optimizer(type, momentum, getDouble(settings, "beta1", 0.9), getDouble(settings, "beta2", 0.999),
+				getDouble(settings, "epsilon", 1e-8));
+	}
+
+	private static double getDouble(JSONObject settings, String key, double defaultValue)
+	{
+		Object value = settings.get(key);
+		return value != null ? ((Number)value).doubleValue() : defaultValue;
+	}
+
+	public Type getType()
+	{
+		return type;
+	}
+
+	/**
+	 * Creates the values kept for each weight, for updating weights with the same shape as the
+	 * given ones, which are double[] layers. A network calls this when it starts training.
+	 */
+	public State createState(double[][] weights)
+	{
+		return new State(type == Type.RMSPROP ? null : zeros(weights),
+				type == Type.ADAM || type == Type.RMSPROP ? zeros(weights) : null);
+	}
+
+	private static double[][] zeros(double[][] weights)
+	{
+		double[][] result = new double[weights.length][];
+		for (int i = 0; i < weights.length; i++)
+			result[i] = new double[weights[i].length];
+		return result;
+	}
+
+	/**
+	 * Updates the weights of a layer. The gradient of weight w is gradientScale * gradient[w] -
+	 * weightDecay * weights[w].
+	 * @param state Created by createState, with startStep called for this update.
+	 * @param layer The index of the layer in the weights given to createState.
+	 * @param learningRate The current learning rate (see LearningRateSchedule).
+	 */
+	public void update(State state, int layer, double[] weights, double[] gradient, double gradientScale,
+			double weightDecay, double learningRate)
+	{
+		switch (type)
+		{
+		case MOMENTUM:
+		case NESTEROV:
+		{
+			double[] velocity = state.first[layer];
+			boolean nesterov = type == Type.NESTEROV;
+			for (int w = 0; w < weights.length; w++)
+			{
+				double g = gradientScale * gradient[w] - weightDecay * weights[w];
+				velocity[w] = momentum * velocity[w] + learningRate * g;
+				weights[w] += nesterov ? momentum * velocity[w] + learningRate * g : velocity[w];
+			}
+			break;
+		}
+		case ADAM:
+		{
+			double[] m = state.first[layer];
+			double[] s = state.second[layer];
+			double correction1 = 1 - Math.pow(beta1, state.steps);
+			double correction2 = 1 - Math.pow(beta2, state.steps);
+			for (int w = 0; w < weights.length; w++)
+			{
+				double g = gradientScale * gradient[w] - weightDecay * weights[w];
+				m[w] = beta1 * m[w] + (1 - beta1) * g;
+				s[w] = beta2 * s[w] + (1 - beta2) * g * g;
+				weights[w] += learningRate * (m[w] / correction1) / (Math.sqrt(s[w] / correction2) + epsilon);
+			}
+			break;
+		}
+		case RMSPROP:
+		{
+			double[] s = state.second[layer];
+			for (int w = 0; w < weights.length; w++)
+			{
+				double g = gradientScale * gradient[w] - weightDecay * weights[w];
+				s[w] = beta2 * s[w] + (1 - beta2) * g * g;
+				weights[w] += learningRate * g / (Math.sqrt(s[w]) + epsilon);
+			}
+			break;
+		}
+		default:
+			throw new IllegalStateException("NeuralNet does " + type + " updates itself.");
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		switch (type)
+		{
+		case MOMENTUM:
+		case NESTEROV:
+			return type + " (momentum " + momentum + ")";
+		case ADAM:
+			return type + " (beta1 " + beta1 + ", beta2 " + beta2 + ", epsilon " + epsilon + ")";
+		case RMSPROP:
+			return type + " (beta2 " + beta2 + ", epsilon " + epsilon + ")";
+		default:
+			return type.toString();
+		}
+	}
+}
@@ -198,9 +198,9 @@ public class RankedCC extends SupervisedLearner
 					{
 						// Pass the output weights directly to the next model.
 						Matrix predictions = new Matrix();
-						for (int i : new Range(inputsMut.rows()))
+						for (List<double[]> outputWeights : models[m].predictOutputWeightsBatch(inputsMut))
 						{
-							double[] predFiltered = models[m].predictOutputWeights(inputsMut.row(i)).get(0);
+							double[] predFiltered = outputWeights.get(0);
 
 							if (predictions.cols() == 0)
 							{
@@ -216,9 +216,9 @@ public class RankedCC extends SupervisedLearner
 						// Convert the output weights to nominal values before passing them to each model.
 						Matrix predictions = new Matrix();
 						predictions.copyMetadata(curLabel);
-						for (int i : new Range(inputsMut.rows()))
+						for (Vector pred : models[m].predictBatch(inputsMut))
 						{
-							predictions.addRow(models[m].predict(inputsMut.row(i)));
+							predictions.addRow(pred);
 						}
 						assert predictions.cols() == 1;
 						inputsMut.copyColumns(predictions, 0, predictions.cols());
@@ -297,24 +297,24 @@ public class RankedCC extends SupervisedLearner
 					{		
 						if (useAllPreviousPredictions)
 						{
-							curInput = input.concat(branch.getAllOutputWeights());
+							curInput = input.concatView(branch.getAllOutputWeights());
 						}
 						else
 						{
 							// Discard previous predictions
-							curInput = input.concat(branch.outputWeights);
+							curInput = input.concatView(branch.outputWeights);
 						}						
 					}
 					else
 					{
 						if (useAllPreviousPredictions)
 						{
-							curInput = input.concat(branch.getAllPredictions());
+							curInput = input.concatView(branch.getAllPredictions());
 						}
 						else
 						{
 							// Discard previous predictions
-							curInput = input.concat(new double[]{branch.predNotFiltered});
+							curInput = input.concatView(new double[]{branch.predNotFiltered});
 						}
 					}
 							
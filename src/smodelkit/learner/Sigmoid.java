@@ -0,0 +1,112 @@
+package smodelkit.learner;
+
+/**
+ * Ways to calculate the logistic sigmoid 1/(1 + e^-net), which is the activation function of the
+ * nodes of a NeuralNet. Math.exp is slow compared to the rest of the work done for each node, so
+ * TABLE and RATIONAL trade some accuracy for speed. Each mode documents the maximum absolute
+ * difference between its result and EXACT's, which is also given by getMaxError. Differences this
+ * small are much smaller than the changes made by a weight update, so they should not noticeably
+ * change the accuracy of a trained network. SigmoidBenchmark compares the speed and accuracy of
+ * the modes.
+ *
+ * Backpropagation uses the derivative out * (1 - out), where out is the result of apply, so it
+ * does not need to be approximated separately.
+ * @author joseph
+ *
+ */
+public enum Sigmoid
+{
+	/**
+	 * Uses Math.exp (see SigmoidNode.sig). This is the default.
+	 */
+	EXACT(0.0),
+	/**
+	 * Interpolates linearly between values of the sigmoid stored in a table, TABLE_STEPS_PER_UNIT
+	 * values for each unit of net from -TABLE_RANGE to TABLE_RANGE. Outside of that range, 0 or 1
+	 * is returned. The maximum error is less than 3e-6.
+	 */
+	TABLE(3e-6),
+	/**
+	 * Uses sig(net) = (1 + tanh(net/2)) / 2, where tanh is calculated with the (7, 6) Pade
+	 * approximant from Lambert's continued fraction. This needs one division and no table. The
+	 * approximant is only accurate near 0, so 0 or 1 is returned when |net/2| is at least
+	 * RATIONAL_LIMIT. The maximum error is less than 5e-5, and is largest near that limit.
+	 */
+	RATIONAL(5e-5);
+
+	static final double TABLE_RANGE = 16;
+	static final int TABLE_STEPS_PER_UNIT = 64;
+	// The value of |net/2| at which the error of the approximant is about the same as the error of
+	// returning 0 or 1.
+	static final double RATIONAL_LIMIT = 4.97;
+	private static final double[] table = createTable();
+
+	private final double maxError;
+
+	private Sigmoid(double maxError)
+	{
+		this.maxError = maxError;
+	}
+
+	/**
+	 * Returns the sigmoid of net.
+	 */
+	public double apply(double net)
+	{
+		// A switch is used instead of overriding this in each constant so that calls to it are
+		// not polymorphic, which would keep them from being inlined.
+		switch (this)
+		{
+		case TABLE:
+			return lookUp(net);
+		case RATIONAL:
+			return approximate(net);
+		default:
+			return SigmoidNode.sig(net);
+		}
+	}
+
+	private static double lookUp(double net)
+	{
+		if (net <= -TABLE_RANGE)
+			return 0.0;
+		if (net >= TABLE_RANGE)
+			return 1.0;
+		if (Double.isNaN(net))
+			return net;
+		double x = (net + TABLE_RANGE) * TABLE_STEPS_PER_UNIT;
+		// Rounding can make x the index of the last value when net is just below TABLE_RANGE.
+		int i = Math.min((int)x, table.length - 2);
+		double fraction = x - i;
+		return table[i] + fraction * (table[i + 1] - table[i]);
+	}
+
+	private static double approximate(double net)
+	{
+		double u = 0.5 * net;
+		if (u >= RATIONAL_LIMIT)
+			return 1.0;
+		if (u <= -RATIONAL_LIMIT)
+			return 0.0;
+		double u2 = u * u;
+		double tanh = u * (135135 + u2 * (17325 + u2 * (378 + u2)))
+				/ (135135 + u2 * (62370 + u2 * (3150 + u2 * 28)));
+		return 0.5 + 0.5 * tanh;
+	}
+
+	/**
+	 * Returns the maximum absolute difference between apply and SigmoidNode.sig for any net.
+	 */
+	public double getMaxError()
+	{
+		return maxError;
+	}
+
+	private static double[] createTable()
+	{
+		double[] result = new double[(int)(2 * TABLE_RANGE * TABLE_STEPS_PER_UNIT) + 1];
+		for (int i = 0; i < result.length; i++)
+			result[i] = SigmoidNode.sig(-TABLE_RANGE + i / (double)TABLE_STEPS_PER_UNIT);
+		return result;
+	}
+}
@@ -2,6 +2,7 @@ package smodelkit.learner;
 import java.io.Serializable;
 import java.util.Random;
 
+import smodelkit.SparseVector;
 import smodelkit.Vector;
 //import static java.lang.System.out;
 
@@ -46,8 +47,18 @@ public class SigmoidNode implements Serializable
 	double calcNet(Vector inputs)
 	{
 		double total = 0;
-		for(int i = 0; i < inputs.size(); i++)
-			total += inputs.get(i) * weights[i];
+		if (inputs instanceof SparseVector)
+		{
+			// Zero inputs add nothing to the total, so only the stored values are used.
+			SparseVector sparse = (SparseVector)inputs;
+			for(int k = 0; k < sparse.getNonZeroCount(); k++)
+				total += sparse.getNonZeroValue(k) * weights[sparse.getNonZeroIndex(k)];
+		}
+		else
+		{
+			for(int i = 0; i < inputs.size(); i++)
+				total += inputs.get(i) * weights[i];
+		}
 
 		// bias weight
 		total += weights[weights.length - 1];
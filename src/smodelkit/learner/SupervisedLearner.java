@@ -9,10 +9,12 @@ import java.util.Random;
 import org.json.simple.JSONObject;
 
 import smodelkit.Matrix;
+import smodelkit.RowSource;
 import smodelkit.Vector;
 import smodelkit.filter.Filter;
 import smodelkit.filter.ReorderOutputs;
 import smodelkit.util.Bounds;
+import smodelkit.util.Pair;
 import smodelkit.util.Range;
 
 /**
@@ -55,6 +57,17 @@ public abstract class SupervisedLearner implements Serializable
 	{
 		return filter;
 	}
+
+	/**
+	 * Returns a matrix without rows which has the metadata of the labels innerTrain was given,
+	 * which is after they were filtered, or null if this learner has not been trained.
+	 */
+	protected final Matrix getFilteredLabelsMetadata()
+	{
+		if (labelsMetadata == null || filter == null)
+			return labelsMetadata;
+		return filter.filterAllLabels(labelsMetadata);
+	}
 	
 	/**
 	 * Applies all filters in the model, then passes the filtered training set to innerTrain().
@@ -83,6 +96,71 @@ public abstract class SupervisedLearner implements Serializable
 		}
 	}
 
+	/**
+	 * Trains on the inputs and labels of the given source. If this learner can train
+	 * incrementally (see canTrainIncrementally), the source is read one chunk at a time, so the
+	 * dataset does not need to fit in memory. Otherwise every row is read into memory and passed
+	 * to train(Matrix, Matrix).
+	 * 
+	 * When training incrementally, the filter is initialized with every row of the source (see
+	 * Filter.initialize(RowSource)), so it is the same as if the rows were all in one matrix.
+	 */
+	public final void train(RowSource source)
+	{
+		source.reset();
+		if (!canTrainIncrementally())
+		{
+			Pair<Matrix> all = source.readAll();
+			train(all.getFirst(), all.getSecond());
+			return;
+		}
+		
+		labelsMetadata = source.readColumns().getSecond();
+		if (filter != null)
+			filter.initialize(source);
+		source.reset();
+		innerTrain(new FilteredRowSource(source));
+	}
+
+	/**
+	 * Applies the filter of this learner to the chunks of another source, and checks that they are
+	 * compatible with this learner.
+	 */
+	private class FilteredRowSource extends RowSource
+	{
+		private final RowSource source;
+		
+		FilteredRowSource(RowSource source)
+		{
+			this.source = source;
+		}
+
+		@Override
+		public Pair<Matrix> nextChunk()
+		{
+			Pair<Matrix> chunk = source.nextChunk();
+			if (chunk == null)
+				return null;
+			Matrix inputs = chunk.getFirst();
+			Matrix labels = chunk.getSecond();
+			if (filter != null)
+			{
+				inputs = filter.filterAllInputs(inputs);
+				labels = filter.filterAllLabels(labels);
+			}
+			if (!isCompatible(inputs, labels))
+				throw new IllegalArgumentException("After applying filters, this model is not compatable with " +
+					"the given dataset.");
+			return new Pair<>(inputs, labels);
+		}
+
+		@Override
+		public void reset()
+		{
+			source.reset();
+		}
+	}
+
 	/**
 	 * This method needs to be exposed so that AccuracyMeasures can be used while training because the filters
 	 * are not used while training.
@@ -120,6 +198,12 @@ public abstract class SupervisedLearner implements Serializable
 		}
 	}
 	
+	private void checkForUnknownInputs(Matrix inputs)
+	{
+		if (inputs.containsUnknowns())
+			throw new IllegalArgumentException(this.getClass().getSimpleName() + " cannot handle unknown inputs.");
+	}
+	
 	/**
 	 * Applies all filters in the model to the given input, then passes it to innerPredict. 
 	 * The result is then unfiltered.
@@ -129,6 +213,44 @@ public abstract class SupervisedLearner implements Serializable
 		return predict(input, true);
 	}
 	
+	/**
+	 * Like predict(Vector, boolean), but predicts every row of inputs. The filter is applied to
+	 * all of the rows at once, and learners which override innerPredictBatch can predict them
+	 * faster than one at a time.
+	 * @return The prediction for each row of inputs.
+	 */
+	public final List<Vector> predictBatch(Matrix inputs, boolean useFilter)
+	{
+		if (!useFilter || filter == null)
+		{
+			if (!canImplicitlyHandleUnknownInputs())
+				checkForUnknownInputs(inputs);
+
+			return innerPredictBatch(inputs);
+		}
+		else
+		{
+			Matrix filteredInputs = filter.filterAllInputs(inputs);
+			
+			if (!canImplicitlyHandleUnknownInputs())
+				checkForUnknownInputs(filteredInputs);
+			
+			List<Vector> preds = innerPredictBatch(filteredInputs);
+			List<Vector> predsUnfiltered = new ArrayList<>(preds.size());
+			for (Vector pred : preds)
+				predsUnfiltered.add(filter.unfilterLabel(pred));
+			return predsUnfiltered;
+		}
+	}
+	
+	/**
+	 * Calls predictBatch(Matrix, boolean) with useFilter=true.
+	 */
+	public final List<Vector> predictBatch(Matrix inputs)
+	{
+		return predictBatch(inputs, true);
+	}
+	
 	/**
 	 * Train the model using the inputs and labels.
 	 * @param inputs Filtered inputs for training. This must not be mutated.
@@ -136,6 +258,29 @@ public abstract class SupervisedLearner implements Serializable
 	 */
 	protected abstract void innerTrain(Matrix inputs, Matrix labels);
 
+	/**
+	 * Train the model incrementally using the inputs and labels read from source. Learners which
+	 * override this must also override canTrainIncrementally to return true. The default reads
+	 * every row into memory and calls innerTrain(Matrix, Matrix).
+	 * @param source Filtered inputs and labels for training. This can be reset to make more than
+	 * one pass over the rows.
+	 */
+	protected void innerTrain(RowSource source)
+	{
+		source.reset();
+		Pair<Matrix> all = source.readAll();
+		innerTrain(all.getFirst(), all.getSecond());
+	}
+
+	/**
+	 * Returns true if this learner can train on a RowSource one chunk at a time, which means it
+	 * overrides innerTrain(RowSource). The default is false.
+	 */
+	public boolean canTrainIncrementally()
+	{
+		return false;
+	}
+
 	/**
 	 * Predict a label for the given input.
 	 * @param input The input to predict a label for. This must not be mutated.
@@ -150,6 +295,19 @@ public abstract class SupervisedLearner implements Serializable
 		return result;
 	}
 	
+	/**
+	 * Predict a label for each row of inputs. The default calls innerPredict for each row. Override
+	 * this if many rows can be predicted faster together.
+	 * @param inputs The inputs to predict labels for. This must not be mutated.
+	 */
+	protected List<Vector> innerPredictBatch(Matrix inputs)
+	{
+		List<Vector> result = new ArrayList<>(inputs.rows());
+		for (int r = 0; r < inputs.rows(); r++)
+			result.add(innerPredict(inputs.row(r)));
+		return result;
+	}
+	
 	/**
 	 * Calls predictScoredList(Vector, int, boolean) with useFilter=true.
 	 */
@@ -178,22 +336,55 @@ public abstract class SupervisedLearner implements Serializable
 		{
 			Vector filteredInput = filter.filterInput(input);
 			List<Vector> predictions = innerPredictScoredList(filteredInput, maxDesiredSize);
-			
-			if (predictions.size() == 1)
-			{
-				// Unfilter the prediction. 
-				return Collections.singletonList(new Vector(
-						filter.unfilterLabel(predictions.get(0))));
-			}
-			
-			// Unfilter the predictions.
-			List<Vector> unfiltered = new ArrayList<>(predictions.size());
-			for (Vector pred : predictions)
-			{
-				unfiltered.add(filter.unfilterLabel(pred));
-			}
+			return unfilterScoredList(predictions);
+		}
+	}
+	
+	private List<Vector> unfilterScoredList(List<Vector> predictions)
+	{
+		if (predictions.size() == 1)
+		{
+			// Unfilter the prediction. 
+			return Collections.singletonList(new Vector(
+					filter.unfilterLabel(predictions.get(0))));
+		}
+		
+		// Unfilter the predictions.
+		List<Vector> unfiltered = new ArrayList<>(predictions.size());
+		for (Vector pred : predictions)
+		{
+			unfiltered.add(filter.unfilterLabel(pred));
+		}
+		return unfiltered;
+	}
+	
+	/**
+	 * Calls predictScoredListBatch(Matrix, int, boolean) with useFilter=true.
+	 */
+	public List<List<Vector>> predictScoredListBatch(Matrix inputs, int maxDesiredSize)
+	{
+		return predictScoredListBatch(inputs, maxDesiredSize, true);
+	}
+	
+	/**
+	 * Like predictScoredList(Vector, int, boolean), but predicts a scored list for every row of
+	 * inputs. The filter is applied to all of the rows at once.
+	 * @return The scored list for each row of inputs.
+	 */
+	public List<List<Vector>> predictScoredListBatch(Matrix inputs, int maxDesiredSize, boolean useFilter)
+	{
+		if (filter == null || !useFilter)
+		{
+			return innerPredictScoredListBatch(inputs, maxDesiredSize);
+		}
+		else
+		{
+			Matrix filteredInputs = filter.filterAllInputs(inputs);
+			List<List<Vector>> predictions = innerPredictScoredListBatch(filteredInputs, maxDesiredSize);
+			List<List<Vector>> unfiltered = new ArrayList<>(predictions.size());
+			for (List<Vector> rowPredictions : predictions)
+				unfiltered.add(unfilterScoredList(rowPredictions));
 			return unfiltered;
-			
 		}
 	}
 	
@@ -220,6 +411,20 @@ public abstract class SupervisedLearner implements Serializable
 		return result;
 	}
 	
+	/**
+	 * Predicts a scored list for each row of inputs. The default calls innerPredictScoredList for
+	 * each row. Override this if many rows can be predicted faster together.
+	 * @param inputs Values in this matrix must not be mutated.
+	 * @param maxDesiredSize See predictSocredList.
+	 */
+	protected List<List<Vector>> innerPredictScoredListBatch(Matrix inputs, int maxDesiredSize)
+	{
+		List<List<Vector>> result = new ArrayList<>(inputs.rows());
+		for (int r = 0; r < inputs.rows(); r++)
+			result.add(innerPredictScoredList(inputs.row(r), maxDesiredSize));
+		return result;
+	}
+	
 	/**
 	 * Get the weights associated with each nominal value in a predicted output
 	 * vector.
@@ -260,6 +465,38 @@ public abstract class SupervisedLearner implements Serializable
 				return reorder.unfilterOutputWeights(weights);	
 		}
 	}
+	
+	/**
+	 * Like predictOutputWeights, but predicts the output weights of every row of inputs. The
+	 * filter is applied to all of the rows at once.
+	 * @return The output weights for each row of inputs, as described by predictOutputWeights.
+	 */
+	public final List<List<double[]>> predictOutputWeightsBatch(Matrix inputs)
+	{
+		if (filter == null)
+		{
+			if (!canImplicitlyHandleUnknownInputs())
+				checkForUnknownInputs(inputs);
+
+			return innerPredictOutputWeightsBatch(inputs);
+		}
+		else
+		{
+			Matrix inputsFiltered = filter.filterAllInputs(inputs);
+			
+			if (!canImplicitlyHandleUnknownInputs())
+				checkForUnknownInputs(inputsFiltered);
+			
+			List<List<double[]>> weights = innerPredictOutputWeightsBatch(inputsFiltered);
+			ReorderOutputs reorder = filter.findFilter(ReorderOutputs.class);
+			if (reorder == null)
+				return weights;
+			List<List<double[]>> unfiltered = new ArrayList<>(weights.size());
+			for (List<double[]> rowWeights : weights)
+				unfiltered.add(reorder.unfilterOutputWeights(rowWeights));
+			return unfiltered;
+		}
+	}
 
 	/**
 	 * Override this to support this functionality. The default is to put all weight on
@@ -287,6 +524,21 @@ public abstract class SupervisedLearner implements Serializable
 		
 		return weights;
 	}
+	
+	/**
+	 * Predicts the output weights for each row of inputs. The default calls
+	 * innerPredictOutputWeights for each row. Override this if many rows can be predicted faster
+	 * together.
+	 * @param inputs Values in this matrix must not be mutated.
+	 * @return See predictOutputWeightsBatch.
+	 */
+	protected List<List<double[]>> innerPredictOutputWeightsBatch(Matrix inputs)
+	{
+		List<List<double[]>> result = new ArrayList<>(inputs.rows());
+		for (int r = 0; r < inputs.rows(); r++)
+			result.add(innerPredictOutputWeights(inputs.row(r)));
+		return result;
+	}
 
 		
 	/**
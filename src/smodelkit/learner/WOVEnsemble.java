@@ -1,10 +1,10 @@
 package smodelkit.learner;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
-import java.util.stream.Collectors;
 
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
@@ -14,6 +14,8 @@ import smodelkit.Matrix;
 import smodelkit.Sample;
 import smodelkit.Vector;
 import smodelkit.util.Helper;
+import smodelkit.util.LabelIndex;
+import smodelkit.util.LabelKey;
 import smodelkit.util.Logger;
 import smodelkit.util.Range;
 import smodelkit.util.Tuple2;
@@ -34,6 +36,7 @@ public class WOVEnsemble extends SupervisedLearner
 	boolean doBagging;
 	private boolean useModelWeights;
 	private int numPredictionsWhenSettingModelWeights;
+	private LabelKey labelKey;
 
 	/**
 	 * Creates an ensemble of MDC classifiers.
@@ -95,6 +98,7 @@ public class WOVEnsemble extends SupervisedLearner
 	@Override
 	protected void innerTrain(Matrix inputs, Matrix labels)
 	{		
+		labelKey = new LabelKey(labels);
 		for (SupervisedLearner model : submodels)
 		{
 			if (doBagging)
@@ -114,10 +118,10 @@ public class WOVEnsemble extends SupervisedLearner
 			if (useModelWeights)
 			{	
 				double weightSum = 0;
+				List<List<Vector>> preds = model.predictScoredListBatch(inputs, numPredictionsWhenSettingModelWeights);
 				for (int r : new Range(inputs.rows()))
 				{
-					List<Vector> pred 
-							= model.predictScoredList(inputs.row(r), numPredictionsWhenSettingModelWeights);
+					List<Vector> pred = preds.get(r);
 					// If the target label is one of the predicted ones, add the weight given to it.
 					for (Vector v : pred)
 					{
@@ -144,33 +148,55 @@ public class WOVEnsemble extends SupervisedLearner
 		Logger.println("modelWeights: " + Helper.formatDoubleList(modelWeights));
 	}
 
+	/**
+	 * Models serialized before labelKey was added do not have one, so it is created from the
+	 * labels they were trained with.
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+	{
+		in.defaultReadObject();
+		if (labelKey == null && getFilteredLabelsMetadata() != null)
+			labelKey = new LabelKey(getFilteredLabelsMetadata());
+	}
+
 	@Override
 	protected Vector innerPredict(Vector input)
 	{
-		Map<Vector, Double> scores = getScoreMap(input);
-		return Helper.argmax(scores);
+		LabelIndex index = new LabelIndex(labelKey);
+		List<Vector> predictions = new ArrayList<>();
+		double[] scores = sumScores(input, index, predictions);
+		int best = -1;
+		for (int id : index.sortedIds())
+		{
+			if (best == -1 || scores[id] > scores[best])
+				best = id;
+		}
+		return predictions.get(best);
 	}
 	
 	@Override
 	public List<Vector> innerPredictScoredList(Vector input, int maxDesiredSize)
 	{
-		Map<Vector, Double> scores = getScoreMap(input);
+		LabelIndex index = new LabelIndex(labelKey);
+		List<Vector> predictions = new ArrayList<>();
+		double[] scores = sumScores(input, index, predictions);
 		
-		// Convert the map to a scored list.
-		List<Vector> result = scores.entrySet().stream().map(
-				entry -> new Vector(entry.getKey(), entry.getValue())).collect(Collectors.toList());
+		// Convert the scores to a scored list.
+		List<Vector> result = new ArrayList<>(predictions.size());
+		for (int id : index.sortedIds())
+			result.add(new Vector(predictions.get(id), scores[id]));
 		result.sort((v1, v2) -> -Double.compare(v1.getWeight(), v2.getWeight()));
 		return result;
 	}
 	
 	/**
-	 * Returns a map where keys are predictions made by the models in innerModels for the given input,
-	 * and values are the summed scores those models gave to those predictions.
-	 * @return
+	 * Adds the predictions made by the models in submodels for the given input to index, and adds
+	 * the first Vector found for each of them to predictions, so that predictions is indexed by id.
+	 * @return The summed scores the models gave to each prediction, indexed by id.
 	 */
-	private Map<Vector, Double> getScoreMap(Vector input)
+	private double[] sumScores(Vector input, LabelIndex index, List<Vector> predictions)
 	{
-		Map<Vector, Double> scores = new TreeMap<>();
+		double[] scores = new double[16];
 		for (Tuple2<SupervisedLearner, Double> modelAndScore : new Tuple2Iterator<>(submodels, modelWeights))
 		{
 			SupervisedLearner model = modelAndScore.getFirst();
@@ -178,12 +204,14 @@ public class WOVEnsemble extends SupervisedLearner
 			List<Vector> scoreList = model.predictScoredList(input, Integer.MAX_VALUE);
 			for (Vector v : scoreList)
 			{
-				Double score = scores.get(v.getWeight());
-				if (score == null)
+				int id = index.add(v);
+				if (id == predictions.size())
 				{
-					score = 0.0;
+					predictions.add(v);
+					if (id == scores.length)
+						scores = Arrays.copyOf(scores, scores.length * 2);
 				}
-				scores.put(v, score + (v.getWeight() * modelScore));
+				scores[id] += v.getWeight() * modelScore;
 			}
 		}
 		
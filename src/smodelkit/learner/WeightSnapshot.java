@@ -0,0 +1,66 @@
+package smodelkit.learner;
+
+import java.lang.reflect.Array;
+
+/**
+ * A saved copy of the weights of a network, such as NeuralNet.layerWeights, which can be restored
+ * later. The copy is kept in arrays with the same shape as the weights, which are reused by every
+ * save, so saving is only an array copy. Restoring swaps the saved arrays with the network's, so
+ * nothing is copied and the network's old arrays become the buffer for the next save.
+ *
+ * The weights are given as an array of layers, where each layer is a double[] or a float[] (see
+ * NeuralNet.Precision).
+ * @author joseph
+ *
+ */
+class WeightSnapshot
+{
+	private Object[] saved;
+	// True if save has been called since this was created or last restored.
+	private boolean hasSaved;
+
+	/**
+	 * Creates an empty snapshot with room for weights of the same shape and type as the given
+	 * weights.
+	 */
+	WeightSnapshot(Object[] weights)
+	{
+		saved = weights.clone();
+		for (int i = 0; i < weights.length; i++)
+			saved[i] = Array.newInstance(weights[i].getClass().getComponentType(), Array.getLength(weights[i]));
+	}
+
+	/**
+	 * Replaces the saved weights with a copy of the given weights, which must have the same shape
+	 * and type as the weights this snapshot was created with.
+	 */
+	void save(Object[] weights)
+	{
+		for (int i = 0; i < weights.length; i++)
+			System.arraycopy(weights[i], 0, saved[i], 0, Array.getLength(weights[i]));
+		hasSaved = true;
+	}
+
+	/**
+	 * Returns true if weights have been saved since this was created or last restored.
+	 */
+	boolean hasSaved()
+	{
+		return hasSaved;
+	}
+
+	/**
+	 * Returns the saved weights, which should replace the given weights. The given weights are
+	 * kept by this snapshot to be overwritten by the next save, so they must not be used after
+	 * this is called.
+	 */
+	Object[] restore(Object[] weights)
+	{
+		if (!hasSaved)
+			throw new IllegalStateException("No weights have been saved.");
+		Object[] result = saved;
+		saved = weights;
+		hasSaved = false;
+		return result;
+	}
+}
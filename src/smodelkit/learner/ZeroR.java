@@ -2,9 +2,12 @@ package smodelkit.learner;
 
 import org.json.simple.JSONObject;
 
+import smodelkit.ChunkStatistics;
 import smodelkit.Matrix;
+import smodelkit.RowSource;
 import smodelkit.Vector;
 import smodelkit.util.Counter;
+import smodelkit.util.Pair;
 import smodelkit.util.Range;
 
 /**
@@ -66,6 +69,36 @@ public class ZeroR extends SupervisedLearner
 		
 	}
 
+	/**
+	 * Counts labels one chunk at a time. The prediction is the same as innerTrain(Matrix, Matrix)
+	 * would give for all of the rows.
+	 */
+	@Override
+	protected void innerTrain(RowSource source)
+	{
+		if (predictMostCommonOutputVector)
+		{
+			Counter<Vector> counts = new Counter<>();
+			source.reset();
+			for (Pair<Matrix> chunk = source.nextChunk(); chunk != null; chunk = source.nextChunk())
+			{
+				// Rows of a chunk are only valid until the next chunk is read, so they are copied.
+				chunk.getSecond().stream().forEach(label -> counts.increment(new Vector(label)));
+			}
+			prediction = counts.argmax();
+		}
+		else
+		{
+			prediction = new Vector(ChunkStatistics.read(source).getSecond().findMeanModes());
+		}
+	}
+
+	@Override
+	public boolean canTrainIncrementally()
+	{
+		return true;
+	}
+
 	@Override
 	protected Vector innerPredict(Vector input)
 	{
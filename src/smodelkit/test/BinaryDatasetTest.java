@@ -0,0 +1,215 @@
+package smodelkit.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+
+import smodelkit.BinaryDataset;
+import smodelkit.DatasetCache;
+import smodelkit.Evaluation;
+import smodelkit.MLSystemsManager;
+import smodelkit.Matrix;
+import smodelkit.Vector;
+import smodelkit.evaluator.TopN;
+import smodelkit.util.Range;
+import smodelkit.util.SerializationUtilities;
+
+public class BinaryDatasetTest
+{
+	private static final String ARFF = "% A comment.\n" +
+			"@RELATION 'simple -c -2'\n" +
+			"\n" +
+			"@ATTRIBUTE x1	real\n" +
+			"@ATTRIBUTE x2	{a,b,c}\n" +
+			"@ATTRIBUTE class1	{low,med,high}\n" +
+			"@ATTRIBUTE class2	real\n" +
+			"\n" +
+			"@DATA\n" +
+			"0.4,a,med,1\n" +
+			"0.1,?,low,2\n" +
+			"?,c,high,3, {2.5}\n" +
+			"0.7,b,high,4\n" +
+			"";
+
+	private static Matrix writeAndLoad(Matrix m) throws IOException
+	{
+		File file = File.createTempFile("binaryDatasetTest", BinaryDataset.EXTENSION);
+		file.deleteOnExit();
+		BinaryDataset.write(m, file.getPath());
+		Matrix result = new Matrix();
+		result.loadFromBinaryFile(file.getPath());
+		return result;
+	}
+
+	@Test
+	public void roundTripTest() throws IOException
+	{
+		Matrix arff = new Matrix();
+		arff.loadFromArffString(ARFF);
+		Matrix binary = writeAndLoad(arff);
+
+		assertEquals(Matrix.StorageType.MAPPED, binary.getStorageType());
+		assertEquals(arff.toString(), binary.toString());
+		assertEquals(2, binary.getNumLabelColumns());
+		assertEquals(arff.getRelationName(), binary.getRelationName());
+		for (int r : new Range(arff.rows()))
+			Vector.assertVectorEquals(arff.row(r), binary.row(r), 0.0);
+
+		// Rows can be reordered and removed without changing the file.
+		arff.shuffle(new Random(0));
+		binary.shuffle(new Random(0));
+		arff.removeRow(1);
+		binary.removeRow(1);
+		assertEquals(arff.toString(), binary.toString());
+
+		// Writable copies can be made.
+		Matrix copy = new Matrix(binary);
+		copy.removeColumn(0);
+		assertEquals(arff.cols() - 1, copy.cols());
+		binary.setStorageType(Matrix.StorageType.ROWS);
+		binary.addRow(new Vector(new double[] {0.0, 0.0, 0.0, 0.0}));
+		assertEquals(arff.rows() + 1, binary.rows());
+	}
+
+	@Test(expected=UnsupportedOperationException.class)
+	public void readOnlyTest() throws IOException
+	{
+		Matrix arff = new Matrix();
+		arff.loadFromArffString(ARFF);
+		Matrix binary = writeAndLoad(arff);
+		binary.row(0).setWeight(2.0);
+	}
+
+	@Test
+	public void serializeTest() throws IOException, ClassNotFoundException
+	{
+		Matrix arff = new Matrix();
+		arff.loadFromArffString(ARFF);
+		Matrix binary = writeAndLoad(arff);
+
+		File file = File.createTempFile("binaryDatasetTest", ".ser");
+		file.deleteOnExit();
+		SerializationUtilities.serialize(binary, file.getPath());
+		Matrix deserialized = SerializationUtilities.deserialize(file.getPath());
+		assertEquals(arff.toString(), deserialized.toString());
+	}
+
+	@Test
+	public void trainingTest() throws IOException, ClassNotFoundException, InterruptedException, ExecutionException
+	{
+		Matrix arff = new Matrix();
+		arff.loadFromArffFile("Datasets/mcc/iris.arff");
+		File file = File.createTempFile("iris", BinaryDataset.EXTENSION);
+		file.deleteOnExit();
+		BinaryDataset.write(arff, file.getPath());
+
+		// This should give the same result as MLSystemsManagerTest.trainingTest.
+		Evaluation evaluation = new MLSystemsManager().run(("-L neuralnet model_settings/neuralnet_test.json -A "
+				+ file.getPath() + " -E training -M top-n 1 -R 0").split(" "), null);
+		assertEquals(0.98, evaluation.getScores(TopN.class).get(0), 0.000000001);
+	}
+
+	@Test
+	public void datasetCacheTest() throws IOException
+	{
+		Path directory = Files.createTempDirectory("datasetCacheTest");
+		directory.toFile().deleteOnExit();
+		File arffFile = File.createTempFile("datasetCacheTest", ".arff");
+		arffFile.deleteOnExit();
+		Files.write(arffFile.toPath(), ARFF.getBytes(StandardCharsets.UTF_8));
+		List<String> files = Arrays.asList(arffFile.getPath());
+		DatasetCache cache = new DatasetCache(directory.toString());
+
+		String key = cache.key(files, Collections.<String>emptyList());
+		assertNull(cache.get(key));
+		assertNotEquals(key, cache.key(files, Arrays.asList("preprocessed")));
+
+		int[] loads = new int[1];
+		DatasetCache.Loader loader = m -> { loads[0]++; m.loadFromArffFile(arffFile.getPath()); };
+		Matrix parsed = cache.load(files, Collections.<String>emptyList(), loader);
+		int hits = DatasetCache.getHits();
+		Matrix cached = cache.load(files, Collections.<String>emptyList(), loader);
+		assertEquals(1, loads[0]);
+		assertEquals(hits + 1, DatasetCache.getHits());
+		assertEquals(parsed.toString(), cached.toString());
+		assertEquals(parsed.getNumLabelColumns(), cached.getNumLabelColumns());
+
+		// Matrices from the cache have the default storage type, so they can be changed.
+		assertEquals(Matrix.getDefaultStorageType(), cached.getStorageType());
+		cached.set(0, 0, 0.3);
+		assertEquals(0.3, cached.get(0, 0), 0.0);
+		Matrix.StorageType defaultStorageType = Matrix.getDefaultStorageType();
+		try
+		{
+			Matrix.setDefaultStorageType(Matrix.StorageType.COLUMNS);
+			assertEquals(Matrix.StorageType.COLUMNS, cache.load(files, Collections.<String>emptyList(), loader)
+					.getStorageType());
+		}
+		finally
+		{
+			Matrix.setDefaultStorageType(defaultStorageType);
+		}
+		assertEquals(1, loads[0]);
+
+		// The content hash is stored with the entries, so files are only hashed again when their
+		// size or modification time changes.
+		assertEquals(1, directory.toFile().listFiles((dir, name) -> name.endsWith(".sha256")).length);
+
+		// Changing the file changes the key, so it is parsed again.
+		long modified = arffFile.lastModified();
+		Files.write(arffFile.toPath(), ARFF.replace("0.4,a,med,1", "0.5,a,med,1").getBytes(StandardCharsets.UTF_8));
+		arffFile.setLastModified(modified + 2000);
+		assertNotEquals(key, cache.key(files, Collections.<String>emptyList()));
+		Matrix changed = cache.load(files, Collections.<String>emptyList(), loader);
+		assertEquals(2, loads[0]);
+		assertEquals(0.5, changed.get(0, 0), 0.0);
+
+		for (File entry : directory.toFile().listFiles())
+			entry.delete();
+	}
+
+	@Test
+	public void datasetCacheTrainingTest() throws IOException, ClassNotFoundException, InterruptedException,
+			ExecutionException
+	{
+		Path directory = Files.createTempDirectory("datasetCacheTest");
+		directory.toFile().deleteOnExit();
+		String args = "-L neuralnet model_settings/neuralnet_test.json -A Datasets/mcc/iris.arff -E training"
+				+ " -M top-n 1 -R 0 --dataset_cache " + directory + " --cache_preprocessed";
+		// This should give the same result as MLSystemsManagerTest.trainingTest, with and without
+		// the cached dataset.
+		for (int i = 0; i < 2; i++)
+		{
+			Evaluation evaluation = new MLSystemsManager().run(args.split(" "), null);
+			assertEquals(0.98, evaluation.getScores(TopN.class).get(0), 0.000000001);
+		}
+		assertEquals(2, directory.toFile().listFiles((dir, name) -> name.endsWith(BinaryDataset.EXTENSION)).length);
+
+		// Label arguments are checked before the cache of preprocessed datasets is used.
+		try
+		{
+			new MLSystemsManager().run((args + " -U 2 -C class").split(" "), null);
+			fail();
+		}
+		catch (IllegalArgumentException e)
+		{
+		}
+
+		for (File entry : directory.toFile().listFiles())
+			entry.delete();
+	}
+}
@@ -7,11 +7,14 @@ import static org.junit.Assert.assertFalse;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 
+import smodelkit.util.Gemm;
 import smodelkit.util.Helper;
 import smodelkit.util.Range;
+import smodelkit.util.kernels.Kernels;
 
 
 public class HelperTest
@@ -180,4 +183,120 @@ public class HelperTest
 	}
 
 
+	@Test
+	public void gemmTest()
+	{
+		Random rand = new Random(0);
+		// The sizes are chosen so that the edges of the register blocks and the summed dimension's
+		// blocks are all used. Strides are one larger than the number of columns.
+		int m = 7, p = 5, n = 300;
+		double[] a = randomArray(rand, m * (n + 1));
+		double[] b = randomArray(rand, p * (n + 1));
+		double[] c = new double[m * (p + 1)];
+		Gemm.multiplyTransposeB(a, n + 1, b, n + 1, c, p + 1, m, p, n);
+		for (int i = 0; i < m; i++)
+			for (int j = 0; j < p; j++)
+			{
+				double expected = 0;
+				for (int k = 0; k < n; k++)
+					expected += a[i * (n + 1) + k] * b[j * (n + 1) + k];
+				assertEquals(expected, c[i * (p + 1) + j], 1e-9);
+			}
+
+		// A is m x n and B is n x p.
+		b = randomArray(rand, n * (p + 1));
+		double[] c2 = c.clone();
+		Gemm.multiplyAdd(a, n + 1, b, p + 1, c2, p + 1, m, p, n);
+		for (int i = 0; i < m; i++)
+			for (int j = 0; j < p; j++)
+			{
+				double expected = c[i * (p + 1) + j];
+				for (int k = 0; k < n; k++)
+					expected += a[i * (n + 1) + k] * b[k * (p + 1) + j];
+				assertEquals(expected, c2[i * (p + 1) + j], 1e-9);
+			}
+
+		// A is n x m and B is n x p.
+		a = randomArray(rand, n * (m + 1));
+		c2 = c.clone();
+		Gemm.multiplyAddTransposeA(a, m + 1, b, p + 1, c2, p + 1, m, p, n);
+		for (int i = 0; i < m; i++)
+			for (int j = 0; j < p; j++)
+			{
+				double expected = c[i * (p + 1) + j];
+				for (int k = 0; k < n; k++)
+					expected += a[k * (m + 1) + i] * b[k * (p + 1) + j];
+				assertEquals(expected, c2[i * (p + 1) + j], 1e-9);
+			}
+	}
+
+	@Test
+	public void kernelsTest()
+	{
+		Random rand = new Random(0);
+		// The length is not a multiple of any vector size, and the offsets are different.
+		int n = 37, aOffset = 3, bOffset = 5;
+		double[] a = randomArray(rand, aOffset + n);
+		double[] b = randomArray(rand, bOffset + n);
+		double[] withUnknowns = b.clone();
+		withUnknowns[bOffset] = Double.NaN;
+		withUnknowns[bOffset + n - 1] = Double.NaN;
+		a[aOffset + 10] = Double.NaN;
+		double[] known = a.clone();
+		known[aOffset + 10] = 0.25;
+
+		double dot = 0, distance = 0, masked = 0;
+		double[] axpy = b.clone();
+		for (int i = 0; i < n; i++)
+		{
+			double x = known[aOffset + i];
+			double y = b[bOffset + i];
+			dot += x * y;
+			distance += 0.5 * ((x - y) * (x - y));
+			axpy[bOffset + i] += 0.1 * x;
+			if (Double.isNaN(a[aOffset + i]) || Double.isNaN(withUnknowns[bOffset + i]))
+				masked += 2.0;
+			else
+				masked += (a[aOffset + i] - y) * (a[aOffset + i] - y);
+		}
+
+		// When the tests are run with the vector kernels (see the test-vector-kernels target in
+		// build.xml), they must actually have been loaded.
+		if ("vector".equals(System.getProperty(Kernels.PROPERTY)))
+			assertEquals("vector", Kernels.get().getName());
+
+		// The scalar kernels sum in order, so they are exact. Other implementations are only
+		// compared if they can be loaded.
+		for (String name : Arrays.asList("scalar", "vector"))
+		{
+			Kernels kernels = Kernels.load(name);
+			double tolerance = kernels.getName().equals("scalar") ? 0.0 : 1e-12;
+			assertEquals(dot, kernels.dot(known, aOffset, b, bOffset, n), tolerance);
+			assertEquals(distance, kernels.squaredDistance(known, aOffset, b, bOffset, n, 0.5), tolerance);
+			assertEquals(masked, kernels.maskedSquaredDistance(a, aOffset, withUnknowns, bOffset, n, 2.0),
+					tolerance);
+			double[] y = b.clone();
+			kernels.axpy(0.1, known, aOffset, y, bOffset, n);
+			assertArrayEquals(axpy, y, tolerance);
+
+			float[] floatA = new float[known.length];
+			for (int i = 0; i < known.length; i++)
+				floatA[i] = (float)known[i];
+			float[] floatB = new float[b.length];
+			for (int i = 0; i < b.length; i++)
+				floatB[i] = (float)b[i];
+			assertEquals(dot, kernels.dot(floatA, aOffset, floatB, bOffset, n), 1e-5);
+			kernels.axpy(0.1f, floatA, aOffset, floatB, bOffset, n);
+			for (int i = 0; i < b.length; i++)
+				assertEquals(axpy[i], floatB[i], 1e-6);
+		}
+	}
+
+	private static double[] randomArray(Random rand, int size)
+	{
+		double[] result = new double[size];
+		for (int i = 0; i < size; i++)
+			result[i] = rand.nextDouble() - 0.5;
+		return result;
+	}
 }
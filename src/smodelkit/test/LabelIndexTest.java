@@ -0,0 +1,81 @@
+package smodelkit.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static smodelkit.Vector.assertVectorEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import smodelkit.Vector;
+import smodelkit.util.LabelIndex;
+import smodelkit.util.LabelKey;
+import smodelkit.util.Range;
+
+public class LabelIndexTest
+{
+	@Test
+	public void addTest()
+	{
+		LabelIndex index = new LabelIndex(new LabelKey(new int[] {3, 2, 4}));
+		assertEquals(0, index.add(new Vector(new double[] {2, 1, 0})));
+		assertEquals(1, index.add(new Vector(new double[] {0, 1, 3})));
+		// Weights are ignored.
+		assertEquals(0, index.add(new Vector(new double[] {2, 1, 0}, 0.5)));
+		assertEquals(2, index.add(new Vector(new double[] {0, 1, Vector.getUnknownValue()})));
+		assertEquals(3, index.size());
+
+		assertEquals(1, index.indexOf(new Vector(new double[] {0, 1, 3})));
+		assertEquals(-1, index.indexOf(new Vector(new double[] {0, 0, 3})));
+		assertEquals(1, index.indexOf(new Vector(new double[] {0, 0, 3}), 1, 1.0));
+		// Labels which cannot be encoded are not found.
+		assertEquals(-1, index.indexOf(new Vector(new double[] {0, 2, 3})));
+		assertEquals(-1, index.indexOf(new Vector(new double[] {0, 0.5, 3})));
+		assertFalse(index.contains(new Vector(new double[] {0, 1})));
+
+		assertVectorEquals(new Vector(new double[] {2, 1, 0}), index.get(0), 0);
+		assertTrue(Vector.isUnknown(index.get(2).get(2)));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void addInvalidTest()
+	{
+		LabelIndex index = new LabelIndex(new LabelKey(new int[] {3, 2}));
+		index.add(new Vector(new double[] {3, 0}));
+	}
+
+	@Test
+	public void orderTest()
+	{
+		// Large value counts make keys wider than one long.
+		for (int[] valueCounts : new int[][] {{2, 3, 4, 5}, {100000, 7, 100000, 100000, 100000, 3}})
+		{
+			LabelKey key = new LabelKey(valueCounts);
+			LabelIndex index = new LabelIndex(key);
+			Random rand = new Random(0);
+			List<Vector> labels = new ArrayList<>();
+			for (@SuppressWarnings("unused") int i : new Range(500))
+			{
+				double[] values = new double[valueCounts.length];
+				for (int c : new Range(values.length))
+					values[c] = rand.nextInt(Math.min(valueCounts[c], 3));
+				Vector label = new Vector(values);
+				if (index.indexOf(label) < 0)
+					labels.add(label);
+				index.add(label);
+			}
+			assertEquals(labels.size(), index.size());
+			Collections.sort(labels);
+			int[] sortedIds = index.sortedIds();
+			for (int i : new Range(labels.size()))
+				assertVectorEquals(labels.get(i), index.get(sortedIds[i]), 0);
+		}
+		assertEquals(1, new LabelKey(new int[] {2, 3, 4, 5}).getWidth());
+		assertEquals(2, new LabelKey(new int[] {100000, 7, 100000, 100000, 100000, 3}).getWidth());
+	}
+}
@@ -0,0 +1,76 @@
+package smodelkit.test;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import smodelkit.learner.LearningRateSchedule;
+
+public class LearningRateScheduleTest
+{
+	private static final double TOLERANCE = 1e-12;
+
+	@Test
+	public void constantTest()
+	{
+		// CONSTANT keeps the current learning rate, even if it is not the initial one.
+		LearningRateSchedule constant = new LearningRateSchedule(LearningRateSchedule.Type.CONSTANT, 0.5, 2, 0.01);
+		assertEquals(0.1, constant.getLearningRate(0.1, 0.1, 50, 10, 100), 0.0);
+		assertEquals(0.05, constant.getLearningRate(0.1, 0.05, 50, 10, 100), 0.0);
+	}
+
+	@Test
+	public void stepTest()
+	{
+		// 0.1 * 0.5^(epochs / 2), with integer division, and never less than 0.01.
+		LearningRateSchedule step = new LearningRateSchedule(LearningRateSchedule.Type.STEP, 0.5, 2, 0.01);
+		assertEquals(0.1, step.getLearningRate(0.1, 0.1, 1, 0, 100), 0.0);
+		assertEquals(0.05, step.getLearningRate(0.1, 0.1, 2, 0, 100), 0.0);
+		assertEquals(0.05, step.getLearningRate(0.1, 0.1, 3, 0, 100), 0.0);
+		// Only the initial learning rate and the number of epochs matter.
+		assertEquals(0.025, step.getLearningRate(0.1, 0.05, 5, 0, 100), 0.0);
+		assertEquals(0.0125, step.getLearningRate(0.1, 0.1, 6, 3, 100), 0.0);
+		// 0.1 * 0.5^4 = 0.00625, which is less than the minimum.
+		assertEquals(0.01, step.getLearningRate(0.1, 0.025, 8, 0, 100), 0.0);
+		assertEquals(0.01, step.getLearningRate(0.1, 0.025, 20, 0, 100), 0.0);
+	}
+
+	@Test
+	public void cosineTest()
+	{
+		// min + (0.1 - min) * (1 + cos(pi * epochs / 100)) / 2.
+		LearningRateSchedule cosine = new LearningRateSchedule(LearningRateSchedule.Type.COSINE, 0.5, 5, 0.0);
+		assertEquals(0.1, cosine.getLearningRate(0.1, 0.1, 0, 0, 100), TOLERANCE);
+		assertEquals(0.1 * (1 + Math.sqrt(0.5)) / 2, cosine.getLearningRate(0.1, 0.1, 25, 0, 100), TOLERANCE);
+		assertEquals(0.05, cosine.getLearningRate(0.1, 0.1, 50, 0, 100), TOLERANCE);
+		assertEquals(0.1 * (1 - Math.sqrt(0.5)) / 2, cosine.getLearningRate(0.1, 0.1, 75, 0, 100), TOLERANCE);
+		assertEquals(0.0, cosine.getLearningRate(0.1, 0.1, 100, 0, 100), TOLERANCE);
+		// Epochs after the maximum keep the minimum.
+		assertEquals(0.0, cosine.getLearningRate(0.1, 0.1, 150, 0, 100), TOLERANCE);
+
+		LearningRateSchedule withMin = new LearningRateSchedule(LearningRateSchedule.Type.COSINE, 0.5, 5, 0.02);
+		assertEquals(0.1, withMin.getLearningRate(0.1, 0.1, 0, 0, 100), TOLERANCE);
+		assertEquals(0.06, withMin.getLearningRate(0.1, 0.1, 50, 0, 100), TOLERANCE);
+		assertEquals(0.02, withMin.getLearningRate(0.1, 0.1, 100, 0, 100), TOLERANCE);
+	}
+
+	@Test
+	public void plateauTest()
+	{
+		// PLATEAU only reduces the learning rate after every decayEpochs epochs without improvement.
+		LearningRateSchedule plateau = new LearningRateSchedule(LearningRateSchedule.Type.PLATEAU, 0.5, 3, 0.02);
+		assertEquals(0.1, plateau.getLearningRate(0.1, 0.1, 10, 0, 100), 0.0);
+		assertEquals(0.1, plateau.getLearningRate(0.1, 0.1, 10, 2, 100), 0.0);
+		assertEquals(0.05, plateau.getLearningRate(0.1, 0.1, 10, 3, 100), 0.0);
+		assertEquals(0.05, plateau.getLearningRate(0.1, 0.05, 10, 4, 100), 0.0);
+		assertEquals(0.025, plateau.getLearningRate(0.1, 0.05, 10, 6, 100), 0.0);
+		// 0.025 * 0.5 = 0.0125, which is less than the minimum.
+		assertEquals(0.02, plateau.getLearningRate(0.1, 0.025, 10, 9, 100), 0.0);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void invalidDecayTest()
+	{
+		new LearningRateSchedule(LearningRateSchedule.Type.STEP, 1.5, 2, 0.0);
+	}
+}
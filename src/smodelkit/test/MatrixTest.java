@@ -5,15 +5,23 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 
 import smodelkit.Matrix;
 import smodelkit.Vector;
 import smodelkit.util.Range;
+import smodelkit.util.SerializationUtilities;
+import smodelkit.util.ThreadCounter;
 
 public class MatrixTest
 {
@@ -600,4 +608,521 @@ public class MatrixTest
 		
 	}
 
+	@Test
+	public void columnarStorageTest()
+	{
+		Matrix rows = new Matrix();
+		rows.loadFromArffString("@RELATION simple_nominal\n" + 
+				"\n" + 
+				"@ATTRIBUTE x1	real\n" + 
+				"@ATTRIBUTE x2	real\n" + 
+				"@ATTRIBUTE class1	{low,med,high}\n" + 
+				"\n" + 
+				"@DATA\n" + 
+				"0.4,0.9,med\n" + 
+				"0.1,?,low\n" + 
+				"0.9,0.3,high, {2.5}\n" + 
+				"0.7,0.2,high\n" + 
+				"");
+		Matrix columns = new Matrix(rows);
+		columns.setStorageType(Matrix.StorageType.COLUMNS);
+		assertEquals(Matrix.StorageType.COLUMNS, columns.getStorageType());
+		assertEquals(rows.toString(), columns.toString());
+		for (int c : new Range(rows.cols()))
+		{
+			assertEquals(rows.findMin(c), columns.findMin(c), Double.MIN_VALUE);
+			assertEquals(rows.findMax(c), columns.findMax(c), Double.MIN_VALUE);
+			assertEquals(rows.findMean(c), columns.findMean(c), Double.MIN_VALUE);
+		}
+		assertTrue(columns.containsUnknowns());
+		assertTrue(columns.hasInstanceWeightsNot1());
+		
+		// Changes to rows are written through to the matrix.
+		columns.row(0).setWeight(3.0);
+		assertEquals(3.0, columns.row(0).getWeight(), Double.MIN_VALUE);
+		columns.row(1).set(1, 0.5);
+		assertFalse(columns.containsUnknowns());
+		
+		// Copies of the matrix keep the storage type.
+		Matrix copy = new Matrix(columns);
+		assertEquals(Matrix.StorageType.COLUMNS, copy.getStorageType());
+		Vector.assertVectorEquals(columns.row(2), copy.row(2), 0.0);
+		
+		copy.removeRow(0);
+		assertEquals(3, copy.rows());
+		Vector.assertVectorEquals(columns.row(1), copy.row(0), 0.0);
+		copy.removeColumn(0);
+		assertEquals(2, copy.row(0).size());
+		assertEquals(0.3, copy.get(1, 0), Double.MIN_VALUE);
+		assertEquals(2.5, copy.row(1).getWeight(), Double.MIN_VALUE);
+		
+		Matrix selected = columns.selectColumns(Arrays.asList(2, 0));
+		assertEquals(columns.rows(), selected.rows());
+		assertEquals(columns.get(2, 2), selected.get(2, 0), Double.MIN_VALUE);
+		assertEquals(columns.get(2, 0), selected.get(2, 1), Double.MIN_VALUE);
+		
+		// Copies of rows do not change when the matrix does.
+		Vector row = new Vector(columns.row(3));
+		columns.removeRow(3);
+		columns.addRow(new Vector(new double[] {0.0, 0.0, 0.0}));
+		assertEquals(0.7, row.get(0), Double.MIN_VALUE);
+		assertEquals(0.0, columns.get(3, 0), Double.MIN_VALUE);
+	}
+
+	@Test
+	public void compactStorageTest()
+	{
+		Matrix rows = new Matrix();
+		rows.loadFromArffFile("Datasets/mdc/synthetic/nominal_8out_8class.arff");
+		rows.addRow(rows.row(0));
+		rows.set(rows.rows() - 1, 0, Vector.getUnknownValue());
+		Matrix compact = new Matrix(rows);
+		compact.setStorageType(Matrix.StorageType.COMPACT);
+		assertEquals(Matrix.StorageType.COMPACT, compact.getStorageType());
+		assertEquals(rows.toString(), compact.toString());
+		for (int r : new Range(rows.rows()))
+			Vector.assertVectorEquals(rows.row(r), compact.row(r), 0.0);
+		assertTrue(compact.containsUnknowns());
+		
+		// Columns are widened when given values which do not fit.
+		Matrix real = new Matrix();
+		real.setStorageType(Matrix.StorageType.COMPACT);
+		real.loadFromArffString("@RELATION real\n" + 
+				"@ATTRIBUTE x1	real\n" + 
+				"@ATTRIBUTE x2	real\n" + 
+				"@DATA\n" + 
+				"1,2\n" + 
+				"?,3\n" + 
+				"4,5\n" + 
+				"6,7\n" + 
+				"");
+		assertEquals(Matrix.StorageType.COMPACT, real.getStorageType());
+		real.set(0, 0, 1000);
+		real.set(2, 0, 100000);
+		real.row(3).set(0, 0.5);
+		real.row(3).set(1, -0.0);
+		real.row(3).setWeight(2.0);
+		assertEquals(1000, real.get(0, 0), 0.0);
+		assertTrue(Vector.isUnknown(real.get(1, 0)));
+		assertEquals(100000, real.get(2, 0), 0.0);
+		assertEquals(0.5, real.get(3, 0), 0.0);
+		assertEquals(Double.doubleToRawLongBits(-0.0), Double.doubleToRawLongBits(real.get(3, 1)));
+		assertEquals(2.0, real.row(3).getWeight(), 0.0);
+		assertEquals(3, real.get(1, 1), 0.0);
+		
+		// Unknowns follow their rows when rows are removed and reordered.
+		compact.removeRow(0);
+		assertTrue(Vector.isUnknown(compact.get(compact.rows() - 1, 0)));
+		Matrix expected = new Matrix(compact);
+		expected.setStorageType(Matrix.StorageType.ROWS);
+		compact.shuffle(new Random(7));
+		expected.shuffle(new Random(7));
+		assertEquals(expected.toString(), compact.toString());
+		
+		Matrix copy = new Matrix(compact);
+		assertEquals(Matrix.StorageType.COMPACT, copy.getStorageType());
+		assertEquals(compact.toString(), copy.toString());
+		copy.removeColumn(0);
+		Vector.assertVectorEquals(compact.row(5).subVector(1, compact.cols()), copy.row(5), 0.0);
+	}
+
+	@Test
+	public void removeColumnFromEmptyMatrixTest()
+	{
+		for (Matrix.StorageType type : Arrays.asList(Matrix.StorageType.ROWS, Matrix.StorageType.COLUMNS,
+				Matrix.StorageType.COMPACT))
+		{
+			Matrix data = new Matrix();
+			data.setStorageType(type);
+			data.loadFromArffString("@RELATION empty\n" + 
+					"@ATTRIBUTE x1	real\n" + 
+					"@ATTRIBUTE x2	real\n" + 
+					"@DATA\n" + 
+					"");
+			data.removeColumn(0);
+			assertEquals(1, data.cols());
+			assertEquals(0, data.rows());
+			data.addRow(new Vector(new double[] {2.0}));
+			assertEquals(2.0, data.get(0, 0), 0.0);
+		}
+	}
+
+	@Test
+	public void sharedSchemaTest()
+	{
+		Matrix data = new Matrix();
+		data.loadFromArffFile("Datasets/mcc/iris.arff");
+		Matrix copy = new Matrix(data);
+		assertTrue(data.getSchema() == copy.getSchema());
+		Matrix labels = new Matrix(data, 0, data.cols() - 1, data.rows(), 1);
+		assertTrue(data.getSchema().get(data.cols() - 1) == labels.getSchema().get(0));
+		
+		// Changing the attributes of a copy does not change the original.
+		copy.addAttributeValue(data.cols() - 1, "Iris-new");
+		assertEquals(3, data.getValueCount(data.cols() - 1));
+		assertEquals(4, copy.getValueCount(data.cols() - 1));
+		assertEquals(3, copy.getAttrValueIndex(data.cols() - 1, "Iris-new"));
+		assertEquals("Iris-new", copy.getAttrValueName(data.cols() - 1, 3));
+		assertTrue(data.getSchema().get(0) == copy.getSchema().get(0));
+		
+		copy.removeColumn(0);
+		copy.addEmptyColumn("extra");
+		assertEquals(data.cols(), copy.cols());
+		assertEquals(copy.cols() - 1, copy.getAttributeColumnIndex("extra"));
+		assertEquals(-1, data.getAttributeColumnIndex("extra"));
+		assertEquals(0, data.getAttributeColumnIndex(data.getAttrName(0)));
+		assertTrue(copy.isContinuous(copy.cols() - 1));
+	}
+
+	@Test
+	public void parseValuesTest()
+	{
+		Matrix data = new Matrix();
+		data.loadFromArffString("@RELATION values\r\n" + 
+				"@ATTRIBUTE x1	real\r\n" + 
+				"@ATTRIBUTE x2	{'a b', c}\r\n" + 
+				"@ATTRIBUTE class1	real\r\n" + 
+				"@DATA\r\n" + 
+				"1.5e3, 'a b', -0.125\r\n" + 
+				"% A comment in the data section.\r\n" + 
+				"  0.30000000000000004,c,123456789012345678901,\r\n" + 
+				"{0 2.5E-7, 1 c}, {0.5}\r\n" + 
+				"{}\r\n" + 
+				"?, ?, 7, { 3 }" + 
+				"");
+		assertEquals(5, data.rows());
+		Vector.assertVectorEquals(new Vector(new double[] {1500, 0, -0.125}), data.row(0), 0.0);
+		Vector.assertVectorEquals(new Vector(new double[] {0.30000000000000004, 1, 123456789012345678901.0}), 
+				data.row(1), 0.0);
+		Vector.assertVectorEquals(new Vector(new double[] {2.5E-7, 1, 0}, 0.5), data.row(2), 0.0);
+		Vector.assertVectorEquals(new Vector(new double[] {0, 0, 0}), data.row(3), 0.0);
+		assertTrue(Vector.isUnknown(data.get(4, 0)));
+		assertTrue(Vector.isUnknown(data.get(4, 1)));
+		assertEquals(7, data.get(4, 2), 0.0);
+		assertEquals(3, data.row(4).getWeight(), 0.0);
+	}
+
+	@Test
+	public void parallelLoadingTest()
+	{
+		int maxThreads = ThreadCounter.getMaxThreads();
+		boolean maxThreadsSetByUser = ThreadCounter.isMaxThreadsSetByUser();
+		try
+		{
+			ThreadCounter.setMaxThreads(1);
+			Matrix sequential = new Matrix();
+			sequential.loadFromArffFile("Datasets/mlc/medical.arff", true);
+			
+			ThreadCounter.setMaxThreads(4);
+			Matrix parallel = new Matrix();
+			parallel.loadFromArffFile("Datasets/mlc/medical.arff", true);
+			
+			assertEquals(sequential.toString(), parallel.toString());
+			assertEquals(sequential.getComments(), parallel.getComments());
+			assertEquals(sequential.rows(), parallel.rows());
+			for (int r : new Range(sequential.rows()))
+				Vector.assertVectorEquals(sequential.row(r), parallel.row(r), 0.0);
+		}
+		finally
+		{
+			if (maxThreadsSetByUser)
+				ThreadCounter.setMaxThreads(maxThreads);
+			else
+				ThreadCounter.resetMaxThreads();
+		}
+	}
+
+	@Test
+	public void viewTest()
+	{
+		Matrix data = new Matrix();
+		data.loadFromArffFile("Datasets/mcc/iris.arff");
+		String before = data.toString();
+		int[] rows = {5, 0, 149, 5};
+		Matrix view = new Matrix(data, rows, 1, 3);
+		assertTrue(view.isView());
+		assertEquals(4, view.rows());
+		assertEquals(3, view.cols());
+		assertEquals(data.getAttrName(1), view.getAttrName(0));
+		for (int r : new Range(rows.length))
+		{
+			for (int c : new Range(view.cols()))
+				assertEquals(data.get(rows[r], c + 1), view.get(r, c), 0);
+		}
+
+		// Changes to the view are not seen by data.
+		view.shuffle(new Random(0));
+		view.removeRow(0);
+		view.row(0).setWeight(3.0);
+		view.row(1).set(0, 100.0);
+		assertEquals(3.0, view.row(0).getWeight(), 0);
+		assertEquals(100.0, view.get(1, 0), 0);
+		assertEquals(before, data.toString());
+
+		// Adding rows copies the view.
+		view.addRow(new Vector(new double[] {1, 2, 3}));
+		assertFalse(view.isView());
+		assertEquals(4, view.rows());
+		assertEquals(3.0, view.row(0).getWeight(), 0);
+		assertEquals(100.0, view.get(1, 0), 0);
+		assertEquals(before, data.toString());
+	}
+
+	@Test
+	public void legacySerializationTest() throws Exception
+	{
+		// This file was written by a version which kept rows in an ArrayList and attributes in
+		// lists of TreeMaps.
+		Matrix legacy = SerializationUtilities.deserialize("Datasets/test/legacy_matrix.ser");
+		Matrix expected = new Matrix();
+		expected.loadFromArffFile("Datasets/test/small_nominal.arff");
+		assertEquals(expected.toString(), legacy.toString());
+		assertEquals(expected.getNumLabelColumns(), legacy.getNumLabelColumns());
+		assertEquals(1, legacy.getAttrValueIndex(2, "sheep"));
+		assertEquals("not-tasty", legacy.getAttrValueName(3, 2));
+		legacy.addRow(new Vector(new double[] {1, 5.0, 0, 1}));
+		assertEquals(3, legacy.rows());
+	}
+
+	@Test
+	public void viewRowsArraysTest() throws Exception
+	{
+		Matrix data = new Matrix();
+		data.loadFromArffFile("Datasets/mcc/iris.arff");
+		int[] rows = {3, 1, 2};
+		double[] weights = {0.5, 1.5, 2.5};
+		Matrix view = data.viewRows(rows, weights);
+
+		// Removing and reordering rows of the view does not change the given arrays.
+		view.removeRow(0);
+		view.shuffle(new Random(0));
+		assertTrue(Arrays.equals(new int[] {3, 1, 2}, rows));
+		assertTrue(Arrays.equals(new double[] {0.5, 1.5, 2.5}, weights));
+
+		// Changing the given arrays does not change the view.
+		Matrix other = data.viewRows(rows, weights);
+		rows[0] = 0;
+		weights[0] = 9.0;
+		assertEquals(data.get(3, 0), other.get(0, 0), 0);
+		assertEquals(0.5, other.row(0).getWeight(), 0);
+
+		// Threads can read the rows of a view at the same time.
+		Matrix shared = data.viewRows(0, data.rows());
+		List<Throwable> errors = new ArrayList<>();
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++)
+		{
+			threads.add(new Thread(() ->
+				{
+					try
+					{
+						for (int r : new Range(shared.rows()))
+						{
+							assertEquals(data.get(r, 0), shared.row(r).get(0), 0);
+							assertTrue(shared.row(r) == shared.row(r));
+						}
+					}
+					catch (Throwable e)
+					{
+						synchronized (errors)
+						{
+							errors.add(e);
+						}
+					}
+				}));
+		}
+		for (Thread thread : threads)
+			thread.start();
+		for (Thread thread : threads)
+			thread.join();
+		if (!errors.isEmpty())
+			throw new AssertionError(errors.get(0));
+	}
+
+	/**
+	 * Checks that cached statistics of m are the same as those of a copy, which computes them
+	 * from scratch.
+	 */
+	private static void assertStatisticsCurrent(Matrix m)
+	{
+		// The statistics of m are read before copying it because reading its rows discards them.
+		List<Double> cached = new ArrayList<>();
+		for (int c : new Range(m.cols()))
+			cached.addAll(Arrays.asList(m.findMin(c), m.findMax(c), m.findMean(c), m.findMode(c), (double)m.countUnknowns(c)));
+		boolean containsUnknowns = m.containsUnknowns();
+		boolean hasInstanceWeightsNot1 = m.hasInstanceWeightsNot1();
+
+		Matrix copy = new Matrix(m);
+		List<Double> expected = new ArrayList<>();
+		for (int c : new Range(copy.cols()))
+			expected.addAll(Arrays.asList(copy.findMin(c), copy.findMax(c), copy.findMean(c), copy.findMode(c), 
+					(double)copy.countUnknowns(c)));
+		assertEquals(expected, cached);
+		assertEquals(copy.containsUnknowns(), containsUnknowns);
+		assertEquals(copy.hasInstanceWeightsNot1(), hasInstanceWeightsNot1);
+	}
+
+	@Test
+	public void columnStatisticsTest()
+	{
+		Matrix data = new Matrix();
+		data.loadFromArffString("@RELATION stats\n" + 
+				"@ATTRIBUTE x1	real\n" + 
+				"@ATTRIBUTE x2	real\n" + 
+				"@ATTRIBUTE class	{low,high}\n" + 
+				"@DATA\n" + 
+				"0.1,0.2,low\n" + 
+				"0.9,?,high, {2}\n" + 
+				"0.7,0.3,high\n" + 
+				"");
+		assertEquals(0.1, data.findMin(0), 0);
+		assertEquals(0.9, data.findMax(0), 0);
+		assertEquals(1.0, data.findMode(2), 0);
+		assertEquals(1, data.countUnknowns(1));
+		assertTrue(data.containsUnknowns());
+		assertTrue(data.hasInstanceWeightsNot1());
+
+		data.addRow(new Vector(new double[] {-2.0, 5.0, 0.0}));
+		assertEquals(-2.0, data.findMin(0), 0);
+		assertStatisticsCurrent(data);
+
+		data.set(1, 1, 0.4);
+		assertFalse(data.containsUnknowns());
+		assertStatisticsCurrent(data);
+
+		data.removeRow(1);
+		assertFalse(data.hasInstanceWeightsNot1());
+		assertEquals(0.7, data.findMax(0), 0);
+		assertStatisticsCurrent(data);
+
+		data.row(0).set(0, 3.0);
+		assertEquals(3.0, data.findMax(0), 0);
+		data.row(0).setWeight(0.5);
+		assertTrue(data.hasInstanceWeightsNot1());
+
+		data.removeColumn(0);
+		assertEquals(5.0, data.findMax(0), 0);
+		data.copyColumns(data, 0, 1);
+		assertEquals(5.0, data.findMax(2), 0);
+		assertStatisticsCurrent(data);
+
+		data.shuffle(new Random(0));
+		assertStatisticsCurrent(data);
+
+		Matrix empty = new Matrix();
+		empty.addEmptyColumn("a");
+		assertEquals(0, empty.countUnknowns(0));
+		empty.addEmptyColumn("b");
+		assertEquals(0, empty.countUnknowns(1));
+	}
+
+	@Test
+	public void concurrentStatisticsTest() throws Exception
+	{
+		Matrix data = new Matrix();
+		data.loadFromArffFile("Datasets/mcc/iris.arff");
+		Matrix expected = new Matrix(data);
+		List<Throwable> errors = new ArrayList<>();
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++)
+		{
+			threads.add(new Thread(() ->
+				{
+					try
+					{
+						for (int i = 0; i < 2000; i++)
+						{
+							// Reading rows discards the statistics while other threads are using them.
+							data.row(i % data.rows());
+							int c = i % data.cols();
+							assertEquals(expected.findMin(c), data.findMin(c), 0);
+							assertEquals(expected.findMean(c), data.findMean(c), 0);
+						}
+					}
+					catch (Throwable e)
+					{
+						synchronized (errors)
+						{
+							errors.add(e);
+						}
+					}
+				}));
+		}
+		for (Thread thread : threads)
+			thread.start();
+		for (Thread thread : threads)
+			thread.join();
+		if (!errors.isEmpty())
+			throw new AssertionError(errors.get(0));
+	}
+
+	@Test
+	public void removeRowsTest()
+	{
+		Matrix rows = new Matrix();
+		rows.loadFromArffFile("Datasets/mcc/iris.arff");
+		for (Matrix.StorageType type : Arrays.asList(Matrix.StorageType.ROWS, Matrix.StorageType.COLUMNS,
+				Matrix.StorageType.COMPACT, null))
+		{
+			Matrix data;
+			if (type == null)
+			{
+				// Rows can also be removed from views.
+				data = new Matrix(rows, new int[] {0, 1, 2, 3, 4, 5}, 0, rows.cols());
+			}
+			else
+			{
+				data = new Matrix(rows);
+				data.setStorageType(type);
+			}
+			Matrix expected = new Matrix(data);
+
+			// The remaining rows keep their order.
+			BitSet removed = new BitSet();
+			removed.set(0);
+			removed.set(2);
+			removed.set(3);
+			data.removeRows(removed);
+			expected.removeRow(3);
+			expected.removeRow(2);
+			expected.removeRow(0);
+			assertEquals(expected.toString(), data.toString());
+			assertEquals(expected.findMean(0), data.findMean(0), 0.0);
+
+			// The last row takes the place of the removed one.
+			Vector last = new Vector(data.row(data.rows() - 1));
+			data.swapRemoveRow(0);
+			assertEquals(expected.rows() - 1, data.rows());
+			Vector.assertVectorEquals(last, data.row(0), 0.0);
+			data.swapRemoveRow(data.rows() - 1);
+			assertEquals(expected.rows() - 2, data.rows());
+
+			data.removeRows(new BitSet());
+			assertEquals(expected.rows() - 2, data.rows());
+		}
+	}
+
+	@Test
+	public void writeArffTest() throws IOException
+	{
+		Matrix data = new Matrix();
+		data.loadFromArffFile("Datasets/mdc/synthetic/continuous_2out_4class.arff");
+		data.row(1).setWeight(2.5);
+		data.set(2, 0, Vector.getUnknownValue());
+
+		StringWriter w = new StringWriter();
+		data.writeArff(w);
+		assertEquals(data.toString(), w.toString());
+
+		for (boolean compress : Arrays.asList(false, true))
+		{
+			File file = File.createTempFile("writeArffTest", compress ? ".arff.gz" : ".arff");
+			file.deleteOnExit();
+			data.writeArff(file.toPath(), compress);
+			Matrix loaded = new Matrix();
+			loaded.loadFromArffFile(file.getPath());
+			assertEquals(data.toString(), loaded.toString());
+		}
+	}
+
 }
@@ -0,0 +1,341 @@
+package smodelkit.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.json.simple.JSONObject;
+import org.junit.Test;
+
+import smodelkit.MLSystemsManager;
+import smodelkit.Matrix;
+import smodelkit.Vector;
+import smodelkit.evaluator.Evaluator;
+import smodelkit.evaluator.TopN;
+import smodelkit.learner.NeuralNet;
+import smodelkit.learner.Sigmoid;
+import smodelkit.learner.SigmoidNode;
+import smodelkit.learner.SupervisedLearner;
+import smodelkit.util.Helper;
+import smodelkit.util.Pair;
+import smodelkit.util.SerializationUtilities;
+import smodelkit.util.ThreadCounter;
+
+public class NeuralNetTest
+{
+	private static Pair<Matrix> loadIris()
+	{
+		Matrix data = new Matrix();
+		data.loadFromArffFile("Datasets/mcc/iris.arff");
+		Pair<Matrix> result = data.splitInputsAndLabels();
+		// Iris is sorted by class, so it is shuffled first.
+		result.getFirst().shuffle(new Random(0), result.getSecond());
+		return result;
+	}
+
+	/**
+	 * Undoes calls to ThreadCounter.setMaxThreads made by a test.
+	 */
+	private static void restoreMaxThreads(int maxThreads, boolean maxThreadsSetByUser)
+	{
+		if (maxThreadsSetByUser)
+			ThreadCounter.setMaxThreads(maxThreads);
+		else
+			ThreadCounter.resetMaxThreads();
+	}
+
+	/**
+	 * Creates a NeuralNet with the settings in neuralnet_test.json, changed by the given pairs of
+	 * keys and values.
+	 */
+	@SuppressWarnings("unchecked")
+	private static NeuralNet createNeuralNet(Object... keysAndValues)
+	{
+		JSONObject settings = MLSystemsManager.parseModelSettingsFile("model_settings/neuralnet_test.json");
+		for (int i = 0; i < keysAndValues.length; i += 2)
+			settings.put(keysAndValues[i], keysAndValues[i + 1]);
+		return (NeuralNet)MLSystemsManager.createLearner(new Random(0), "neuralnet", settings);
+	}
+
+	/**
+	 * Trains learner on iris and checks its accuracy on the training set.
+	 * @param message Describes the learner if the check fails.
+	 * @return The output weights the learner predicts for the first row of iris.
+	 */
+	private static double[] assertLearnsIris(String message, SupervisedLearner learner, Pair<Matrix> iris)
+	{
+		learner.train(iris.getFirst(), iris.getSecond());
+		double accuracy = Evaluator.runEvaluators(iris.getFirst(), iris.getSecond(), learner, true,
+				Arrays.asList(new TopN(Arrays.asList(1)))).getScores(TopN.class).get(0);
+		assertTrue(message + " accuracy: " + accuracy, accuracy > 0.9);
+		return learner.predictOutputWeights(iris.getFirst().row(0)).get(0);
+	}
+
+	@Test
+	public void legacyModelTest() throws Exception
+	{
+		// This model was trained on iris by a version which stored each node as a SigmoidNode, so
+		// it checks that older models still load and predict exactly the same outputs.
+		SupervisedLearner legacy = SerializationUtilities.deserialize("Datasets/test/legacy_neuralnet.ser");
+		Matrix data = new Matrix();
+		data.loadFromArffFile("Datasets/mcc/iris.arff");
+		Matrix inputs = data.splitInputsAndLabels().getFirst();
+		int[] rows = {0, 25, 50, 75, 100, 125};
+		double[][] expected = {
+				{0x1.eac8f123b44e9p-1, 0x1.82972848eee5p-5, 0x1.9b3857987d996p-11},
+				{0x1.e3975218da9b5p-1, 0x1.1683e4eb33606p-4, 0x1.7e961ce3a67e8p-11},
+				{0x1.659742218509cp-5, 0x1.d6c4d6ad9e41bp-1, 0x1.f2e913e3e7895p-5},
+				{0x1.6d54fa38566adp-5, 0x1.d9e033a483ee9p-1, 0x1.c7290bf2a2a3p-5},
+				{0x1.4ef0bf0f31dccp-9, 0x1.a4137d35c26e9p-6, 0x1.f4cfc972d553dp-1},
+				{0x1.886846a31339dp-9, 0x1.235857fd28c24p-4, 0x1.e082a907275ffp-1}};
+		List<List<double[]>> batch = legacy.predictOutputWeightsBatch(inputs);
+		for (int i = 0; i < rows.length; i++)
+		{
+			assertArrayEquals(expected[i], legacy.predictOutputWeights(inputs.row(rows[i])).get(0), 0.0);
+			assertArrayEquals(expected[i], batch.get(rows[i]).get(0), 0.0);
+		}
+	}
+
+	@Test
+	public void miniBatchTest()
+	{
+		Pair<Matrix> iris = loadIris();
+		for (boolean increaseContrast : Arrays.asList(false, true))
+		{
+			double[] outputs = assertLearnsIris("increaseContrast " + increaseContrast, createNeuralNet("batchSize", 16L,
+					"learningRate", 0.5, "increasContrastOfHiddenLayerInputs", increaseContrast), iris);
+			if (!increaseContrast)
+			{
+				assertArrayEquals(new double[] {0x1.f06936b9203bep-1, 0x1.a0121fcbf7091p-5, 0x1.56b7e914e2c1ep-18},
+						outputs, 1e-9);
+			}
+		}
+	}
+
+	@Test
+	public void hogwildTest()
+	{
+		Pair<Matrix> iris = loadIris();
+		int maxThreads = ThreadCounter.getMaxThreads();
+		boolean maxThreadsSetByUser = ThreadCounter.isMaxThreadsSetByUser();
+		try
+		{
+			ThreadCounter.setMaxThreads(4);
+			for (long batchSize : Arrays.asList(1L, 8L))
+			{
+				assertLearnsIris("batchSize " + batchSize, createNeuralNet("parallelTraining", "hogwild",
+						"trainingThreads", 4L, "batchSize", batchSize, "learningRate", batchSize == 1 ? 0.1 : 0.5), iris);
+			}
+		}
+		finally
+		{
+			restoreMaxThreads(maxThreads, maxThreadsSetByUser);
+		}
+	}
+
+	@Test
+	public void synchronousTest()
+	{
+		Pair<Matrix> iris = loadIris();
+		// The results should not depend on how many threads are available, even when the number
+		// of training threads is not given.
+		for (Long trainingThreads : Arrays.asList(4L, null))
+		{
+			int maxThreads = ThreadCounter.getMaxThreads();
+			boolean maxThreadsSetByUser = ThreadCounter.isMaxThreadsSetByUser();
+			double[] expected;
+			double[] actual;
+			try
+			{
+				ThreadCounter.setMaxThreads(1);
+				expected = assertLearnsIris("trainingThreads " + trainingThreads, createNeuralNet("parallelTraining",
+						"synchronous", "trainingThreads", trainingThreads, "batchSize", 16L, "learningRate", 0.5), iris);
+
+				ThreadCounter.setMaxThreads(6);
+				NeuralNet learner = createNeuralNet("parallelTraining", "synchronous", "trainingThreads", trainingThreads,
+						"batchSize", 16L, "learningRate", 0.5);
+				learner.train(iris.getFirst(), iris.getSecond());
+				actual = learner.predictOutputWeights(iris.getFirst().row(0)).get(0);
+			}
+			finally
+			{
+				restoreMaxThreads(maxThreads, maxThreadsSetByUser);
+			}
+			assertArrayEquals(expected, actual, 0.0);
+			// Each batch is split into 4 parts in both cases. The gradients of the parts are summed in
+			// a different order than miniBatchTest sums the gradients of a batch, so the outputs are
+			// only the same as its outputs up to rounding.
+			assertArrayEquals(new double[] {0x1.f06936b9203bep-1, 0x1.a0121fcbf7088p-5, 0x1.56b7e914e2c08p-18},
+					actual, 1e-9);
+		}
+	}
+
+	@Test
+	public void noImprovementTest()
+	{
+		// No epoch can improve the score by an infinite amount, so the best weights are never saved,
+		// and the network should keep the weights of its last epoch instead of its initial weights.
+		Pair<Matrix> iris = loadIris();
+		NeuralNet learner = createNeuralNet("improvementThreshold", Double.POSITIVE_INFINITY,
+				"maxEpochsWithoutImprovement", 3L);
+		Vector input = iris.getFirst().row(0);
+		List<List<double[]>> lastEpochWeights = new ArrayList<>();
+		learner.setEpochListener(epoch -> lastEpochWeights.add(0, learner.predictOutputWeights(input)));
+		learner.train(iris.getFirst(), iris.getSecond());
+		assertEquals(3, lastEpochWeights.size());
+		assertArrayEquals(lastEpochWeights.get(0).get(0), learner.predictOutputWeights(input).get(0), 0.0);
+	}
+
+	@Test
+	public void sigmoidErrorTest()
+	{
+		for (Sigmoid sigmoid : Sigmoid.values())
+		{
+			for (double net = -40; net <= 40; net += 0.001)
+				assertEquals(sigmoid + " " + net, SigmoidNode.sig(net), sigmoid.apply(net), sigmoid.getMaxError());
+			assertEquals(1.0, sigmoid.apply(Double.POSITIVE_INFINITY), 0.0);
+			assertEquals(0.0, sigmoid.apply(Double.NEGATIVE_INFINITY), 0.0);
+			assertTrue(Double.isNaN(sigmoid.apply(Double.NaN)));
+		}
+	}
+
+	@Test
+	public void sigmoidValuesTest()
+	{
+		for (Sigmoid sigmoid : Sigmoid.values())
+			assertEquals(sigmoid.toString(), 0.5, sigmoid.apply(0.0), 0.0);
+
+		// The table has the exact sigmoid at every multiple of 1/64, and is interpolated linearly
+		// between them.
+		double low = SigmoidNode.sig(1.0);
+		double high = SigmoidNode.sig(1.015625);
+		assertEquals(low, Sigmoid.TABLE.apply(1.0), 0.0);
+		assertEquals(high, Sigmoid.TABLE.apply(1.015625), 0.0);
+		assertEquals(low + 0.5 * (high - low), Sigmoid.TABLE.apply(1.0078125), 0.0);
+		assertEquals(1.0, Sigmoid.TABLE.apply(16.0), 0.0);
+		assertEquals(0.0, Sigmoid.TABLE.apply(-16.0), 0.0);
+
+		// With net = 2, net/2 = 1, so tanh(1) is approximated by (135135 + 17325 + 378 + 1) /
+		// (135135 + 62370 + 3150 + 28).
+		assertEquals(0.5 + 0.5 * (152839.0 / 200683), Sigmoid.RATIONAL.apply(2.0), 0.0);
+		assertEquals(0.5 - 0.5 * (152839.0 / 200683), Sigmoid.RATIONAL.apply(-2.0), 0.0);
+		assertEquals(1.0, Sigmoid.RATIONAL.apply(9.94), 0.0);
+		assertEquals(0.0, Sigmoid.RATIONAL.apply(-9.94), 0.0);
+
+		// A network trained with the table is close to, but not the same as, one trained with the
+		// exact sigmoid.
+		Pair<Matrix> iris = loadIris();
+		assertArrayEquals(new double[] {0x1.f0658516f9ed1p-1, 0x1.927c7d5ac5c64p-5, 0x1.485c033cff29bp-18},
+				assertLearnsIris("table", createNeuralNet("sigmoid", "table"), iris), 1e-9);
+	}
+
+	@Test
+	public void sigmoidAccuracyTest()
+	{
+		// The approximate sigmoids should not noticeably change the accuracy of a network on held
+		// out data.
+		Matrix data = new Matrix();
+		data.loadFromArffFile("Datasets/mdc/flare1.arff");
+		data.shuffle(new Random(0));
+		int trainRows = data.rows() * 2 / 3;
+		Pair<Matrix> train = data.viewRows(0, trainRows).splitInputsAndLabels();
+		Pair<Matrix> test = data.viewRows(trainRows, data.rows()).splitInputsAndLabels();
+		Double exactAccuracy = null;
+		for (Sigmoid sigmoid : Sigmoid.values())
+		{
+			SupervisedLearner learner = createNeuralNet("sigmoid", sigmoid.name().toLowerCase());
+			learner.train(train.getFirst(), train.getSecond());
+			double accuracy = Evaluator.runEvaluators(test.getFirst(), test.getSecond(), learner, true,
+					Arrays.asList(new TopN(Arrays.asList(1)))).getScores(TopN.class).get(0);
+			if (exactAccuracy == null)
+				exactAccuracy = accuracy;
+			assertEquals(sigmoid.toString(), exactAccuracy, accuracy, 0.02);
+		}
+	}
+
+	@Test
+	public void float32Test()
+	{
+		Pair<Matrix> iris = loadIris();
+		NeuralNet learner = createNeuralNet("precision", "float32");
+		double[] outputs = assertLearnsIris("float32", learner, iris);
+		assertEquals(NeuralNet.Precision.FLOAT32, learner.getPrecision());
+		// The outputs are calculated with floats, so they are only as precise as floats.
+		assertArrayEquals(new double[] {0x1.f0658ep-1, 0x1.927b8p-5, 0x1.486022p-18}, outputs, 1e-9);
+		for (double output : outputs)
+			assertEquals(output, (float)output, 0.0);
+
+		// Serialized models keep their precision, and batch predictions are the same as single ones.
+		NeuralNet copy = (NeuralNet)Helper.deepCopy(learner);
+		assertEquals(NeuralNet.Precision.FLOAT32, copy.getPrecision());
+		List<Vector> batch = copy.predictBatch(iris.getFirst());
+		for (int r = 0; r < iris.getFirst().rows(); r++)
+		{
+			Vector.assertVectorEquals(learner.predict(iris.getFirst().row(r)), batch.get(r), 0.0);
+			assertArrayEquals(learner.predictOutputWeights(iris.getFirst().row(r)).get(0),
+					copy.predictOutputWeights(iris.getFirst().row(r)).get(0), 0.0);
+		}
+
+		// A model trained in double precision can be converted to float32 with only small changes
+		// to its outputs.
+		NeuralNet doubleLearner = createNeuralNet("precision", "float64");
+		doubleLearner.train(iris.getFirst(), iris.getSecond());
+		List<List<double[]>> expected = doubleLearner.predictOutputWeightsBatch(iris.getFirst());
+		doubleLearner.setPrecision(NeuralNet.Precision.FLOAT32);
+		List<List<double[]>> actual = doubleLearner.predictOutputWeightsBatch(iris.getFirst());
+		for (int r = 0; r < expected.size(); r++)
+			assertArrayEquals(expected.get(r).get(0), actual.get(r).get(0), 1e-4);
+
+		try
+		{
+			createNeuralNet("precision", "float32", "batchSize", 16L);
+		}
+		catch (IllegalArgumentException e)
+		{
+			assertTrue(e.getMessage(), e.getMessage().startsWith("float32 precision only supports"));
+			return;
+		}
+		fail();
+	}
+
+	@Test
+	public void optimizerTest()
+	{
+		// The update math of each optimizer is checked by OptimizerTest.
+		Pair<Matrix> iris = loadIris();
+		for (String optimizer : Arrays.asList("momentum", "nesterov", "adam", "rmsprop"))
+		{
+			for (long batchSize : Arrays.asList(1L, 16L))
+			{
+				boolean adaptive = optimizer.equals("adam") || optimizer.equals("rmsprop");
+				assertLearnsIris(optimizer + " with batchSize " + batchSize, createNeuralNet("optimizer", optimizer,
+						"batchSize", batchSize, "learningRate", adaptive ? 0.01 : 0.05, "momentum", 0.9), iris);
+			}
+		}
+
+		try
+		{
+			createNeuralNet("optimizer", "adagrad");
+		}
+		catch (IllegalArgumentException e)
+		{
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Unknown optimizer"));
+			return;
+		}
+		fail();
+	}
+
+	@Test
+	public void learningRateScheduleTest()
+	{
+		// The schedules themselves are checked by LearningRateScheduleTest. Training with one should
+		// still learn.
+		assertLearnsIris("cosine", createNeuralNet("learningRateSchedule", "cosine", "maxEpochs", 200L), loadIris());
+	}
+}
@@ -0,0 +1,132 @@
+package smodelkit.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import smodelkit.learner.Optimizer;
+
+public class OptimizerTest
+{
+	private static final double TOLERANCE = 1e-12;
+
+	/**
+	 * Updates a single weight starting at 1.0 with a learning rate of 0.1, first with a gradient of
+	 * 2 and then with a gradient of -1.
+	 * @return The weight after each update.
+	 */
+	private static double[] twoSteps(Optimizer optimizer)
+	{
+		double[][] weights = {{1.0}};
+		Optimizer.State state = optimizer.createState(weights);
+		double[] result = new double[2];
+		double[] gradients = {2.0, -1.0};
+		for (int i = 0; i < gradients.length; i++)
+		{
+			state.startStep();
+			optimizer.update(state, 0, weights[0], new double[] {gradients[i]}, 1.0, 0.0, 0.1);
+			result[i] = weights[0][0];
+		}
+		return result;
+	}
+
+	@Test
+	public void momentumTest()
+	{
+		// v = 0.5 * 0 + 0.1 * 2 = 0.2, w = 1 + 0.2 = 1.2.
+		// v = 0.5 * 0.2 + 0.1 * -1 = 0, w = 1.2 + 0 = 1.2.
+		Optimizer optimizer = new Optimizer(Optimizer.Type.MOMENTUM, 0.5, 0.9, 0.999, 1e-8);
+		assertArrayEquals(new double[] {1.2, 1.2}, twoSteps(optimizer), TOLERANCE);
+	}
+
+	@Test
+	public void nesterovTest()
+	{
+		// v = 0.2, w = 1 + 0.5 * 0.2 + 0.1 * 2 = 1.3.
+		// v = 0, w = 1.3 + 0.5 * 0 + 0.1 * -1 = 1.2.
+		Optimizer optimizer = new Optimizer(Optimizer.Type.NESTEROV, 0.5, 0.9, 0.999, 1e-8);
+		assertArrayEquals(new double[] {1.3, 1.2}, twoSteps(optimizer), TOLERANCE);
+	}
+
+	@Test
+	public void adamTest()
+	{
+		Optimizer optimizer = new Optimizer(Optimizer.Type.ADAM, 0.0, 0.9, 0.999, 1e-8);
+		double[] actual = twoSteps(optimizer);
+
+		// m = 0.1 * 2 = 0.2 and s = 0.001 * 4 = 0.004, which are corrected to 0.2 / 0.1 = 2 and
+		// 0.004 / 0.001 = 4.
+		double first = 1.0 + 0.1 * 2 / (2 + 1e-8);
+		assertEquals(first, actual[0], TOLERANCE);
+
+		// m = 0.9 * 0.2 + 0.1 * -1 = 0.08 and s = 0.999 * 0.004 + 0.001 * 1 = 0.004996, which are
+		// corrected by 1 - 0.9^2 = 0.19 and 1 - 0.999^2 = 0.001999.
+		double second = first + 0.1 * (0.08 / 0.19) / (Math.sqrt(0.004996 / 0.001999) + 1e-8);
+		assertEquals(second, actual[1], TOLERANCE);
+	}
+
+	@Test
+	public void rmsPropTest()
+	{
+		Optimizer optimizer = new Optimizer(Optimizer.Type.RMSPROP, 0.0, 0.9, 0.9, 1e-8);
+		double[] actual = twoSteps(optimizer);
+
+		// s = 0.1 * 4 = 0.4.
+		double first = 1.0 + 0.1 * 2 / (Math.sqrt(0.4) + 1e-8);
+		assertEquals(first, actual[0], TOLERANCE);
+
+		// s = 0.9 * 0.4 + 0.1 * 1 = 0.46.
+		double second = first + 0.1 * -1 / (Math.sqrt(0.46) + 1e-8);
+		assertEquals(second, actual[1], TOLERANCE);
+	}
+
+	@Test
+	public void gradientScaleAndWeightDecayTest()
+	{
+		// g = 0.5 * 4 - 0.1 * 2 = 1.8 for the first weight and 0.5 * -2 - 0.1 * -1 = -0.9 for the
+		// second, so v = 0.1 * g.
+		Optimizer optimizer = new Optimizer(Optimizer.Type.MOMENTUM, 0.5, 0.9, 0.999, 1e-8);
+		double[][] weights = {{2.0, -1.0}};
+		Optimizer.State state = optimizer.createState(weights);
+		state.startStep();
+		optimizer.update(state, 0, weights[0], new double[] {4.0, -2.0}, 0.5, 0.1, 0.1);
+		assertArrayEquals(new double[] {2.18, -1.09}, weights[0], TOLERANCE);
+	}
+
+	@Test
+	public void separateStatesTest()
+	{
+		// Each layer, and each state created from the same optimizer, keeps its own velocities.
+		Optimizer optimizer = new Optimizer(Optimizer.Type.MOMENTUM, 0.5, 0.9, 0.999, 1e-8);
+		double[][] weights1 = {{1.0}, {1.0, 1.0}};
+		double[][] weights2 = {{1.0}, {1.0, 1.0}};
+		Optimizer.State state1 = optimizer.createState(weights1);
+		Optimizer.State state2 = optimizer.createState(weights2);
+		for (int i = 0; i < 2; i++)
+		{
+			state1.startStep();
+			optimizer.update(state1, 0, weights1[0], new double[] {2.0}, 1.0, 0.0, 0.1);
+			optimizer.update(state1, 1, weights1[1], new double[] {-1.0, 0.0}, 1.0, 0.0, 0.1);
+		}
+		state2.startStep();
+		optimizer.update(state2, 0, weights2[0], new double[] {2.0}, 1.0, 0.0, 0.1);
+
+		// v = 0.2 and then 0.5 * 0.2 + 0.2 = 0.3.
+		assertArrayEquals(new double[] {1.5}, weights1[0], TOLERANCE);
+		// v = -0.1 and then 0.5 * -0.1 - 0.1 = -0.15.
+		assertArrayEquals(new double[] {0.75, 1.0}, weights1[1], TOLERANCE);
+		assertArrayEquals(new double[] {1.2}, weights2[0], TOLERANCE);
+		assertArrayEquals(new double[] {1.0, 1.0}, weights2[1], 0.0);
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void sgdTest()
+	{
+		Optimizer optimizer = new Optimizer(Optimizer.Type.SGD, 0.5, 0.9, 0.999, 1e-8);
+		double[][] weights = {{1.0}};
+		Optimizer.State state = optimizer.createState(weights);
+		state.startStep();
+		optimizer.update(state, 0, weights[0], new double[] {1.0}, 1.0, 0.0, 0.1);
+	}
+}
@@ -0,0 +1,235 @@
+package smodelkit.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import smodelkit.BinaryDataset;
+import smodelkit.FileRowSource;
+import smodelkit.MLSystemsManager;
+import smodelkit.Matrix;
+import smodelkit.MatrixRowSource;
+import smodelkit.RowSource;
+import smodelkit.Vector;
+import smodelkit.evaluator.Evaluator;
+import smodelkit.evaluator.TopN;
+import smodelkit.filter.MeanModeUnknownFiller;
+import smodelkit.filter.NominalToCategorical;
+import smodelkit.filter.Normalize;
+import smodelkit.learner.SupervisedLearner;
+import smodelkit.learner.ZeroR;
+import smodelkit.test.learners.MockLearner;
+import smodelkit.util.Pair;
+import smodelkit.util.Range;
+
+public class RowSourceTest
+{
+	private static final String IRIS = "Datasets/mcc/iris.arff";
+
+	private static Pair<Matrix> loadIris()
+	{
+		Matrix data = new Matrix();
+		data.loadFromArffFile(IRIS);
+		return data.splitInputsAndLabels();
+	}
+
+	private static void assertSameRows(Pair<Matrix> expected, RowSource source)
+	{
+		Pair<Matrix> actual = source.readAll();
+		assertEquals(expected.getFirst().toString(), actual.getFirst().toString());
+		assertEquals(expected.getSecond().toString(), actual.getSecond().toString());
+	}
+
+	@Test
+	public void fileRowSourceTest() throws IOException
+	{
+		Pair<Matrix> iris = loadIris();
+		try (FileRowSource source = new FileRowSource(IRIS, 7))
+		{
+			Pair<Matrix> chunk = source.nextChunk();
+			assertEquals(7, chunk.getFirst().rows());
+			assertEquals(iris.getSecond().cols(), chunk.getSecond().cols());
+			source.reset();
+			assertSameRows(iris, source);
+			assertNull(source.nextChunk());
+
+			// Sources can be read again after being reset.
+			source.reset();
+			assertSameRows(iris, source);
+		}
+
+		Matrix data = new Matrix();
+		data.loadFromArffFile(IRIS);
+		File file = File.createTempFile("rowSourceTest", BinaryDataset.EXTENSION);
+		file.deleteOnExit();
+		BinaryDataset.write(data, file.getPath());
+		try (FileRowSource source = new FileRowSource(file.getPath(), 40))
+		{
+			assertSameRows(iris, source);
+		}
+	}
+
+	@Test
+	public void preprocessorTest()
+	{
+		Matrix data = new Matrix();
+		data.loadFromArffFile(IRIS);
+		data.removeColumn(0);
+		Pair<Matrix> expected = data.splitInputsAndLabels();
+		try (FileRowSource source = new FileRowSource(IRIS, 16))
+		{
+			source.setPreprocessor(chunk ->
+				{
+					chunk.removeColumn(0);
+					return chunk;
+				});
+			assertSameRows(expected, source);
+		}
+	}
+
+	@Test
+	public void runEvaluatorsTest() throws IOException
+	{
+		Pair<Matrix> iris = loadIris();
+		SupervisedLearner learner = MLSystemsManager.createLearner(new Random(0), "knn", "model_settings/knn.json");
+		learner.train(iris.getFirst(), iris.getSecond());
+
+		List<Evaluator> evaluators = Arrays.asList(new TopN(Arrays.asList(1, 2)));
+		List<Double> expected = Evaluator.runEvaluators(iris.getFirst(), iris.getSecond(), learner, true,
+				evaluators).getScores(TopN.class);
+		List<Double> fromMatrix = Evaluator.runEvaluators(new MatrixRowSource(iris.getFirst(), iris.getSecond(), 11),
+				learner, true, evaluators).getScores(TopN.class);
+		assertEquals(expected, fromMatrix);
+		try (FileRowSource source = new FileRowSource(IRIS, 32))
+		{
+			List<Double> fromFile = Evaluator.runEvaluators(source, learner, true, evaluators).getScores(TopN.class);
+			assertEquals(expected, fromFile);
+		}
+	}
+
+	@Test
+	public void zeroRTest()
+	{
+		Matrix data = new Matrix();
+		data.loadFromArffFile("Datasets/mdc/synthetic/continuous_2out_4class.arff");
+		Pair<Matrix> inputsAndLabels = data.splitInputsAndLabels();
+		Matrix inputs = inputsAndLabels.getFirst();
+		Matrix labels = inputsAndLabels.getSecond();
+		for (boolean predictMostCommonOutputVector : Arrays.asList(true, false))
+		{
+			ZeroR expected = new ZeroR();
+			expected.configure(predictMostCommonOutputVector);
+			expected.train(inputs, labels);
+			ZeroR incremental = new ZeroR();
+			incremental.configure(predictMostCommonOutputVector);
+			incremental.train(new MatrixRowSource(inputs, labels, 13));
+			Vector.assertVectorEquals(expected.predict(inputs.row(0)), incremental.predict(inputs.row(0)), 0.0);
+		}
+	}
+
+	private static MeanModeUnknownFiller createFilters()
+	{
+		MeanModeUnknownFiller result = new MeanModeUnknownFiller();
+		NominalToCategorical nominalToCategorical = new NominalToCategorical();
+		nominalToCategorical.setInnerFilter(new Normalize());
+		result.setInnerFilter(nominalToCategorical);
+		return result;
+	}
+
+	@Test
+	public void filterTest()
+	{
+		Matrix data = new Matrix();
+		data.loadFromArffFile("Datasets/mdc/thyroid.arff");
+		Pair<Matrix> inputsAndLabels = data.splitInputsAndLabels();
+		Matrix inputs = inputsAndLabels.getFirst();
+		Matrix labels = inputsAndLabels.getSecond();
+		MeanModeUnknownFiller expected = createFilters();
+		expected.initialize(inputs, labels);
+
+		// Filters are initialized with every chunk, not just the first one, so they are the same
+		// as if they were initialized with all of the rows.
+		MeanModeUnknownFiller incremental = createFilters();
+		incremental.initialize(new MatrixRowSource(inputs, labels, 1000));
+		assertEquals(expected.filterAllInputs(inputs).toString(), incremental.filterAllInputs(inputs).toString());
+		assertEquals(expected.filterAllLabels(labels).toString(), incremental.filterAllLabels(labels).toString());
+	}
+
+	@Test
+	public void defaultIncrementalTrainingTest()
+	{
+		// Learners which do not override innerTrain(RowSource) are given all of the rows at once.
+		Pair<Matrix> iris = loadIris();
+		int[] rows = new int[1];
+		MockLearner learner = new MockLearner(Arrays.asList(new double[] {0}))
+			{
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void innerTrain(Matrix inputs, Matrix labels)
+				{
+					rows[0] = inputs.rows();
+				}
+
+				@Override
+				public boolean canTrainIncrementally()
+				{
+					return true;
+				}
+			};
+		learner.train(new MatrixRowSource(iris.getFirst(), iris.getSecond(), 50));
+		assertEquals(iris.getFirst().rows(), rows[0]);
+	}
+
+	@Test
+	public void neuralNetTest() throws IOException
+	{
+		Pair<Matrix> iris = loadIris();
+		// Iris is sorted by class, so it is shuffled first.
+		iris.getFirst().shuffle(new Random(0), iris.getSecond());
+		SupervisedLearner learner = MLSystemsManager.createLearner(new Random(0), "neuralnet",
+				"model_settings/neuralnet_test.json");
+		assertTrue(learner.canTrainIncrementally());
+		learner.train(new MatrixRowSource(iris.getFirst(), iris.getSecond(), 50));
+
+		double accuracy = Evaluator.runEvaluators(iris.getFirst(), iris.getSecond(), learner, true,
+				Arrays.asList(new TopN(Arrays.asList(1)))).getScores(TopN.class).get(0);
+		assertTrue("accuracy: " + accuracy, accuracy > 0.9);
+
+		// Learners which cannot train incrementally are trained on all of the rows at once.
+		SupervisedLearner knn = MLSystemsManager.createLearner(new Random(0), "knn", "model_settings/knn.json");
+		knn.train(new MatrixRowSource(iris.getFirst(), iris.getSecond(), 50));
+		for (int r : new Range(10))
+			assertEquals(iris.getSecond().row(r).get(0), knn.predict(iris.getFirst().row(r)).get(0), 0.0);
+	}
+
+	@Test
+	public void staticEvaluationTest() throws Exception
+	{
+		// Reading the test set in chunks should not change the result.
+		String args = "-L knn model_settings/knn.json -A Datasets/mcc/iris.arff -E static Datasets/mcc/iris.arff"
+				+ " -M top-n 1 -R 1 -I 0";
+		double expected = new MLSystemsManager().run(args.split(" "), null).getScores(TopN.class).get(0);
+		double chunked = new MLSystemsManager().run((args + " --chunk_rows 20").split(" "), null)
+				.getScores(TopN.class).get(0);
+		assertEquals(expected, chunked, 0.0);
+
+		// The test set can be compressed.
+		Matrix data = new Matrix();
+		data.loadFromArffFile(IRIS);
+		File file = File.createTempFile("rowSourceTest", ".arff.gz");
+		file.deleteOnExit();
+		data.writeArff(file.toPath(), true);
+		double compressed = new MLSystemsManager().run((args.replace("-E static " + IRIS, "-E static " + file.getPath())
+				+ " --chunk_rows 20").split(" "), null).getScores(TopN.class).get(0);
+		assertEquals(expected, compressed, 0.0);
+	}
+}
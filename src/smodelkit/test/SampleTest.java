@@ -1,6 +1,7 @@
 package smodelkit.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Random;
 
@@ -9,6 +10,7 @@ import org.junit.Test;
 import smodelkit.Matrix;
 import smodelkit.Sample;
 import smodelkit.util.Pair;
+import smodelkit.util.Range;
 
 public class SampleTest
 {
@@ -106,4 +108,37 @@ public class SampleTest
 		assertEquals(2, actual[1].cols());
 	}
 
+	@Test
+	public void sampleWithReplacementUsingInstanceWeightsTest()
+	{
+		Matrix data = new Matrix();
+		data.loadFromArffFile("Datasets/mcc/iris.arff");
+		Pair<Matrix> inputsAndLabels = data.splitInputsAndLabels();
+		Matrix inputs = inputsAndLabels.getFirst();
+		Matrix labels = inputsAndLabels.getSecond();
+		Matrix[] actual = Sample.sampleWithReplacementUsingInstanceWeights(new Random(0), inputs, labels);
+		assertTrue(actual[0].isView());
+		assertEquals(actual[0].rows(), actual[1].rows());
+		assertEquals(inputs.cols(), actual[0].cols());
+		assertEquals(labels.getNumLabelColumns(), actual[1].getNumLabelColumns());
+		
+		// The weights are the number of times each row was selected, so they sum to the number of rows.
+		double weightSum = 0;
+		for (int r : new Range(actual[0].rows()))
+		{
+			assertEquals(actual[0].row(r).getWeight(), actual[1].row(r).getWeight(), 0.0);
+			weightSum += actual[0].row(r).getWeight();
+		}
+		assertEquals(inputs.rows(), weightSum, 0.0);
+		
+		// The weights do not change the given matrices.
+		for (int r : new Range(inputs.rows()))
+			assertEquals(1.0, inputs.row(r).getWeight(), 0.0);
+		
+		// Rows can be removed from and reordered in the views.
+		double lastWeight = actual[0].row(actual[0].rows() - 1).getWeight();
+		actual[0].swapRemoveRow(0);
+		assertEquals(lastWeight, actual[0].row(0).getWeight(), 0.0);
+	}
+
 }
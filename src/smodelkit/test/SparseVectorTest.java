@@ -0,0 +1,138 @@
+package smodelkit.test;
+
+import static org.junit.Assert.*;
+import static smodelkit.Vector.assertVectorEquals;
+
+import org.junit.Test;
+
+import smodelkit.Matrix;
+import smodelkit.SparseVector;
+import smodelkit.Vector;
+import smodelkit.filter.Normalize;
+import smodelkit.util.Range;
+
+public class SparseVectorTest
+{
+	private static SparseVector create()
+	{
+		return new SparseVector(6, new int[] {1, 3, 4}, new double[] {2.0, Vector.getUnknownValue(), 5.0}, 2.0);
+	}
+
+	@Test
+	public void getTest()
+	{
+		SparseVector v = create();
+		assertEquals(6, v.size());
+		assertEquals(3, v.getNonZeroCount());
+		assertEquals(2.0, v.getWeight(), 0);
+		assertTrue(Vector.isUnknown(v.get(3)));
+		assertVectorEquals(new Vector(new double[] {0, 2, 0, Vector.getUnknownValue(), 5, 0}, 2.0), v, 0);
+	}
+
+	@Test
+	public void setTest()
+	{
+		SparseVector v = create();
+		SparseVector copy = new SparseVector(v);
+		v.set(0, 1.0);
+		v.set(1, 0.0);
+		v.set(4, 7.0);
+		assertVectorEquals(new Vector(new double[] {1, 0, 0, Vector.getUnknownValue(), 7, 0}, 2.0), v, 0);
+		assertEquals(3, v.getNonZeroCount());
+		// The copy shares the original arrays, so it must not change.
+		assertVectorEquals(create(), copy, 0);
+	}
+
+	@Test
+	public void resizeTest()
+	{
+		SparseVector v = create();
+		assertVectorEquals(new Vector(new double[] {2, 0, Vector.getUnknownValue()}, 2.0), v.subVector(1, 4), 0);
+		assertTrue(v.subVector(1, 4) instanceof SparseVector);
+
+		v.remove(2);
+		assertVectorEquals(new Vector(new double[] {0, 2, Vector.getUnknownValue(), 5, 0}, 2.0), v, 0);
+		v.remove(1);
+		assertVectorEquals(new Vector(new double[] {0, Vector.getUnknownValue(), 5, 0}, 2.0), v, 0);
+		assertEquals(2, v.getNonZeroCount());
+
+		Vector concatenated = v.concat(new Vector(0, 3));
+		assertTrue(concatenated instanceof SparseVector);
+		assertVectorEquals(new Vector(new double[] {0, Vector.getUnknownValue(), 5, 0, 0, 3}, 2.0), concatenated, 0);
+		assertEquals(2.0, concatenated.getWeight(), 0);
+	}
+
+	@Test
+	public void fromVectorTest()
+	{
+		Vector dense = new Vector(new double[] {0, 0, 3, 0, -1}, 0.5);
+		SparseVector sparse = SparseVector.fromVector(dense);
+		assertEquals(2, sparse.getNonZeroCount());
+		assertEquals(2, sparse.getNonZeroIndex(0));
+		assertEquals(-1.0, sparse.getNonZeroValue(1), 0);
+		assertEquals(0.5, sparse.getWeight(), 0);
+		assertEquals(dense, sparse);
+		assertEquals(dense, new Vector(sparse));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void unsortedIndexesTest()
+	{
+		new SparseVector(4, new int[] {2, 1}, new double[] {1, 1}, 1.0);
+	}
+
+	@Test
+	public void sparseMatrixTest()
+	{
+		Matrix dense = new Matrix();
+		dense.loadFromArffFile("Datasets/mcc/iris.arff");
+		Matrix sparse = new Matrix();
+		sparse.loadFromArffString(dense.toStringSparse());
+		for (int r : new Range(sparse.rows()))
+		{
+			assertTrue(sparse.row(r) instanceof SparseVector);
+			assertEquals(dense.row(r), sparse.row(r));
+		}
+
+		// Sparse rows stay sparse when copied and split.
+		Matrix inputs = new Matrix(sparse, 0, 0, sparse.rows(), 4);
+		assertTrue(inputs.row(0) instanceof SparseVector);
+		Matrix copy = new Matrix(sparse);
+		assertTrue(copy.row(0) instanceof SparseVector);
+		assertEquals(dense.toString(), copy.toString());
+	}
+
+	@Test
+	public void normalizeTest()
+	{
+		// Column a normalizes 0 to 0, but column b, whose minimum is 0, normalizes 0 to -1.
+		String header = "@RELATION test\n@ATTRIBUTE a REAL\n@ATTRIBUTE b REAL\n@ATTRIBUTE c {x,y}\n@DATA\n";
+		Matrix symmetric = new Matrix();
+		symmetric.loadFromArffString(header + "{0 -2, 1 -1}\n{0 2, 1 1}\n{2 y}\n");
+		Matrix shifted = new Matrix();
+		shifted.loadFromArffString(header + "{0 -2, 1 3}\n{0 2, 1 1}\n{2 y}\n");
+
+		Vector result = normalize(symmetric);
+		assertTrue(result instanceof SparseVector);
+		assertVectorEquals(new Vector(new double[] {0, 0}), result, 0.0);
+
+		// Every value would be stored, so the result is dense.
+		result = normalize(shifted);
+		assertFalse(result instanceof SparseVector);
+		assertVectorEquals(new Vector(new double[] {0, -1}), result, 0.0);
+	}
+
+	/**
+	 * Initializes a Normalize filter with the given matrix, whose last column is the label, and
+	 * returns its last row's inputs filtered.
+	 */
+	private static Vector normalize(Matrix data)
+	{
+		Matrix inputs = new Matrix(data, 0, 0, data.rows(), 2);
+		Matrix labels = new Matrix(data, 0, 2, data.rows(), 1);
+		Normalize filter = new Normalize();
+		filter.initialize(inputs, labels);
+		assertTrue(inputs.row(2) instanceof SparseVector);
+		return filter.filterInput(inputs.row(2));
+	}
+}
@@ -2,17 +2,21 @@ package smodelkit.test;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.ExecutionException;
 
 import org.junit.Test;
 
 import smodelkit.MLSystemsManager;
 import smodelkit.Matrix;
+import smodelkit.Vector;
+import smodelkit.learner.SupervisedLearner;
 import smodelkit.test.learners.MockLearner;
 import smodelkit.util.Pair;
 
@@ -61,4 +65,50 @@ public class SupervisedLearnerTest
 		assertArrayEquals(new double[] {0.0, 0.0, 1.0}, weights.get(1), 0.0000000001);
 	}
 	
+	@Test
+	public void batchPredictionTest() throws IOException
+	{
+		// Batch predictions should be exactly the same as predictions made one row at a time.
+		testBatchPredictions("knn", "model_settings/knn.json", "Datasets/mcc/iris.arff");
+		testBatchPredictions("neuralnet", "model_settings/neuralnet_test.json", "Datasets/mcc/iris.arff");
+		testBatchPredictions("ic", "model_settings/ic.json", "Datasets/mdc/synthetic/continuous_2out_4class.arff");
+	}
+
+	private void testBatchPredictions(String learnerName, String settingsFile, String datasetFile)
+			throws IOException
+	{
+		Matrix data = new Matrix();
+		data.loadFromArffFile(datasetFile);
+		Pair<Matrix> inputsAndLabels = data.splitInputsAndLabels();
+		Matrix inputs = inputsAndLabels.getFirst();
+		inputs.shuffle(new Random(0), inputsAndLabels.getSecond());
+		SupervisedLearner learner = MLSystemsManager.createLearner(new Random(0), learnerName, settingsFile);
+		learner.train(inputs, inputsAndLabels.getSecond());
+
+		List<Vector> predictions = learner.predictBatch(inputs);
+		List<List<Vector>> scoredLists = learner.predictScoredListBatch(inputs, 3);
+		List<List<double[]>> outputWeights = learner.predictOutputWeightsBatch(inputs);
+		assertEquals(inputs.rows(), predictions.size());
+		for (int r = 0; r < inputs.rows(); r++)
+		{
+			Vector.assertVectorEquals(learner.predict(inputs.row(r)), predictions.get(r), 0.0);
+			// Predictions are plain vectors, so callers can read their arrays.
+			assertNotNull(predictions.get(r).getArray());
+			assertNotNull(learner.predict(inputs.row(r)).getArray());
+
+			List<Vector> expectedList = learner.predictScoredList(inputs.row(r), 3);
+			assertEquals(expectedList.size(), scoredLists.get(r).size());
+			for (int i = 0; i < expectedList.size(); i++)
+			{
+				Vector.assertVectorEquals(expectedList.get(i), scoredLists.get(r).get(i), 0.0);
+				assertEquals(expectedList.get(i).getWeight(), scoredLists.get(r).get(i).getWeight(), 0.0);
+			}
+
+			List<double[]> expectedWeights = learner.predictOutputWeights(inputs.row(r));
+			assertEquals(expectedWeights.size(), outputWeights.get(r).size());
+			for (int c = 0; c < expectedWeights.size(); c++)
+				assertArrayEquals(expectedWeights.get(c), outputWeights.get(r).get(c), 0.0);
+		}
+	}
+	
 }
@@ -6,6 +6,7 @@ import org.junit.Assert;
 
 import org.junit.Test;
 
+import smodelkit.CompositeVector;
 import smodelkit.Vector;
 import smodelkit.util.Range;
 
@@ -217,4 +218,34 @@ public class VectorTest
 		// Make sure the original vector was not changed.
 		assertArrayEquals(new double[]{1.0, 2.0, 3.0}, values, 0);
 	}
+
+	@Test
+	public void concatViewTest()
+	{
+		double[] values = new double[]{1.0, 2.0, 3.0};
+		Vector v1 = new Vector(values, 2.0).subVector(1, 3);
+		Vector v2 = new Vector(new double[]{4.0}, 0.5);
+		Vector actual = v1.concatView(v2).concatView(new double[0]).concatView(new double[]{5.0, 6.0});
+		assertTrue(actual instanceof CompositeVector);
+		assertEquals(3, ((CompositeVector)actual).getSegmentCount());
+		assertEquals(2.0, actual.getWeight(), 0);
+		assertVectorEquals(new Vector(new double[]{2.0, 3.0, 4.0, 5.0, 6.0}, 2.0), actual, 0);
+		assertEquals(v1.concat(v2).concat(new double[]{5.0, 6.0}), actual);
+		try
+		{
+			actual.get(5);
+			fail();
+		}
+		catch (ArrayIndexOutOfBoundsException e)
+		{
+		}
+		
+		// Changing the view copies its values.
+		actual.set(0, 7.0);
+		actual.remove(4);
+		actual.addAll(new Vector(8.0));
+		assertVectorEquals(new Vector(new double[]{7.0, 3.0, 4.0, 5.0, 8.0}, 2.0), actual, 0);
+		assertArrayEquals(new double[]{1.0, 2.0, 3.0}, values, 0);
+		assertEquals(2.0, v1.get(0), 0);
+	}
 }
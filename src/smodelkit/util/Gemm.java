@@ -0,0 +1,153 @@
+package smodelkit.util;
+
+import java.util.Arrays;
+
+/**
+ * Dense matrix products for row-major matrices stored in double arrays. Each matrix is given as an
+ * array and a row stride, which is the distance between the starts of consecutive rows. A stride
+ * larger than the number of columns lets a matrix be the left part of a larger one, such as the
+ * weights of a neural network layer without the bias weight at the end of each row.
+ *
+ * In each method, the result C has m rows and p columns, and n is the size of the dimension which
+ * is summed over.
+ * @author joseph
+ *
+ */
+public final class Gemm
+{
+	// The number of values of the summed dimension which multiplyTransposeB works on at a time, so
+	// that the rows it uses stay in cache when that dimension is large.
+	private static final int BLOCK_SIZE = 256;
+
+	private Gemm()
+	{
+	}
+
+	/**
+	 * Sets C = A * B^T, where A is m x n and B is p x n. This is the form used to calculate the nets
+	 * of a layer for a batch of inputs, where each row of B is the weights of one node. Each value
+	 * of C is summed in the same order as a simple loop over n would sum it, so the result is
+	 * exactly the same as calculating each dot product separately.
+	 */
+	public static void multiplyTransposeB(double[] a, int aStride, double[] b, int bStride,
+			double[] c, int cStride, int m, int p, int n)
+	{
+		for (int i = 0; i < m; i++)
+			Arrays.fill(c, i * cStride, i * cStride + p, 0.0);
+
+		for (int kStart = 0; kStart < n; kStart += BLOCK_SIZE)
+		{
+			int kEnd = Math.min(n, kStart + BLOCK_SIZE);
+			int i = 0;
+			// Calculate 2 x 4 blocks of C at a time, so that each value loaded from A and B is used
+			// several times.
+			for (; i + 1 < m; i += 2)
+			{
+				int a0 = i * aStride;
+				int a1 = a0 + aStride;
+				int c0 = i * cStride;
+				int c1 = c0 + cStride;
+				int j = 0;
+				for (; j + 3 < p; j += 4)
+				{
+					int b0 = j * bStride;
+					int b1 = b0 + bStride;
+					int b2 = b1 + bStride;
+					int b3 = b2 + bStride;
+					// Continue the sums from the previous block.
+					double s00 = c[c0 + j], s01 = c[c0 + j + 1], s02 = c[c0 + j + 2], s03 = c[c0 + j + 3];
+					double s10 = c[c1 + j], s11 = c[c1 + j + 1], s12 = c[c1 + j + 2], s13 = c[c1 + j + 3];
+					for (int k = kStart; k < kEnd; k++)
+					{
+						double x0 = a[a0 + k];
+						double x1 = a[a1 + k];
+						double y0 = b[b0 + k];
+						double y1 = b[b1 + k];
+						double y2 = b[b2 + k];
+						double y3 = b[b3 + k];
+						s00 += x0 * y0;
+						s01 += x0 * y1;
+						s02 += x0 * y2;
+						s03 += x0 * y3;
+						s10 += x1 * y0;
+						s11 += x1 * y1;
+						s12 += x1 * y2;
+						s13 += x1 * y3;
+					}
+					c[c0 + j] = s00;
+					c[c0 + j + 1] = s01;
+					c[c0 + j + 2] = s02;
+					c[c0 + j + 3] = s03;
+					c[c1 + j] = s10;
+					c[c1 + j + 1] = s11;
+					c[c1 + j + 2] = s12;
+					c[c1 + j + 3] = s13;
+				}
+				for (; j < p; j++)
+				{
+					c[c0 + j] = dot(c[c0 + j], a, a0, b, j * bStride, kStart, kEnd);
+					c[c1 + j] = dot(c[c1 + j], a, a1, b, j * bStride, kStart, kEnd);
+				}
+			}
+			for (; i < m; i++)
+			{
+				for (int j = 0; j < p; j++)
+					c[i * cStride + j] = dot(c[i * cStride + j], a, i * aStride, b, j * bStride, kStart, kEnd);
+			}
+		}
+	}
+
+	/**
+	 * Adds the dot product of part of a row of A and part of a row of B to the given sum.
+	 */
+	private static double dot(double sum, double[] a, int aStart, double[] b, int bStart, int kStart, int kEnd)
+	{
+		for (int k = kStart; k < kEnd; k++)
+			sum += a[aStart + k] * b[bStart + k];
+		return sum;
+	}
+
+	/**
+	 * Adds A * B to C, where A is m x n and B is n x p. This is the form used to send the errors of
+	 * a layer back to the layer before it.
+	 */
+	public static void multiplyAdd(double[] a, int aStride, double[] b, int bStride,
+			double[] c, int cStride, int m, int p, int n)
+	{
+		for (int i = 0; i < m; i++)
+		{
+			int cRow = i * cStride;
+			for (int k = 0; k < n; k++)
+			{
+				double x = a[i * aStride + k];
+				if (x == 0)
+					continue;
+				int bRow = k * bStride;
+				for (int j = 0; j < p; j++)
+					c[cRow + j] += x * b[bRow + j];
+			}
+		}
+	}
+
+	/**
+	 * Adds A^T * B to C, where A is n x m and B is n x p. This is the form used to sum the weight
+	 * gradients of a layer over a batch, where A is the errors of the layer and B is its inputs.
+	 */
+	public static void multiplyAddTransposeA(double[] a, int aStride, double[] b, int bStride,
+			double[] c, int cStride, int m, int p, int n)
+	{
+		for (int k = 0; k < n; k++)
+		{
+			int bRow = k * bStride;
+			for (int i = 0; i < m; i++)
+			{
+				double x = a[k * aStride + i];
+				if (x == 0)
+					continue;
+				int cRow = i * cStride;
+				for (int j = 0; j < p; j++)
+					c[cRow + j] += x * b[bRow + j];
+			}
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package smodelkit.util;
+
+import java.util.Arrays;
+
+import smodelkit.Vector;
+
+/**
+ * A hash set of nominal labels encoded with a LabelKey. Each distinct label is given an id, which
+ * counts up from 0 in the order labels are added, so counts or scores for labels can be kept in
+ * arrays indexed by id. Keys are stored in one long array and looked up by open addressing, so
+ * adding and finding labels does not create objects or compare vectors.
+ *
+ * Labels are compared by value only. Instance weights are ignored.
+ *
+ * @author joseph
+ *
+ */
+public class LabelIndex
+{
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final LabelKey labelKey;
+	private final int width;
+	// The key of each id, stored in keys[id * width, (id + 1) * width).
+	private long[] keys;
+	private int size;
+	// Hash table slots containing id + 1, or 0 for empty slots.
+	private int[] table;
+	private final long[] scratch;
+
+	public LabelIndex(LabelKey labelKey)
+	{
+		this.labelKey = labelKey;
+		width = labelKey.getWidth();
+		keys = new long[INITIAL_CAPACITY * width];
+		table = new int[INITIAL_CAPACITY * 2];
+		scratch = new long[width];
+	}
+
+	/**
+	 * Returns the number of distinct labels added.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Adds the given label if it is not already present.
+	 * @return The id of the label.
+	 */
+	public int add(Vector label)
+	{
+		return add(label, -1, 0);
+	}
+
+	/**
+	 * Adds the given label, with its value in column col replaced by value, if it is not
+	 * already present. The label is not changed.
+	 * @return The id of the label.
+	 */
+	public int add(Vector label, int col, double value)
+	{
+		if (!labelKey.encode(label, col, value, scratch, 0))
+			throw new IllegalArgumentException("The label cannot be encoded: " + label);
+		int slot = find(scratch);
+		if (table[slot] != 0)
+			return table[slot] - 1;
+
+		if (size * width == keys.length)
+			keys = Arrays.copyOf(keys, keys.length * 2);
+		System.arraycopy(scratch, 0, keys, size * width, width);
+		table[slot] = size + 1;
+		size++;
+		if (size * 2 > table.length)
+			rehash();
+		return size - 1;
+	}
+
+	/**
+	 * Returns the id of the given label, or -1 if it has not been added.
+	 */
+	public int indexOf(Vector label)
+	{
+		return indexOf(label, -1, 0);
+	}
+
+	/**
+	 * Returns the id of the given label with its value in column col replaced by value, or -1
+	 * if it has not been added. The label is not changed.
+	 */
+	public int indexOf(Vector label, int col, double value)
+	{
+		if (!labelKey.encode(label, col, value, scratch, 0))
+			return -1;
+		return table[find(scratch)] - 1;
+	}
+
+	public boolean contains(Vector label)
+	{
+		return indexOf(label) >= 0;
+	}
+
+	/**
+	 * Returns the label with the given id, with a weight of 1.
+	 */
+	public Vector get(int id)
+	{
+		checkId(id);
+		return labelKey.decode(keys, id * width);
+	}
+
+	/**
+	 * Compares the labels with the given ids. The order is the same as Vector.compareTo for
+	 * labels without unknown values.
+	 */
+	public int compare(int id1, int id2)
+	{
+		checkId(id1);
+		checkId(id2);
+		return labelKey.compare(keys, id1 * width, keys, id2 * width);
+	}
+
+	/**
+	 * Returns the ids of all labels, sorted with compare.
+	 */
+	public int[] sortedIds()
+	{
+		Integer[] ids = new Integer[size];
+		for (int id = 0; id < size; id++)
+			ids[id] = id;
+		Arrays.sort(ids, (id1, id2) -> compare(id1, id2));
+		int[] result = new int[size];
+		for (int i = 0; i < size; i++)
+			result[i] = ids[i];
+		return result;
+	}
+
+	private void checkId(int id)
+	{
+		if (id < 0 || id >= size)
+			throw new IndexOutOfBoundsException("id: " + id + ", size: " + size);
+	}
+
+	/**
+	 * Returns the slot containing the given key, or the empty slot where it would be added.
+	 */
+	private int find(long[] key)
+	{
+		int mask = table.length - 1;
+		int slot = hash(key, 0) & mask;
+		while (table[slot] != 0 && labelKey.compare(keys, (table[slot] - 1) * width, key, 0) != 0)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	private int hash(long[] key, int offset)
+	{
+		long h = 0;
+		for (int i = 0; i < width; i++)
+			h = h * 31 + key[offset + i];
+		// The high bits of the product depend on all of the bits of h.
+		return (int)((h * 0x9E3779B97F4A7C15L) >>> 32);
+	}
+
+	private void rehash()
+	{
+		table = new int[table.length * 2];
+		int mask = table.length - 1;
+		for (int id = 0; id < size; id++)
+		{
+			int slot = hash(keys, id * width) & mask;
+			while (table[slot] != 0)
+				slot = (slot + 1) & mask;
+			table[slot] = id + 1;
+		}
+	}
+
+}
@@ -0,0 +1,178 @@
+package smodelkit.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import smodelkit.Matrix;
+import smodelkit.Vector;
+
+/**
+ * Packs nominal label vectors into longs using mixed-radix encoding, so that they can be
+ * compared and hashed without walking through their values. Each column is a digit with
+ * (value count + 1) possible values, where the last one is used for unknown values. Columns are
+ * packed into as few longs as possible, with earlier columns in more significant digits, so
+ * comparing keys word by word orders them the same way as Vector.compareTo for known values.
+ *
+ * Continuous columns cannot be encoded.
+ *
+ * @author joseph
+ *
+ */
+public class LabelKey implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	private final int[] radixes;
+	// The word each column is packed into, and the value of one in the column's digit.
+	private final int[] words;
+	private final long[] placeValues;
+	private final int width;
+
+	/**
+	 * Creates a key for the labels in the given matrix, which must all be nominal.
+	 */
+	public LabelKey(Matrix labels)
+	{
+		this(valueCounts(labels));
+	}
+
+	/**
+	 * @param valueCounts The number of nominal values in each column.
+	 */
+	public LabelKey(int[] valueCounts)
+	{
+		radixes = new int[valueCounts.length];
+		words = new int[valueCounts.length];
+		placeValues = new long[valueCounts.length];
+		int word = 0;
+		long wordSize = 1;
+		// Columns are added starting with the least significant digit of the last word.
+		int[] reversedWords = new int[valueCounts.length];
+		for (int c = valueCounts.length - 1; c >= 0; c--)
+		{
+			if (valueCounts[c] <= 0)
+				throw new IllegalArgumentException("Only nominal columns can be encoded. Column: " + c);
+			radixes[c] = valueCounts[c] + 1;
+			if (wordSize > Long.MAX_VALUE / radixes[c])
+			{
+				word++;
+				wordSize = 1;
+			}
+			reversedWords[c] = word;
+			placeValues[c] = wordSize;
+			wordSize *= radixes[c];
+		}
+		width = valueCounts.length == 0 ? 1 : word + 1;
+		for (int c = 0; c < valueCounts.length; c++)
+			words[c] = width - 1 - reversedWords[c];
+	}
+
+	private static int[] valueCounts(Matrix labels)
+	{
+		int[] result = new int[labels.cols()];
+		for (int c = 0; c < result.length; c++)
+			result[c] = labels.getValueCount(c);
+		return result;
+	}
+
+	/**
+	 * Determines if the labels in the given matrix can be encoded, which is true if they are
+	 * all nominal.
+	 */
+	public static boolean canEncode(Matrix labels)
+	{
+		for (int c = 0; c < labels.cols(); c++)
+		{
+			if (labels.isContinuous(c))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of columns this key encodes.
+	 */
+	public int size()
+	{
+		return radixes.length;
+	}
+
+	/**
+	 * Returns the number of longs in each key.
+	 */
+	public int getWidth()
+	{
+		return width;
+	}
+
+	/**
+	 * Encodes the given label into dest[offset, offset + getWidth()).
+	 * @return False if the label cannot be encoded because it has the wrong size or a value which
+	 * is not one of the nominal values of its column. dest may be changed even if so.
+	 */
+	public boolean encode(Vector label, long[] dest, int offset)
+	{
+		return encode(label, -1, 0, dest, offset);
+	}
+
+	/**
+	 * Like encode(Vector, long[], int), but encodes the given label as if its value in column col
+	 * were the given value. This avoids copying a label to encode a neighbor of it.
+	 */
+	public boolean encode(Vector label, int col, double value, long[] dest, int offset)
+	{
+		if (label.size() != radixes.length)
+			return false;
+		Arrays.fill(dest, offset, offset + width, 0L);
+		for (int c = 0; c < radixes.length; c++)
+		{
+			int digit = digit(c, c == col ? value : label.get(c));
+			if (digit < 0)
+				return false;
+			dest[offset + words[c]] += digit * placeValues[c];
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the digit for the given value of column c, or -1 if it is not a valid value.
+	 */
+	private int digit(int c, double value)
+	{
+		if (Vector.isUnknown(value))
+			return radixes[c] - 1;
+		int digit = (int)value;
+		if (digit != value || digit < 0 || digit >= radixes[c] - 1)
+			return -1;
+		return digit;
+	}
+
+	/**
+	 * Decodes the key in src[offset, offset + getWidth()) into a label with a weight of 1.
+	 */
+	public Vector decode(long[] src, int offset)
+	{
+		double[] values = new double[radixes.length];
+		for (int c = 0; c < radixes.length; c++)
+		{
+			int digit = (int)(src[offset + words[c]] / placeValues[c] % radixes[c]);
+			values[c] = digit == radixes[c] - 1 ? Vector.getUnknownValue() : digit;
+		}
+		return new Vector(values);
+	}
+
+	/**
+	 * Compares the keys in a[aOffset, aOffset + getWidth()) and b[bOffset, bOffset + getWidth()).
+	 */
+	public int compare(long[] a, int aOffset, long[] b, int bOffset)
+	{
+		for (int i = 0; i < width; i++)
+		{
+			int result = Long.compare(a[aOffset + i], b[bOffset + i]);
+			if (result != 0)
+				return result;
+		}
+		return 0;
+	}
+
+}
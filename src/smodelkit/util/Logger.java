@@ -5,6 +5,7 @@ import static java.lang.System.out;
 import java.util.HashSet;
 import java.util.Set;
 
+import smodelkit.DatasetCache;
 import smodelkit.MLSystemsManager;
 import smodelkit.MetadataPrinter;
 
@@ -28,6 +29,7 @@ public class Logger
 		//loggingClassNames.add(NNHBS.class.getCanonicalName());
 		loggingClassNames.add(MLSystemsManager.class.getCanonicalName());
 		loggingClassNames.add(MetadataPrinter.class.getCanonicalName());
+		loggingClassNames.add(DatasetCache.class.getCanonicalName());
 		loggingClassNames.add(Plotter.class.getCanonicalName());
 		//loggingClassNames.add(MODAccuracyMeasure.class.getCanonicalName());
 		//loggingClassNames.add(RelationAccuracyMeasure.class.getCanonicalName());
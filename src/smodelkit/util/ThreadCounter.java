@@ -26,6 +26,14 @@ public class ThreadCounter
 	{
 		return maxThreadsSetByUser;
 	}
+	/**
+	 * Undoes setMaxThreads, so that the maximum is the number of processors again.
+	 */
+	public static synchronized void resetMaxThreads()
+	{
+		maxThreads = Runtime.getRuntime().availableProcessors();
+		maxThreadsSetByUser = false;
+	}
 	
 	static
 	{
@@ -0,0 +1,101 @@
+package smodelkit.util.kernels;
+
+import smodelkit.util.Logger;
+
+/**
+ * Loops over double arrays which are used in the inner loops of the learners, such as the dot
+ * products of a neural network and the distances measured by nearest neighbor models. Each method
+ * works on a range of each array, given by an offset and a length, so that it can be used on rows
+ * of a larger array.
+ *
+ * The implementation is chosen once, when this class is loaded, from the system property
+ * "smodelkit.kernels":
+ * <ul>
+ * <li>"scalar" (the default) uses ScalarKernels, which sums values in the same order as a simple
+ * loop, so results are exactly reproducible.</li>
+ * <li>"vector" uses VectorKernels, which uses the SIMD instructions of the processor through the
+ * Java Vector API. Its sums are done in a different order, so results can differ from those of
+ * ScalarKernels in the last few bits. VectorKernels needs Java 16 or later with the
+ * jdk.incubator.vector module (--add-modules jdk.incubator.vector). If it cannot be loaded, a
+ * message is logged and ScalarKernels is used.</li>
+ * </ul>
+ * @author joseph
+ *
+ */
+public abstract class Kernels
+{
+	public static final String PROPERTY = "smodelkit.kernels";
+	private static final String VECTOR_KERNELS = "smodelkit.util.kernels.VectorKernels";
+	private static final Kernels instance = load(System.getProperty(PROPERTY, "scalar"));
+
+	/**
+	 * Returns the implementation chosen when this class was loaded.
+	 */
+	public static Kernels get()
+	{
+		return instance;
+	}
+
+	/**
+	 * Creates the implementation with the given name. This is used by get, and by benchmarks which
+	 * compare implementations.
+	 * @param name "scalar" or "vector".
+	 */
+	public static Kernels load(String name)
+	{
+		if (name.equals("scalar"))
+			return new ScalarKernels();
+		if (!name.equals("vector"))
+			throw new IllegalArgumentException("Unrecognized value of " + PROPERTY + ": " + name);
+		try
+		{
+			return (Kernels)Class.forName(VECTOR_KERNELS).getDeclaredConstructor().newInstance();
+		}
+		catch (ReflectiveOperationException | LinkageError e)
+		{
+			Logger.println("Unable to load " + VECTOR_KERNELS + ", so scalar kernels will be used: " + e);
+			return new ScalarKernels();
+		}
+	}
+
+	/**
+	 * Returns the name of this implementation, as given to load.
+	 */
+	public abstract String getName();
+
+	/**
+	 * Returns the sum of a[aOffset + i] * b[bOffset + i] for i from 0 to length - 1.
+	 */
+	public abstract double dot(double[] a, int aOffset, double[] b, int bOffset, int length);
+
+	/**
+	 * Adds alpha * x[xOffset + i] to y[yOffset + i] for i from 0 to length - 1.
+	 */
+	public abstract void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length);
+
+	/**
+	 * Returns the sum of a[aOffset + i] * b[bOffset + i] for i from 0 to length - 1, calculated in
+	 * single precision.
+	 */
+	public abstract float dot(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+	/**
+	 * Adds alpha * x[xOffset + i] to y[yOffset + i] for i from 0 to length - 1, calculated in
+	 * single precision.
+	 */
+	public abstract void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length);
+
+	/**
+	 * Returns the sum of scale * (a[aOffset + i] - b[bOffset + i])^2 for i from 0 to length - 1.
+	 * Use a scale of 1 for the squared Euclidean distance.
+	 */
+	public abstract double squaredDistance(double[] a, int aOffset, double[] b, int bOffset, int length,
+			double scale);
+
+	/**
+	 * Returns the squared Euclidean distance between two ranges of values, except that unknown
+	 * values (NaN) in either range add unknownDistance to the sum instead of a squared difference.
+	 */
+	public abstract double maskedSquaredDistance(double[] a, int aOffset, double[] b, int bOffset, int length,
+			double unknownDistance);
+}
@@ -0,0 +1,79 @@
+package smodelkit.util.kernels;
+
+/**
+ * Kernels which are simple loops. Each sum is calculated in order from the first index to the
+ * last, so results are the same on every platform and the same as the loops these kernels
+ * replaced. The JIT compiler may still unroll these loops, but it does not reorder the sums.
+ * @author joseph
+ *
+ */
+public class ScalarKernels extends Kernels
+{
+	@Override
+	public String getName()
+	{
+		return "scalar";
+	}
+
+	@Override
+	public double dot(double[] a, int aOffset, double[] b, int bOffset, int length)
+	{
+		double sum = 0;
+		for (int i = 0; i < length; i++)
+			sum += a[aOffset + i] * b[bOffset + i];
+		return sum;
+	}
+
+	@Override
+	public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length)
+	{
+		for (int i = 0; i < length; i++)
+			y[yOffset + i] += alpha * x[xOffset + i];
+	}
+
+	@Override
+	public float dot(float[] a, int aOffset, float[] b, int bOffset, int length)
+	{
+		float sum = 0;
+		for (int i = 0; i < length; i++)
+			sum += a[aOffset + i] * b[bOffset + i];
+		return sum;
+	}
+
+	@Override
+	public void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length)
+	{
+		for (int i = 0; i < length; i++)
+			y[yOffset + i] += alpha * x[xOffset + i];
+	}
+
+	@Override
+	public double squaredDistance(double[] a, int aOffset, double[] b, int bOffset, int length,
+			double scale)
+	{
+		double sum = 0;
+		for (int i = 0; i < length; i++)
+		{
+			double d = a[aOffset + i] - b[bOffset + i];
+			sum += scale * (d * d);
+		}
+		return sum;
+	}
+
+	@Override
+	public double maskedSquaredDistance(double[] a, int aOffset, double[] b, int bOffset, int length,
+			double unknownDistance)
+	{
+		double sum = 0;
+		for (int i = 0; i < length; i++)
+		{
+			double x = a[aOffset + i];
+			double y = b[bOffset + i];
+			if (Double.isNaN(x) || Double.isNaN(y))
+				sum += unknownDistance;
+			else
+				sum += (x - y) * (x - y);
+		}
+		return sum;
+	}
+}